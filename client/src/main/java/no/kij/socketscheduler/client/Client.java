@@ -2,10 +2,15 @@ package no.kij.socketscheduler.client;
 
 import org.fusesource.jansi.AnsiConsole;
 
+import java.io.BufferedOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
 
 import static org.fusesource.jansi.Ansi.ansi;
@@ -20,6 +25,9 @@ public class Client {
     private DataInputStream inputStream;
     private Scanner scanner;
     private boolean running;
+    private int protocolVersion = FrameCodec.LEGACY_VERSION;
+    private boolean unordered;
+    private int nextRequestId = 1;
 
     /**
      * Entry point for the program.
@@ -34,11 +42,16 @@ public class Client {
      * as well as sends messages to the server until connection is ended.
      */
     public void startClient() {
+            if (running) {
+                receiveMsgFromServer();
+            }
+            if (running) {
+                negotiateProtocol();
+            }
+
             while (running) {
+                sendMsgToServer(scanner.nextLine());
                 receiveMsgFromServer();
-                if (running) {
-                    sendMsgToServer(scanner.nextLine());
-                }
             }
 
             System.out.println("Client shutdown.");
@@ -53,7 +66,11 @@ public class Client {
      */
     public void sendMsgToServer(String msg) {
         try {
-            outputStream.writeUTF(msg);
+            if (protocolVersion == FrameCodec.LEGACY_VERSION) {
+                outputStream.writeUTF(msg);
+            } else {
+                FrameCodec.writeFrame(outputStream, protocolVersion, FrameCodec.REQUEST, nextRequestId++, msg);
+            }
             outputStream.flush();
         } catch (IOException e) {
             System.err.println("Something went wrong while sending the message to server.");
@@ -68,6 +85,11 @@ public class Client {
      */
     public void receiveMsgFromServer() {
         try {
+            if (protocolVersion != FrameCodec.LEGACY_VERSION) {
+                receiveFrameFromServer();
+                return;
+            }
+
             String msg;
             do {
                 msg = inputStream.readUTF();
@@ -86,12 +108,178 @@ public class Client {
         }
     }
 
+    /**
+     * Receives a whole response sent as a single frame, and prints it.
+     * @throws IOException If the frame could not be read
+     */
+    private void receiveFrameFromServer() throws IOException {
+        Frame frame = FrameCodec.readFrame(inputStream, protocolVersion);
+        if (frame.getType() == FrameCodec.CLOSE) {
+            running = false;
+            System.out.println("Server disconnected.");
+            return;
+        }
+        if (!frame.getPayload().isEmpty()) {
+            System.out.println(ansi().render(frame.getPayload()));
+        }
+    }
+
+    /**
+     * Asks the server for the newest protocol, with responses in the order they were requested.
+     * @see Client#negotiateProtocol(int, boolean)
+     */
+    public void negotiateProtocol() {
+        negotiateProtocol(FrameCodec.PIPELINED_VERSION, false);
+    }
+
+    /**
+     * Asks the server to send responses as frames. The answer is read in the original protocol,
+     * and tells the version the server agreed to. If it does not contain a version at all,
+     * the server does not support frames and the client stays on the original protocol.
+     * @param version The highest version the client wants to use
+     * @param allowUnordered true if the server may answer pipelined requests in any order
+     */
+    public void negotiateProtocol(int version, boolean allowUnordered) {
+        sendMsgToServer(FrameCodec.HANDSHAKE + " " + version + (allowUnordered ? " " + FrameCodec.UNORDERED : ""));
+        try {
+            String msg;
+            while (!(msg = inputStream.readUTF()).equals(END_TRANSMISSION)) {
+                int agreedVersion = FrameCodec.parseHandshake(msg);
+                if (agreedVersion > 0 && agreedVersion <= version) {
+                    protocolVersion = agreedVersion;
+                    unordered = msg.endsWith(" " + FrameCodec.UNORDERED);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Could not receive msg from server.");
+            System.err.println(e.getMessage());
+        }
+    }
+
+    /**
+     * Sends all the commands to the server without waiting for each response, and collects the responses.
+     * The requests are written on another thread while this one reads, so neither side blocks on a full
+     * socket buffer. If the server does not support protocol version 3, the commands are sent one at a time.
+     * @param commands The commands to send
+     * @return The text of each response, in the same order as the commands
+     */
+    public List<String> sendPipelined(List<String> commands) {
+        if (protocolVersion < FrameCodec.PIPELINED_VERSION) {
+            return sendInLockStep(commands);
+        }
+
+        int firstId = nextRequestId;
+        nextRequestId += commands.size();
+        Thread writer = new Thread(() -> {
+            try {
+                for (int i = 0; i < commands.size(); i++) {
+                    FrameCodec.writeFrame(outputStream, protocolVersion, FrameCodec.REQUEST, firstId + i, commands.get(i));
+                }
+                outputStream.flush();
+            } catch (IOException e) {
+                System.err.println("Something went wrong while sending the message to server.");
+                System.err.println(e.getMessage());
+            }
+        }, "pipelined-writer");
+        writer.start();
+
+        // responses may come back in any order if the server agreed to it, so they are matched by id
+        Map<Integer, String> responses = new HashMap<>();
+        try {
+            while (responses.size() < commands.size()) {
+                Frame frame = FrameCodec.readFrame(inputStream, protocolVersion);
+                if (frame.getType() == FrameCodec.CLOSE) {
+                    running = false;
+                    break;
+                }
+                responses.put(frame.getRequestId(), frame.getPayload());
+            }
+            writer.join();
+        } catch (IOException e) {
+            System.err.println("Could not receive msg from server.");
+            System.err.println(e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        List<String> ordered = new ArrayList<>();
+        for (int i = 0; i < commands.size(); i++) {
+            ordered.add(responses.get(firstId + i));
+        }
+        return ordered;
+    }
+
+    /**
+     * Reads commands from the standard input until it ends, sends them all at once and prints the responses.
+     * @param allowUnordered true if the server may answer the commands in any order
+     */
+    public void startBatch(boolean allowUnordered) {
+        if (!running) {
+            return;
+        }
+        receiveMsgFromServer();
+        negotiateProtocol(FrameCodec.PIPELINED_VERSION, allowUnordered);
+
+        List<String> commands = new ArrayList<>();
+        while (scanner.hasNextLine()) {
+            commands.add(scanner.nextLine());
+        }
+        for (String response : sendPipelined(commands)) {
+            if (response != null && !response.isEmpty()) {
+                System.out.println(ansi().render(response));
+            }
+        }
+        System.out.println("Client shutdown.");
+    }
+
+    /**
+     * @return true if the server agreed to answer pipelined requests in any order
+     */
+    public boolean isUnordered() {
+        return unordered;
+    }
+
+    /**
+     * Sends the commands one at a time, for servers that can't match responses to requests.
+     * @param commands The commands to send
+     * @return The text of each response, in the same order as the commands
+     */
+    private List<String> sendInLockStep(List<String> commands) {
+        List<String> responses = new ArrayList<>();
+        try {
+            for (String command : commands) {
+                sendMsgToServer(command);
+                if (protocolVersion == FrameCodec.LEGACY_VERSION) {
+                    List<String> lines = new ArrayList<>();
+                    String msg;
+                    while (!(msg = inputStream.readUTF()).equals(END_TRANSMISSION)) {
+                        lines.add(msg);
+                    }
+                    responses.add(String.join("\n", lines));
+                } else {
+                    responses.add(FrameCodec.readFrame(inputStream, protocolVersion).getPayload());
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Could not receive msg from server.");
+            System.err.println(e.getMessage());
+        }
+        return responses;
+    }
+
+    /**
+     * @return The protocol version agreed on with the server
+     */
+    public int getProtocolVersion() {
+        return protocolVersion;
+    }
+
     /**
      * Opens the necessary streams to communicate with the sever.
      */
     private void openStreams() {
         try {
-            outputStream = new DataOutputStream(server.getOutputStream());
+            outputStream = new DataOutputStream(new BufferedOutputStream(server.getOutputStream()));
             inputStream = new DataInputStream(server.getInputStream());
             outputStream.flush();
         } catch (IOException e) {
@@ -0,0 +1,108 @@
+package no.kij.socketscheduler.client;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This class consists exclusively of static methods used to read and write the framed protocol.
+ *
+ * Version 1 is the original protocol, where every line is sent with writeUTF and a response
+ * ends with an END_TRANSMISSION line. Version 2 sends a whole message as one frame:
+ * a byte telling the frame type, an int telling the length, and the UTF-8 encoded text.
+ * Version 3 adds an int request id between the type and the length, so many requests can be
+ * sent without waiting, and each response matched to the request it answers.
+ * The client asks for a version by sending "PROTOCOL <version>" once it has been greeted,
+ * and stays on version 1 if the server does not answer with a version of its own.
+ */
+public class FrameCodec {
+    public static final int LEGACY_VERSION = 1;
+    public static final int FRAMED_VERSION = 2;
+    public static final int PIPELINED_VERSION = 3;
+    public static final String HANDSHAKE = "PROTOCOL";
+    public static final String UNORDERED = "UNORDERED";
+
+    public static final byte REQUEST = 1;
+    public static final byte RESPONSE = 2;
+    public static final byte CLOSE = 3;
+
+    public static final int MAX_FRAME_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * Writes a version 2 frame to the stream and flushes it.
+     * @param out Stream to write to
+     * @param type Type of the frame
+     * @param payload Text to send
+     * @throws IOException If the frame could not be written
+     */
+    public static void writeFrame(DataOutputStream out, byte type, String payload) throws IOException {
+        writeFrame(out, FRAMED_VERSION, type, 0, payload);
+        out.flush();
+    }
+
+    /**
+     * Writes a frame to the stream, without flushing it.
+     * @param out Stream to write to
+     * @param version Protocol version to write the frame in
+     * @param type Type of the frame
+     * @param requestId Id of the request the frame belongs to, left out before version 3
+     * @param payload Text to send
+     * @throws IOException If the frame could not be written
+     */
+    public static void writeFrame(DataOutputStream out, int version, byte type, int requestId, String payload)
+            throws IOException {
+        byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+        out.writeByte(type);
+        if (version >= PIPELINED_VERSION) {
+            out.writeInt(requestId);
+        }
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads a whole version 2 frame from the stream, blocking until it has arrived.
+     * @param in Stream to read from
+     * @return The frame that was read
+     * @throws IOException If the stream ends, or the frame is larger than allowed
+     */
+    public static Frame readFrame(DataInputStream in) throws IOException {
+        return readFrame(in, FRAMED_VERSION);
+    }
+
+    /**
+     * Reads a whole frame from the stream, blocking until it has arrived.
+     * @param in Stream to read from
+     * @param version Protocol version the frame is written in
+     * @return The frame that was read
+     * @throws IOException If the stream ends, or the frame is larger than allowed
+     */
+    public static Frame readFrame(DataInputStream in, int version) throws IOException {
+        byte type = in.readByte();
+        int requestId = version >= PIPELINED_VERSION ? in.readInt() : 0;
+        int length = in.readInt();
+        if (length < 0 || length > MAX_FRAME_SIZE) {
+            throw new IOException("Frame of " + length + " bytes is not allowed.");
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new Frame(type, requestId, new String(bytes, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Finds the version the server agreed to in its answer to the handshake.
+     * @param msg A line from the server
+     * @return The version agreed to, or -1 if the line is not an answer to the handshake
+     */
+    public static int parseHandshake(String msg) {
+        if (msg == null || !msg.startsWith(HANDSHAKE + " ")) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(msg.trim().split(" ")[1]);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -4,6 +4,8 @@ import org.fusesource.jansi.AnsiConsole;
 
 import java.io.*;
 import java.net.Socket;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Scanner;
 
 import static org.fusesource.jansi.Ansi.ansi;
@@ -11,7 +13,8 @@ import static org.fusesource.jansi.Ansi.ansi;
 /**
  * This is the client that is meant to connect to the server.
  * It accepts input from the user and sends it to the server, then listens to incoming messages
- * from the server.
+ * from the server. Started with "--batch", it instead sends every line of the standard input at once,
+ * and with "--unordered" lets the server answer them in any order.
  */
 public class Main {
 
@@ -21,7 +24,12 @@ public class Main {
      */
     public static void main(String[] args) {
         Client client = new Client();
-        client.startClient();
+        List<String> arguments = Arrays.asList(args);
+        if (arguments.contains("--batch")) {
+            client.startBatch(arguments.contains("--unordered"));
+        } else {
+            client.startClient();
+        }
     }
 
 }
@@ -9,6 +9,7 @@ import org.mockito.internal.matchers.InstanceOf;
 import java.io.*;
 import java.net.Socket;
 import java.util.Arrays;
+import java.util.List;
 
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
@@ -88,6 +89,98 @@ public class ClientTest {
             assertTrue(outContent.toString().contains("Client shutdown."));
     }
 
+    @Test
+    public void testNegotiateProtocolSwitchesToFrames() throws IOException {
+        ByteArrayOutputStream reply = new ByteArrayOutputStream();
+        reply.write(createUTFMessage("PROTOCOL 2"));
+        reply.write(createUTFMessage("END_TRANSMISSION"));
+        FrameCodec.writeFrame(new DataOutputStream(reply), FrameCodec.RESPONSE, "first line\nsecond line");
+        when(socket.getInputStream()).thenReturn(new ByteArrayInputStream(reply.toByteArray()));
+
+        Client client = createClient();
+        client.negotiateProtocol();
+        assertEquals(FrameCodec.FRAMED_VERSION, client.getProtocolVersion());
+
+        client.receiveMsgFromServer();
+        assertTrue(outContent.toString().contains("first line"));
+        assertTrue(outContent.toString().contains("second line"));
+
+        // requests are now sent as frames as well
+        outputStream.reset();
+        client.sendMsgToServer("list subject");
+        Frame request = FrameCodec.readFrame(new DataInputStream(new ByteArrayInputStream(outputStream.toByteArray())));
+        assertEquals(FrameCodec.REQUEST, request.getType());
+        assertEquals("list subject", request.getPayload());
+    }
+
+    @Test
+    public void testNegotiateProtocolStaysOnLegacyWithOldServer() throws IOException {
+        // an old server does not know the handshake, and answers with an empty response
+        Client client = createClient();
+        client.negotiateProtocol();
+        assertEquals(FrameCodec.LEGACY_VERSION, client.getProtocolVersion());
+    }
+
+    @Test
+    public void testReceiveCloseFrameShutsDownClient() throws IOException {
+        ByteArrayOutputStream reply = new ByteArrayOutputStream();
+        reply.write(createUTFMessage("PROTOCOL 2"));
+        reply.write(createUTFMessage("END_TRANSMISSION"));
+        FrameCodec.writeFrame(new DataOutputStream(reply), FrameCodec.CLOSE, "END_CONNECTION");
+        when(socket.getInputStream()).thenReturn(new ByteArrayInputStream(reply.toByteArray()));
+
+        Client client = createClient();
+        client.negotiateProtocol();
+        client.receiveMsgFromServer();
+
+        assertTrue(outContent.toString().contains("Server disconnected."));
+    }
+
+    @Test
+    public void testSendPipelinedMatchesResponsesToRequests() throws IOException {
+        ByteArrayOutputStream reply = new ByteArrayOutputStream();
+        DataOutputStream replyOut = new DataOutputStream(reply);
+        reply.write(createUTFMessage("PROTOCOL 3 UNORDERED"));
+        reply.write(createUTFMessage("END_TRANSMISSION"));
+        // the server is allowed to answer in any order, so it answers the second request first
+        FrameCodec.writeFrame(replyOut, FrameCodec.PIPELINED_VERSION, FrameCodec.RESPONSE, 2, "help response");
+        FrameCodec.writeFrame(replyOut, FrameCodec.PIPELINED_VERSION, FrameCodec.RESPONSE, 1, "list response");
+        when(socket.getInputStream()).thenReturn(new ByteArrayInputStream(reply.toByteArray()));
+
+        Client client = createClient();
+        client.negotiateProtocol(FrameCodec.PIPELINED_VERSION, true);
+        assertEquals(FrameCodec.PIPELINED_VERSION, client.getProtocolVersion());
+        assertTrue(client.isUnordered());
+
+        outputStream.reset();
+        List<String> responses = client.sendPipelined(Arrays.asList("list subject", "help"));
+        assertEquals(Arrays.asList("list response", "help response"), responses);
+
+        DataInputStream sent = new DataInputStream(new ByteArrayInputStream(outputStream.toByteArray()));
+        Frame first = FrameCodec.readFrame(sent, FrameCodec.PIPELINED_VERSION);
+        Frame second = FrameCodec.readFrame(sent, FrameCodec.PIPELINED_VERSION);
+        assertEquals(1, first.getRequestId());
+        assertEquals("list subject", first.getPayload());
+        assertEquals(2, second.getRequestId());
+        assertEquals("help", second.getPayload());
+    }
+
+    @Test
+    public void testSendPipelinedFallsBackToLockStepWithOldServer() throws IOException {
+        ByteArrayOutputStream reply = new ByteArrayOutputStream();
+        reply.write(createUTFMessage("END_TRANSMISSION"));
+        reply.write(createUTFMessage("first"));
+        reply.write(createUTFMessage("END_TRANSMISSION"));
+        reply.write(createUTFMessage("second"));
+        reply.write(createUTFMessage("END_TRANSMISSION"));
+        when(socket.getInputStream()).thenReturn(new ByteArrayInputStream(reply.toByteArray()));
+
+        Client client = createClient();
+        client.negotiateProtocol();
+        assertEquals(FrameCodec.LEGACY_VERSION, client.getProtocolVersion());
+        assertEquals(Arrays.asList("first", "second"), client.sendPipelined(Arrays.asList("help", "help list")));
+    }
+
     @Test (expected = java.net.ConnectException.class)
     public void testCreateSocketThrowsConnectionException() throws IOException {
         Client client = new Client();
@@ -1,20 +1,41 @@
 package no.kij.socketscheduler.server;
 
+import no.kij.socketscheduler.server.cache.ResponseCache;
+import no.kij.socketscheduler.server.catalogue.Catalogue;
+import no.kij.socketscheduler.server.cmd.CommandAction;
 import no.kij.socketscheduler.server.cmd.CommandDetails;
 import no.kij.socketscheduler.server.cmd.CommandParser;
 import no.kij.socketscheduler.server.cmd.CommandType;
 import no.kij.socketscheduler.server.dto.LecturerDTO;
 import no.kij.socketscheduler.server.dto.SubjectDTO;
+import no.kij.socketscheduler.server.protocol.EncodedResponse;
+import no.kij.socketscheduler.server.protocol.Frame;
+import no.kij.socketscheduler.server.protocol.FrameCodec;
+import no.kij.socketscheduler.server.protocol.Response;
 import no.kij.socketscheduler.server.util.ConnectionManager;
 import no.kij.socketscheduler.server.util.DaoDelegator;
 
+import java.io.BufferedOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.net.Socket;
-import java.sql.SQLException;
-import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 import static org.fusesource.jansi.Ansi.ansi;
@@ -26,40 +47,256 @@ import static org.fusesource.jansi.Ansi.ansi;
  */
 public class ClientThread implements Runnable {
     //region Properties
-    private final String END_TRANSMISSION = "END_TRANSMISSION";
+    private static final int PIPELINE_THREADS = 16;
+    private static final int MAX_REQUESTS_IN_FLIGHT = 64;
+    public static final int DEFAULT_SEARCH_LIMIT = 5;
+    private static volatile int searchLimit = DEFAULT_SEARCH_LIMIT;
+    // a page of a list is sent as one frame, so a list given no limit is still cut into pages far below its limit
+    public static final int DEFAULT_LIST_LIMIT = 1000;
+    public static final int MAX_LIST_LIMIT = 10000;
+    private static volatile int listLimit = DEFAULT_LIST_LIMIT;
+    // shared by every client that lets its requests be answered in any order
+    private static final ExecutorService PIPELINE_EXECUTOR = Executors.newFixedThreadPool(PIPELINE_THREADS, runnable -> {
+        Thread thread = new Thread(runnable, "pipelined-request");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final Runnable NOTHING_TO_WRITE = () -> { };
+    private static final int PAGE_CACHE_ENTRIES = 256;
+    private static final int PAGE_CACHE_TTL_SECONDS = 60;
+    private static final int MAX_CACHED_PAGE_BYTES = 64 * 1024;
+    // the pages of lists already encoded, for each catalogue, as their versions only hold within one catalogue
+    private static final Map<Catalogue, ResponseCache<CachedPage>> PAGE_CACHES =
+            Collections.synchronizedMap(new WeakHashMap<>());
+
+    private static final String LECTURER_HEADER = "@|bold,cyan " + String.format("%-25s %s", "Name", "Subject|@");
+    private static final String LECTURER_RULE = "@|cyan -------------------------------- |@";
+    private static final String SUBJECT_HEADER = "@|bold,cyan "
+            + String.format("%-30s %-10s %-10s %s", "Subject", "Code", "Enrolled", "Lecturer(s)|@");
+    private static final String SUBJECT_RULE =
+            "@|cyan ----------------------------------------------------------------------------- |@";
+    // the responses that never change, encoded once for every client
+    private static final EncodedResponse WELCOME;
+    private static final Map<CommandType, EncodedResponse> HELP = new EnumMap<>(CommandType.class);
+    private static final Map<CommandType, EncodedResponse> USAGE = new EnumMap<>(CommandType.class);
+
+    static {
+        Response welcome = new Response(0);
+        welcome.add("@|green You have been successfully connected to the Scheduler Database.\n" +
+                "To search the database, type \"search (lecturer|subject) <search term>\"|@\n");
+        WELCOME = EncodedResponse.encode(welcome.getLines());
+        for (CommandType type : new CommandType[] { CommandType.LIST, CommandType.MORE, CommandType.SEARCH }) {
+            Response usage = new Response(0);
+            addUsage(usage, type);
+            USAGE.put(type, EncodedResponse.encode(usage.getLines()));
+        }
+        for (CommandType type : new CommandType[] {
+                CommandType.LIST, CommandType.MORE, CommandType.SEARCH, CommandType.NONE }) {
+            Response help = new Response(0);
+            addHelp(help, type);
+            HELP.put(type, EncodedResponse.encode(help.getLines()));
+        }
+    }
+
+    private final String END_TRANSMISSION = FrameCodec.END_TRANSMISSION;
     private final String END_CONNECTION = "END_CONNECTION";
     private CommandParser cmdParser;
     private Socket clientSocket;
     private DaoDelegator dao;
     private DataOutputStream outputStream;
+    // held while a response is written, a lock rather than synchronized so a virtual thread blocked on the socket
+    // does not pin its carrier
+    private final ReentrantLock writeLock = new ReentrantLock();
     private DataInputStream inputStream;
     private boolean running;
+    private int protocolVersion;
+    private boolean unordered;
+    private Semaphore requestsInFlight;
+    // where the more command continues the last list cut short by its limit, or null if there is nothing more
+    private volatile ListCursor cursor;
     //endregion
 
     //region Constructor
     public ClientThread(Socket clientSocket, ConnectionManager connectionManager) {
+        this(clientSocket, DaoDelegator.shared(connectionManager));
+    }
+
+    /**
+     * Creates a ClientThread for the given socket, using the given daos for its commands.
+     * @param clientSocket Socket connected to the client
+     * @param dao Delegator to get the daos from
+     */
+    public ClientThread(Socket clientSocket, DaoDelegator dao) {
         this.clientSocket = clientSocket;
-        dao = new DaoDelegator(connectionManager);
+        this.dao = dao;
+        cmdParser = new CommandParser();
+        protocolVersion = FrameCodec.LEGACY_VERSION;
+        requestsInFlight = new Semaphore(MAX_REQUESTS_IN_FLIGHT);
         openStreams();
     }
+
+    /**
+     * Creates a ClientThread that is not bound to a socket,
+     * used by servers that do the reading and writing on their own (like the NIO server).
+     * Responses are written to the given stream,
+     * and commands are passed in through handleMessage or answerMessageAsync.
+     * @param outputStream Stream the responses are written to
+     * @param connectionManager The ConnectionManager to pool database connections from
+     */
+    public ClientThread(DataOutputStream outputStream, ConnectionManager connectionManager) {
+        this.outputStream = outputStream;
+        dao = DaoDelegator.shared(connectionManager);
+        cmdParser = new CommandParser();
+        protocolVersion = FrameCodec.LEGACY_VERSION;
+        requestsInFlight = new Semaphore(MAX_REQUESTS_IN_FLIGHT);
+        running = true;
+    }
     //endregion
 
     //region Listener
     @Override
     public void run() {
         running = true;
-        cmdParser = new CommandParser();
-
-        String msg = "@|green You have been successfully connected to the Scheduler Database.\n" +
-                "To search the database, type \"search (lecturer|subject) <search term>\"|@\n";
-        sendMsgToClient(msg);
-        sendMsgToClient(END_TRANSMISSION);
+        sendWelcome();
 
         while (running) {
-            msg = receiveMsgFromClient();
-            runCmd(msg);
+            Frame request = receiveMsgFromClient();
+            if (running) {
+                handleMessage(request.getRequestId(), request.getPayload());
+            }
+        }
+    }
+
+    /**
+     * Sends the greeting every client receives when it connects.
+     */
+    public void sendWelcome() {
+        Response response = new Response(0);
+        response.setEncoded(WELCOME);
+        writeResponse(response);
+    }
+
+    /**
+     * Tells the client the server has no room for it right now, and closes the connection.
+     * Used in place of run when the client could not be given a thread.
+     */
+    public void sendBusy() {
+        Response response = new Response(0);
+        response.add("@|yellow The server is busy, please try again in a moment.|@");
+        response.add(END_CONNECTION);
+        writeResponse(response);
+        closeStreams();
+    }
+
+    /**
+     * Runs a single message from the client and writes the response to the output stream.
+     * @see ClientThread#handleMessage(int, String)
+     * @param msg The message received from the client
+     */
+    public void handleMessage(String msg) {
+        handleMessage(0, msg);
+    }
+
+    /**
+     * Runs a single message from the client and writes the response to the output stream.
+     * Unless the client allows responses in any order, this waits for the database and writes the response
+     * on this thread, so the next message is not read before this one has been answered.
+     * @see ClientThread#answerMessageAsync(int, String)
+     * @param requestId Id of the request, which the response is tagged with from protocol version 3
+     * @param msg The message received from the client
+     */
+    public void handleMessage(int requestId, String msg) {
+        CompletableFuture<Runnable> answered = answerMessageAsync(requestId, msg);
+        if (!unordered || answered.isDone()) {
+            answered.join().run();
         }
     }
+
+    /**
+     * Runs a single message from the client, without waiting for the database or writing the response.
+     * The message is either a handshake asking for another protocol version, or a command.
+     * Commands reading the database ask the catalogue through its async methods, and only collect the answer
+     * on the database thread. The future completes with the writing of the response, which the thread serving
+     * the connection runs, so a client slow to read never holds a database thread or connection.
+     * If the client allows responses in any order, the command is started on the pipeline executor
+     * while this thread goes back to reading, and its response is written there too, except for exit,
+     * which waits for the others to finish.
+     * @param requestId Id of the request, which the response is tagged with from protocol version 3
+     * @param msg The message received from the client
+     * @return Future completed with what is left to write once the database has answered, which never fails
+     */
+    public CompletableFuture<Runnable> answerMessageAsync(int requestId, String msg) {
+        int requestedVersion = FrameCodec.parseHandshake(msg);
+        if (requestedVersion > 0) {
+            negotiateProtocol(requestedVersion, FrameCodec.isUnordered(msg));
+            return CompletableFuture.completedFuture(NOTHING_TO_WRITE);
+        }
+
+        CommandDetails cmd = cmdParser.parse(msg);
+        if (unordered && (cmd == null || cmd.getAction() != CommandAction.EXIT)) {
+            requestsInFlight.acquireUninterruptibly();
+            return CompletableFuture.supplyAsync(() -> runCmd(requestId, cmd), PIPELINE_EXECUTOR)
+                    .thenCompose(Function.identity())
+                    .thenApplyAsync(write -> {
+                        write.run();
+                        return NOTHING_TO_WRITE;
+                    }, PIPELINE_EXECUTOR)
+                    .whenComplete((done, e) -> requestsInFlight.release());
+        }
+        awaitRequestsInFlight();
+        return runCmd(requestId, cmd);
+    }
+
+    /**
+     * Sets how many results the search commands show at most, for every client.
+     * @param limit The most results to show, at least 1
+     */
+    public static void setSearchLimit(int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("The search limit must be at least 1, was " + limit);
+        }
+        searchLimit = limit;
+    }
+
+    /**
+     * @return How many results the search commands show at most
+     */
+    public static int getSearchLimit() {
+        return searchLimit;
+    }
+
+    /**
+     * Sets how many items a list shows when it was not given a limit, for every client.
+     * The rest are shown by the more command.
+     * @param limit The most items to show, from 1 to MAX_LIST_LIMIT
+     */
+    public static void setListLimit(int limit) {
+        if (limit < 1 || limit > MAX_LIST_LIMIT) {
+            throw new IllegalArgumentException("The list limit must be from 1 to " + MAX_LIST_LIMIT + ", was " + limit);
+        }
+        listLimit = limit;
+    }
+
+    /**
+     * @return How many items a list shows when it was not given a limit
+     */
+    public static int getListLimit() {
+        return listLimit;
+    }
+
+    /**
+     * @return false once the client has asked to end the connection, or is gone
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * @return The protocol version currently used with the client
+     */
+    public int getProtocolVersion() {
+        return protocolVersion;
+    }
     //endregion
 
     //region Stream Management
@@ -69,7 +306,8 @@ public class ClientThread implements Runnable {
      */
     private void openStreams() {
         try {
-            outputStream = new DataOutputStream(clientSocket.getOutputStream());
+            // buffered, so a response of many lines is sent with a single flush
+            outputStream = new DataOutputStream(new BufferedOutputStream(clientSocket.getOutputStream()));
             inputStream = new DataInputStream(clientSocket.getInputStream());
         } catch (IOException e) {
             System.err.println("Could not open IO streams for the client.");
@@ -85,8 +323,12 @@ public class ClientThread implements Runnable {
             System.out.println("Closing streams and terminating thread.");
             running = false;
             outputStream.close();
-            inputStream.close();
-            clientSocket.close();
+            if (inputStream != null) {
+                inputStream.close();
+            }
+            if (clientSocket != null) {
+                clientSocket.close();
+            }
         } catch (IOException e) {
             System.err.println(e.getMessage());
         }
@@ -94,125 +336,368 @@ public class ClientThread implements Runnable {
     //endregion
 
     //region Client Communication
-    private String receiveMsgFromClient() {
+    private Frame receiveMsgFromClient() {
         try {
-            return inputStream.readUTF();
+            if (protocolVersion == FrameCodec.LEGACY_VERSION) {
+                return new Frame(FrameCodec.REQUEST, inputStream.readUTF());
+            }
+            Frame frame = FrameCodec.readFrame(inputStream, protocolVersion);
+            if (frame.getType() == FrameCodec.CLOSE) {
+                running = false;
+            }
+            return frame;
         } catch (IOException e) {
             System.err.println("Client is gone.");
             System.err.println(e.getMessage());
             running = false;
-            return "";
+            return new Frame(FrameCodec.CLOSE, "");
         }
     }
 
-    private void sendMsgToClient(String msg) {
+    /**
+     * Sends a response to the client, in the protocol version agreed on.
+     * In version 1 every line is written on its own followed by END_TRANSMISSION,
+     * while later versions send the whole response as a single frame.
+     * A response already encoded for the version is written as it is.
+     * Responses to requests run at the same time are written one at a time.
+     * @param response The response to send
+     */
+    private void writeResponse(Response response) {
+        writeLock.lock();
         try {
-            outputStream.writeUTF(msg);
-            outputStream.flush();
+            EncodedResponse encoded = response.getEncoded();
+            if (encoded != null && encoded.isEncodedFor(protocolVersion)) {
+                encoded.writeTo(outputStream, protocolVersion, response.getRequestId());
+            } else if (protocolVersion == FrameCodec.LEGACY_VERSION) {
+                for (String line : response.getLines()) {
+                    outputStream.writeUTF(line);
+                }
+                outputStream.writeUTF(END_TRANSMISSION);
+                outputStream.flush();
+            } else {
+                FrameCodec.writeFrame(outputStream, protocolVersion, FrameCodec.RESPONSE,
+                        response.getRequestId(), String.join("\n", response.getLines()));
+            }
         } catch (IOException e) {
             System.err.println("Could not send message to the client.");
             System.err.println(e.getMessage());
+        } finally {
+            writeLock.unlock();
         }
     }
-    //endregion
 
-    //region Command Management
+    /**
+     * Tells a framed client that the connection is about to be closed.
+     * @param requestId Id of the request that asked to close the connection
+     */
+    private void sendClose(int requestId) {
+        writeLock.lock();
+        try {
+            FrameCodec.writeFrame(outputStream, protocolVersion, FrameCodec.CLOSE, requestId, END_CONNECTION);
+        } catch (IOException e) {
+            System.err.println("Could not send message to the client.");
+            System.err.println(e.getMessage());
+        } finally {
+            writeLock.unlock();
+        }
+    }
 
+    /**
+     * Agrees on the highest protocol version both sides support. The answer is sent in the
+     * version the handshake came in, and every message after it uses the new version.
+     * Responses are only sent in any order if this thread is the one reading from the client,
+     * as a server doing its own reading (like the NIO server) expects each response right away.
+     * @param requestedVersion Version the client asked for
+     * @param allowUnordered true if the client allows responses in any order
+     */
+    private void negotiateProtocol(int requestedVersion, boolean allowUnordered) {
+        awaitRequestsInFlight();
+        int version = Math.min(requestedVersion, FrameCodec.PIPELINED_VERSION);
+        boolean agreedUnordered = allowUnordered && version >= FrameCodec.PIPELINED_VERSION && inputStream != null;
+
+        Response response = new Response(0);
+        response.add(FrameCodec.HANDSHAKE + " " + version + (agreedUnordered ? " " + FrameCodec.UNORDERED : ""));
+        writeResponse(response);
+        protocolVersion = version;
+        unordered = agreedUnordered;
+    }
 
+    /**
+     * Blocks until every request started on the pipeline executor has been answered.
+     */
+    private void awaitRequestsInFlight() {
+        requestsInFlight.acquireUninterruptibly(MAX_REQUESTS_IN_FLIGHT);
+        requestsInFlight.release(MAX_REQUESTS_IN_FLIGHT);
+    }
+    //endregion
 
-    private void runCmd(String input) {
-        CommandDetails cmd = cmdParser.parse(input);
+    //region Command Management
+    /**
+     * Runs a command, collecting its response once the database has answered.
+     * Nothing is written to the client here, as the answer may come in on a database thread.
+     * @param requestId Id of the request
+     * @param cmd The command, or null if the message was not understood
+     * @return Future completed with the writing of the response
+     */
+    private CompletableFuture<Runnable> runCmd(int requestId, CommandDetails cmd) {
+        Response response = new Response(requestId);
+        CompletableFuture<Void> answered = CompletableFuture.completedFuture(null);
+        boolean exit = false;
         if (cmd != null) {
             switch (cmd.getAction()) {
                 case LIST:
-                    listAll(cmd.getType());
+                    answered = listAll(response, cmd);
+                    break;
+                case MORE:
+                    answered = listMore(response);
                     break;
                 case SEARCH:
-                    search(cmd);
+                    answered = search(response, cmd);
                     break;
                 case SEND_HELP:
-                    sendHelp(cmd);
+                    sendHelp(response, cmd);
                     break;
                 case SEND_USAGE:
-                    sendUsage(cmd.getType());
+                    sendUsage(response, cmd.getType());
                     break;
                 case EXIT:
-                    closeStreams();
+                    exit = true;
                     break;
             }
         }
-        sendMsgToClient(END_TRANSMISSION);
+
+        boolean exiting = exit;
+        return answered.thenApply(done -> () -> sendResponse(requestId, response, exiting));
     }
 
+    /**
+     * Sends the response to a command, and closes the connection if it was exit.
+     * @param requestId Id of the request
+     * @param response The response to send
+     * @param exit true if the command was exit
+     */
+    private void sendResponse(int requestId, Response response, boolean exit) {
+        // a framed client gets a close frame in place of the response, so it knows to stop reading
+        if (exit && protocolVersion != FrameCodec.LEGACY_VERSION) {
+            sendClose(requestId);
+        } else {
+            writeResponse(response);
+        }
 
-    private void listAll(CommandType type) {
-        switch (type) {
+        if (exit) {
+            closeStreams();
+        }
+    }
+
+
+    /**
+     * Lists the first page of lecturers or subjects, of the size given, or of the list limit if none was given.
+     * No page is larger than MAX_LIST_LIMIT, so however large the catalogue, a page fits in a frame.
+     * @param response The response to write to
+     * @param cmd The list command
+     */
+    private CompletableFuture<Void> listAll(Response response, CommandDetails cmd) {
+        int limit = cmd.getLimit() > 0 ? Math.min(cmd.getLimit(), MAX_LIST_LIMIT) : listLimit;
+        switch (cmd.getType()) {
             case LECTURER:
-                listLecturer();
-                break;
+                return listLecturer(response, cmd.getAfter(), null, limit);
             case SUBJECT:
-                listSubject();
-                break;
+                return listSubject(response, cmd.getAfter(), limit);
+            default:
+                return CompletableFuture.completedFuture(null);
         }
     }
 
-    private void listLecturer() {
-        try {
-            List<LecturerDTO> lecturerDTOS = dao.getLecturerDao().queryForAll();
-            sendTableHeader(CommandType.LECTURER);
-            for (LecturerDTO lecturerDTO : lecturerDTOS) {
-                sendLecturer(lecturerDTO);
-            }
-        } catch (SQLException e) {
-            System.err.println(e.getMessage());
-            sendMsgToClient("Failed to retrieve list of lecturers.");
+    /**
+     * Continues the last list cut short by its limit, showing the next page of the same size.
+     * @param response The response to write to
+     */
+    private CompletableFuture<Void> listMore(Response response) {
+        ListCursor last = cursor;
+        if (last == null) {
+            response.add("@|yellow There is nothing more to list.|@");
+            return CompletableFuture.completedFuture(null);
+        }
+        switch (last.type) {
+            case LECTURER:
+                return listLecturer(response, last.after, last.afterId, last.limit);
+            case SUBJECT:
+                return listSubject(response, last.after, last.limit);
+            default:
+                return CompletableFuture.completedFuture(null);
         }
     }
 
-    private void listSubject() {
-        try {
-            List<SubjectDTO> subjectDTOS = dao.getSubjectDao().queryForAll();
-            sendTableHeader(CommandType.SUBJECT);
-            for (SubjectDTO subjectDTO : subjectDTOS) {
-                sendSubject(subjectDTO);
-            }
-        } catch (SQLException e) {
-            System.err.println(e.getMessage());
-            sendMsgToClient("Failed to retrieve list of subjects.");
+    private CompletableFuture<Void> listLecturer(Response response, String afterName, Integer afterId, int limit) {
+        Catalogue catalogue = dao.getCatalogue();
+        String command = "list lecturer limit " + limit + (afterId == null ? "" : " id " + afterId)
+                + (afterName == null ? "" : " after " + afterName);
+        if (sendCachedPage(response, catalogue, command)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        long version = catalogue.getVersion();
+        sendTableHeader(response, CommandType.LECTURER);
+        Page<LecturerDTO> page = new Page<>(limit, lecturerDTO -> sendLecturer(response, lecturerDTO));
+        return catalogue.forEachLecturerAsync(afterName, afterId, page.getRowsToRead(), page)
+                .handle((done, e) -> {
+                    if (e != null) {
+                        sendFailure(response, e, "Failed to retrieve list of lecturers.");
+                    } else {
+                        LecturerDTO last = page.getLast();
+                        ListCursor next = page.hasMore()
+                                ? new ListCursor(CommandType.LECTURER, last.getName(), last.getId(), limit) : null;
+                        endPage(response, page, next);
+                        keepPage(response, catalogue, command, version, next);
+                    }
+                    return null;
+                });
+    }
+
+    private CompletableFuture<Void> listSubject(Response response, String afterCode, int limit) {
+        Catalogue catalogue = dao.getCatalogue();
+        String command = "list subject limit " + limit + (afterCode == null ? "" : " after " + afterCode);
+        if (sendCachedPage(response, catalogue, command)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        long version = catalogue.getVersion();
+        sendTableHeader(response, CommandType.SUBJECT);
+        Page<SubjectDTO> page = new Page<>(limit, subjectDTO -> sendSubject(response, subjectDTO));
+        return catalogue.forEachSubjectAsync(afterCode, page.getRowsToRead(), page)
+                .handle((done, e) -> {
+                    if (e != null) {
+                        sendFailure(response, e, "Failed to retrieve list of subjects.");
+                    } else {
+                        SubjectDTO last = page.getLast();
+                        ListCursor next = page.hasMore()
+                                ? new ListCursor(CommandType.SUBJECT, last.getShortName(), null, limit) : null;
+                        endPage(response, page, next);
+                        keepPage(response, catalogue, command, version, next);
+                    }
+                    return null;
+                });
+    }
+
+    /**
+     * Sends a page of a list encoded earlier for the same version of the catalogue, if there is one.
+     * Pages are cached encoded as frames, so a version 1 client always has its lists read.
+     * @param response The response to write to
+     * @param catalogue The catalogue the list is read from
+     * @param command The list command, with every argument that changes the page
+     * @return true if the page was sent from the cache
+     */
+    private boolean sendCachedPage(Response response, Catalogue catalogue, String command) {
+        if (protocolVersion == FrameCodec.LEGACY_VERSION) {
+            return false;
+        }
+        CachedPage page = getPageCache(catalogue).get(command, catalogue.getVersion());
+        if (page == null) {
+            return false;
         }
+        response.setEncoded(page.response);
+        cursor = page.next;
+        return true;
     }
 
+    /**
+     * Encodes a page of a list once, for this client and for the next one asking for the same page.
+     * A page too large to be worth keeping is still sent encoded, but not cached.
+     * @param response The response holding the page
+     * @param catalogue The catalogue the list was read from
+     * @param command The list command, with every argument that changes the page
+     * @param version Version of the catalogue read before the list was
+     * @param next Where the next page starts, or null if the list is done
+     */
+    private void keepPage(Response response, Catalogue catalogue, String command, long version, ListCursor next) {
+        if (protocolVersion == FrameCodec.LEGACY_VERSION) {
+            return;
+        }
+        EncodedResponse encoded = EncodedResponse.encode(response.getLines(), protocolVersion);
+        response.setEncoded(encoded);
+        if (encoded.getSize() <= MAX_CACHED_PAGE_BYTES) {
+            getPageCache(catalogue).put(command, version, new CachedPage(encoded, next));
+        }
+    }
+
+    private static ResponseCache<CachedPage> getPageCache(Catalogue catalogue) {
+        return PAGE_CACHES.computeIfAbsent(catalogue, key ->
+                new ResponseCache<>(PAGE_CACHE_ENTRIES, PAGE_CACHE_TTL_SECONDS, TimeUnit.SECONDS));
+    }
 
+    /**
+     * Remembers where the list stopped, for the more command, and tells the client if there is more to see.
+     * @param response The response to write to
+     * @param page The page that was sent
+     * @param next Where the next page starts, or null if the list is done
+     */
+    private void endPage(Response response, Page<?> page, ListCursor next) {
+        cursor = next;
+        if (page.getSent() == 0) {
+            response.add("No result was found.");
+        } else if (next != null) {
+            response.add("@|yellow Type \"more\" to see the next " + next.limit + ".|@");
+        }
+    }
 
-    private void search(CommandDetails cmd) {
+    private CompletableFuture<Void> search(Response response, CommandDetails cmd) {
         String argsAsString = cmd.getArgs().stream().collect(Collectors.joining(" "));
         switch (cmd.getType()) {
             case LECTURER:
-                searchLecturer(argsAsString);
-                break;
+                return searchLecturer(response, argsAsString);
             case SUBJECT:
-                searchSubject(argsAsString);
-                break;
+                return searchSubject(response, argsAsString);
+            default:
+                return CompletableFuture.completedFuture(null);
         }
     }
 
-    private void searchLecturer(String lecturer) {
-        LecturerDTO lecturerDTO = dao.getLecturerDao().queryForExactOrPartialName(lecturer);
-        sendTableHeader(CommandType.LECTURER);
-        if (lecturerDTO != null) {
-            sendLecturer(lecturerDTO);
-        } else {
-            sendMsgToClient("No result was found.");
-        }
+    private CompletableFuture<Void> searchLecturer(Response response, String lecturer) {
+        return dao.getCatalogue().searchLecturersAsync(lecturer, searchLimit).handle((lecturerDTOS, e) -> {
+            sendTableHeader(response, CommandType.LECTURER);
+            if (e != null) {
+                sendFailure(response, e, "Failed to search for lecturers.");
+                return null;
+            }
+            for (LecturerDTO lecturerDTO : lecturerDTOS) {
+                sendLecturer(response, lecturerDTO);
+            }
+            if (lecturerDTOS.isEmpty()) {
+                response.add("No result was found.");
+            }
+            return null;
+        });
     }
 
-    private void searchSubject(String subject) {
-        SubjectDTO subjectDTO = dao.getSubjectDao().findSubjectByCodeOrName(subject);
-        sendTableHeader(CommandType.SUBJECT);
-        if (subjectDTO != null) {
-            sendSubject(subjectDTO);
+    private CompletableFuture<Void> searchSubject(Response response, String subject) {
+        return dao.getCatalogue().searchSubjectsAsync(subject, searchLimit).handle((subjectDTOS, e) -> {
+            sendTableHeader(response, CommandType.SUBJECT);
+            if (e != null) {
+                sendFailure(response, e, "Failed to search for subjects.");
+                return null;
+            }
+            for (SubjectDTO subjectDTO : subjectDTOS) {
+                sendSubject(response, subjectDTO);
+            }
+            if (subjectDTOS.isEmpty()) {
+                response.add("No result was found.");
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Tells the client the database could not answer, or that it is too busy to ask right now.
+     * @param response The response to write to
+     * @param failure What the future failed with
+     * @param message What to tell the client if the query itself failed
+     */
+    private void sendFailure(Response response, Throwable failure, String message) {
+        Throwable cause = failure instanceof CompletionException && failure.getCause() != null
+                ? failure.getCause() : failure;
+        if (cause instanceof RejectedExecutionException) {
+            response.add("@|yellow The server is busy, please try again in a moment.|@");
         } else {
-            sendMsgToClient("No result was found.");
+            System.err.println(cause.getMessage());
+            response.add(message);
         }
     }
 
@@ -222,154 +707,236 @@ public class ClientThread implements Runnable {
 
     /**
      * Used to send the table header for a specific type of item.
+     * @param response The response to write to
      * @param type The type to send usage for
      */
-    private void sendTableHeader(CommandType type) {
+    private void sendTableHeader(Response response, CommandType type) {
         switch (type) {
             case LECTURER:
-                sendMsgToClient("@|bold,cyan " + String.format("%-25s %s", "Name", "Subject" + "|@"));
-                sendMsgToClient("@|cyan -------------------------------- |@");
+                response.add(LECTURER_HEADER);
+                response.add(LECTURER_RULE);
                 break;
             case SUBJECT:
-                sendMsgToClient("@|bold,cyan " +
-                        String.format("%-30s %-10s %-10s %s", "Subject", "Code", "Enrolled", "Lecturer(s)|@"));
-                sendMsgToClient("@|cyan ----------------------------------------------------------------------------- |@");
+                response.add(SUBJECT_HEADER);
+                response.add(SUBJECT_RULE);
                 break;
         }
     }
 
     /**
      * Send given item to client in formatted format.
+     * @param response The response to write to
      * @param subjectDTO The subject to extract information from
      */
-    private void sendSubject(SubjectDTO subjectDTO) {
+    private void sendSubject(Response response, SubjectDTO subjectDTO) {
         if (subjectDTO != null) {
+            // the subject may be shared through the search cache, so the list of lecturers is only read
+            List<LecturerDTO> lecturers = subjectDTO.getLecturers();
 
-            // bad hack to avoid nullpointer exception
-            if (subjectDTO.getLecturers().size() == 0) {
-                subjectDTO.getLecturers().add(null);
-            }
-
-            sendMsgToClient(
+            response.add(
                     String.format("%-30s %-10s %-10d %s",
                             subjectDTO.getName(),
                             subjectDTO.getShortName(),
                             subjectDTO.getEnrolled(),
-                            subjectDTO.getLecturers().get(0) != null ?
-                                    subjectDTO.getLecturers().get(0).getName() : "None"
+                            !lecturers.isEmpty() ? lecturers.get(0).getName() : "None"
                     )
             );
 
-
-            if (subjectDTO.getLecturers().size() > 1) {
-                for (int i = 1; i < subjectDTO.getLecturers().size(); i++) {
-                    sendMsgToClient(
-                            String.format("%-30s %-10s %-10s %s",
-                                    "", "", "",
-                                    subjectDTO.getLecturers().get(i) != null ?
-                                            subjectDTO.getLecturers().get(i).getName() : ""
-                            )
-                    );
-                }
+            for (int i = 1; i < lecturers.size(); i++) {
+                response.add(String.format("%-30s %-10s %-10s %s", "", "", "", lecturers.get(i).getName()));
             }
         }
     }
 
     /**
      * Send given item to client in formatted format.
+     * @param response The response to write to
      * @param lecturerDTO The lecturer to extract information from
      */
-    private void sendLecturer(LecturerDTO lecturerDTO) {
+    private void sendLecturer(Response response, LecturerDTO lecturerDTO) {
         if (lecturerDTO != null) {
-            List<SubjectDTO> subjects = new ArrayList<>();
-            try {
-                subjects = dao.getLecturerDao().findSubjectsForLecturer(lecturerDTO);
-            } catch (SQLException e) {
-                System.err.println("Query failed.");
-                System.err.println(e.getMessage());
-            }
+            List<SubjectDTO> subjects = lecturerDTO.getSubjects();
 
-            // hack to avoid nullpointer later
-            if (subjects.size() == 0) {
-                subjects.add(null);
-            }
-
-            sendMsgToClient(
+            response.add(
                     String.format("%-25s %s",
                             lecturerDTO.getName(),
-                            subjects.get(0) != null ? subjects.get(0).getShortName() : "None"
+                            !subjects.isEmpty() ? subjects.get(0).getShortName() : "None"
                     )
             );
 
-            if (subjects.size() < 2)
-                return;
-
             for (int i = 1; i < subjects.size(); i++) {
-                sendMsgToClient(
-                        String.format("%-25s %s",
-                                "",
-                                subjects.get(i) != null ? subjects.get(i).getShortName() : ""
-                        )
-                );
+                response.add(String.format("%-25s %s", "", subjects.get(i).getShortName()));
             }
         }
     }
 
     /**
-     * Send usage for a specific command.
+     * Send usage for a specific command, encoded once for every client.
+     * @param response The response to write to
      * @param type The command to send usage for
      */
-    private void sendUsage(CommandType type) {
+    private void sendUsage(Response response, CommandType type) {
+        response.setEncoded(USAGE.get(type));
+    }
+
+    /**
+     * Send help for a specific command, encoded once for every client unless the command does not exist.
+     * @param response The response to write to
+     * @param cmd The help command
+     */
+    private void sendHelp(Response response, CommandDetails cmd) {
+        if (cmd.getType() == CommandType.NONE && cmd.getArgs().size() > 0) {
+            response.add("@|red The command '" + cmd.getArgs().get(0) + "' does not exist.|@\n");
+        } else {
+            response.setEncoded(HELP.get(cmd.getType()));
+        }
+    }
+
+    private static void addUsage(Response response, CommandType type) {
         switch (type) {
             case LIST:
-                sendMsgToClient("@|bold,blue Usage:|@ @|blue list lecturer|subject|@");
+                response.add("@|bold,blue Usage:|@ @|blue list lecturer|subject [after <code or name>] [limit <n>]|@");
+                break;
+            case MORE:
+                response.add("@|bold,blue Usage:|@ @|blue more|@");
                 break;
             case SEARCH:
-                sendMsgToClient("@|bold,blue Usage:|@ @|blue search (lecturer|subject|room) <search term>|@");
+                response.add("@|bold,blue Usage:|@ @|blue search (lecturer|subject|room) <search term>|@");
                 break;
         }
     }
 
 
-    private void sendHelp(CommandDetails cmd) {
-        switch (cmd.getType()) {
+    private static void addHelp(Response response, CommandType type) {
+        switch (type) {
             case LIST:
-                sendMsgToClient("@|bold,cyan List:|@");
-                sendMsgToClient("@|cyan -------------------------------|@");
-                sendUsage(CommandType.LIST);
-                sendMsgToClient("The list command is used to list everything about a single item.");
-                sendMsgToClient("You can use it to view all lecturers, subjects or rooms.");
-                sendMsgToClient("@|bold,magenta Usage examples:|@");
-                sendMsgToClient("list lecturer");
-                sendMsgToClient("@|cyan -------------------------------|@");
+                response.add("@|bold,cyan List:|@");
+                response.add("@|cyan -------------------------------|@");
+                addUsage(response, CommandType.LIST);
+                response.add("The list command is used to list everything about a single item.");
+                response.add("You can use it to view all lecturers, subjects or rooms.");
+                response.add("Subjects are listed by code and lecturers by name, and a list can start after either.");
+                response.add("A list shows as many as its limit, or one page without, and \"more\" shows the next.");
+                response.add("@|bold,magenta Usage examples:|@");
+                response.add("list lecturer");
+                response.add("list subject after PG4200 limit 50");
+                response.add("@|cyan -------------------------------|@");
+                break;
+            case MORE:
+                response.add("@|bold,cyan More:|@");
+                response.add("@|cyan -------------------------------|@");
+                addUsage(response, CommandType.MORE);
+                response.add("The more command continues the last list that did not fit on one page.");
+                response.add("@|bold,magenta Usage examples:|@");
+                response.add("list lecturer limit 20");
+                response.add("more");
+                response.add("@|cyan -------------------------------|@");
                 break;
             case SEARCH:
-                sendMsgToClient("@|bold,cyan Search:|@");
-                sendMsgToClient("@|cyan -------------------------------|@");
-                sendUsage(CommandType.SEARCH);
-                sendMsgToClient("The search command is used to find information.");
-                sendMsgToClient("You can use search with lecturer name or subject code.");
-                sendMsgToClient("@|bold,magenta Usage examples:|@");
-                sendMsgToClient("search lecturer Praskovya Pokrovskaya");
-                sendMsgToClient("search subject PGR200");
-                sendMsgToClient("@|cyan -------------------------------|@\n");
+                response.add("@|bold,cyan Search:|@");
+                response.add("@|cyan -------------------------------|@");
+                addUsage(response, CommandType.SEARCH);
+                response.add("The search command is used to find information.");
+                response.add("You can use search with lecturer name or subject code.");
+                response.add("The best matches are shown first, also when the search is misspelled.");
+                response.add("@|bold,magenta Usage examples:|@");
+                response.add("search lecturer Praskovya Pokrovskaya");
+                response.add("search subject PGR200");
+                response.add("@|cyan -------------------------------|@\n");
                 break;
             case NONE:
-                if (cmd.getArgs().size() > 0) {
-                    sendMsgToClient("@|red The command '" + cmd.getArgs().get(0) + "' does not exist.|@\n");
-                } else {
-                    sendMsgToClient("@|bold,cyan Help:|@");
-                    sendMsgToClient("@|cyan ----------------------------|@");
-                    sendMsgToClient("@|magenta The following commands are available.|@");
-                    sendMsgToClient("@|magenta For more information, type \"help <cmd>\".|@");
-                    sendMsgToClient("@|red search|@");
-                    sendMsgToClient("@|red list|@");
-                    sendMsgToClient("@|red exit|@");
-                }
+                response.add("@|bold,cyan Help:|@");
+                response.add("@|cyan ----------------------------|@");
+                response.add("@|magenta The following commands are available.|@");
+                response.add("@|magenta For more information, type \"help <cmd>\".|@");
+                response.add("@|red search|@");
+                response.add("@|red list|@");
+                response.add("@|red more|@");
+                response.add("@|red exit|@");
                 break;
         }
     }
 
 
+    //endregion
+
+    //region Paging
+
+    /**
+     * Where the more command continues a list from.
+     */
+    private static class ListCursor {
+        private final CommandType type;
+        private final String after;
+        private final Integer afterId;
+        private final int limit;
+
+        private ListCursor(CommandType type, String after, Integer afterId, int limit) {
+            this.type = type;
+            this.after = after;
+            this.afterId = afterId;
+            this.limit = limit;
+        }
+    }
+
+    /**
+     * A page of a list encoded for one protocol version, and where the more command continues from after it.
+     */
+    private static class CachedPage {
+        private final EncodedResponse response;
+        private final ListCursor next;
+
+        private CachedPage(EncodedResponse response, ListCursor next) {
+            this.response = response;
+            this.next = next;
+        }
+    }
+
+    /**
+     * Adds the items of a list to the response as the catalogue goes through them, up to the limit.
+     * One more item than the limit is asked for, to know if there is more to list.
+     * @param <T> Type of the items
+     */
+    private static class Page<T> implements Predicate<T> {
+        private final int limit;
+        private final Consumer<T> sender;
+        private int sent;
+        private T last;
+        private boolean more;
+
+        private Page(int limit, Consumer<T> sender) {
+            this.limit = limit;
+            this.sender = sender;
+        }
+
+        @Override
+        public boolean test(T item) {
+            if (limit > 0 && sent == limit) {
+                more = true;
+                return false;
+            }
+            sender.accept(item);
+            sent++;
+            last = item;
+            return true;
+        }
+
+        private int getRowsToRead() {
+            return limit > 0 ? limit + 1 : 0;
+        }
+
+        private int getSent() {
+            return sent;
+        }
+
+        private T getLast() {
+            return last;
+        }
+
+        private boolean hasMore() {
+            return more;
+        }
+    }
+
     //endregion
 }
@@ -0,0 +1,204 @@
+package no.kij.socketscheduler.server;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.fusesource.jansi.Ansi.ansi;
+
+/**
+ * Runs each client connection on a virtual thread when the JDK has them (21 and newer),
+ * and on a bounded pool of platform threads when it does not. The pool only lets a bounded number of
+ * connections wait for a thread, and turns the rest away, so no client is left waiting without a word.
+ * The blocking I/O and database calls of the ClientThread stay as they are, since blocking a
+ * virtual thread only parks it, and frees its carrier thread for other clients.
+ *
+ * It also keeps count of the connections, the carrier threads in use and how often a
+ * virtual thread has been pinned to its carrier, so it can be reported to the console.
+ */
+public class ConnectionExecutor {
+    private static final String CARRIER_THREAD_CLASS = "jdk.internal.misc.CarrierThread";
+
+    private final ExecutorService executor;
+    private final boolean virtual;
+    private final AtomicInteger activeConnections;
+    private final AtomicLong totalConnections;
+    private final AtomicLong rejectedConnections;
+    private final AtomicInteger peakCarrierThreads;
+    private PinningMonitor pinningMonitor;
+    private ScheduledExecutorService reporter;
+
+    /**
+     * Creates the executor, using virtual threads if the running JDK supports them.
+     * @param fallbackThreads Max number of platform threads to use if virtual threads are not available
+     * @param fallbackQueue Max number of connections waiting for one of those threads
+     */
+    public ConnectionExecutor(int fallbackThreads, int fallbackQueue) {
+        activeConnections = new AtomicInteger();
+        totalConnections = new AtomicLong();
+        rejectedConnections = new AtomicLong();
+        peakCarrierThreads = new AtomicInteger();
+
+        ExecutorService virtualExecutor = createVirtualThreadExecutor();
+        virtual = virtualExecutor != null;
+        if (virtual) {
+            executor = virtualExecutor;
+            pinningMonitor = PinningMonitor.start();
+        } else {
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(fallbackThreads, fallbackThreads,
+                    60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(fallbackQueue));
+            pool.allowCoreThreadTimeOut(true);
+            executor = pool;
+        }
+    }
+
+    /**
+     * Runs the given client connection, keeping count of it while it is open.
+     * @param connection The connection to run
+     * @return false if the pool and its queue are full, and the connection was not taken
+     */
+    public boolean execute(Runnable connection) {
+        try {
+            executor.execute(() -> {
+                activeConnections.incrementAndGet();
+                try {
+                    connection.run();
+                } finally {
+                    activeConnections.decrementAndGet();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejectedConnections.incrementAndGet();
+            return false;
+        }
+        totalConnections.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * @return true if the connections are run on virtual threads, false if on the bounded pool
+     */
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    /**
+     * @return Number of connections currently being served
+     */
+    public int getActiveConnections() {
+        return activeConnections.get();
+    }
+
+    /**
+     * @return Number of connections taken by the executor since it started
+     */
+    public long getTotalConnections() {
+        return totalConnections.get();
+    }
+
+    /**
+     * @return Number of connections turned away because the pool and its queue were full
+     */
+    public long getRejectedConnections() {
+        return rejectedConnections.get();
+    }
+
+    /**
+     * @return Number of connections waiting for a free thread, always 0 with virtual threads
+     */
+    public int getQueuedConnections() {
+        return executor instanceof ThreadPoolExecutor ? ((ThreadPoolExecutor) executor).getQueue().size() : 0;
+    }
+
+    /**
+     * Counts the carrier threads the virtual threads are currently mounted on,
+     * or the pool threads if virtual threads are not available.
+     * @return Number of platform threads serving the connections
+     */
+    public int getCarrierThreads() {
+        int carriers = 0;
+        if (virtual) {
+            for (Thread thread : Thread.getAllStackTraces().keySet()) {
+                if (thread.getClass().getName().equals(CARRIER_THREAD_CLASS)) {
+                    carriers++;
+                }
+            }
+        } else {
+            carriers = ((ThreadPoolExecutor) executor).getPoolSize();
+        }
+        peakCarrierThreads.accumulateAndGet(carriers, Math::max);
+        return carriers;
+    }
+
+    /**
+     * @return The highest number of carrier threads seen by getCarrierThreads
+     */
+    public int getPeakCarrierThreads() {
+        return peakCarrierThreads.get();
+    }
+
+    /**
+     * @return Number of times a virtual thread blocked while pinned to its carrier, -1 if it can't be monitored
+     */
+    public long getPinnedEvents() {
+        return pinningMonitor != null ? pinningMonitor.getPinnedEvents() : -1;
+    }
+
+    /**
+     * Prints the connection statistics to the console at a fixed rate.
+     * @param periodSeconds Seconds between each report
+     */
+    public void startReporting(int periodSeconds) {
+        reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "connection-stats");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reporter.scheduleAtFixedRate(() -> System.out.println(ansi().render(statsLine())),
+                periodSeconds, periodSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * The caches are reported by the ConnectionManager, which reports in every mode.
+     * @return One line describing the connections and threads, marked up for jansi
+     */
+    private String statsLine() {
+        return "@|magenta Connections:|@ " + getActiveConnections() + " active, " + getTotalConnections() + " total, "
+                + getQueuedConnections() + " queued, " + getRejectedConnections() + " rejected | "
+                + "@|magenta Carrier threads:|@ " + getCarrierThreads() + " (peak " + getPeakCarrierThreads() + ") | "
+                + "@|magenta Pinned:|@ " + (getPinnedEvents() >= 0 ? getPinnedEvents() : "n/a");
+    }
+
+    /**
+     * Stops taking new connections and stops the reporting.
+     */
+    public void shutdown() {
+        executor.shutdown();
+        if (reporter != null) {
+            reporter.shutdownNow();
+        }
+        if (pinningMonitor != null) {
+            pinningMonitor.close();
+        }
+    }
+
+    /**
+     * Looks up Executors.newVirtualThreadPerTaskExecutor, as it only exists from JDK 21.
+     * @return An executor starting a virtual thread per task, or null if the JDK does not support it
+     */
+    private static ExecutorService createVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}
@@ -1,14 +1,21 @@
 package no.kij.socketscheduler.server;
 
 import com.j256.ormlite.logger.LocalLog;
+import no.kij.socketscheduler.server.catalogue.SnapshotCatalogue;
+import no.kij.socketscheduler.server.nio.NioServer;
 import no.kij.socketscheduler.server.util.ResourceFetcher;
 import no.kij.socketscheduler.server.util.ConnectionManager;
+import no.kij.socketscheduler.server.util.DaoDelegator;
 import no.kij.socketscheduler.server.db.DatabaseInitializer;
 import org.fusesource.jansi.AnsiConsole;
 
 import java.io.IOException;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.util.Arrays;
 import java.util.Properties;
 
 import static org.fusesource.jansi.Ansi.ansi;
@@ -19,7 +26,16 @@ import static org.fusesource.jansi.Ansi.ansi;
  */
 public class Main {
     private final int PORT = 8432;
+    private final int FALLBACK_CONNECTION_THREADS = 256;
+    private final int FALLBACK_CONNECTION_QUEUE = 256;
+    private final int STATS_PERIOD_SECONDS = 30;
+    private static final String SNAPSHOT_ARG = "--snapshot";
+    private static final String SEARCH_LIMIT_ARG = "--search-limit=";
+    private static final String LIST_LIMIT_ARG = "--list-limit=";
+    private static final String INCREMENTAL_SEED_ARG = "--incremental-seed";
+    private static final String CONTENT_DIR_ARG = "--content-dir=";
     private ConnectionManager connectionManager;
+    private Path contentDirectory;
 
     public static void main(String[] args) {
         // this is for enabling ansi output to windows cli
@@ -27,31 +43,116 @@ public class Main {
         // since we are using the console for our application, we don't want debug level items ending up as clutter,
         // so we disable all log for debug, except error.
         System.setProperty(LocalLog.LOCAL_LOG_LEVEL_PROPERTY, "ERROR");
+        for (String arg : args) {
+            if (arg.startsWith(SEARCH_LIMIT_ARG)) {
+                try {
+                    ClientThread.setSearchLimit(Integer.parseInt(arg.substring(SEARCH_LIMIT_ARG.length())));
+                } catch (IllegalArgumentException e) {
+                    System.err.println("Invalid search limit '" + arg.substring(SEARCH_LIMIT_ARG.length())
+                            + "', showing up to " + ClientThread.DEFAULT_SEARCH_LIMIT + " results.");
+                }
+            }
+            if (arg.startsWith(LIST_LIMIT_ARG)) {
+                try {
+                    ClientThread.setListLimit(Integer.parseInt(arg.substring(LIST_LIMIT_ARG.length())));
+                } catch (IllegalArgumentException e) {
+                    System.err.println("Invalid list limit '" + arg.substring(LIST_LIMIT_ARG.length())
+                            + "', showing " + ClientThread.DEFAULT_LIST_LIMIT + " items a page.");
+                }
+            }
+        }
         Main main = new Main();
-        main.startServer();
+        for (String arg : args) {
+            if (arg.startsWith(CONTENT_DIR_ARG)) {
+                main.contentDirectory = Paths.get(arg.substring(CONTENT_DIR_ARG.length()));
+            }
+        }
+        main.startServer(ServerMode.fromArgs(args), Arrays.asList(args).contains(SNAPSHOT_ARG),
+                Arrays.asList(args).contains(INCREMENTAL_SEED_ARG));
     }
 
     /**
-     * Start the server and listens to commands from the client.
+     * Start the server in blocking mode and listens to commands from the client.
      */
     public void startServer() {
+        startServer(ServerMode.BLOCKING, false, false);
+    }
+
+    /**
+     * Start the server and listens to commands from the client.
+     * @param mode How the client connections should be handled
+     * @param snapshot true to answer list and search commands from a snapshot of the catalogue held in memory
+     * @param incrementalSeed true to keep the tables and only write what changed in the content since the last start,
+     *                        instead of dropping and filling them
+     */
+    public void startServer(ServerMode mode, boolean snapshot, boolean incrementalSeed) {
         Properties creds = ResourceFetcher.getProperty("credentials");
         connectionManager = new ConnectionManager(creds);
-        DatabaseInitializer dbIn = new DatabaseInitializer(connectionManager);
-        dbIn.initializeTables();
-        dbIn.initializeTableContent();
+        connectionManager.startReporting(STATS_PERIOD_SECONDS);
+        DatabaseInitializer dbIn = new DatabaseInitializer(connectionManager, contentDirectory);
+        long start = System.nanoTime();
+        if (incrementalSeed) {
+            dbIn.initializeIncrementally();
+        } else {
+            dbIn.initializeTables();
+            dbIn.initializeTableContent();
+        }
+        System.out.println(ansi().render("@|cyan Database ready in " + (System.nanoTime() - start) / 1000000 + " ms.|@"));
+        // set up the daos now, so the first client does not have to wait for them
+        DaoDelegator dao = DaoDelegator.shared(connectionManager).warmUp();
+        if (snapshot) {
+            useSnapshot(dao);
+        }
 
         // open server socket and start listening for connections
-        System.out.println(ansi().render("@|bold,green Server started!|@"));
+        System.out.println(ansi().render("@|bold,green Server started in|@ @|bold,red " + mode + "|@ @|bold,green mode!|@"));
         try {
-            ServerSocket server = new ServerSocket(PORT);
-            attemptClientConnection(server);
+            switch (mode) {
+                case NIO:
+                    new NioServer(PORT, connectionManager, Runtime.getRuntime().availableProcessors()).start();
+                    break;
+                case VIRTUAL:
+                    ConnectionExecutor executor = new ConnectionExecutor(FALLBACK_CONNECTION_THREADS,
+                            FALLBACK_CONNECTION_QUEUE);
+                    System.out.println(ansi().render(executor.isVirtual()
+                            ? "@|cyan Running each client on a virtual thread.|@"
+                            : "@|yellow Virtual threads are not available, running clients on a pool of "
+                                    + FALLBACK_CONNECTION_THREADS + " threads. Up to " + FALLBACK_CONNECTION_QUEUE
+                                    + " more wait for a thread, and any beyond that are told the server is busy.|@"));
+                    executor.startReporting(STATS_PERIOD_SECONDS);
+                    attemptClientConnection(new ServerSocket(PORT), executor);
+                    break;
+                default:
+                    ServerSocket server = new ServerSocket(PORT);
+                    attemptClientConnection(server);
+                    break;
+            }
         } catch (IOException e) {
             System.out.println("Something horribly went wrong.");
             throw new RuntimeException("Server could not be started. " + e.getMessage());
         }
     }
 
+    /**
+     * Loads the catalogue into memory and answers commands from it from now on.
+     * The server keeps asking the database if the catalogue could not be loaded.
+     * @param dao Delegator the client connections get their data from
+     */
+    private void useSnapshot(DaoDelegator dao) {
+        try {
+            long start = System.nanoTime();
+            SnapshotCatalogue catalogue = new SnapshotCatalogue(dao);
+            dao.useCatalogue(catalogue);
+            System.out.println(ansi().render("@|cyan Loaded the catalogue into memory in "
+                    + (System.nanoTime() - start) / 1000000 + " ms:|@ "
+                    + catalogue.getSnapshot().getSubjects().size() + " subjects, "
+                    + catalogue.getSnapshot().getLecturers().size() + " lecturers."));
+        } catch (SQLException e) {
+            System.err.println("Could not load the catalogue into memory, using the database instead.");
+            System.err.println(e.getMessage());
+        }
+    }
+
     /**
      * Listens to connections from clients constantly,
      * and open the client connection in a new thread.
@@ -70,4 +171,23 @@ public class Main {
             System.out.println(ansi().render("@|cyan Assigned client|@ @|red " + client + "|@ @|cyan a new thread!\n|@"));
         }
     }
+
+    /**
+     * Listens to connections from clients constantly,
+     * and hands the client connection to the given executor,
+     * telling the client the server is busy if the executor has no room for it.
+     *
+     * @param server Socket to listen from.
+     * @param executor Executor to run the client connections on
+     * @throws IOException If something goes wrong with the I/O
+     */
+    private void attemptClientConnection(ServerSocket server, ConnectionExecutor executor) throws IOException {
+        while (true) {
+            Socket clientSocket = server.accept();
+            ClientThread clientThread = new ClientThread(clientSocket, connectionManager);
+            if (!executor.execute(clientThread)) {
+                clientThread.sendBusy();
+            }
+        }
+    }
 }
@@ -0,0 +1,65 @@
+package no.kij.socketscheduler.server;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Counts the jdk.VirtualThreadPinned events from the flight recorder, which are emitted when a
+ * virtual thread blocks while it can't be unmounted from its carrier (like inside a synchronized block).
+ * The event stream only exists from JDK 14, so it is looked up by reflection, and the monitor is only started
+ * when virtual threads are in use. Run the server with -Djdk.tracePinnedThreads=short to also get the stack
+ * traces of where it happens.
+ */
+class PinningMonitor {
+    private static final String RECORDING_STREAM_CLASS = "jdk.jfr.consumer.RecordingStream";
+    private static final String EVENT_SETTINGS_CLASS = "jdk.jfr.EventSettings";
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+
+    private final AutoCloseable recordingStream;
+    private final AtomicLong pinnedEvents;
+
+    private PinningMonitor(AutoCloseable recordingStream) {
+        this.recordingStream = recordingStream;
+        pinnedEvents = new AtomicLong();
+    }
+
+    /**
+     * Starts listening for pinned virtual threads.
+     * @return The monitor, or null if the flight recorder could not be started
+     */
+    static PinningMonitor start() {
+        try {
+            Class<?> streamClass = Class.forName(RECORDING_STREAM_CLASS);
+            PinningMonitor monitor = new PinningMonitor((AutoCloseable) streamClass.getConstructor().newInstance());
+            Object settings = streamClass.getMethod("enable", String.class).invoke(monitor.recordingStream,
+                    PINNED_EVENT);
+            Class.forName(EVENT_SETTINGS_CLASS).getMethod("withThreshold", Duration.class)
+                    .invoke(settings, Duration.ofMillis(20));
+            Consumer<Object> counter = event -> monitor.pinnedEvents.incrementAndGet();
+            streamClass.getMethod("onEvent", String.class, Consumer.class).invoke(monitor.recordingStream,
+                    PINNED_EVENT, counter);
+            streamClass.getMethod("startAsync").invoke(monitor.recordingStream);
+            return monitor;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            System.err.println("Could not monitor pinned virtual threads.");
+            System.err.println(e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * @return Number of times a virtual thread has been pinned for longer than 20 ms
+     */
+    long getPinnedEvents() {
+        return pinnedEvents.get();
+    }
+
+    void close() {
+        try {
+            recordingStream.close();
+        } catch (Exception e) {
+            System.err.println(e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package no.kij.socketscheduler.server;
+
+/**
+ * The different ways the server can handle its client connections.
+ * Chosen at startup with the "--mode=<name>" argument, defaulting to BLOCKING.
+ */
+public enum ServerMode {
+    BLOCKING,
+    NIO,
+    VIRTUAL;
+
+    /**
+     * Finds the mode given in the startup arguments.
+     * @param args Arguments given to the program
+     * @return The mode that was asked for, BLOCKING if none or an unknown one was given
+     */
+    public static ServerMode fromArgs(String[] args) {
+        for (String arg : args) {
+            if (arg.startsWith("--mode=")) {
+                String name = arg.substring("--mode=".length()).toUpperCase();
+                for (ServerMode mode : values()) {
+                    if (mode.name().equals(name)) {
+                        return mode;
+                    }
+                }
+                System.err.println("Unknown server mode '" + name + "', using " + BLOCKING + ".");
+            }
+        }
+        return BLOCKING;
+    }
+}
@@ -0,0 +1,57 @@
+package no.kij.socketscheduler.server.cache;
+
+import com.j256.ormlite.dao.Dao;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class consists exclusively of static methods keeping track of changes to the catalogue
+ * of subjects and lecturers. Every write through the daos moves the version forward,
+ * so anything holding on to data read from the database can tell that it is out of date.
+ */
+public class CatalogueVersion {
+    private static final AtomicLong version = new AtomicLong();
+    private static final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Observer moving the version forward, to be registered on every dao that writes to the catalogue.
+     */
+    public static final Dao.DaoObserver OBSERVER = CatalogueVersion::bump;
+
+    /**
+     * @return The current version of the catalogue
+     */
+    public static long get() {
+        return version.get();
+    }
+
+    /**
+     * Marks the catalogue as changed.
+     * @return The new version of the catalogue
+     */
+    public static long bump() {
+        long newVersion = version.incrementAndGet();
+        for (Runnable listener : listeners) {
+            listener.run();
+        }
+        return newVersion;
+    }
+
+    /**
+     * Adds a listener called every time the catalogue has changed.
+     * It is called on the thread doing the write, so it should hand any real work to another thread.
+     * @param listener Listener to add
+     */
+    public static void addListener(Runnable listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * @param listener Listener to stop calling
+     */
+    public static void removeListener(Runnable listener) {
+        listeners.remove(listener);
+    }
+}
@@ -0,0 +1,236 @@
+package no.kij.socketscheduler.server.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * A bounded read-through cache for search results, keyed by the search term.
+ *
+ * The least recently used term is evicted when the cache is full, and a result is
+ * only kept for a limited time. Everything is thrown away once the CatalogueVersion
+ * has changed, so a write is never hidden by a result read before it.
+ * "Not found" is cached as well, since a miss costs as many queries as a hit.
+ * Misses for the same term at the same time share a single load, see SingleFlight,
+ * whether the result is loaded on the calling thread or handed to another one.
+ *
+ * The cached objects are handed out to every caller, so they must not be changed.
+ *
+ * @param <V> The type of the cached results
+ */
+public class LookupCache<V> {
+    private static final AtomicLong totalHits = new AtomicLong();
+    private static final AtomicLong totalMisses = new AtomicLong();
+    private static final AtomicLong totalEvictions = new AtomicLong();
+
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final LongSupplier clock;
+    private final LinkedHashMap<String, Entry<V>> entries;
+    private final SingleFlight<V> flights;
+    private final AtomicLong hits;
+    private final AtomicLong misses;
+    private final AtomicLong evictions;
+    private long version;
+
+    /**
+     * Creates an empty cache.
+     * @param maxEntries Number of search terms to keep results for
+     * @param ttl How long to keep a result
+     * @param unit Unit of the ttl
+     */
+    public LookupCache(int maxEntries, long ttl, TimeUnit unit) {
+        this(maxEntries, ttl, unit, System::nanoTime);
+    }
+
+    /**
+     * Creates an empty cache using the given clock to tell when results have expired.
+     * @param maxEntries Number of search terms to keep results for
+     * @param ttl How long to keep a result
+     * @param unit Unit of the ttl
+     * @param clock Returns the current time in nanoseconds
+     */
+    public LookupCache(int maxEntries, long ttl, TimeUnit unit, LongSupplier clock) {
+        this.maxEntries = maxEntries;
+        this.ttlNanos = unit.toNanos(ttl);
+        this.clock = clock;
+        entries = new LinkedHashMap<>(16, 0.75f, true);
+        flights = new SingleFlight<>();
+        hits = new AtomicLong();
+        misses = new AtomicLong();
+        evictions = new AtomicLong();
+        version = CatalogueVersion.get();
+    }
+
+    /**
+     * Returns the cached result for the term, and loads it if it is not cached.
+     * The loader runs without holding the cache, so slow queries don't hold up other lookups,
+     * and only once for the term however many ask for it while it runs.
+     * @param term The search term, which is trimmed and has its whitespace collapsed
+     * @param loader Loads the result of the term from the database
+     * @return The result, which may be null if nothing was found
+     */
+    public V get(String term, Function<String, V> loader) {
+        if (term == null) {
+            return loader.apply(null);
+        }
+        String key = normalize(term);
+        long loadedVersion = CatalogueVersion.get();
+        Entry<V> entry = lookup(key, loadedVersion);
+        if (entry != null) {
+            return entry.value;
+        }
+
+        V value = flights.get(key, loader);
+        put(key, value, loadedVersion);
+        return value;
+    }
+
+    /**
+     * Returns the cached result for the term, and starts loading it if it is not cached.
+     * A cached result is returned in a future that is already complete, without the loader being asked.
+     * @param term The search term, which is trimmed and has its whitespace collapsed
+     * @param loader Starts loading the result of the term from the database
+     * @return Future of the result, which may be null if nothing was found
+     */
+    public CompletableFuture<V> getAsync(String term, Function<String, CompletableFuture<V>> loader) {
+        if (term == null) {
+            return loader.apply(null);
+        }
+        String key = normalize(term);
+        long loadedVersion = CatalogueVersion.get();
+        Entry<V> entry = lookup(key, loadedVersion);
+        if (entry != null) {
+            return CompletableFuture.completedFuture(entry.value);
+        }
+
+        return flights.getAsync(key, loader).thenApply(value -> {
+            put(key, value, loadedVersion);
+            return value;
+        });
+    }
+
+    /**
+     * Finds the entry of a term that has not expired, counting it as a hit or a miss.
+     * @param key The normalized term
+     * @param currentVersion The CatalogueVersion the lookup started at
+     * @return The entry, or null if the result has to be loaded
+     */
+    private Entry<V> lookup(String key, long currentVersion) {
+        synchronized (this) {
+            clearIfOutdated(currentVersion);
+            Entry<V> entry = entries.get(key);
+            if (entry != null) {
+                if (clock.getAsLong() - entry.loadedAt < ttlNanos) {
+                    hits.incrementAndGet();
+                    totalHits.incrementAndGet();
+                    return entry;
+                }
+                entries.remove(key);
+                countEviction();
+            }
+        }
+        misses.incrementAndGet();
+        totalMisses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Keeps a loaded result, unless the catalogue changed while it was loaded, since it might be from before.
+     * @param key The normalized term
+     * @param value The result loaded
+     * @param loadedVersion The CatalogueVersion the load started at
+     */
+    private synchronized void put(String key, V value, long loadedVersion) {
+        if (version == loadedVersion && CatalogueVersion.get() == loadedVersion) {
+            entries.put(key, new Entry<>(value, clock.getAsLong()));
+            evictEldest();
+        }
+    }
+
+    /**
+     * Throws away every cached result.
+     */
+    public synchronized void invalidateAll() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * @return Number of misses that shared the load of another miss for the same term
+     */
+    public long getCoalesced() {
+        return flights.getCoalesced();
+    }
+
+    public static long getTotalHits() {
+        return totalHits.get();
+    }
+
+    public static long getTotalMisses() {
+        return totalMisses.get();
+    }
+
+    public static long getTotalEvictions() {
+        return totalEvictions.get();
+    }
+
+    /**
+     * @param term A search term
+     * @return The term without leading or trailing whitespace, and with single spaces between words
+     */
+    static String normalize(String term) {
+        return term.trim().replaceAll("\\s+", " ");
+    }
+
+    private void clearIfOutdated(long currentVersion) {
+        if (version != currentVersion) {
+            entries.clear();
+            version = currentVersion;
+        }
+    }
+
+    private void evictEldest() {
+        Iterator<Map.Entry<String, Entry<V>>> eldest = entries.entrySet().iterator();
+        while (entries.size() > maxEntries && eldest.hasNext()) {
+            eldest.next();
+            eldest.remove();
+            countEviction();
+        }
+    }
+
+    private void countEviction() {
+        evictions.incrementAndGet();
+        totalEvictions.incrementAndGet();
+    }
+
+    private static class Entry<V> {
+        private final V value;
+        private final long loadedAt;
+
+        private Entry(V value, long loadedAt) {
+            this.value = value;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
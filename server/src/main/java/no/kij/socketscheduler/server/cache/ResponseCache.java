@@ -0,0 +1,140 @@
+package no.kij.socketscheduler.server.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * A bounded cache for responses that are the same for every client, such as a page of a list,
+ * keyed by the command and the version of the catalogue it was answered from.
+ *
+ * Unlike the LookupCache, the version is given by the caller, as a catalogue held in memory may be behind
+ * the CatalogueVersion while its next snapshot is built. Everything is thrown away once a newer version is
+ * asked for, and a response from an older version than the newest seen is neither given out nor kept.
+ * The least recently used command is evicted when the cache is full, and a response is only kept for a limited
+ * time, so a write made without going through the daos is not hidden for long.
+ *
+ * The cached responses are handed out to every caller, so they must not be changed.
+ *
+ * @param <V> The type of the cached responses
+ */
+public class ResponseCache<V> {
+    private static final AtomicLong totalHits = new AtomicLong();
+    private static final AtomicLong totalMisses = new AtomicLong();
+
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final LongSupplier clock;
+    private final LinkedHashMap<String, Entry<V>> entries;
+    private final AtomicLong hits;
+    private final AtomicLong misses;
+    private long version;
+
+    /**
+     * Creates an empty cache.
+     * @param maxEntries Number of commands to keep responses for
+     * @param ttl How long to keep a response
+     * @param unit Unit of the ttl
+     */
+    public ResponseCache(int maxEntries, long ttl, TimeUnit unit) {
+        this(maxEntries, ttl, unit, System::nanoTime);
+    }
+
+    /**
+     * Creates an empty cache using the given clock to tell when responses have expired.
+     * @param maxEntries Number of commands to keep responses for
+     * @param ttl How long to keep a response
+     * @param unit Unit of the ttl
+     * @param clock Returns the current time in nanoseconds
+     */
+    public ResponseCache(int maxEntries, long ttl, TimeUnit unit, LongSupplier clock) {
+        this.maxEntries = maxEntries;
+        this.ttlNanos = unit.toNanos(ttl);
+        this.clock = clock;
+        entries = new LinkedHashMap<>(16, 0.75f, true);
+        hits = new AtomicLong();
+        misses = new AtomicLong();
+        version = Long.MIN_VALUE;
+    }
+
+    /**
+     * @param command The command answered, with every argument that changes the response
+     * @param catalogueVersion Version of the catalogue the command would be answered from
+     * @return The cached response, or null if there is none for the version
+     */
+    public synchronized V get(String command, long catalogueVersion) {
+        moveTo(catalogueVersion);
+        Entry<V> entry = version == catalogueVersion ? entries.get(command) : null;
+        if (entry != null && clock.getAsLong() - entry.storedAt >= ttlNanos) {
+            entries.remove(command);
+            entry = null;
+        }
+        if (entry == null) {
+            misses.incrementAndGet();
+            totalMisses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        totalHits.incrementAndGet();
+        return entry.value;
+    }
+
+    /**
+     * Keeps the response to the command, unless a newer version of the catalogue has been asked for meanwhile.
+     * @param command The command answered, with every argument that changes the response
+     * @param catalogueVersion Version of the catalogue the response was answered from,
+     *                         read before the catalogue was asked
+     * @param response The response
+     */
+    public synchronized void put(String command, long catalogueVersion, V response) {
+        moveTo(catalogueVersion);
+        if (version == catalogueVersion) {
+            entries.put(command, new Entry<>(response, clock.getAsLong()));
+            Iterator<Map.Entry<String, Entry<V>>> eldest = entries.entrySet().iterator();
+            while (entries.size() > maxEntries && eldest.hasNext()) {
+                eldest.next();
+                eldest.remove();
+            }
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public static long getTotalHits() {
+        return totalHits.get();
+    }
+
+    public static long getTotalMisses() {
+        return totalMisses.get();
+    }
+
+    private void moveTo(long catalogueVersion) {
+        if (catalogueVersion > version) {
+            entries.clear();
+            version = catalogueVersion;
+        }
+    }
+
+    private static class Entry<V> {
+        private final V value;
+        private final long storedAt;
+
+        private Entry(V value, long storedAt) {
+            this.value = value;
+            this.storedAt = storedAt;
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package no.kij.socketscheduler.server.cache;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Lets lookups of the same term made at the same time share a single trip to the database.
+ *
+ * The first caller for a term runs the loader, and everyone asking for the term while it runs waits for it
+ * and gets the same result, instead of running the same queries again. Nothing is kept once the load is done,
+ * so keeping results for later is left to the LookupCache.
+ * A caller only joins a load started at the same CatalogueVersion, so a write is never hidden from a lookup
+ * made after it.
+ *
+ * The result is handed to every caller sharing the load, so it must not be changed.
+ *
+ * @param <V> The type of the results
+ */
+public class SingleFlight<V> {
+    private static final AtomicLong totalLoads = new AtomicLong();
+    private static final AtomicLong totalCoalesced = new AtomicLong();
+
+    private final Map<Key, CompletableFuture<V>> inFlight;
+    private final AtomicLong loads;
+    private final AtomicLong coalesced;
+
+    public SingleFlight() {
+        inFlight = new ConcurrentHashMap<>();
+        loads = new AtomicLong();
+        coalesced = new AtomicLong();
+    }
+
+    /**
+     * Loads the result of the term, or waits for the load already running for it.
+     * @param term The search term, which is trimmed and has its whitespace collapsed
+     * @param loader Loads the result of the term from the database
+     * @return The result, which may be null if nothing was found
+     */
+    public V get(String term, Function<String, V> loader) {
+        if (term == null) {
+            return loader.apply(null);
+        }
+        String normalized = LookupCache.normalize(term);
+        Key key = new Key(normalized, CatalogueVersion.get());
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> running = inFlight.putIfAbsent(key, flight);
+        if (running != null) {
+            coalesced.incrementAndGet();
+            totalCoalesced.incrementAndGet();
+            return await(running);
+        }
+
+        loads.incrementAndGet();
+        totalLoads.incrementAndGet();
+        try {
+            V value = loader.apply(normalized);
+            flight.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    /**
+     * Starts the load of the term, or gives the future of the load already running for it.
+     * Unlike get, no thread waits for the load, so callers sharing a load asked for on the DatabaseExecutor
+     * only take one of its threads between them.
+     * @param term The search term, which is trimmed and has its whitespace collapsed
+     * @param loader Starts loading the result of the term from the database
+     * @return Future of the result, shared with everyone asking for the term while it loads
+     */
+    public CompletableFuture<V> getAsync(String term, Function<String, CompletableFuture<V>> loader) {
+        if (term == null) {
+            return loader.apply(null);
+        }
+        String normalized = LookupCache.normalize(term);
+        Key key = new Key(normalized, CatalogueVersion.get());
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> running = inFlight.putIfAbsent(key, flight);
+        if (running != null) {
+            coalesced.incrementAndGet();
+            totalCoalesced.incrementAndGet();
+            return running;
+        }
+
+        loads.incrementAndGet();
+        totalLoads.incrementAndGet();
+        CompletableFuture<V> loading;
+        try {
+            loading = loader.apply(normalized);
+        } catch (RuntimeException | Error e) {
+            loading = new CompletableFuture<>();
+            loading.completeExceptionally(e);
+        }
+        // taken out before it completes, so no one joins a load that is already done
+        loading.whenComplete((value, e) -> {
+            inFlight.remove(key, flight);
+            if (e != null) {
+                flight.completeExceptionally(e);
+            } else {
+                flight.complete(value);
+            }
+        });
+        return flight;
+    }
+
+    /**
+     * @return Number of loads running right now
+     */
+    public int getInFlight() {
+        return inFlight.size();
+    }
+
+    /**
+     * @return Number of times the loader has been run
+     */
+    public long getLoads() {
+        return loads.get();
+    }
+
+    /**
+     * @return Number of lookups that got the result of a load another caller had already started
+     */
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    public static long getTotalLoads() {
+        return totalLoads.get();
+    }
+
+    public static long getTotalCoalesced() {
+        return totalCoalesced.get();
+    }
+
+    /**
+     * Waits for a load started by another caller, throwing what it threw.
+     */
+    private static <V> V await(CompletableFuture<V> flight) {
+        try {
+            return flight.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private static class Key {
+        private final String term;
+        private final long version;
+
+        private Key(String term, long version) {
+            this.term = term;
+            this.version = version;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return version == other.version && term.equals(other.term);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * term.hashCode() + Long.hashCode(version);
+        }
+    }
+}
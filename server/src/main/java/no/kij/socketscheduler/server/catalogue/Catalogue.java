@@ -0,0 +1,71 @@
+package no.kij.socketscheduler.server.catalogue;
+
+import no.kij.socketscheduler.server.cache.CatalogueVersion;
+import no.kij.socketscheduler.server.dto.LecturerDTO;
+import no.kij.socketscheduler.server.dto.SubjectDTO;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Predicate;
+
+/**
+ * Where the list and search commands get the subjects and lecturers from.
+ * The objects returned may be shared with other connections, so they must not be changed.
+ * The find methods give the single first match, while the search methods rank every match using Ranker.
+ * The forEach methods go through the catalogue in order of subject code and lecturer name, one at a time,
+ * for listing it a page at a time without holding it all in memory.
+ *
+ * The async methods give the same answers through a future, so a catalogue asking the database can ask it
+ * on the DatabaseExecutor and leave the calling thread free. By default they are answered right away
+ * on the calling thread, which suits a catalogue held in memory.
+ *
+ * The version tells what the answers are kept with, such as an encoded page of a list: an answer given
+ * at one version is the same until the version changes. By default it is the CatalogueVersion.
+ */
+public interface Catalogue {
+    List<SubjectDTO> listSubjects() throws SQLException;
+    List<LecturerDTO> listLecturers() throws SQLException;
+    void forEachSubject(String afterCode, int limit, Predicate<SubjectDTO> visitor) throws SQLException;
+    void forEachLecturer(String afterName, Integer afterId, int limit, Predicate<LecturerDTO> visitor)
+            throws SQLException;
+    SubjectDTO findSubject(String subject);
+    LecturerDTO findLecturer(String name);
+    List<SubjectDTO> searchSubjects(String term, int limit);
+    List<LecturerDTO> searchLecturers(String term, int limit);
+
+    default long getVersion() {
+        return CatalogueVersion.get();
+    }
+
+    default CompletableFuture<Void> forEachSubjectAsync(String afterCode, int limit, Predicate<SubjectDTO> visitor) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        try {
+            forEachSubject(afterCode, limit, visitor);
+            future.complete(null);
+        } catch (SQLException | RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    default CompletableFuture<Void> forEachLecturerAsync(String afterName, Integer afterId, int limit,
+                                                         Predicate<LecturerDTO> visitor) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        try {
+            forEachLecturer(afterName, afterId, limit, visitor);
+            future.complete(null);
+        } catch (SQLException | RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    default CompletableFuture<List<SubjectDTO>> searchSubjectsAsync(String term, int limit) {
+        return CompletableFuture.completedFuture(searchSubjects(term, limit));
+    }
+
+    default CompletableFuture<List<LecturerDTO>> searchLecturersAsync(String term, int limit) {
+        return CompletableFuture.completedFuture(searchLecturers(term, limit));
+    }
+}
@@ -0,0 +1,275 @@
+package no.kij.socketscheduler.server.catalogue;
+
+import no.kij.socketscheduler.server.cache.CatalogueVersion;
+import no.kij.socketscheduler.server.dto.LecturerDTO;
+import no.kij.socketscheduler.server.dto.SubjectDTO;
+import no.kij.socketscheduler.server.search.NGramIndex;
+import no.kij.socketscheduler.server.search.SearchHit;
+import no.kij.socketscheduler.server.util.DaoDelegator;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Every subject and lecturer, with who teaches what, as read from the database at one point in time.
+ * A snapshot is never changed once it is built; a new one is built to replace it instead.
+ * Codes and names are indexed, names with an NGramIndex, and searches give the same answers as the dao queries,
+ * taking the first exact match and otherwise the first (by ID) name containing the term.
+ * The subjects are also kept in order of code and the lecturers in order of name, for listing them a page at a time.
+ */
+public final class CatalogueSnapshot {
+    private final long version;
+    private final Collation collation;
+    private final List<SubjectDTO> subjects;
+    private final List<LecturerDTO> lecturers;
+    private final List<SubjectDTO> subjectsInCodeOrder;
+    private final List<LecturerDTO> lecturersInNameOrder;
+    private final Map<String, SubjectDTO> subjectsByCode;
+    private final Map<String, LecturerDTO> lecturersByName;
+    private final NGramIndex subjectNames;
+    private final NGramIndex lecturerNames;
+
+    private CatalogueSnapshot(long version, Collation collation, List<SubjectDTO> subjects, List<LecturerDTO> lecturers) {
+        this.version = version;
+        this.collation = collation;
+
+        Map<String, SubjectDTO> byCode = new HashMap<>();
+        subjectNames = new NGramIndex(collation);
+        for (int i = 0; i < subjects.size(); i++) {
+            SubjectDTO subject = subjects.get(i);
+            subject.setLecturers(Collections.unmodifiableList(new ArrayList<>(subject.getLecturers())));
+            byCode.putIfAbsent(collation.key(subject.getShortName()), subject);
+            subjectNames.put(i, subject.getName());
+        }
+
+        Map<String, LecturerDTO> byName = new HashMap<>();
+        lecturerNames = new NGramIndex(collation);
+        for (int i = 0; i < lecturers.size(); i++) {
+            LecturerDTO lecturer = lecturers.get(i);
+            lecturer.setSubjects(Collections.unmodifiableList(new ArrayList<>(lecturer.getSubjects())));
+            byName.putIfAbsent(collation.key(lecturer.getName()), lecturer);
+            lecturerNames.put(i, lecturer.getName());
+        }
+
+        this.subjects = Collections.unmodifiableList(new ArrayList<>(subjects));
+        this.lecturers = Collections.unmodifiableList(new ArrayList<>(lecturers));
+        subjectsByCode = byCode;
+        lecturersByName = byName;
+
+        Comparator<String> order = collation.order();
+        List<SubjectDTO> inCodeOrder = new ArrayList<>(subjects);
+        inCodeOrder.sort((a, b) -> order.compare(a.getShortName(), b.getShortName()));
+        subjectsInCodeOrder = Collections.unmodifiableList(inCodeOrder);
+        List<LecturerDTO> inNameOrder = new ArrayList<>(lecturers);
+        inNameOrder.sort((a, b) -> {
+            int names = order.compare(a.getName(), b.getName());
+            return names != 0 ? names : a.getId().compareTo(b.getId());
+        });
+        lecturersInNameOrder = Collections.unmodifiableList(inNameOrder);
+    }
+
+    /**
+     * Reads the whole catalogue through the daos, which takes three queries.
+     * @param dao Delegator to get the daos from
+     * @return The new snapshot
+     * @throws SQLException If the catalogue could not be read
+     */
+    public static CatalogueSnapshot build(DaoDelegator dao) throws SQLException {
+        // read before the queries, so a change made while building leaves the snapshot looking out of date
+        long version = CatalogueVersion.get();
+        Collation collation = Collation.of(dao.getSubjectDao().getConnectionSource().getDatabaseType());
+        List<SubjectDTO> subjects = dao.getSubjectDao().queryForAll();
+        List<LecturerDTO> lecturers = dao.getLecturerDao().queryForAllWithSubjects();
+        return new CatalogueSnapshot(version, collation, subjects, lecturers);
+    }
+
+    /**
+     * @return The CatalogueVersion the snapshot was read at
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public List<SubjectDTO> getSubjects() {
+        return subjects;
+    }
+
+    public List<LecturerDTO> getLecturers() {
+        return lecturers;
+    }
+
+    /**
+     * Goes through the subjects in order of code, the same order the SubjectDao gives them in.
+     * @param afterCode Only go through the subjects with a code after this one, or null to start from the first
+     * @param limit The most subjects to go through, or 0 for every one
+     * @param visitor Called with each subject in turn, returning false to stop
+     */
+    public void forEachSubject(String afterCode, int limit, Predicate<SubjectDTO> visitor) {
+        Comparator<String> order = collation.order();
+        int from = afterCode == null ? 0
+                : firstAfter(subjectsInCodeOrder, subject -> order.compare(subject.getShortName(), afterCode) > 0);
+        visit(subjectsInCodeOrder, from, limit, visitor);
+    }
+
+    /**
+     * Goes through the lecturers in order of name and then ID, the same order the LecturerDao gives them in.
+     * @param afterName Only go through the lecturers with a name after this one, or null to start from the first
+     * @param afterId Also go through the lecturers with the name given and an ID after this one, or null to skip them
+     * @param limit The most lecturers to go through, or 0 for every one
+     * @param visitor Called with each lecturer in turn, returning false to stop
+     */
+    public void forEachLecturer(String afterName, Integer afterId, int limit, Predicate<LecturerDTO> visitor) {
+        Comparator<String> order = collation.order();
+        int from = afterName == null ? 0 : firstAfter(lecturersInNameOrder, lecturer -> {
+            int byName = order.compare(lecturer.getName(), afterName);
+            return byName > 0 || byName == 0 && afterId != null && lecturer.getId() > afterId;
+        });
+        visit(lecturersInNameOrder, from, limit, visitor);
+    }
+
+    /**
+     * Finds where to start going through a sorted list, by binary search.
+     * @param sorted The list, sorted so every item after the start is after it as well
+     * @param isAfter Tells if an item is after what to start after
+     * @return Position of the first item after, or the size of the list if there is none
+     */
+    private static <T> int firstAfter(List<T> sorted, Predicate<T> isAfter) {
+        int low = 0;
+        int high = sorted.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (isAfter.test(sorted.get(middle))) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        return low;
+    }
+
+    private static <T> void visit(List<T> sorted, int from, int limit, Predicate<T> visitor) {
+        int to = limit > 0 ? (int) Math.min(sorted.size(), (long) from + limit) : sorted.size();
+        for (int i = from; i < to; i++) {
+            if (!visitor.test(sorted.get(i))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Find a subject by its code, or else by a part of its name.
+     * @param subject Code or name to search for
+     * @return SubjectDTO if found, null if not
+     */
+    public SubjectDTO findSubject(String subject) {
+        if (subject == null) {
+            return null;
+        }
+        String key = collation.key(subject);
+        SubjectDTO subjectDTO = subjectsByCode.get(key);
+        if (subjectDTO != null) {
+            return subjectDTO;
+        }
+        Integer index = first(subjectNames, subject);
+        return index != null ? subjects.get(index) : null;
+    }
+
+    /**
+     * Find a lecturer by the full name, or else by a part of it.
+     * @param name Name to search for
+     * @return LecturerDTO if found, null if not
+     */
+    public LecturerDTO findLecturer(String name) {
+        if (name == null) {
+            return null;
+        }
+        String key = collation.key(name);
+        LecturerDTO lecturerDTO = lecturersByName.get(key);
+        if (lecturerDTO != null) {
+            return lecturerDTO;
+        }
+        Integer index = first(lecturerNames, name);
+        return index != null ? lecturers.get(index) : null;
+    }
+
+    /**
+     * Search for subjects, putting a subject with the code searched for first,
+     * followed by the subjects with the best matching names.
+     * @param term Code or name to search for
+     * @param limit The most subjects to return
+     * @return The subjects found, best match first
+     */
+    public List<SubjectDTO> searchSubjects(String term, int limit) {
+        List<SubjectDTO> found = new ArrayList<>();
+        if (term == null || limit <= 0) {
+            return found;
+        }
+        // commands arrive in lower case, while codes are written in upper case
+        SubjectDTO byCode = subjectsByCode.get(collation.key(term.trim()));
+        if (byCode == null) {
+            byCode = subjectsByCode.get(collation.key(term.trim().toUpperCase(Locale.ROOT)));
+        }
+        if (byCode != null) {
+            found.add(byCode);
+        }
+        for (SearchHit hit : rank(subjectNames, term, limit)) {
+            SubjectDTO subject = subjects.get(hit.getId());
+            if (found.size() < limit && subject != byCode) {
+                found.add(subject);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Search for lecturers, best matching name first.
+     * @param term Name to search for
+     * @param limit The most lecturers to return
+     * @return The lecturers found, best match first
+     */
+    public List<LecturerDTO> searchLecturers(String term, int limit) {
+        List<LecturerDTO> found = new ArrayList<>();
+        for (SearchHit hit : rank(lecturerNames, term, limit)) {
+            found.add(lecturers.get(hit.getId()));
+        }
+        return found;
+    }
+
+    /**
+     * Ranks the names in one of the name indexes, which are indexed by position in the list.
+     * @param names Index to search
+     * @param term What was searched for
+     * @param limit The most names to return
+     * @return The best matches, best first
+     */
+    private static List<SearchHit> rank(NGramIndex names, String term, int limit) {
+        try {
+            return names.rank(term, limit);
+        } catch (SQLException e) {
+            // the indexes are filled when the snapshot is built, and never load anything themselves
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Searches one of the name indexes, which are indexed by position in the list.
+     * @param names Index to search
+     * @param term Text the name must contain
+     * @return Position of the first name containing the term, or null if none does
+     */
+    private static Integer first(NGramIndex names, String term) {
+        try {
+            return names.first(term);
+        } catch (SQLException e) {
+            // the indexes are filled when the snapshot is built, and never load anything themselves
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package no.kij.socketscheduler.server.catalogue;
+
+import com.j256.ormlite.db.DatabaseType;
+
+import java.util.Comparator;
+import java.util.Locale;
+
+/**
+ * How the database compares text, so searches answered from memory find the same as the queries would.
+ * MySQL and MariaDB ignore case by default, while H2 and most other databases compare text exactly.
+ */
+public enum Collation {
+    EXACT,
+    IGNORE_CASE;
+
+    /**
+     * @param databaseType Type of the database the catalogue is read from
+     * @return The collation the database uses by default
+     */
+    public static Collation of(DatabaseType databaseType) {
+        String name = databaseType.getDatabaseName();
+        return "MySQL".equals(name) || "MariaDB".equals(name) ? IGNORE_CASE : EXACT;
+    }
+
+    /**
+     * @param text Text to compare
+     * @return The text in the form it should be compared in
+     */
+    public String key(String text) {
+        return this == IGNORE_CASE ? text.toLowerCase(Locale.ROOT) : text;
+    }
+
+    /**
+     * @return The order the database sorts text in, so rows held in memory can be gone through in the same order
+     */
+    public Comparator<String> order() {
+        return this == IGNORE_CASE ? String.CASE_INSENSITIVE_ORDER : Comparator.naturalOrder();
+    }
+}
@@ -0,0 +1,84 @@
+package no.kij.socketscheduler.server.catalogue;
+
+import no.kij.socketscheduler.server.dto.LecturerDTO;
+import no.kij.socketscheduler.server.dto.SubjectDTO;
+import no.kij.socketscheduler.server.util.DaoDelegator;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Predicate;
+
+/**
+ * A catalogue asking the database through the daos every time.
+ * The async methods ask it through the asynchronous daos, on the DatabaseExecutor.
+ */
+public class DaoCatalogue implements Catalogue {
+    private final DaoDelegator dao;
+
+    public DaoCatalogue(DaoDelegator dao) {
+        this.dao = dao;
+    }
+
+    @Override
+    public List<SubjectDTO> listSubjects() throws SQLException {
+        return dao.getSubjectDao().queryForAll();
+    }
+
+    @Override
+    public List<LecturerDTO> listLecturers() throws SQLException {
+        return dao.getLecturerDao().queryForAllWithSubjects();
+    }
+
+    @Override
+    public void forEachSubject(String afterCode, int limit, Predicate<SubjectDTO> visitor) throws SQLException {
+        dao.getSubjectDao().forEachByCode(afterCode, limit, visitor);
+    }
+
+    @Override
+    public void forEachLecturer(String afterName, Integer afterId, int limit, Predicate<LecturerDTO> visitor)
+            throws SQLException {
+        dao.getLecturerDao().forEachByName(afterName, afterId, limit, visitor);
+    }
+
+    @Override
+    public SubjectDTO findSubject(String subject) {
+        return dao.getSubjectDao().findSubjectByCodeOrName(subject);
+    }
+
+    @Override
+    public LecturerDTO findLecturer(String name) {
+        return dao.getLecturerDao().queryForExactOrPartialName(name);
+    }
+
+    @Override
+    public List<SubjectDTO> searchSubjects(String term, int limit) {
+        return dao.getSubjectDao().searchSubjects(term, limit);
+    }
+
+    @Override
+    public List<LecturerDTO> searchLecturers(String term, int limit) {
+        return dao.getLecturerDao().searchLecturers(term, limit);
+    }
+
+    @Override
+    public CompletableFuture<Void> forEachSubjectAsync(String afterCode, int limit, Predicate<SubjectDTO> visitor) {
+        return dao.getAsyncSubjectDao().forEachByCode(afterCode, limit, visitor);
+    }
+
+    @Override
+    public CompletableFuture<Void> forEachLecturerAsync(String afterName, Integer afterId, int limit,
+                                                        Predicate<LecturerDTO> visitor) {
+        return dao.getAsyncLecturerDao().forEachByName(afterName, afterId, limit, visitor);
+    }
+
+    @Override
+    public CompletableFuture<List<SubjectDTO>> searchSubjectsAsync(String term, int limit) {
+        return dao.getAsyncSubjectDao().searchSubjects(term, limit);
+    }
+
+    @Override
+    public CompletableFuture<List<LecturerDTO>> searchLecturersAsync(String term, int limit) {
+        return dao.getAsyncLecturerDao().searchLecturers(term, limit);
+    }
+}
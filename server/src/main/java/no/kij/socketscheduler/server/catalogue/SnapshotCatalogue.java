@@ -0,0 +1,139 @@
+package no.kij.socketscheduler.server.catalogue;
+
+import no.kij.socketscheduler.server.cache.CatalogueVersion;
+import no.kij.socketscheduler.server.dto.LecturerDTO;
+import no.kij.socketscheduler.server.dto.SubjectDTO;
+import no.kij.socketscheduler.server.util.DaoDelegator;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+
+import static org.fusesource.jansi.Ansi.ansi;
+
+/**
+ * A catalogue answering every command from a CatalogueSnapshot held in memory, without asking the database.
+ *
+ * When the catalogue changes, a new snapshot is built on a background thread and swapped in at once,
+ * so a command always sees either the old or the new snapshot as a whole.
+ * Changes made while a snapshot is being built lead to one more rebuild, not one per change.
+ */
+public class SnapshotCatalogue implements Catalogue {
+    private final DaoDelegator dao;
+    private final AtomicReference<CatalogueSnapshot> snapshot;
+    private final AtomicBoolean rebuildPending;
+    private final ExecutorService rebuilder;
+    private final Runnable changeListener;
+
+    /**
+     * Builds the first snapshot, and starts keeping it up to date.
+     * @param dao Delegator to get the daos from
+     * @throws SQLException If the first snapshot could not be built
+     */
+    public SnapshotCatalogue(DaoDelegator dao) throws SQLException {
+        this.dao = dao;
+        snapshot = new AtomicReference<>(CatalogueSnapshot.build(dao));
+        rebuildPending = new AtomicBoolean();
+        rebuilder = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "catalogue-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        changeListener = this::scheduleRebuild;
+        CatalogueVersion.addListener(changeListener);
+        // catch up on anything that changed before the listener was added
+        if (CatalogueVersion.get() != getVersion()) {
+            scheduleRebuild();
+        }
+    }
+
+    /**
+     * @return The snapshot commands are currently answered from
+     */
+    public CatalogueSnapshot getSnapshot() {
+        return snapshot.get();
+    }
+
+    /**
+     * @return The version of the current snapshot
+     */
+    @Override
+    public long getVersion() {
+        return snapshot.get().getVersion();
+    }
+
+    @Override
+    public List<SubjectDTO> listSubjects() {
+        return snapshot.get().getSubjects();
+    }
+
+    @Override
+    public List<LecturerDTO> listLecturers() {
+        return snapshot.get().getLecturers();
+    }
+
+    @Override
+    public void forEachSubject(String afterCode, int limit, Predicate<SubjectDTO> visitor) {
+        snapshot.get().forEachSubject(afterCode, limit, visitor);
+    }
+
+    @Override
+    public void forEachLecturer(String afterName, Integer afterId, int limit, Predicate<LecturerDTO> visitor) {
+        snapshot.get().forEachLecturer(afterName, afterId, limit, visitor);
+    }
+
+    @Override
+    public SubjectDTO findSubject(String subject) {
+        return snapshot.get().findSubject(subject);
+    }
+
+    @Override
+    public LecturerDTO findLecturer(String name) {
+        return snapshot.get().findLecturer(name);
+    }
+
+    @Override
+    public List<SubjectDTO> searchSubjects(String term, int limit) {
+        return snapshot.get().searchSubjects(term, limit);
+    }
+
+    @Override
+    public List<LecturerDTO> searchLecturers(String term, int limit) {
+        return snapshot.get().searchLecturers(term, limit);
+    }
+
+    /**
+     * Stops keeping the snapshot up to date.
+     */
+    public void close() {
+        CatalogueVersion.removeListener(changeListener);
+        rebuilder.shutdownNow();
+    }
+
+    private void scheduleRebuild() {
+        if (rebuildPending.compareAndSet(false, true)) {
+            rebuilder.execute(this::rebuild);
+        }
+    }
+
+    private void rebuild() {
+        // cleared before building, so a change made while building schedules the next rebuild
+        rebuildPending.set(false);
+        try {
+            CatalogueSnapshot next = CatalogueSnapshot.build(dao);
+            CatalogueSnapshot swapped = snapshot.updateAndGet(
+                    current -> next.getVersion() > current.getVersion() ? next : current);
+            if (swapped == next) {
+                System.out.println(ansi().render("@|cyan Catalogue snapshot|@ @|red v" + next.getVersion() + "|@ @|cyan with "
+                        + next.getSubjects().size() + " subjects and " + next.getLecturers().size() + " lecturers.|@"));
+            }
+        } catch (SQLException e) {
+            System.err.println("Could not rebuild the catalogue snapshot.");
+            System.err.println(e.getMessage());
+        }
+    }
+}
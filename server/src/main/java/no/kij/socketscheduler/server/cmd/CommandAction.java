@@ -2,6 +2,7 @@ package no.kij.socketscheduler.server.cmd;
 
 public enum CommandAction {
     LIST,
+    MORE,
     SEARCH,
     SEND_HELP,
     SEND_USAGE,
@@ -7,6 +7,8 @@ public class CommandDetails {
     private CommandAction action;
     private CommandType type;
     private List<String> args;
+    private String after;
+    private int limit;
 
     public CommandDetails() {
         this.action = null;
@@ -47,4 +49,26 @@ public class CommandDetails {
     public void addArg(String arg) {
         this.args.add(arg);
     }
+
+    /**
+     * @return What a list should start after, a subject code or lecturer name, or null to start from the first
+     */
+    public String getAfter() {
+        return after;
+    }
+
+    public void setAfter(String after) {
+        this.after = after;
+    }
+
+    /**
+     * @return The most items a list should show, or 0 to show every one
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    public void setLimit(int limit) {
+        this.limit = limit;
+    }
 }
@@ -7,16 +7,20 @@ public class CommandParser {
 
     public CommandDetails parse(String command) {
         String[] splitCommand = command.toLowerCase().split(" ");
+        // what a list starts after is compared with codes and names as they are written
+        String[] originalCommand = command.split(" ");
         if (splitCommand.length < 1)
             return null;
 
         switch (splitCommand[0]) {
             case "list":
-                return createListCommand(splitCommand);
+                return createListCommand(splitCommand, originalCommand);
             case "search":
                 return createSearchCommand(splitCommand);
             case "help":
                 return createHelp(splitCommand);
+            case "more":
+                return new CommandDetails(CommandAction.MORE, CommandType.NONE);
             case "exit":
                 return new CommandDetails(CommandAction.EXIT, CommandType.NONE);
         }
@@ -24,17 +28,51 @@ public class CommandParser {
     }
 
 
-    private CommandDetails createListCommand(String[] args) {
+    /**
+     * Creates a list command, which may go on with "after <code or name>" and "limit <n>",
+     * as in "list subject after PG4200 limit 50".
+     * @param args The command split into words, in lower case
+     * @param original The command split into words, as it was written
+     * @return The list command, or the usage of list if it could not be understood
+     */
+    private CommandDetails createListCommand(String[] args, String[] original) {
         if (args.length < 2)
             return createUsage(CommandType.LIST);
 
         CommandType cmdType = parseCommandType(args[1]);
-        if (cmdType == CommandType.NONE)
+        if (cmdType != CommandType.LECTURER && cmdType != CommandType.SUBJECT)
             return createUsage(CommandType.LIST);
 
         CommandDetails listCmd = new CommandDetails();
         listCmd.setAction(CommandAction.LIST);
         listCmd.setType(cmdType);
+
+        int next = 2;
+        if (next < args.length && args[next].equals("after")) {
+            // a lecturer name is several words, so everything up to limit is what to start after
+            int end = next + 1;
+            while (end < args.length && !args[end].equals("limit")) {
+                end++;
+            }
+            if (end == next + 1)
+                return createUsage(CommandType.LIST);
+            listCmd.setAfter(String.join(" ", Arrays.copyOfRange(original, next + 1, end)));
+            next = end;
+        }
+        if (next < args.length && args[next].equals("limit")) {
+            if (next + 2 != args.length)
+                return createUsage(CommandType.LIST);
+            try {
+                listCmd.setLimit(Integer.parseInt(args[next + 1]));
+            } catch (NumberFormatException e) {
+                return createUsage(CommandType.LIST);
+            }
+            if (listCmd.getLimit() < 1)
+                return createUsage(CommandType.LIST);
+            next += 2;
+        }
+        if (next < args.length)
+            return createUsage(CommandType.LIST);
         return listCmd;
     }
 
@@ -84,6 +122,9 @@ public class CommandParser {
             case "list":
                 commandType = CommandType.LIST;
                 break;
+            case "more":
+                commandType = CommandType.MORE;
+                break;
             default:
                 commandType = CommandType.NONE;
                 break;
@@ -5,5 +5,6 @@ public enum CommandType {
     SUBJECT,
     LIST,
     SEARCH,
+    MORE,
     NONE
 }
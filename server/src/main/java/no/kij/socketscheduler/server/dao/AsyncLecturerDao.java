@@ -0,0 +1,102 @@
+package no.kij.socketscheduler.server.dao;
+
+import no.kij.socketscheduler.server.cache.LookupCache;
+import no.kij.socketscheduler.server.cache.SingleFlight;
+import no.kij.socketscheduler.server.catalogue.Collation;
+import no.kij.socketscheduler.server.dto.LecturerDTO;
+import no.kij.socketscheduler.server.util.DatabaseExecutor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * The lookup and list methods of a LecturerDao, run on the DatabaseExecutor instead of the calling thread.
+ * Each future is completed on a database thread, so whatever is chained to it should not block for long.
+ *
+ * Lookups and searches for the same name at the same time share one future, before anything is handed to
+ * the executor, so a crowd asking for the same lecturer only takes one database thread between them.
+ * Searches are also cached until the catalogue changes, so a repeated search is answered without a database thread.
+ * The lecturers are shared, so they must not be modified.
+ */
+public class AsyncLecturerDao {
+    private static final int SEARCH_CACHE_SIZE = 1024;
+    private static final int SEARCH_CACHE_TTL_MINUTES = 10;
+
+    private final LecturerDao lecturerDao;
+    private final DatabaseExecutor executor;
+    private final Collation collation;
+    private final SingleFlight<LecturerDTO> lookupFlights;
+    private final LookupCache<List<LecturerDTO>> searchCache;
+
+    public AsyncLecturerDao(LecturerDao lecturerDao, DatabaseExecutor executor) {
+        this(lecturerDao, executor, Collation.of(lecturerDao.getConnectionSource().getDatabaseType()));
+    }
+
+    /**
+     * @param lecturerDao The dao to run the methods of
+     * @param executor Runs the methods on a database thread
+     * @param collation How the database compares text, which tells which searches are the same
+     */
+    public AsyncLecturerDao(LecturerDao lecturerDao, DatabaseExecutor executor, Collation collation) {
+        this.lecturerDao = lecturerDao;
+        this.executor = executor;
+        this.collation = collation;
+        lookupFlights = new SingleFlight<>();
+        searchCache = new LookupCache<>(SEARCH_CACHE_SIZE, SEARCH_CACHE_TTL_MINUTES, TimeUnit.MINUTES);
+    }
+
+    public CompletableFuture<LecturerDTO> queryForLecturerName(String name) {
+        return executor.submit(() -> lecturerDao.queryForLecturerName(name));
+    }
+
+    public CompletableFuture<LecturerDTO> queryForPartialName(String partialName) {
+        return executor.submit(() -> lecturerDao.queryForPartialName(partialName));
+    }
+
+    public CompletableFuture<LecturerDTO> queryForExactOrPartialName(String name) {
+        return lookupFlights.getAsync(name,
+                key -> executor.submit(() -> lecturerDao.queryForExactOrPartialName(name)));
+    }
+
+    public CompletableFuture<LecturerDTO> queryForId(Integer id) {
+        return executor.submit(() -> lecturerDao.queryForId(id));
+    }
+
+    public CompletableFuture<List<LecturerDTO>> searchLecturers(String term, int limit) {
+        if (term == null) {
+            return executor.submit(() -> lecturerDao.searchLecturers(null, limit));
+        }
+        // every caller gets a list of its own, while the lecturers in it are shared
+        return searchCache.getAsync(limit + " " + collation.key(term),
+                key -> executor.submit(() -> lecturerDao.searchLecturers(term, limit)))
+                .thenApply(ArrayList::new);
+    }
+
+    public CompletableFuture<List<LecturerDTO>> queryForAllWithSubjects() {
+        return executor.submit(lecturerDao::queryForAllWithSubjects);
+    }
+
+    public SingleFlight<LecturerDTO> getLookupFlights() {
+        return lookupFlights;
+    }
+
+    public LookupCache<List<LecturerDTO>> getSearchCache() {
+        return searchCache;
+    }
+
+    /**
+     * Goes through the lecturers in order of name on a database thread.
+     * @see LecturerDao#forEachByName(String, Integer, int, Predicate)
+     * @return Future completed once the visitor has seen the last lecturer, or failed with the SQLException
+     */
+    public CompletableFuture<Void> forEachByName(String afterName, Integer afterId, int limit,
+                                                 Predicate<LecturerDTO> visitor) {
+        return executor.submit(() -> {
+            lecturerDao.forEachByName(afterName, afterId, limit, visitor);
+            return null;
+        });
+    }
+}
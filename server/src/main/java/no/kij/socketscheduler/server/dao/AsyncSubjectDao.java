@@ -0,0 +1,101 @@
+package no.kij.socketscheduler.server.dao;
+
+import no.kij.socketscheduler.server.cache.LookupCache;
+import no.kij.socketscheduler.server.cache.SingleFlight;
+import no.kij.socketscheduler.server.catalogue.Collation;
+import no.kij.socketscheduler.server.dto.SubjectDTO;
+import no.kij.socketscheduler.server.util.DatabaseExecutor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * The lookup and list methods of a SubjectDao, run on the DatabaseExecutor instead of the calling thread.
+ * Each future is completed on a database thread, so whatever is chained to it should not block for long.
+ *
+ * Lookups and searches for the same term at the same time share one future, before anything is handed to
+ * the executor, so a crowd asking for the same subject only takes one database thread between them.
+ * Searches are also cached until the catalogue changes, so a repeated search is answered without a database thread.
+ * The subjects are shared, so they must not be modified.
+ */
+public class AsyncSubjectDao {
+    private static final int SEARCH_CACHE_SIZE = 1024;
+    private static final int SEARCH_CACHE_TTL_MINUTES = 10;
+
+    private final SubjectDao subjectDao;
+    private final DatabaseExecutor executor;
+    private final Collation collation;
+    private final SingleFlight<SubjectDTO> lookupFlights;
+    private final LookupCache<List<SubjectDTO>> searchCache;
+
+    public AsyncSubjectDao(SubjectDao subjectDao, DatabaseExecutor executor) {
+        this(subjectDao, executor, Collation.of(subjectDao.getConnectionSource().getDatabaseType()));
+    }
+
+    /**
+     * @param subjectDao The dao to run the methods of
+     * @param executor Runs the methods on a database thread
+     * @param collation How the database compares text, which tells which searches are the same
+     */
+    public AsyncSubjectDao(SubjectDao subjectDao, DatabaseExecutor executor, Collation collation) {
+        this.subjectDao = subjectDao;
+        this.executor = executor;
+        this.collation = collation;
+        lookupFlights = new SingleFlight<>();
+        searchCache = new LookupCache<>(SEARCH_CACHE_SIZE, SEARCH_CACHE_TTL_MINUTES, TimeUnit.MINUTES);
+    }
+
+    public CompletableFuture<SubjectDTO> findSubjectByCode(String subjectCode) {
+        return executor.submit(() -> subjectDao.findSubjectByCode(subjectCode));
+    }
+
+    public CompletableFuture<SubjectDTO> findSubjectByName(String subjectName) {
+        return executor.submit(() -> subjectDao.findSubjectByName(subjectName));
+    }
+
+    public CompletableFuture<SubjectDTO> findSubjectByCodeOrName(String subject) {
+        return lookupFlights.getAsync(subject,
+                key -> executor.submit(() -> subjectDao.findSubjectByCodeOrName(subject)));
+    }
+
+    public CompletableFuture<SubjectDTO> queryForId(Integer id) {
+        return executor.submit(() -> subjectDao.queryForId(id));
+    }
+
+    public CompletableFuture<List<SubjectDTO>> searchSubjects(String term, int limit) {
+        if (term == null) {
+            return executor.submit(() -> subjectDao.searchSubjects(null, limit));
+        }
+        // every caller gets a list of its own, while the subjects in it are shared
+        return searchCache.getAsync(limit + " " + collation.key(term),
+                key -> executor.submit(() -> subjectDao.searchSubjects(term, limit)))
+                .thenApply(ArrayList::new);
+    }
+
+    public CompletableFuture<List<SubjectDTO>> queryForAll() {
+        return executor.submit(subjectDao::queryForAll);
+    }
+
+    public SingleFlight<SubjectDTO> getLookupFlights() {
+        return lookupFlights;
+    }
+
+    public LookupCache<List<SubjectDTO>> getSearchCache() {
+        return searchCache;
+    }
+
+    /**
+     * Goes through the subjects in order of code on a database thread.
+     * @see SubjectDao#forEachByCode(String, int, Predicate)
+     * @return Future completed once the visitor has seen the last subject, or failed with the SQLException
+     */
+    public CompletableFuture<Void> forEachByCode(String afterCode, int limit, Predicate<SubjectDTO> visitor) {
+        return executor.submit(() -> {
+            subjectDao.forEachByCode(afterCode, limit, visitor);
+            return null;
+        });
+    }
+}
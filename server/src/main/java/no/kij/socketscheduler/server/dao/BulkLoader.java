@@ -0,0 +1,174 @@
+package no.kij.socketscheduler.server.dao;
+
+import com.j256.ormlite.db.DatabaseType;
+import com.j256.ormlite.table.DatabaseTableConfig;
+import no.kij.socketscheduler.server.dto.LecturerDTO;
+import no.kij.socketscheduler.server.dto.SubjectDTO;
+import no.kij.socketscheduler.server.dto.SubjectLecturerDTO;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static no.kij.socketscheduler.server.dao.Sql.escape;
+
+/**
+ * Inserts lecturers and subjects in JDBC batches, instead of one statement and round trip per row.
+ * The IDs the database gives the new rows are read back by name and code, a few hundred rows per query,
+ * and lecturers are matched up with their subjects by name in memory.
+ * Only the rows being loaded are looked up, so loading a few rows at a time does not read
+ * every lecturer in the database each time, and loads running side by side do not read each others rows.
+ */
+class BulkLoader {
+    private static final int BATCH_SIZE = 1000;
+    private static final int KEYS_PER_LOOKUP = 500;
+
+    private final DatabaseType databaseType;
+    private final String lecturersTable;
+    private final String subjectsTable;
+    private final String subjectLecturerTable;
+
+    BulkLoader(DatabaseType databaseType) {
+        this.databaseType = databaseType;
+        lecturersTable = escape(databaseType, DatabaseTableConfig.extractTableName(LecturerDTO.class));
+        subjectsTable = escape(databaseType, DatabaseTableConfig.extractTableName(SubjectDTO.class));
+        subjectLecturerTable = escape(databaseType, DatabaseTableConfig.extractTableName(SubjectLecturerDTO.class));
+    }
+
+    /**
+     * Creates the lecturers and subjects, binding every subject to its lecturers.
+     * Lecturers are told apart by name, so a lecturer already in the database, or given more than once,
+     * is only created once. Lecturers that already have an ID are taken to be in the database as they are.
+     * The IDs of the given lecturers and subjects are set to those of their rows.
+     * It should be run in a transaction, so nothing is left half done if it fails.
+     * @param connection Connection to insert with
+     * @param lecturers Lecturers to create, along with the ones teaching the subjects
+     * @param subjects Subjects to create
+     * @throws SQLException If any of the rows could not be inserted
+     */
+    void load(Connection connection, Collection<LecturerDTO> lecturers, Collection<SubjectDTO> subjects)
+            throws SQLException {
+        String lecturerId = escape(databaseType, LecturerDTO.ID_FIELD);
+        String lecturerName = escape(databaseType, LecturerDTO.LECTURER_NAME_FIELD);
+
+        // every lecturer not in the database yet, each name once
+        List<LecturerDTO> allLecturers = new ArrayList<>(lecturers);
+        for (SubjectDTO subject : subjects) {
+            if (subject.getLecturers() != null) {
+                allLecturers.addAll(subject.getLecturers());
+            }
+        }
+        Set<String> newNames = new LinkedHashSet<>();
+        for (LecturerDTO lecturer : allLecturers) {
+            if (lecturer != null && lecturer.getName() != null && lecturer.getId() == null) {
+                newNames.add(lecturer.getName());
+            }
+        }
+        Map<String, Integer> lecturerIds = readIds(connection, lecturersTable, lecturerId, lecturerName, newNames);
+        newNames.removeAll(lecturerIds.keySet());
+        try (PreparedStatement insert = connection.prepareStatement(
+                "INSERT INTO " + lecturersTable + " (" + lecturerName + ") VALUES (?)")) {
+            int rows = 0;
+            for (String name : newNames) {
+                insert.setString(1, name);
+                addBatch(insert, ++rows);
+            }
+            insert.executeBatch();
+        }
+        lecturerIds.putAll(readIds(connection, lecturersTable, lecturerId, lecturerName, newNames));
+        for (LecturerDTO lecturer : allLecturers) {
+            if (lecturer != null && lecturer.getName() != null && lecturer.getId() == null) {
+                lecturer.setId(lecturerIds.get(lecturer.getName()));
+            }
+        }
+
+        String subjectId = escape(databaseType, SubjectDTO.ID_FIELD);
+        String subjectCode = escape(databaseType, SubjectDTO.SHORT_CODE_FIELD);
+        List<String> codes = new ArrayList<>();
+        try (PreparedStatement insert = connection.prepareStatement("INSERT INTO " + subjectsTable + " ("
+                + subjectCode + ", " + escape(databaseType, SubjectDTO.NAME_FIELD) + ", "
+                + escape(databaseType, SubjectDTO.ENROLLED_FIELD) + ") VALUES (?, ?, ?)")) {
+            int rows = 0;
+            for (SubjectDTO subject : subjects) {
+                insert.setString(1, subject.getShortName());
+                insert.setString(2, subject.getName());
+                insert.setInt(3, subject.getEnrolled() != null ? subject.getEnrolled() : 0);
+                addBatch(insert, ++rows);
+                codes.add(subject.getShortName());
+            }
+            insert.executeBatch();
+        }
+        // the codes are unique, so they tell which ID every new subject got
+        Map<String, Integer> subjectIds = readIds(connection, subjectsTable, subjectId, subjectCode, codes);
+
+        try (PreparedStatement insert = connection.prepareStatement("INSERT INTO " + subjectLecturerTable + " ("
+                + escape(databaseType, SubjectLecturerDTO.SUBJECT_ID_FIELD) + ", "
+                + escape(databaseType, SubjectLecturerDTO.LECTURER_ID_FIELD) + ") VALUES (?, ?)")) {
+            int rows = 0;
+            for (SubjectDTO subject : subjects) {
+                subject.setId(subjectIds.get(subject.getShortName()));
+                if (subject.getLecturers() == null) {
+                    continue;
+                }
+                Set<Integer> bound = new LinkedHashSet<>();
+                for (LecturerDTO lecturer : subject.getLecturers()) {
+                    if (lecturer != null && lecturer.getId() != null && bound.add(lecturer.getId())) {
+                        insert.setInt(1, subject.getId());
+                        insert.setInt(2, lecturer.getId());
+                        addBatch(insert, ++rows);
+                    }
+                }
+            }
+            insert.executeBatch();
+        }
+    }
+
+    /**
+     * Adds the current parameters to the batch, sending the batch on every BATCH_SIZE rows
+     * so a large load does not have to hold every row in memory.
+     */
+    private static void addBatch(PreparedStatement insert, int rows) throws SQLException {
+        insert.addBatch();
+        if (rows % BATCH_SIZE == 0) {
+            insert.executeBatch();
+        }
+    }
+
+    /**
+     * Reads the IDs of the rows with the given keys in the key column, a few hundred keys per query.
+     * If the key is not unique, the lowest ID is kept.
+     */
+    private static Map<String, Integer> readIds(Connection connection, String table, String idColumn,
+                                                String keyColumn, Collection<String> keys) throws SQLException {
+        Map<String, Integer> ids = new HashMap<>();
+        List<String> lookup = new ArrayList<>(keys);
+        for (int from = 0; from < lookup.size(); from += KEYS_PER_LOOKUP) {
+            List<String> group = lookup.subList(from, Math.min(from + KEYS_PER_LOOKUP, lookup.size()));
+            StringBuilder sql = new StringBuilder("SELECT ").append(idColumn).append(", ").append(keyColumn)
+                    .append(" FROM ").append(table).append(" WHERE ").append(keyColumn).append(" IN (");
+            for (int i = 0; i < group.size(); i++) {
+                sql.append(i > 0 ? ", ?" : "?");
+            }
+            sql.append(") ORDER BY ").append(idColumn);
+            try (PreparedStatement select = connection.prepareStatement(sql.toString())) {
+                for (int i = 0; i < group.size(); i++) {
+                    select.setString(i + 1, group.get(i));
+                }
+                try (ResultSet rs = select.executeQuery()) {
+                    while (rs.next()) {
+                        ids.putIfAbsent(rs.getString(2), rs.getInt(1));
+                    }
+                }
+            }
+        }
+        return ids;
+    }
+}
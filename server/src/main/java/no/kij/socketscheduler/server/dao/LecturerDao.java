@@ -6,6 +6,7 @@ import no.kij.socketscheduler.server.dto.SubjectDTO;
 
 import java.sql.SQLException;
 import java.util.List;
+import java.util.function.Predicate;
 
 /**
  * An interface for LecturerDao, declaring custom methods.
@@ -14,5 +15,11 @@ public interface LecturerDao extends Dao<LecturerDTO, Integer> {
     LecturerDTO queryForLecturerName(String name);
     LecturerDTO queryForPartialName(String partialName);
     LecturerDTO queryForExactOrPartialName(String name);
+    List<LecturerDTO> searchLecturers(String term, int limit);
     List<SubjectDTO> findSubjectsForLecturer(LecturerDTO lecturerDTO) throws SQLException;
+    List<LecturerDTO> queryForAllWithSubjects() throws SQLException;
+    void forEachByName(String afterName, Integer afterId, int limit, Predicate<LecturerDTO> visitor)
+            throws SQLException;
+    void invalidateCaches();
+    void warmUpCaches();
 }
@@ -1,45 +1,73 @@
 package no.kij.socketscheduler.server.dao;
 
-import com.j256.ormlite.dao.BaseDaoImpl;
+import com.j256.ormlite.dao.CloseableIterator;
 import com.j256.ormlite.dao.Dao;
 import com.j256.ormlite.dao.DaoManager;
+import com.j256.ormlite.db.DatabaseType;
+import com.j256.ormlite.field.DataType;
 import com.j256.ormlite.stmt.PreparedQuery;
 import com.j256.ormlite.stmt.QueryBuilder;
 import com.j256.ormlite.stmt.SelectArg;
 import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.table.DatabaseTableConfig;
+import no.kij.socketscheduler.server.cache.CatalogueVersion;
 import no.kij.socketscheduler.server.dto.LecturerDTO;
 import no.kij.socketscheduler.server.dto.SubjectDTO;
 import no.kij.socketscheduler.server.dto.SubjectLecturerDTO;
 import no.kij.socketscheduler.server.util.DaoDelegator;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import static no.kij.socketscheduler.server.dao.Sql.escape;
 
 /**
  * JDBC specific implementation for the LecturerDao interface.
  */
-public class LecturerDaoImpl extends BaseDaoImpl<LecturerDTO, Integer> implements LecturerDao {
+public class LecturerDaoImpl extends NameIndexedDaoImpl<LecturerDTO> implements LecturerDao {
     private Dao<SubjectDTO, Integer> subjectDao;
     private Dao<SubjectLecturerDTO, Integer> subjectLecturerDao;
+    private String allLecturersWithSubjectsQuery;
+    private PreparedQueryPool<LecturerDTO> lecturerByNameQueries;
+    private PreparedQueryPool<SubjectDTO> subjectsForLecturerQueries;
     public LecturerDaoImpl(ConnectionSource connectionSource) throws SQLException {
-        super(connectionSource, LecturerDTO.class);
+        super(connectionSource, LecturerDTO.class, LecturerDTO.LECTURER_NAME_FIELD, LecturerDTO::getId,
+                LecturerDTO::getName, LecturerDTO.LECTURER_NAME_FIELD, LecturerDTO::getName);
         subjectLecturerDao = DaoManager.createDao(connectionSource, SubjectLecturerDTO.class);
         subjectDao = DaoManager.createDao(connectionSource, SubjectDTO.class);
+        allLecturersWithSubjectsQuery = makeAllLecturersWithSubjectsQuery(connectionSource.getDatabaseType());
+        lecturerByNameQueries = new PreparedQueryPool<>(this, this::makeLecturerByNameQuery);
+        subjectsForLecturerQueries = new PreparedQueryPool<>(subjectDao, this::makeSubjectForLecturerQuery);
+
+        // any write to the lecturers or what they teach makes the cached searches out of date
+        registerObserver(CatalogueVersion.OBSERVER);
+        subjectLecturerDao.registerObserver(CatalogueVersion.OBSERVER);
     }
 
     /**
-     * Find a lecturer by name
+     * Find a lecturer by name.
+     * The database is not asked if the key filter knows of no lecturer with the name.
      * @param name Name to search for
      * @return LecturerDTO if found, null if not
      * @throws SQLException If something goes wrong while querying for the given name
      */
     public LecturerDTO queryForLecturerName(String name) {
+        if (!getKeyFilter().mightContain(name)) {
+            return null;
+        }
         LecturerDTO lecturerDTO = null;
         try {
-            QueryBuilder<LecturerDTO, Integer> queryBuilder = queryBuilder();
-            queryBuilder.where().eq(LecturerDTO.LECTURER_NAME_FIELD, name);
-            PreparedQuery<LecturerDTO> preparedQuery = queryBuilder.prepare();
-            lecturerDTO = queryForFirst(preparedQuery);
+            lecturerDTO = lecturerByNameQueries.queryForFirst(name);
+            if (lecturerDTO != null) {
+                lecturerDTO.setSubjects(findSubjectsForLecturer(lecturerDTO));
+            } else if (name != null) {
+                getKeyFilter().recordFalsePositive();
+            }
         } catch (SQLException e) {
             System.err.println(e.getMessage());
         }
@@ -47,17 +75,18 @@ public class LecturerDaoImpl extends BaseDaoImpl<LecturerDTO, Integer> implement
     }
 
     /**
-     * Find a lecturer using a partial name
+     * Find a lecturer using a partial name.
+     * The name index is searched instead of the lecturers table, and only the lecturer found is queried for.
      * @param partialName The partial name to be found
      * @return LecturerDTO containing the lecturer, returns null if not found
      */
     public LecturerDTO queryForPartialName(String partialName) {
         LecturerDTO lecturerDTO = null;
         try {
-            QueryBuilder<LecturerDTO, Integer> queryBuilder = queryBuilder();
-            queryBuilder.where().like(LecturerDTO.LECTURER_NAME_FIELD, "%" + partialName + "%");
-            PreparedQuery<LecturerDTO> preparedQuery = queryBuilder.prepare();
-            lecturerDTO = queryForFirst(preparedQuery);
+            lecturerDTO = queryForFirstNameMatch(partialName);
+            if (lecturerDTO != null) {
+                lecturerDTO.setSubjects(findSubjectsForLecturer(lecturerDTO));
+            }
         } catch (SQLException e) {
             System.err.println(e.getMessage());
         }
@@ -70,11 +99,129 @@ public class LecturerDaoImpl extends BaseDaoImpl<LecturerDTO, Integer> implement
      * @return LecturerDTO if found, null if not
      */
     public LecturerDTO queryForExactOrPartialName(String name) {
-        LecturerDTO lecturerDTO = queryForLecturerName(name);
-        if (lecturerDTO == null) {
-            lecturerDTO = queryForPartialName(name);
+        return lookupExactOrPartialName(name);
+    }
+
+    /**
+     * Search for lecturers, best matching name first.
+     * The name index ranks the names, and the lecturers ranked are fetched with their subjects in a single query.
+     * Searches for the same name at the same time are shared by AsyncLecturerDao, before they reach a database thread.
+     * @param term Name to search for
+     * @param limit The most lecturers to return
+     * @return The lecturers found, each with their subjects
+     */
+    public List<LecturerDTO> searchLecturers(String term, int limit) {
+        List<LecturerDTO> found = new ArrayList<>();
+        try {
+            List<Integer> ranked = rankNameMatches(term, limit);
+            if (ranked.isEmpty()) {
+                return found;
+            }
+            Map<Integer, LecturerDTO> lecturers = queryLecturersByNamesOrIds(Collections.emptyList(), ranked);
+            for (Integer id : ranked) {
+                LecturerDTO lecturerDTO = lecturers.get(id);
+                // a lecturer deleted without going through this dao is just left out
+                if (lecturerDTO != null) {
+                    found.add(lecturerDTO);
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println(e.getMessage());
         }
-        return lecturerDTO;
+        return found;
+    }
+
+    /**
+     * Runs the query finding the lecturers with any of the given names or IDs, with their subjects.
+     * @param names Exact names to search for
+     * @param ids IDs of lecturers to fetch, at least one if there are no names
+     * @return The lecturers found by ID, each with their subjects
+     * @throws SQLException If something goes wrong while querying
+     */
+    private Map<Integer, LecturerDTO> queryLecturersByNamesOrIds(List<String> names, List<Integer> ids)
+            throws SQLException {
+        DataType[] columnTypes = {
+                DataType.INTEGER, DataType.STRING, DataType.INTEGER, DataType.STRING, DataType.STRING, DataType.INTEGER
+        };
+        List<String> arguments = new ArrayList<>(names);
+        for (Integer id : ids) {
+            arguments.add(id.toString());
+        }
+        String sql = makeLecturersByNamesOrIdsQuery(connectionSource.getDatabaseType(), names.size(), ids.size());
+
+        Map<Integer, LecturerDTO> lecturers = new HashMap<>();
+        for (Object[] row : queryRaw(sql, columnTypes, arguments.toArray(new String[0])).getResults()) {
+            LecturerDTO lecturerDTO = lecturers.get((Integer) row[0]);
+            if (lecturerDTO == null) {
+                lecturerDTO = new LecturerDTO();
+                lecturerDTO.setId((Integer) row[0]);
+                lecturerDTO.setName((String) row[1]);
+                lecturers.put(lecturerDTO.getId(), lecturerDTO);
+            }
+            // a lecturer without subjects comes back as a single row where the subject code is null
+            if (row[3] != null) {
+                SubjectDTO subjectDTO = new SubjectDTO();
+                subjectDTO.setId((Integer) row[2]);
+                subjectDTO.setShortName((String) row[3]);
+                subjectDTO.setName((String) row[4]);
+                subjectDTO.setEnrolled((Integer) row[5]);
+                lecturerDTO.getSubjects().add(subjectDTO);
+            }
+        }
+        return lecturers;
+    }
+
+    /**
+     * The private implementation for the exact or partial name search, going to the database.
+     * The name index picks the lecturer to use if there is no exact match, and both are fetched with their subjects
+     * using the query the search uses, so it takes a single query either way. If no name contains the one given
+     * and the key filter knows of no lecturer with it, the database is not asked at all.
+     * @param name Name of the lecturer to find
+     * @return LecturerDTO if found, null if not
+     */
+    private LecturerDTO lookupExactOrPartialName(String name) {
+        try {
+            for (int attempt = 0; attempt < 2; attempt++) {
+                Integer partialMatch = getNameIndex().first(name);
+                boolean exact = getKeyFilter().mightContain(name);
+                if (partialMatch == null && !exact) {
+                    return null;
+                }
+                Map<Integer, LecturerDTO> lecturers = queryLecturersByNamesOrIds(
+                        exact ? Collections.singletonList(name) : Collections.emptyList(),
+                        partialMatch != null ? Collections.singletonList(partialMatch) : Collections.emptyList());
+                LecturerDTO lecturerDTO = exact ? findName(lecturers, name) : null;
+                if (exact && lecturerDTO == null) {
+                    getKeyFilter().recordFalsePositive();
+                }
+                if (lecturerDTO == null && partialMatch != null) {
+                    lecturerDTO = lecturers.get(partialMatch);
+                }
+                if (lecturerDTO == null ? partialMatch == null : nameContains(lecturerDTO, name)) {
+                    return lecturerDTO;
+                }
+                // the lecturer was changed without going through this dao, so the names and keys are read again
+                invalidateCaches();
+            }
+        } catch (SQLException e) {
+            System.err.println(e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * @return The lecturer with the lowest ID having the name, compared the way the database compares it,
+     *         or null if none has it
+     */
+    private LecturerDTO findName(Map<Integer, LecturerDTO> lecturers, String name) {
+        LecturerDTO found = null;
+        for (LecturerDTO lecturerDTO : lecturers.values()) {
+            if (getCollation().key(lecturerDTO.getName()).equals(getCollation().key(name))
+                    && (found == null || lecturerDTO.getId() < found.getId())) {
+                found = lecturerDTO;
+            }
+        }
+        return found;
     }
 
     /**
@@ -87,6 +234,94 @@ public class LecturerDaoImpl extends BaseDaoImpl<LecturerDTO, Integer> implement
         return lookupSubjectsForLecturer(data);
     }
 
+    /**
+     * Fetch a list of all lecturers, each with the subjects they teach.
+     * Everything is fetched in a single query, so the list can be shown without asking the database per lecturer.
+     * @return List containing LecturerDTO, ordered by ID
+     * @throws SQLException If something goes wrong while querying
+     */
+    public List<LecturerDTO> queryForAllWithSubjects() throws SQLException {
+        DataType[] columnTypes = {
+                DataType.INTEGER, DataType.STRING, DataType.INTEGER, DataType.STRING, DataType.STRING
+        };
+        List<LecturerDTO> lecturerDTOs = new ArrayList<>();
+        LecturerDTO current = null;
+        for (Object[] row : queryRaw(allLecturersWithSubjectsQuery, columnTypes).getResults()) {
+            Integer lecturerId = (Integer) row[0];
+            if (current == null || !current.getId().equals(lecturerId)) {
+                current = new LecturerDTO();
+                current.setId(lecturerId);
+                current.setName((String) row[1]);
+                lecturerDTOs.add(current);
+            }
+            // a lecturer without subjects comes back as a single row where the subject code is null
+            if (row[3] != null) {
+                SubjectDTO subjectDTO = new SubjectDTO();
+                subjectDTO.setShortName((String) row[3]);
+                subjectDTO.setName((String) row[4]);
+                current.getSubjects().add(subjectDTO);
+            }
+        }
+        return lecturerDTOs;
+    }
+
+    /**
+     * Goes through the lecturers in order of name, each with the subjects they teach, reading the rows as they are
+     * needed. Lecturers sharing a name come in order of ID, which is how a list is continued after one of them.
+     * The lecturers are joined with their subjects in a single query, and a lecturer is let go once the visitor
+     * is done with it, so even every lecturer is listed without holding them all in memory.
+     * A database connection is held until the visitor is done or stops.
+     * @param afterName Only go through the lecturers with a name after this one, or null to start from the first
+     * @param afterId Also go through the lecturers with the name given and an ID after this one, or null to skip them
+     * @param limit The most lecturers to go through, or 0 for every one
+     * @param visitor Called with each lecturer in turn, returning false to stop
+     * @throws SQLException If something goes wrong while querying
+     */
+    public void forEachByName(String afterName, Integer afterId, int limit, Predicate<LecturerDTO> visitor)
+            throws SQLException {
+        DataType[] columnTypes = {
+                DataType.INTEGER, DataType.STRING, DataType.INTEGER, DataType.STRING, DataType.STRING
+        };
+        String[] arguments;
+        if (afterName == null) {
+            arguments = new String[0];
+        } else if (afterId == null) {
+            arguments = new String[] { afterName };
+        } else {
+            arguments = new String[] { afterName, afterName, afterId.toString() };
+        }
+        String sql = makeLecturersByNameQuery(connectionSource.getDatabaseType(), arguments.length, limit);
+        CloseableIterator<Object[]> rows = queryRaw(sql, columnTypes, arguments).closeableIterator();
+        try {
+            int visited = 0;
+            LecturerDTO current = null;
+            Object[] row;
+            while ((row = rows.nextThrow()) != null) {
+                Integer lecturerId = (Integer) row[0];
+                if (current == null || !current.getId().equals(lecturerId)) {
+                    if (current != null && (!visitor.test(current) || ++visited == limit)) {
+                        return;
+                    }
+                    current = new LecturerDTO();
+                    current.setId(lecturerId);
+                    current.setName((String) row[1]);
+                }
+                // a lecturer without subjects comes back as a single row where the subject code is null
+                if (row[3] != null) {
+                    SubjectDTO subjectDTO = new SubjectDTO();
+                    subjectDTO.setShortName((String) row[3]);
+                    subjectDTO.setName((String) row[4]);
+                    current.getSubjects().add(subjectDTO);
+                }
+            }
+            if (current != null) {
+                visitor.test(current);
+            }
+        } finally {
+            rows.closeQuietly();
+        }
+    }
+
     /**
      * The private implementation for finding the subjects for the lecturer.
      * @param data Lecturer to find subjects for
@@ -94,13 +329,25 @@ public class LecturerDaoImpl extends BaseDaoImpl<LecturerDTO, Integer> implement
      * @throws SQLException If something goes wrong while querying
      */
     private List<SubjectDTO> lookupSubjectsForLecturer(LecturerDTO data) throws SQLException {
-        PreparedQuery<SubjectDTO> subjectsForLecturerQuery = makeSubjectForLecturerQuery();
-        subjectsForLecturerQuery.setArgumentHolderValue(0, data);
-        return subjectDao.query(subjectsForLecturerQuery);
+        return subjectsForLecturerQueries.query(data);
     }
 
+    /**
+     * Creates the query used to find a lecturer by the exact name.
+     * @return PreparedQuery taking the name as its argument
+     * @throws SQLException If query could not be prepared
+     */
+    private PreparedQuery<LecturerDTO> makeLecturerByNameQuery() throws SQLException {
+        QueryBuilder<LecturerDTO, Integer> queryBuilder = queryBuilder();
+        queryBuilder.where().eq(LecturerDTO.LECTURER_NAME_FIELD, new SelectArg());
+        return queryBuilder.prepare();
+    }
 
-
+    /**
+     * Creates the query used to find the subjects for given lecturer.
+     * @return PreparedQuery for finding subjects
+     * @throws SQLException If query could not be prepared
+     */
     private PreparedQuery<SubjectDTO> makeSubjectForLecturerQuery() throws SQLException {
         QueryBuilder<SubjectLecturerDTO, Integer> subLecQb = subjectLecturerDao.queryBuilder();
 
@@ -113,4 +360,122 @@ public class LecturerDaoImpl extends BaseDaoImpl<LecturerDTO, Integer> implement
         subjectQb.where().in(SubjectLecturerDTO.ID_FIELD, subLecQb);
         return subjectQb.prepare();
     }
+
+    /**
+     * Creates the query joining every lecturer with the subjects they teach.
+     * Lecturers without subjects are kept by the outer joins, and the rows are ordered by lecturer
+     * and then subject, so the rows of one lecturer come after each other.
+     * @param databaseType Type of the database, used to escape the table and column names
+     * @return SQL selecting lecturer ID and name, and subject ID, code and name
+     */
+    private String makeAllLecturersWithSubjectsQuery(DatabaseType databaseType) {
+        String lecturerId = escape(databaseType, "l", LecturerDTO.ID_FIELD);
+        String subjectId = escape(databaseType, "s", SubjectDTO.ID_FIELD);
+
+        StringBuilder sql = new StringBuilder("SELECT DISTINCT ");
+        sql.append(lecturerId).append(", ")
+                .append(escape(databaseType, "l", LecturerDTO.LECTURER_NAME_FIELD)).append(", ")
+                .append(subjectId).append(", ")
+                .append(escape(databaseType, "s", SubjectDTO.SHORT_CODE_FIELD)).append(", ")
+                .append(escape(databaseType, "s", SubjectDTO.NAME_FIELD));
+        sql.append(" FROM ");
+        databaseType.appendEscapedEntityName(sql, DatabaseTableConfig.extractTableName(LecturerDTO.class));
+        sql.append(" l LEFT JOIN ");
+        databaseType.appendEscapedEntityName(sql, DatabaseTableConfig.extractTableName(SubjectLecturerDTO.class));
+        sql.append(" sl ON ").append(escape(databaseType, "sl", SubjectLecturerDTO.LECTURER_ID_FIELD))
+                .append(" = ").append(lecturerId);
+        sql.append(" LEFT JOIN ");
+        databaseType.appendEscapedEntityName(sql, DatabaseTableConfig.extractTableName(SubjectDTO.class));
+        sql.append(" s ON ").append(subjectId).append(" = ")
+                .append(escape(databaseType, "sl", SubjectLecturerDTO.SUBJECT_ID_FIELD));
+        sql.append(" ORDER BY ").append(lecturerId).append(", ").append(subjectId);
+        return sql.toString();
+    }
+
+    /**
+     * Creates the query joining a page of lecturers, in order of name and then ID, with the subjects they teach.
+     * The lecturers are picked in a subquery, so the limit counts lecturers rather than rows,
+     * and the rows are not made DISTINCT, so the database can send the first rows before it has found the last.
+     * @param databaseType Type of the database, used to escape the table and column names
+     * @param arguments 0 to start from the first lecturer, 1 to take the name to start after,
+     *                  or 3 to take the name twice followed by the ID to start after
+     * @param limit The most lecturers to select, or 0 for every one
+     * @return SQL selecting lecturer ID and name, and subject ID, code and name, one row per subject
+     */
+    private String makeLecturersByNameQuery(DatabaseType databaseType, int arguments, int limit) {
+        String lecturerId = escape(databaseType, "l", LecturerDTO.ID_FIELD);
+        String name = escape(databaseType, "l", LecturerDTO.LECTURER_NAME_FIELD);
+        String subjectId = escape(databaseType, "s", SubjectDTO.ID_FIELD);
+        String pageId = escape(databaseType, "p", LecturerDTO.ID_FIELD);
+        String pageName = escape(databaseType, "p", LecturerDTO.LECTURER_NAME_FIELD);
+
+        StringBuilder sql = new StringBuilder("SELECT ");
+        sql.append(lecturerId).append(", ").append(name).append(", ")
+                .append(subjectId).append(", ")
+                .append(escape(databaseType, "s", SubjectDTO.SHORT_CODE_FIELD)).append(", ")
+                .append(escape(databaseType, "s", SubjectDTO.NAME_FIELD));
+        sql.append(" FROM (SELECT ").append(pageId).append(", ").append(pageName).append(" FROM ");
+        databaseType.appendEscapedEntityName(sql, DatabaseTableConfig.extractTableName(LecturerDTO.class));
+        sql.append(" p");
+        if (arguments == 1) {
+            sql.append(" WHERE ").append(pageName).append(" > ?");
+        } else if (arguments == 3) {
+            sql.append(" WHERE ").append(pageName).append(" > ? OR (").append(pageName).append(" = ? AND ")
+                    .append(pageId).append(" > ?)");
+        }
+        sql.append(" ORDER BY ").append(pageName).append(", ").append(pageId).append(' ');
+        appendLimit(sql, databaseType, limit);
+        sql.append(") l LEFT JOIN ");
+        databaseType.appendEscapedEntityName(sql, DatabaseTableConfig.extractTableName(SubjectLecturerDTO.class));
+        sql.append(" sl ON ").append(escape(databaseType, "sl", SubjectLecturerDTO.LECTURER_ID_FIELD))
+                .append(" = ").append(lecturerId);
+        sql.append(" LEFT JOIN ");
+        databaseType.appendEscapedEntityName(sql, DatabaseTableConfig.extractTableName(SubjectDTO.class));
+        sql.append(" s ON ").append(subjectId).append(" = ")
+                .append(escape(databaseType, "sl", SubjectLecturerDTO.SUBJECT_ID_FIELD));
+        sql.append(" ORDER BY ").append(name).append(", ").append(lecturerId).append(", ").append(subjectId);
+        return sql.toString();
+    }
+
+    /**
+     * Creates the query finding the lecturers with any of the given names or IDs, each with their subjects.
+     * Like the list query it does not ask for DISTINCT rows, which subject_lecturer_pair_idx already makes sure of.
+     * @param databaseType Type of the database, used to escape the table and column names
+     * @param names Number of names the query takes as its first arguments
+     * @param ids Number of IDs the query takes after the names, at least 1 if there are no names
+     * @return SQL selecting lecturer ID and name, and subject ID, code, name and enrolled, one row per subject
+     */
+    private String makeLecturersByNamesOrIdsQuery(DatabaseType databaseType, int names, int ids) {
+        String lecturerId = escape(databaseType, "l", LecturerDTO.ID_FIELD);
+        String subjectId = escape(databaseType, "s", SubjectDTO.ID_FIELD);
+
+        StringBuilder sql = new StringBuilder("SELECT ");
+        sql.append(lecturerId).append(", ")
+                .append(escape(databaseType, "l", LecturerDTO.LECTURER_NAME_FIELD)).append(", ")
+                .append(subjectId).append(", ")
+                .append(escape(databaseType, "s", SubjectDTO.SHORT_CODE_FIELD)).append(", ")
+                .append(escape(databaseType, "s", SubjectDTO.NAME_FIELD)).append(", ")
+                .append(escape(databaseType, "s", SubjectDTO.ENROLLED_FIELD));
+        sql.append(" FROM ");
+        databaseType.appendEscapedEntityName(sql, DatabaseTableConfig.extractTableName(LecturerDTO.class));
+        sql.append(" l LEFT JOIN ");
+        databaseType.appendEscapedEntityName(sql, DatabaseTableConfig.extractTableName(SubjectLecturerDTO.class));
+        sql.append(" sl ON ").append(escape(databaseType, "sl", SubjectLecturerDTO.LECTURER_ID_FIELD))
+                .append(" = ").append(lecturerId);
+        sql.append(" LEFT JOIN ");
+        databaseType.appendEscapedEntityName(sql, DatabaseTableConfig.extractTableName(SubjectDTO.class));
+        sql.append(" s ON ").append(subjectId).append(" = ")
+                .append(escape(databaseType, "sl", SubjectLecturerDTO.SUBJECT_ID_FIELD));
+        sql.append(" WHERE ");
+        if (names > 0) {
+            sql.append(escape(databaseType, "l", LecturerDTO.LECTURER_NAME_FIELD)).append(" IN ");
+            appendPlaceholders(sql, names);
+        }
+        if (ids > 0) {
+            sql.append(names > 0 ? " OR " : "").append(lecturerId).append(" IN ");
+            appendPlaceholders(sql, ids);
+        }
+        sql.append(" ORDER BY ").append(lecturerId).append(", ").append(subjectId);
+        return sql.toString();
+    }
 }
@@ -0,0 +1,323 @@
+package no.kij.socketscheduler.server.dao;
+
+import com.j256.ormlite.dao.BaseDaoImpl;
+import com.j256.ormlite.db.DatabaseType;
+import com.j256.ormlite.stmt.PreparedDelete;
+import com.j256.ormlite.stmt.PreparedUpdate;
+import com.j256.ormlite.support.ConnectionSource;
+import no.kij.socketscheduler.server.cache.CatalogueVersion;
+import no.kij.socketscheduler.server.catalogue.Collation;
+import no.kij.socketscheduler.server.search.KeyFilter;
+import no.kij.socketscheduler.server.search.NGramIndex;
+import no.kij.socketscheduler.server.search.SearchHit;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * A dao keeping an NGramIndex over a name column, so partial name searches do not need a LIKE '%term%' scan,
+ * and a KeyFilter over the column rows are looked up by exactly, so lookups for values no row has do not need
+ * a query at all.
+ *
+ * Rows created, updated or deleted one at a time through the dao are put in the index and the filter as they
+ * are written. Writes they cannot follow row by row, like raw statements and bulk updates and deletes,
+ * make them read all values again before they are next used.
+ *
+ * @param <T> The type of the rows, which must have an Integer ID
+ */
+public abstract class NameIndexedDaoImpl<T> extends BaseDaoImpl<T, Integer> {
+    // as long as the search caches keep a result, so a value written without going through the daos is missed
+    // no longer than a cached search would miss it
+    private static final int KEY_FILTER_MAX_AGE_MINUTES = 10;
+
+    private final String nameField;
+    private final String keyField;
+    private final Function<T, Integer> idOf;
+    private final Function<T, String> nameOf;
+    private final Function<T, String> keyOf;
+    private final Collation collation;
+    private final NGramIndex nameIndex;
+    private final KeyFilter keyFilter;
+
+    /**
+     * @param connectionSource Source of the database connections
+     * @param dataClass Class of the rows
+     * @param nameField Column holding the name to index
+     * @param idOf Reads the ID of a row
+     * @param nameOf Reads the name of a row
+     * @param keyField Column rows are looked up by exactly, to keep a KeyFilter over
+     * @param keyOf Reads the value of keyField of a row
+     * @throws SQLException If the dao could not be created
+     */
+    protected NameIndexedDaoImpl(ConnectionSource connectionSource, Class<T> dataClass, String nameField,
+                                 Function<T, Integer> idOf, Function<T, String> nameOf,
+                                 String keyField, Function<T, String> keyOf) throws SQLException {
+        super(connectionSource, dataClass);
+        this.nameField = nameField;
+        this.keyField = keyField;
+        this.idOf = idOf;
+        this.nameOf = nameOf;
+        this.keyOf = keyOf;
+        collation = Collation.of(connectionSource.getDatabaseType());
+        nameIndex = new NGramIndex(collation, this::loadNames);
+        keyFilter = new KeyFilter(collation, this::loadKeys, KEY_FILTER_MAX_AGE_MINUTES, TimeUnit.MINUTES);
+    }
+
+    /**
+     * @return The index over the names
+     */
+    public NGramIndex getNameIndex() {
+        return nameIndex;
+    }
+
+    /**
+     * @return The filter over the values rows are looked up by exactly
+     */
+    public KeyFilter getKeyFilter() {
+        return keyFilter;
+    }
+
+    /**
+     * Find the row with the lowest ID with a name containing the term.
+     * @param term Text the name must contain
+     * @return The row if found, null if not
+     * @throws SQLException If something goes wrong while querying
+     */
+    protected T queryForFirstNameMatch(String term) throws SQLException {
+        for (int attempt = 0; attempt < 2; attempt++) {
+            Integer id = nameIndex.first(term);
+            if (id == null) {
+                return null;
+            }
+            T data = queryForId(id);
+            if (data != null && nameContains(data, term)) {
+                return data;
+            }
+            // the row was changed without going through this dao, so the names and keys are read again
+            invalidateCaches();
+        }
+        return null;
+    }
+
+    /**
+     * @return How the database compares text
+     */
+    public Collation getCollation() {
+        return collation;
+    }
+
+    /**
+     * Ends a raw query with a limit on the rows, for the databases that take one after the ORDER BY.
+     * The others get every row, and the caller stops reading once it has what it needs.
+     * @param sql Query to append to
+     * @param databaseType Type of the database the query is for
+     * @param limit The most rows to select, or 0 for every one
+     */
+    protected static void appendLimit(StringBuilder sql, DatabaseType databaseType, int limit) {
+        if (limit > 0 && databaseType.isLimitSqlSupported() && !databaseType.isLimitAfterSelect()) {
+            databaseType.appendLimitValue(sql, limit, null);
+        }
+    }
+
+    /**
+     * Appends the placeholders of an IN list, like "(?, ?, ?)".
+     * @param sql Query to append to
+     * @param count Number of placeholders, at least 1
+     */
+    protected static void appendPlaceholders(StringBuilder sql, int count) {
+        sql.append('(');
+        for (int i = 0; i < count; i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        sql.append(')');
+    }
+
+    /**
+     * Checks a row found through the name index against the database's rules for comparing text,
+     * as the index may be out of date if the row was changed without going through this dao.
+     * @param data Row to check
+     * @param term Text the name must contain
+     * @return true if the name of the row contains the term
+     */
+    protected boolean nameContains(T data, String term) {
+        return collation.key(nameOf.apply(data)).contains(collation.key(term));
+    }
+
+    /**
+     * Find the IDs of the rows with the names best matching the search, ranked by the name index.
+     * The rows themselves are left for the caller to fetch, all of them in one query.
+     * @param term What was searched for
+     * @param limit The most IDs to return
+     * @return The IDs found, best match first
+     * @throws SQLException If the names could not be read into the index
+     */
+    protected List<Integer> rankNameMatches(String term, int limit) throws SQLException {
+        List<Integer> ids = new ArrayList<>();
+        for (SearchHit hit : nameIndex.rank(term, limit)) {
+            ids.add(hit.getId());
+        }
+        return ids;
+    }
+
+    @Override
+    public int create(T data) throws SQLException {
+        int rows = super.create(data);
+        nameIndex.put(idOf.apply(data), nameOf.apply(data));
+        keyFilter.put(keyOf.apply(data));
+        return rows;
+    }
+
+    @Override
+    public int create(Collection<T> datas) throws SQLException {
+        try {
+            return super.create(datas);
+        } finally {
+            invalidateCaches();
+        }
+    }
+
+    @Override
+    public int update(T data) throws SQLException {
+        int rows = super.update(data);
+        nameIndex.put(idOf.apply(data), nameOf.apply(data));
+        keyFilter.put(keyOf.apply(data));
+        return rows;
+    }
+
+    @Override
+    public int updateId(T data, Integer newId) throws SQLException {
+        try {
+            return super.updateId(data, newId);
+        } finally {
+            invalidateCaches();
+        }
+    }
+
+    @Override
+    public int update(PreparedUpdate<T> preparedUpdate) throws SQLException {
+        try {
+            return super.update(preparedUpdate);
+        } finally {
+            invalidateCaches();
+        }
+    }
+
+    @Override
+    public int delete(T data) throws SQLException {
+        int rows = super.delete(data);
+        nameIndex.remove(idOf.apply(data));
+        return rows;
+    }
+
+    @Override
+    public int deleteById(Integer id) throws SQLException {
+        int rows = super.deleteById(id);
+        nameIndex.remove(id);
+        return rows;
+    }
+
+    @Override
+    public int delete(Collection<T> datas) throws SQLException {
+        try {
+            return super.delete(datas);
+        } finally {
+            invalidateCaches();
+        }
+    }
+
+    @Override
+    public int deleteIds(Collection<Integer> ids) throws SQLException {
+        try {
+            return super.deleteIds(ids);
+        } finally {
+            invalidateCaches();
+        }
+    }
+
+    @Override
+    public int delete(PreparedDelete<T> preparedDelete) throws SQLException {
+        try {
+            return super.delete(preparedDelete);
+        } finally {
+            invalidateCaches();
+        }
+    }
+
+    @Override
+    public int executeRaw(String statement, String... arguments) throws SQLException {
+        try {
+            return super.executeRaw(statement, arguments);
+        } finally {
+            invalidateCaches();
+        }
+    }
+
+    @Override
+    public int executeRawNoArgs(String statement) throws SQLException {
+        try {
+            return super.executeRawNoArgs(statement);
+        } finally {
+            invalidateCaches();
+        }
+    }
+
+    @Override
+    public int updateRaw(String statement, String... arguments) throws SQLException {
+        try {
+            return super.updateRaw(statement, arguments);
+        } finally {
+            invalidateCaches();
+        }
+    }
+
+    /**
+     * Makes the name index and the key filter read every value again before they are next used,
+     * and moves the CatalogueVersion forward so the cached searches are thrown away,
+     * for writes they cannot follow row by row.
+     */
+    public void invalidateCaches() {
+        nameIndex.invalidate();
+        keyFilter.invalidate();
+        CatalogueVersion.bump();
+    }
+
+    /**
+     * Reads the names into the index and the keys into the filter now, so the first lookup does not have to wait.
+     */
+    public void warmUpCaches() {
+        nameIndex.size();
+        keyFilter.load();
+    }
+
+    /**
+     * Reads the ID and name of every row, for the index.
+     * @return Map from ID to name
+     * @throws SQLException If something goes wrong while querying
+     */
+    private Map<Integer, String> loadNames() throws SQLException {
+        Map<Integer, String> names = new HashMap<>();
+        for (T data : queryBuilder().selectColumns(nameField).query()) {
+            names.put(idOf.apply(data), nameOf.apply(data));
+        }
+        return names;
+    }
+
+    /**
+     * Reads the value of the key column of every row, for the filter.
+     * @return The values, in no particular order
+     * @throws SQLException If something goes wrong while querying
+     */
+    private List<String> loadKeys() throws SQLException {
+        List<String> keys = new ArrayList<>();
+        for (T data : queryBuilder().selectColumns(keyField).query()) {
+            keys.add(keyOf.apply(data));
+        }
+        return keys;
+    }
+}
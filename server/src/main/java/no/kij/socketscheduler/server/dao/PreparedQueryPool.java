@@ -0,0 +1,146 @@
+package no.kij.socketscheduler.server.dao;
+
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.stmt.PreparedQuery;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps prepared queries around, so a query is built once per dao instead of once per call.
+ *
+ * A PreparedQuery holds the value of its argument, so it can only be used by one thread at a time.
+ * A query is therefore taken out of the pool while it runs and put back afterwards,
+ * and a new one is only built when every query in the pool is in use.
+ * Every pool counts how often a query could be reused, and the counts of all pools are
+ * added together so the hit rate of the whole server can be reported.
+ *
+ * @param <T> The type the query returns
+ */
+public class PreparedQueryPool<T> {
+    private static final int MAX_IDLE_QUERIES = 32;
+    private static final AtomicLong totalHits = new AtomicLong();
+    private static final AtomicLong totalMisses = new AtomicLong();
+
+    private final Dao<T, ?> dao;
+    private final QueryFactory<T> factory;
+    private final Queue<PreparedQuery<T>> idleQueries;
+    private final AtomicInteger idleCount;
+    private final AtomicLong hits;
+    private final AtomicLong misses;
+
+    /**
+     * Creates an empty pool. No query is built until it is first needed.
+     * @param dao Dao to run the queries with
+     * @param factory Builds a new query, taking a single argument
+     */
+    public PreparedQueryPool(Dao<T, ?> dao, QueryFactory<T> factory) {
+        this.dao = dao;
+        this.factory = factory;
+        idleQueries = new ConcurrentLinkedQueue<>();
+        idleCount = new AtomicInteger();
+        hits = new AtomicLong();
+        misses = new AtomicLong();
+    }
+
+    /**
+     * Runs the query with the given argument.
+     * @param argument Value of the argument of the query
+     * @return List of everything the query found
+     * @throws SQLException If the query could not be built or run
+     */
+    public List<T> query(Object argument) throws SQLException {
+        PreparedQuery<T> preparedQuery = acquire();
+        try {
+            preparedQuery.setArgumentHolderValue(0, argument);
+            return dao.query(preparedQuery);
+        } finally {
+            release(preparedQuery);
+        }
+    }
+
+    /**
+     * Runs the query with the given argument, only returning the first result.
+     * @param argument Value of the argument of the query
+     * @return The first result, or null if nothing was found
+     * @throws SQLException If the query could not be built or run
+     */
+    public T queryForFirst(Object argument) throws SQLException {
+        PreparedQuery<T> preparedQuery = acquire();
+        try {
+            preparedQuery.setArgumentHolderValue(0, argument);
+            return dao.queryForFirst(preparedQuery);
+        } finally {
+            release(preparedQuery);
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return Share of the calls that could reuse a query, between 0 and 1
+     */
+    public double getHitRate() {
+        return hitRate(hits.get(), misses.get());
+    }
+
+    public static long getTotalHits() {
+        return totalHits.get();
+    }
+
+    public static long getTotalMisses() {
+        return totalMisses.get();
+    }
+
+    /**
+     * @return Share of the calls in every pool that could reuse a query, between 0 and 1
+     */
+    public static double getTotalHitRate() {
+        return hitRate(totalHits.get(), totalMisses.get());
+    }
+
+    private PreparedQuery<T> acquire() throws SQLException {
+        PreparedQuery<T> preparedQuery = idleQueries.poll();
+        if (preparedQuery != null) {
+            idleCount.decrementAndGet();
+            hits.incrementAndGet();
+            totalHits.incrementAndGet();
+            return preparedQuery;
+        }
+        misses.incrementAndGet();
+        totalMisses.incrementAndGet();
+        return factory.prepare();
+    }
+
+    private void release(PreparedQuery<T> preparedQuery) {
+        // a burst of concurrent calls should not leave the pool holding more queries than it needs afterwards
+        if (idleCount.incrementAndGet() <= MAX_IDLE_QUERIES) {
+            idleQueries.offer(preparedQuery);
+        } else {
+            idleCount.decrementAndGet();
+        }
+    }
+
+    private static double hitRate(long hits, long misses) {
+        long calls = hits + misses;
+        return calls == 0 ? 0 : (double) hits / calls;
+    }
+
+    /**
+     * Builds a new prepared query, taking a single argument.
+     * @param <T> The type the query returns
+     */
+    public interface QueryFactory<T> {
+        PreparedQuery<T> prepare() throws SQLException;
+    }
+}
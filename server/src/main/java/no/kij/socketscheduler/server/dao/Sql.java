@@ -0,0 +1,35 @@
+package no.kij.socketscheduler.server.dao;
+
+import com.j256.ormlite.db.DatabaseType;
+
+/**
+ * This class consists exclusively of static methods helping the daos write raw SQL,
+ * escaping the table and column names the way the database type wants them.
+ */
+final class Sql {
+    private Sql() {
+    }
+
+    /**
+     * @param databaseType Type of the database the SQL is for
+     * @param name Name of a table or column
+     * @return The name escaped
+     */
+    static String escape(DatabaseType databaseType, String name) {
+        StringBuilder sb = new StringBuilder();
+        databaseType.appendEscapedEntityName(sb, name);
+        return sb.toString();
+    }
+
+    /**
+     * @param databaseType Type of the database the SQL is for
+     * @param alias Alias of the table the column is in
+     * @param column Name of the column
+     * @return The column escaped and qualified by the alias, like alias.`column`
+     */
+    static String escape(DatabaseType databaseType, String alias, String column) {
+        StringBuilder sb = new StringBuilder(alias).append('.');
+        databaseType.appendEscapedEntityName(sb, column);
+        return sb.toString();
+    }
+}
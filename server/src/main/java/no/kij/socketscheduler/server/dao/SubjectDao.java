@@ -5,7 +5,9 @@ import no.kij.socketscheduler.server.dto.LecturerDTO;
 import no.kij.socketscheduler.server.dto.SubjectDTO;
 
 import java.sql.SQLException;
+import java.util.Collection;
 import java.util.List;
+import java.util.function.Predicate;
 
 /**
  * An interface for SubjectDao adding more methods.
@@ -13,7 +15,12 @@ import java.util.List;
 public interface SubjectDao extends Dao<SubjectDTO, Integer> {
     List<LecturerDTO> findLecturersForSubject(SubjectDTO subjectDTO) throws SQLException;
     SubjectDTO updateSubject(SubjectDTO subjectDTO) throws SQLException;
+    void createAll(Collection<LecturerDTO> lecturers, Collection<SubjectDTO> subjects) throws SQLException;
     SubjectDTO findSubjectByCode(String subjectCode);
     SubjectDTO findSubjectByName(String subjectName);
     SubjectDTO findSubjectByCodeOrName(String subject);
+    List<SubjectDTO> searchSubjects(String term, int limit);
+    void forEachByCode(String afterCode, int limit, Predicate<SubjectDTO> visitor) throws SQLException;
+    void invalidateCaches();
+    void warmUpCaches();
 }
@@ -1,30 +1,62 @@
 package no.kij.socketscheduler.server.dao;
 
-import com.j256.ormlite.dao.BaseDaoImpl;
+import com.j256.ormlite.dao.CloseableIterator;
 import com.j256.ormlite.dao.Dao;
 import com.j256.ormlite.dao.DaoManager;
+import com.j256.ormlite.db.DatabaseType;
+import com.j256.ormlite.field.DataType;
+import com.j256.ormlite.jdbc.JdbcDatabaseConnection;
+import com.j256.ormlite.misc.TransactionManager;
 import com.j256.ormlite.stmt.PreparedQuery;
 import com.j256.ormlite.stmt.QueryBuilder;
 import com.j256.ormlite.stmt.SelectArg;
 import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.support.DatabaseConnection;
+import com.j256.ormlite.table.DatabaseTableConfig;
+import no.kij.socketscheduler.server.cache.CatalogueVersion;
 import no.kij.socketscheduler.server.dto.LecturerDTO;
 import no.kij.socketscheduler.server.dto.SubjectDTO;
 import no.kij.socketscheduler.server.dto.SubjectLecturerDTO;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.function.Predicate;
+
+import static no.kij.socketscheduler.server.dao.Sql.escape;
 
 /**
  * JDBC specific implementation for the SubjectDao interface.
  */
-public class SubjectDaoImpl extends BaseDaoImpl<SubjectDTO, Integer> implements SubjectDao {
+public class SubjectDaoImpl extends NameIndexedDaoImpl<SubjectDTO> implements SubjectDao {
     private Dao<SubjectLecturerDTO, Integer> subjectLecturerDao;
-    private Dao<LecturerDTO, Integer> lecturerDao;
+    private LecturerDao lecturerDao;
+    private String lecturersForAllSubjectsQuery;
+    private PreparedQueryPool<SubjectDTO> subjectByCodeQueries;
+    private PreparedQueryPool<LecturerDTO> lecturersForSubjectQueries;
+    private BulkLoader bulkLoader;
 
     public SubjectDaoImpl(ConnectionSource connectionSource) throws SQLException {
-        super(connectionSource, SubjectDTO.class);
+        super(connectionSource, SubjectDTO.class, SubjectDTO.NAME_FIELD, SubjectDTO::getId, SubjectDTO::getName,
+                SubjectDTO.SHORT_CODE_FIELD, SubjectDTO::getShortName);
         subjectLecturerDao = DaoManager.createDao(connectionSource, SubjectLecturerDTO.class);
         lecturerDao = DaoManager.createDao(connectionSource, LecturerDTO.class);
+        lecturersForAllSubjectsQuery = makeLecturersForAllSubjectsQuery(connectionSource.getDatabaseType());
+        subjectByCodeQueries = new PreparedQueryPool<>(this, this::makeSubjectByCodeQuery);
+        lecturersForSubjectQueries = new PreparedQueryPool<>(lecturerDao, this::makeLecturerForSubjectQuery);
+        bulkLoader = new BulkLoader(connectionSource.getDatabaseType());
+
+        // any write to the subjects or who teaches them makes the cached searches out of date
+        registerObserver(CatalogueVersion.OBSERVER);
+        subjectLecturerDao.registerObserver(CatalogueVersion.OBSERVER);
     }
 
     /**
@@ -34,28 +66,65 @@ public class SubjectDaoImpl extends BaseDaoImpl<SubjectDTO, Integer> implements
      * @return SubjectDTO if found, null if not
      */
     public SubjectDTO findSubjectByCodeOrName(String subject) {
-        SubjectDTO subjectDTO = findSubjectByCode(subject);
-        if (subjectDTO == null) {
-            subjectDTO = findSubjectByName(subject);
+        return lookupSubjectByCodeOrName(subject);
+    }
+
+    /**
+     * The private implementation for finding a subject by code or name, going to the database.
+     * The name index picks the subject to use if the code is not found, and both are fetched with their lecturers
+     * using the query the search uses, so it takes a single query either way. If no name matches and the key filter
+     * knows of no subject with the code, the database is not asked at all.
+     * @param subject The subject name or code to query for
+     * @return SubjectDTO if found, null if not
+     */
+    private SubjectDTO lookupSubjectByCodeOrName(String subject) {
+        try {
+            for (int attempt = 0; attempt < 2; attempt++) {
+                Integer nameMatch = getNameIndex().first(subject);
+                String code = getKeyFilter().mightContain(subject) ? subject : null;
+                if (nameMatch == null && code == null) {
+                    return null;
+                }
+                Map<Integer, SubjectDTO> subjects = querySubjectsByCodeOrIds(new String[] { code },
+                        nameMatch != null ? Collections.singletonList(nameMatch) : Collections.emptyList());
+                SubjectDTO subjectDTO = code != null ? findCode(subjects.values(), code) : null;
+                if (code != null && subjectDTO == null) {
+                    getKeyFilter().recordFalsePositive();
+                }
+                if (subjectDTO == null && nameMatch != null) {
+                    subjectDTO = subjects.get(nameMatch);
+                }
+                if (subjectDTO == null ? nameMatch == null : isMatch(subjectDTO, subject)) {
+                    return subjectDTO;
+                }
+                // the subject was changed without going through this dao, so the names and keys are read again
+                invalidateCaches();
+            }
+        } catch (SQLException e) {
+            System.err.println(e.getMessage());
         }
-        return subjectDTO;
+        return null;
     }
 
     /**
-     * Find a subject using a partial name
+     * @return true if the subject has the code searched for, or a name containing it
+     */
+    private boolean isMatch(SubjectDTO subjectDTO, String subject) {
+        return getCollation().key(subjectDTO.getShortName()).equals(getCollation().key(subject))
+                || nameContains(subjectDTO, subject);
+    }
+
+    /**
+     * Find a subject using a partial name.
+     * The name index is searched instead of the subjects table, and only the subject found is queried for.
      * @param subjectName The full or partial name to query for
      * @return SubjectDTO if found, null if not
      */
     public SubjectDTO findSubjectByName(String subjectName) {
         SubjectDTO subjectDTO = null;
         try {
-            QueryBuilder<SubjectDTO, Integer> queryBuilder = queryBuilder();
-            queryBuilder.where().like(SubjectDTO.NAME_FIELD, "%"+subjectName+"%");
-            PreparedQuery<SubjectDTO> preparedQuery = queryBuilder.prepare();
-            subjectDTO = queryForFirst(preparedQuery);
-            if (subjectDTO != null) {
-                subjectDTO.setLecturers(findLecturersForSubject(subjectDTO));
-            }
+            // queryForId fills in the lecturers
+            subjectDTO = queryForFirstNameMatch(subjectName);
         } catch (SQLException e) {
             System.err.println(e.getMessage());
         }
@@ -63,19 +132,130 @@ public class SubjectDaoImpl extends BaseDaoImpl<SubjectDTO, Integer> implements
     }
 
     /**
-     * Find a subject by code
+     * Search for subjects, putting a subject with the code searched for first,
+     * followed by the subjects with the best matching names.
+     * The name index ranks the names, and the subjects ranked are fetched with their lecturers in a single query,
+     * which also looks for the code. If nothing is ranked and the key filter knows of no subject with the code,
+     * the database is not asked at all.
+     * Searches for the same term at the same time are shared by AsyncSubjectDao, before they reach a database thread.
+     * @param term Code or name to search for
+     * @param limit The most subjects to return
+     * @return The subjects found, best match first
+     */
+    public List<SubjectDTO> searchSubjects(String term, int limit) {
+        List<SubjectDTO> found = new ArrayList<>();
+        if (term == null || limit <= 0) {
+            return found;
+        }
+        try {
+            // commands arrive in lower case, while codes are written in upper case
+            String code = term.trim();
+            String upperCode = code.toUpperCase(Locale.ROOT);
+            String[] codes = {
+                    getKeyFilter().mightContain(code) ? code : null,
+                    !upperCode.equals(code) && getKeyFilter().mightContain(upperCode) ? upperCode : null
+            };
+            List<Integer> ranked = rankNameMatches(term, limit);
+            if (codes[0] == null && codes[1] == null && ranked.isEmpty()) {
+                return found;
+            }
+
+            Map<Integer, SubjectDTO> subjects = querySubjectsByCodeOrIds(codes, ranked);
+            SubjectDTO byCode = null;
+            for (String searched : codes) {
+                SubjectDTO subjectDTO = searched != null ? findCode(subjects.values(), searched) : null;
+                if (searched != null && subjectDTO == null) {
+                    getKeyFilter().recordFalsePositive();
+                }
+                if (byCode == null) {
+                    byCode = subjectDTO;
+                }
+            }
+            if (byCode != null) {
+                found.add(byCode);
+            }
+            for (Integer id : ranked) {
+                SubjectDTO subjectDTO = subjects.get(id);
+                // a subject deleted without going through this dao is just left out
+                if (subjectDTO != null && subjectDTO != byCode && found.size() < limit) {
+                    found.add(subjectDTO);
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println(e.getMessage());
+        }
+        return found;
+    }
+
+    /**
+     * @return The subject with the given code, compared the way the database compares it, or null if none has it
+     */
+    private SubjectDTO findCode(Collection<SubjectDTO> subjects, String code) {
+        for (SubjectDTO subjectDTO : subjects) {
+            if (getCollation().key(subjectDTO.getShortName()).equals(getCollation().key(code))) {
+                return subjectDTO;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Runs the query finding the subjects with either of the codes or any of the IDs, with their lecturers.
+     * @param codes Codes to search for, any of which may be null
+     * @param ids IDs of subjects to fetch
+     * @return The subjects found by ID, each with their lecturers
+     * @throws SQLException If something goes wrong while querying
+     */
+    private Map<Integer, SubjectDTO> querySubjectsByCodeOrIds(String[] codes, List<Integer> ids) throws SQLException {
+        DataType[] columnTypes = {
+                DataType.INTEGER, DataType.STRING, DataType.STRING, DataType.INTEGER, DataType.INTEGER, DataType.STRING
+        };
+        String[] arguments = new String[codes.length + ids.size()];
+        System.arraycopy(codes, 0, arguments, 0, codes.length);
+        for (int i = 0; i < ids.size(); i++) {
+            arguments[codes.length + i] = ids.get(i).toString();
+        }
+        String sql = makeSubjectsByCodeOrIdsQuery(connectionSource.getDatabaseType(), codes.length, ids.size());
+
+        Map<Integer, SubjectDTO> subjects = new HashMap<>();
+        for (Object[] row : queryRaw(sql, columnTypes, arguments).getResults()) {
+            SubjectDTO subjectDTO = subjects.get((Integer) row[0]);
+            if (subjectDTO == null) {
+                subjectDTO = new SubjectDTO();
+                subjectDTO.setId((Integer) row[0]);
+                subjectDTO.setShortName((String) row[1]);
+                subjectDTO.setName((String) row[2]);
+                subjectDTO.setEnrolled((Integer) row[3]);
+                subjects.put(subjectDTO.getId(), subjectDTO);
+            }
+            // a subject without lecturers comes back as a single row where the lecturer name is null
+            if (row[5] != null) {
+                LecturerDTO lecturerDTO = new LecturerDTO();
+                lecturerDTO.setId((Integer) row[4]);
+                lecturerDTO.setName((String) row[5]);
+                subjectDTO.getLecturers().add(lecturerDTO);
+            }
+        }
+        return subjects;
+    }
+
+    /**
+     * Find a subject by code.
+     * The database is not asked if the key filter knows of no subject with the code.
      * @param subjectCode Subject code to search for
      * @return SubjectDTO if found, null if not
      */
     public SubjectDTO findSubjectByCode(String subjectCode) {
+        if (!getKeyFilter().mightContain(subjectCode)) {
+            return null;
+        }
         SubjectDTO subjectDTO = null;
         try {
-            QueryBuilder<SubjectDTO, Integer> queryBuilder = queryBuilder();
-            queryBuilder.where().eq(SubjectDTO.SHORT_CODE_FIELD, subjectCode);
-            PreparedQuery<SubjectDTO> preparedQuery = queryBuilder.prepare();
-            subjectDTO = queryForFirst(preparedQuery);
+            subjectDTO = subjectByCodeQueries.queryForFirst(subjectCode);
             if (subjectDTO != null) {
                 subjectDTO.setLecturers(findLecturersForSubject(subjectDTO));
+            } else if (subjectCode != null) {
+                getKeyFilter().recordFalsePositive();
             }
         } catch (SQLException e) {
             System.err.println(e.getMessage());
@@ -100,18 +280,71 @@ public class SubjectDaoImpl extends BaseDaoImpl<SubjectDTO, Integer> implements
 
     /**
      * Fetch a list of all subjects in the database.
+     * The lecturers of every subject are fetched with a single query and matched up in memory,
+     * so listing the subjects takes two queries no matter how many subjects there are.
      * @return List containing SubjectDTO
      * @throws SQLException If something goes wrong with the query
      */
     @Override
     public List<SubjectDTO> queryForAll() throws SQLException {
         List<SubjectDTO> subjectDTOs = super.queryForAll();
+        Map<Integer, List<LecturerDTO>> lecturersBySubject = lookupLecturersForAllSubjects();
         for (SubjectDTO subjectDTO : subjectDTOs) {
-            subjectDTO.setLecturers(findLecturersForSubject(subjectDTO));
+            List<LecturerDTO> lecturers = lecturersBySubject.get(subjectDTO.getId());
+            subjectDTO.setLecturers(lecturers != null ? lecturers : new ArrayList<>());
         }
         return subjectDTOs;
     }
 
+    /**
+     * Goes through the subjects in order of code, each with its lecturers, reading the rows as they are needed.
+     * The subjects are joined with their lecturers in a single query, and a subject is let go once the visitor
+     * is done with it, so even the whole catalogue is listed without holding it in memory.
+     * A database connection is held until the visitor is done or stops.
+     * @param afterCode Only go through the subjects with a code after this one, or null to start from the first
+     * @param limit The most subjects to go through, or 0 for every one
+     * @param visitor Called with each subject in turn, returning false to stop
+     * @throws SQLException If something goes wrong while querying
+     */
+    public void forEachByCode(String afterCode, int limit, Predicate<SubjectDTO> visitor) throws SQLException {
+        DataType[] columnTypes = {
+                DataType.INTEGER, DataType.STRING, DataType.STRING, DataType.INTEGER, DataType.INTEGER, DataType.STRING
+        };
+        String sql = makeSubjectsByCodeQuery(connectionSource.getDatabaseType(), afterCode != null, limit);
+        String[] arguments = afterCode != null ? new String[] { afterCode } : new String[0];
+        CloseableIterator<Object[]> rows = queryRaw(sql, columnTypes, arguments).closeableIterator();
+        try {
+            int visited = 0;
+            SubjectDTO current = null;
+            Object[] row;
+            while ((row = rows.nextThrow()) != null) {
+                Integer subjectId = (Integer) row[0];
+                if (current == null || !current.getId().equals(subjectId)) {
+                    if (current != null && (!visitor.test(current) || ++visited == limit)) {
+                        return;
+                    }
+                    current = new SubjectDTO();
+                    current.setId(subjectId);
+                    current.setShortName((String) row[1]);
+                    current.setName((String) row[2]);
+                    current.setEnrolled((Integer) row[3]);
+                }
+                // a subject without lecturers comes back as a single row where the lecturer name is null
+                if (row[5] != null) {
+                    LecturerDTO lecturerDTO = new LecturerDTO();
+                    lecturerDTO.setId((Integer) row[4]);
+                    lecturerDTO.setName((String) row[5]);
+                    current.getLecturers().add(lecturerDTO);
+                }
+            }
+            if (current != null) {
+                visitor.test(current);
+            }
+        } finally {
+            rows.closeQuietly();
+        }
+    }
+
     /**
      * Persists the given subject to the database if they already do not exist.
      * @param data The subjectDTO to persist
@@ -120,15 +353,21 @@ public class SubjectDaoImpl extends BaseDaoImpl<SubjectDTO, Integer> implements
      */
     @Override
     public SubjectDTO createIfNotExists(SubjectDTO data) throws SQLException {
-        super.createIfNotExists(data);
-        for (LecturerDTO lecturerDTO : data.getLecturers()) {
-            lecturerDao.createIfNotExists(lecturerDTO);
-            SubjectLecturerDTO sld = new SubjectLecturerDTO();
-            sld.setLecturerDTO(lecturerDTO);
-            sld.setSubjectDTO(data);
-            subjectLecturerDao.createIfNotExists(sld);
-        }
-        return data;
+        // the subject, its lecturers and the bindings are committed together
+        return callBatchTasks(() -> {
+            super.createIfNotExists(data);
+            Set<Integer> linked = lecturerIdsOf(data);
+            for (LecturerDTO lecturerDTO : data.getLecturers()) {
+                lecturerDao.createIfNotExists(lecturerDTO);
+                if (linked.add(lecturerDTO.getId())) {
+                    SubjectLecturerDTO sld = new SubjectLecturerDTO();
+                    sld.setLecturerDTO(lecturerDTO);
+                    sld.setSubjectDTO(data);
+                    subjectLecturerDao.create(sld);
+                }
+            }
+            return data;
+        });
     }
 
     /**
@@ -138,16 +377,77 @@ public class SubjectDaoImpl extends BaseDaoImpl<SubjectDTO, Integer> implements
      * @throws SQLException IF something goes wrong
      */
     public SubjectDTO updateSubject(SubjectDTO data) throws SQLException {
-        super.createOrUpdate(data);
-        for (LecturerDTO lecturerDTO : data.getLecturers()) {
-            lecturerDao.createOrUpdate(lecturerDTO);
-            SubjectLecturerDTO sld = new SubjectLecturerDTO();
-            sld.setLecturerDTO(lecturerDTO);
-            sld.setSubjectDTO(data);
-            subjectLecturerDao.createOrUpdate(sld);
+        return callBatchTasks(() -> {
+            super.createOrUpdate(data);
+            Set<Integer> linked = lecturerIdsOf(data);
+            for (LecturerDTO lecturerDTO : data.getLecturers()) {
+                lecturerDao.createOrUpdate(lecturerDTO);
+                if (linked.add(lecturerDTO.getId())) {
+                    SubjectLecturerDTO sld = new SubjectLecturerDTO();
+                    sld.setLecturerDTO(lecturerDTO);
+                    sld.setSubjectDTO(data);
+                    subjectLecturerDao.create(sld);
+                }
+            }
+            return data;
+        });
+    }
+
+    /**
+     * Creates the lecturers and subjects, binding every subject to its lecturers, in one transaction,
+     * or as part of the transaction already running on this thread.
+     * The rows are inserted in JDBC batches, and the lecturers of the subjects are matched up by name in memory,
+     * so loading a large catalogue takes a handful of round trips instead of several per row.
+     * A lecturer already in the database, or given more than once, is only created once.
+     * @param lecturers Lecturers to create, along with the ones teaching the subjects
+     * @param subjects Subjects to create
+     * @throws SQLException If anything could not be created, in which case nothing is
+     */
+    public void createAll(Collection<LecturerDTO> lecturers, Collection<SubjectDTO> subjects) throws SQLException {
+        String tableName = DatabaseTableConfig.extractTableName(SubjectDTO.class);
+        Callable<Void> load = () -> {
+            DatabaseConnection connection = connectionSource.getReadWriteConnection(tableName);
+            try {
+                if (!(connection instanceof JdbcDatabaseConnection)) {
+                    throw new SQLException("Bulk loading needs a JDBC connection.");
+                }
+                bulkLoader.load(((JdbcDatabaseConnection) connection).getInternalConnection(), lecturers, subjects);
+            } finally {
+                connectionSource.releaseConnection(connection);
+            }
+            return null;
+        };
+        try {
+            if (connectionSource.getSpecialConnection(tableName) != null) {
+                // already part of a transaction, which a transaction of its own would commit early
+                load.call();
+            } else {
+                TransactionManager.callInTransaction(connectionSource, load);
+            }
+        } catch (SQLException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new SQLException(e);
+        } finally {
+            // the rows were written without going through the daos, so what they hold in memory is out of date
+            invalidateCaches();
+            lecturerDao.invalidateCaches();
         }
-        return data;
+    }
 
+    /**
+     * Finds the IDs of the lecturers already bound to the subject,
+     * since subject_lecturer only allows binding a lecturer to a subject once.
+     * @param data Subject to find the lecturers of
+     * @return Set of lecturer IDs, which is empty for a subject that was just created
+     * @throws SQLException If something goes wrong while querying
+     */
+    private Set<Integer> lecturerIdsOf(SubjectDTO data) throws SQLException {
+        Set<Integer> ids = new HashSet<>();
+        for (LecturerDTO lecturerDTO : lookupLecturersForSubject(data)) {
+            ids.add(lecturerDTO.getId());
+        }
+        return ids;
     }
 
     /**
@@ -168,9 +468,141 @@ public class SubjectDaoImpl extends BaseDaoImpl<SubjectDTO, Integer> implements
      * @throws SQLException If something goes wrong while querying
      */
     private List<LecturerDTO> lookupLecturersForSubject(SubjectDTO data) throws SQLException {
-        PreparedQuery<LecturerDTO> lecturersForSubjectQuery = makeLecturerForSubjectQuery();
-        lecturersForSubjectQuery.setArgumentHolderValue(0, data);
-        return lecturerDao.query(lecturersForSubjectQuery);
+        return lecturersForSubjectQueries.query(data);
+    }
+
+    /**
+     * Finds the lecturers of every subject in one query.
+     * @return Map from subject ID to the lecturers of that subject, leaving out subjects without lecturers
+     * @throws SQLException If something goes wrong while querying
+     */
+    private Map<Integer, List<LecturerDTO>> lookupLecturersForAllSubjects() throws SQLException {
+        DataType[] columnTypes = { DataType.INTEGER, DataType.INTEGER, DataType.STRING };
+        Map<Integer, List<LecturerDTO>> lecturersBySubject = new HashMap<>();
+        for (Object[] row : lecturerDao.queryRaw(lecturersForAllSubjectsQuery, columnTypes).getResults()) {
+            LecturerDTO lecturerDTO = new LecturerDTO();
+            lecturerDTO.setId((Integer) row[1]);
+            lecturerDTO.setName((String) row[2]);
+            lecturersBySubject.computeIfAbsent((Integer) row[0], id -> new ArrayList<>()).add(lecturerDTO);
+        }
+        return lecturersBySubject;
+    }
+
+    /**
+     * Creates the query joining every subject_lecturer row with its lecturer.
+     * Rows are ordered by lecturer ID within each subject, matching the order of findLecturersForSubject.
+     * @param databaseType Type of the database, used to escape the table and column names
+     * @return SQL selecting subject ID, lecturer ID and lecturer name
+     */
+    private String makeLecturersForAllSubjectsQuery(DatabaseType databaseType) {
+        String subjectId = escape(databaseType, "sl", SubjectLecturerDTO.SUBJECT_ID_FIELD);
+        String lecturerId = escape(databaseType, "l", LecturerDTO.ID_FIELD);
+
+        StringBuilder sql = new StringBuilder("SELECT DISTINCT ");
+        sql.append(subjectId).append(", ").append(lecturerId).append(", ")
+                .append(escape(databaseType, "l", LecturerDTO.LECTURER_NAME_FIELD));
+        sql.append(" FROM ");
+        databaseType.appendEscapedEntityName(sql, DatabaseTableConfig.extractTableName(SubjectLecturerDTO.class));
+        sql.append(" sl INNER JOIN ");
+        databaseType.appendEscapedEntityName(sql, DatabaseTableConfig.extractTableName(LecturerDTO.class));
+        sql.append(" l ON ").append(lecturerId).append(" = ")
+                .append(escape(databaseType, "sl", SubjectLecturerDTO.LECTURER_ID_FIELD));
+        sql.append(" ORDER BY ").append(subjectId).append(", ").append(lecturerId);
+        return sql.toString();
+    }
+
+    /**
+     * Creates the query finding the subjects with any of the given codes or IDs, each with its lecturers.
+     * Like the list query it does not ask for DISTINCT rows, which subject_lecturer_pair_idx already makes sure of.
+     * @param databaseType Type of the database, used to escape the table and column names
+     * @param codes Number of codes the query takes as its first arguments, at least 1
+     * @param ids Number of IDs the query takes after the codes
+     * @return SQL selecting subject ID, code, name and enrolled, and lecturer ID and name, one row per lecturer
+     */
+    private String makeSubjectsByCodeOrIdsQuery(DatabaseType databaseType, int codes, int ids) {
+        String subjectId = escape(databaseType, "s", SubjectDTO.ID_FIELD);
+        String lecturerId = escape(databaseType, "l", LecturerDTO.ID_FIELD);
+
+        StringBuilder sql = new StringBuilder("SELECT ");
+        sql.append(subjectId).append(", ")
+                .append(escape(databaseType, "s", SubjectDTO.SHORT_CODE_FIELD)).append(", ")
+                .append(escape(databaseType, "s", SubjectDTO.NAME_FIELD)).append(", ")
+                .append(escape(databaseType, "s", SubjectDTO.ENROLLED_FIELD)).append(", ")
+                .append(lecturerId).append(", ")
+                .append(escape(databaseType, "l", LecturerDTO.LECTURER_NAME_FIELD));
+        sql.append(" FROM ");
+        databaseType.appendEscapedEntityName(sql, DatabaseTableConfig.extractTableName(SubjectDTO.class));
+        sql.append(" s LEFT JOIN ");
+        databaseType.appendEscapedEntityName(sql, DatabaseTableConfig.extractTableName(SubjectLecturerDTO.class));
+        sql.append(" sl ON ").append(escape(databaseType, "sl", SubjectLecturerDTO.SUBJECT_ID_FIELD))
+                .append(" = ").append(subjectId);
+        sql.append(" LEFT JOIN ");
+        databaseType.appendEscapedEntityName(sql, DatabaseTableConfig.extractTableName(LecturerDTO.class));
+        sql.append(" l ON ").append(lecturerId).append(" = ")
+                .append(escape(databaseType, "sl", SubjectLecturerDTO.LECTURER_ID_FIELD));
+        sql.append(" WHERE ").append(escape(databaseType, "s", SubjectDTO.SHORT_CODE_FIELD)).append(" IN ");
+        appendPlaceholders(sql, codes);
+        if (ids > 0) {
+            sql.append(" OR ").append(subjectId).append(" IN ");
+            appendPlaceholders(sql, ids);
+        }
+        sql.append(" ORDER BY ").append(subjectId).append(", ").append(lecturerId);
+        return sql.toString();
+    }
+
+    /**
+     * Creates the query joining a page of subjects, in order of code, with their lecturers.
+     * The subjects are picked in a subquery, so the limit counts subjects rather than rows.
+     * Unlike the other joins it does not ask for DISTINCT rows, which subject_lecturer_pair_idx already makes sure of,
+     * so the database can send the first rows before it has found the last.
+     * @param databaseType Type of the database, used to escape the table and column names
+     * @param after true to take the code to start after as the argument
+     * @param limit The most subjects to select, or 0 for every one
+     * @return SQL selecting subject ID, code, name and enrolled, and lecturer ID and name, one row per lecturer
+     */
+    private String makeSubjectsByCodeQuery(DatabaseType databaseType, boolean after, int limit) {
+        String subjectId = escape(databaseType, "s", SubjectDTO.ID_FIELD);
+        String code = escape(databaseType, "s", SubjectDTO.SHORT_CODE_FIELD);
+        String lecturerId = escape(databaseType, "l", LecturerDTO.ID_FIELD);
+
+        StringBuilder sql = new StringBuilder("SELECT ");
+        sql.append(subjectId).append(", ").append(code).append(", ")
+                .append(escape(databaseType, "s", SubjectDTO.NAME_FIELD)).append(", ")
+                .append(escape(databaseType, "s", SubjectDTO.ENROLLED_FIELD)).append(", ")
+                .append(lecturerId).append(", ")
+                .append(escape(databaseType, "l", LecturerDTO.LECTURER_NAME_FIELD));
+        sql.append(" FROM (SELECT ").append(escape(databaseType, "p", SubjectDTO.ID_FIELD)).append(", ")
+                .append(escape(databaseType, "p", SubjectDTO.SHORT_CODE_FIELD)).append(", ")
+                .append(escape(databaseType, "p", SubjectDTO.NAME_FIELD)).append(", ")
+                .append(escape(databaseType, "p", SubjectDTO.ENROLLED_FIELD)).append(" FROM ");
+        databaseType.appendEscapedEntityName(sql, DatabaseTableConfig.extractTableName(SubjectDTO.class));
+        sql.append(" p");
+        if (after) {
+            sql.append(" WHERE ").append(escape(databaseType, "p", SubjectDTO.SHORT_CODE_FIELD)).append(" > ?");
+        }
+        sql.append(" ORDER BY ").append(escape(databaseType, "p", SubjectDTO.SHORT_CODE_FIELD)).append(' ');
+        appendLimit(sql, databaseType, limit);
+        sql.append(") s LEFT JOIN ");
+        databaseType.appendEscapedEntityName(sql, DatabaseTableConfig.extractTableName(SubjectLecturerDTO.class));
+        sql.append(" sl ON ").append(escape(databaseType, "sl", SubjectLecturerDTO.SUBJECT_ID_FIELD))
+                .append(" = ").append(subjectId);
+        sql.append(" LEFT JOIN ");
+        databaseType.appendEscapedEntityName(sql, DatabaseTableConfig.extractTableName(LecturerDTO.class));
+        sql.append(" l ON ").append(lecturerId).append(" = ")
+                .append(escape(databaseType, "sl", SubjectLecturerDTO.LECTURER_ID_FIELD));
+        sql.append(" ORDER BY ").append(code).append(", ").append(lecturerId);
+        return sql.toString();
+    }
+
+    /**
+     * Creates the query used to find a subject by its code.
+     * @return PreparedQuery taking the code as its argument
+     * @throws SQLException If query could not be prepared
+     */
+    private PreparedQuery<SubjectDTO> makeSubjectByCodeQuery() throws SQLException {
+        QueryBuilder<SubjectDTO, Integer> queryBuilder = queryBuilder();
+        queryBuilder.where().eq(SubjectDTO.SHORT_CODE_FIELD, new SelectArg());
+        return queryBuilder.prepare();
     }
 
     /**
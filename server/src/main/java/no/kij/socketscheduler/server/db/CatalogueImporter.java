@@ -0,0 +1,88 @@
+package no.kij.socketscheduler.server.db;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+import no.kij.socketscheduler.server.dao.SubjectDao;
+import no.kij.socketscheduler.server.dto.LecturerDTO;
+import no.kij.socketscheduler.server.dto.SubjectDTO;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reads lecturers and subjects from JSON one at a time in a single pass, handing them to the subject dao in batches.
+ * Only one batch is held in memory, however large the files are.
+ */
+public class CatalogueImporter {
+    private static final int BATCH_SIZE = 1000;
+
+    private final SubjectDao subjectDao;
+    private final Gson gson = new Gson();
+
+    /**
+     * Creates an importer writing through the given dao.
+     * @param subjectDao Dao the lecturers and subjects are created with
+     */
+    public CatalogueImporter(SubjectDao subjectDao) {
+        this.subjectDao = subjectDao;
+    }
+
+    /**
+     * Creates every lecturer in the given JSON array, in the format of "lecturers.json".
+     * @param reader Reader to read the lecturers from
+     * @return Number of lecturers read
+     * @throws IOException If the JSON could not be read
+     * @throws SQLException If the lecturers could not be created
+     */
+    public int importLecturers(Reader reader) throws IOException, SQLException {
+        List<LecturerDTO> batch = new ArrayList<>();
+        int read = 0;
+        JsonReader json = new JsonReader(reader);
+        json.beginArray();
+        while (json.hasNext()) {
+            batch.add(gson.fromJson(json, LecturerDTO.class));
+            read++;
+            if (batch.size() == BATCH_SIZE) {
+                subjectDao.createAll(batch, Collections.emptyList());
+                batch.clear();
+            }
+        }
+        json.endArray();
+        if (!batch.isEmpty()) {
+            subjectDao.createAll(batch, Collections.emptyList());
+        }
+        return read;
+    }
+
+    /**
+     * Creates every subject in the given JSON array, in the format of "subjects.json",
+     * binding them to their lecturers and creating the lecturers that do not exist yet.
+     * @param reader Reader to read the subjects from
+     * @return Number of subjects read
+     * @throws IOException If the JSON could not be read
+     * @throws SQLException If the subjects could not be created
+     */
+    public int importSubjects(Reader reader) throws IOException, SQLException {
+        List<SubjectDTO> batch = new ArrayList<>();
+        int read = 0;
+        JsonReader json = new JsonReader(reader);
+        json.beginArray();
+        while (json.hasNext()) {
+            batch.add(gson.fromJson(json, SubjectDTO.class));
+            read++;
+            if (batch.size() == BATCH_SIZE) {
+                subjectDao.createAll(Collections.emptyList(), batch);
+                batch.clear();
+            }
+        }
+        json.endArray();
+        if (!batch.isEmpty()) {
+            subjectDao.createAll(Collections.emptyList(), batch);
+        }
+        return read;
+    }
+}
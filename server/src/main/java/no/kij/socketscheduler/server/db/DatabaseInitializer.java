@@ -1,32 +1,96 @@
 package no.kij.socketscheduler.server.db;
 
-import com.google.gson.*;
+import com.google.gson.Gson;
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.dao.DaoManager;
+import com.j256.ormlite.jdbc.JdbcDatabaseConnection;
+import com.j256.ormlite.misc.TransactionManager;
+import com.j256.ormlite.stmt.DeleteBuilder;
+import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.support.DatabaseConnection;
+import com.j256.ormlite.table.DatabaseTableConfig;
 import com.j256.ormlite.table.TableUtils;
 import no.kij.socketscheduler.server.dao.LecturerDao;
 import no.kij.socketscheduler.server.dao.SubjectDao;
 import no.kij.socketscheduler.server.dto.LecturerDTO;
+import no.kij.socketscheduler.server.dto.SeedChecksumDTO;
 import no.kij.socketscheduler.server.dto.SubjectDTO;
 import no.kij.socketscheduler.server.dto.SubjectLecturerDTO;
 import no.kij.socketscheduler.server.util.ConnectionManager;
+import no.kij.socketscheduler.server.util.ConnectionPool;
 import no.kij.socketscheduler.server.util.DaoDelegator;
 import no.kij.socketscheduler.server.util.ResourceFetcher;
 
+import org.apache.commons.io.IOUtils;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * The purpose of this class is to setup the base structure for the database using the DTO class structure,
  * as well as populating the fields for the database with some default content.
  */
 public class DatabaseInitializer {
+    private static final String LECTURERS_FILE = "lecturers.json";
+    private static final String SUBJECTS_FILE = "subjects.json";
+    private static final String JSON_EXTENSION = ".json";
+    // the name of the index is the second group, with or without the quotes of the database
+    private static final Pattern CREATE_INDEX = Pattern.compile("^CREATE (UNIQUE )?INDEX [`\"]?(\\w+)[`\"]? ON ");
+    // keeps the first row of every pair, the subquery is wrapped since MySQL cannot select from the table it deletes in
+    private static final String DELETE_DUPLICATE_PAIRS = "DELETE FROM subject_lecturer WHERE "
+            + SubjectLecturerDTO.ID_FIELD + " NOT IN (SELECT kept_id FROM (SELECT MIN(" + SubjectLecturerDTO.ID_FIELD
+            + ") AS kept_id FROM subject_lecturer GROUP BY " + SubjectLecturerDTO.SUBJECT_ID_FIELD + ", "
+            + SubjectLecturerDTO.LECTURER_ID_FIELD + ") kept)";
+
     private ConnectionManager connectionManager;
+    private Path contentDirectory;
 
     /**
      * Creates the database initializer to initialize the database.
      * @param connectionManager The ConnectionManager to pool database connections from
      */
     public DatabaseInitializer(ConnectionManager connectionManager) {
+        this(connectionManager, null);
+    }
+
+    /**
+     * Creates the database initializer to initialize the database with content from the given directory.
+     * @param connectionManager The ConnectionManager to pool database connections from
+     * @param contentDirectory Directory on disk holding "subjects.json" and "lecturers.json",
+     *                         or null to use the ones in resources folder.
+     *                         The content may also be split over several files, such as one per faculty,
+     *                         named like "subjects-informatics.json" and "lecturers-informatics.json".
+     */
+    public DatabaseInitializer(ConnectionManager connectionManager, Path contentDirectory) {
         this.connectionManager = connectionManager;
+        this.contentDirectory = contentDirectory;
     }
 
     /**
@@ -39,11 +103,18 @@ public class DatabaseInitializer {
             TableUtils.dropTable(connectionManager.getConnectionSource(), SubjectDTO.class, true);
             TableUtils.dropTable(connectionManager.getConnectionSource(), LecturerDTO.class, true);
             TableUtils.dropTable(connectionManager.getConnectionSource(), SubjectLecturerDTO.class, true);
+            TableUtils.dropTable(connectionManager.getConnectionSource(), SeedChecksumDTO.class, true);
 
             // create the tables
             TableUtils.createTableIfNotExists(connectionManager.getConnectionSource(), SubjectDTO.class);
             TableUtils.createTableIfNotExists(connectionManager.getConnectionSource(), LecturerDTO.class);
             TableUtils.createTableIfNotExists(connectionManager.getConnectionSource(), SubjectLecturerDTO.class);
+            TableUtils.createTableIfNotExists(connectionManager.getConnectionSource(), SeedChecksumDTO.class);
+
+            // the tables were emptied without going through the daos, so what they hold in memory is out of date
+            DaoDelegator dao = DaoDelegator.shared(connectionManager);
+            dao.getSubjectDao().invalidateCaches();
+            dao.getLecturerDao().invalidateCaches();
         } catch (SQLException e) {
             System.err.println("Could not create the tables for the database.");
             System.err.println(e.getMessage());
@@ -51,70 +122,543 @@ public class DatabaseInitializer {
     }
 
     /**
-     * Initializes the database tables with default content from "subjects.json" and "lecturers.json" in resources folder.
+     * Initializes the database tables with default content from "subjects.json" and "lecturers.json",
+     * found in the content directory if one was given, or in resources folder if not.
+     * The files in a content directory are imported in parallel, see ImportPipeline.
      */
     public void initializeTableContent() {
+        if (contentDirectory != null) {
+            importContentDirectory();
+            return;
+        }
+        try (InputStream lecturers = openContent(LECTURERS_FILE); InputStream subjects = openContent(SUBJECTS_FILE)) {
+            initializeTableContent(lecturers, subjects);
+        } catch (IOException e) {
+            System.err.println("Could not read the content to initialize the tables with.");
+            System.err.println(e.getMessage());
+        }
+    }
+
+    /**
+     * Initializes the empty database tables with the given content.
+     * @param lecturersJson Lecturers, in the format of "lecturers.json"
+     * @param subjectsJson Subjects and who teaches them, in the format of "subjects.json"
+     */
+    public void initializeTableContent(String lecturersJson, String subjectsJson) {
+        initializeTableContent(new ByteArrayInputStream(lecturersJson.getBytes(StandardCharsets.UTF_8)),
+                new ByteArrayInputStream(subjectsJson.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Initializes the empty database tables with the content read from the given streams.
+     * The lecturers and subjects are read one at a time and inserted in batches, all in one transaction,
+     * so only a batch of them is held in memory however large the content is.
+     * @param lecturersJson Stream of lecturers, in the format of "lecturers.json"
+     * @param subjectsJson Stream of subjects and who teaches them, in the format of "subjects.json"
+     */
+    public void initializeTableContent(InputStream lecturersJson, InputStream subjectsJson) {
+        try {
+            CatalogueImporter importer = new CatalogueImporter(DaoDelegator.shared(connectionManager).getSubjectDao());
+            MessageDigest lecturersDigest = newDigest();
+            MessageDigest subjectsDigest = newDigest();
+
+            System.out.println("Inserting lecturers and subjects...");
+            int[] inserted = TransactionManager.callInTransaction(connectionManager.getConnectionSource(), () -> {
+                Reader lecturers = digestingReader(lecturersJson, lecturersDigest);
+                Reader subjects = digestingReader(subjectsJson, subjectsDigest);
+                int[] counts = { importer.importLecturers(lecturers), importer.importSubjects(subjects) };
+                // the checksums have to cover whatever follows the JSON as well
+                drain(lecturers);
+                drain(subjects);
+                return counts;
+            });
+            System.out.println("Inserted " + inserted[0] + " lecturers and " + inserted[1] + " subjects.");
+
+            // an incremental start can skip seeding until the files change
+            saveChecksums(toHex(lecturersDigest.digest()), toHex(subjectsDigest.digest()));
+        } catch (SQLException e) {
+            System.out.println("Could not initialize the tables with content.");
+            System.err.println(e.getCause() != null ? e.getCause().getMessage() : e.getMessage());
+        }
+    }
+
+    /**
+     * Imports every content file in the content directory with an ImportPipeline.
+     * The chunks of the import are written in transactions of their own,
+     * so the tables are emptied again if it fails, instead of being left half filled.
+     */
+    private void importContentDirectory() {
+        try {
+            List<Path> lecturerFiles = contentFiles(LECTURERS_FILE);
+            List<Path> subjectFiles = contentFiles(SUBJECTS_FILE);
+            System.out.println("Importing lecturers and subjects from " + (lecturerFiles.size() + subjectFiles.size())
+                    + " files...");
+            int parsers = Runtime.getRuntime().availableProcessors();
+            ImportPipeline.Report report = new ImportPipeline(connectionManager, parsers, importWriters(parsers))
+                    .run(lecturerFiles, subjectFiles);
+            System.out.println(report);
+
+            // an incremental start can skip seeding until the files change
+            saveChecksums(checksumOf(LECTURERS_FILE), checksumOf(SUBJECTS_FILE));
+        } catch (IOException | SQLException e) {
+            System.err.println("Could not initialize the tables with content.");
+            System.err.println(e.getMessage());
+            initializeTables();
+        }
+    }
+
+    /**
+     * Works out how many chunks of an import to write at once: one less than the pool hands out connections,
+     * leaving one for the DatabaseExecutor, or one per parser if the pool has no limit.
+     * @param parsers Number of threads parsing the content
+     * @return Number of writers, at least 1
+     */
+    private int importWriters(int parsers) {
+        ConnectionPool pool = connectionManager.getPool();
+        if (pool == null || pool.getMaxConnections() <= 0) {
+            return parsers;
+        }
+        return Math.max(1, pool.getMaxConnections() - 1);
+    }
+
+    /**
+     * Brings the database up to date with "subjects.json" and "lecturers.json",
+     * found in the content directory if one was given, or in resources folder if not, without dropping the tables.
+     * @return true if the database had to be changed, false if the files have not changed since it was last seeded
+     */
+    public boolean initializeIncrementally() {
+        try {
+            createTables();
+            // the files are only read into memory if they have changed
+            String lecturersChecksum = checksumOf(LECTURERS_FILE);
+            String subjectsChecksum = checksumOf(SUBJECTS_FILE);
+            if (isSeededWith(lecturersChecksum, subjectsChecksum)) {
+                System.out.println("Content has not changed since the last start, skipping seeding.");
+                return false;
+            }
+            applyChanges(readContent(LECTURERS_FILE), readContent(SUBJECTS_FILE), lecturersChecksum, subjectsChecksum);
+            return true;
+        } catch (IOException | SQLException e) {
+            System.err.println("Could not bring the tables up to date with the content.");
+            System.err.println(e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Brings the database up to date with the given content, without dropping the tables.
+     * A checksum of the content is stored in the database, and nothing more is done while it stays the same.
+     * Otherwise only the rows that differ are written: lecturers are matched by name and subjects by code,
+     * so the rows that did not change keep their IDs.
+     * @param lecturersJson Lecturers, in the format of "lecturers.json"
+     * @param subjectsJson Subjects and who teaches them, in the format of "subjects.json"
+     * @return true if the database had to be changed, false if the content has not changed since it was last seeded
+     */
+    public boolean initializeIncrementally(String lecturersJson, String subjectsJson) {
         try {
-            // Create instance of gson. It's a library we're using to map json to java objects
-            DaoDelegator dao = new DaoDelegator(connectionManager);
-            Gson gson = new Gson();
-
-            System.out.println("Inserting lecturers...");
-            String json = ResourceFetcher.getFile("lecturers.json");
-            LecturerDTO[] lecturers = gson.fromJson(json, LecturerDTO[].class);
-            LecturerDao lecturerDao = dao.getLecturerDao();
-
-            for (LecturerDTO lecturer :lecturers) {
-                lecturerDao.createIfNotExists(lecturer);
-            }
-
-            System.out.println("Inserting subjects...");
-            json = ResourceFetcher.getFile("subjects.json");
-            SubjectDTO[] subjects = gson.fromJson(json, SubjectDTO[].class);
-            SubjectDao subjectDao = dao.getSubjectDao();
-
-            for (SubjectDTO subject : subjects) {
-                // we are resetting the lecturers first, as it is got filled with garbage by gson
-                // when it was deserialized.
-                subject.setLecturers(new ArrayList<>());
-                subjectDao.createIfNotExists(subject);
-            }
-
-
-            System.out.println("Binding lecturers to subjects...");
-            JsonParser parser = new JsonParser();
-            JsonArray subjectJsonArr = parser.parse(json).getAsJsonArray();
-
-            // here we are iterating through all the subject objects in the json
-            // then we isolate the lecturers
-            for (int i = 0; i < subjects.length; i++) {
-                JsonObject subjectObj = subjectJsonArr.get(i).getAsJsonObject();
-                JsonArray lecturerArr = subjectObj.getAsJsonArray("lecturers");
-
-                // we iterate through all the lecturers and make sure they are not null,
-                // before we query for the lecturer in our database to find them.
-                // we then add them to the list of subjects.
-                for (JsonElement lecturerElement : lecturerArr) {
-                    JsonObject lecturerObj = lecturerElement.getAsJsonObject();
-                    String lecturerName = lecturerObj.get("name").getAsString();
-                    if (lecturerName != null){
-                        LecturerDTO lecturerDTO = lecturerDao.queryForLecturerName(lecturerName);
-                        if (lecturerDTO != null) {
-                            subjects[i].getLecturers().add(lecturerDTO);
-                        }
+            createTables();
+            String lecturersChecksum = checksum(lecturersJson);
+            String subjectsChecksum = checksum(subjectsJson);
+            if (isSeededWith(lecturersChecksum, subjectsChecksum)) {
+                System.out.println("Content has not changed since the last start, skipping seeding.");
+                return false;
+            }
+            applyChanges(Collections.singletonList(lecturersJson), Collections.singletonList(subjectsJson),
+                    lecturersChecksum, subjectsChecksum);
+            return true;
+        } catch (SQLException e) {
+            System.err.println("Could not bring the tables up to date with the content.");
+            System.err.println(e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Writes the differences between the database and the content of several files, and stores the checksums
+     * of the content, in one transaction. The tables must have been created and the checksums compared already.
+     * @param lecturersChecksum Checksum of the lecturers, as checksumOf or checksum calculated it
+     * @param subjectsChecksum Checksum of the subjects, as checksumOf or checksum calculated it
+     */
+    private void applyChanges(List<String> lecturersJson, List<String> subjectsJson, String lecturersChecksum,
+                              String subjectsChecksum) throws SQLException {
+        System.out.println("Content has changed, applying the differences...");
+        TransactionManager.callInTransaction(connectionManager.getConnectionSource(), () -> {
+            applyContent(lecturersJson, subjectsJson);
+            saveChecksums(lecturersChecksum, subjectsChecksum);
+            return null;
+        });
+    }
+
+    /**
+     * Creates the tables that do not exist yet, and the indexes missing from the ones that do.
+     */
+    private void createTables() throws SQLException {
+        createTable(SubjectDTO.class);
+        createTable(LecturerDTO.class);
+        createTable(SubjectLecturerDTO.class);
+        createTable(SeedChecksumDTO.class);
+    }
+
+    /**
+     * Creates the table of the given class along with its indexes, or only the indexes it is missing if it exists.
+     * TableUtils.createTableIfNotExists is not used for a table that exists, since it creates the indexes again:
+     * on databases without CREATE INDEX IF NOT EXISTS, such as MySQL, that fails for the indexes already there.
+     * An older database may be missing indexes declared since, and the unique index over the subject_lecturer
+     * pairs cannot be created while it holds duplicate rows, so those are deleted first.
+     * An index that still cannot be created, such as over subject codes given more than once,
+     * is left out with a message, as seeding the database from scratch is the only way to get it.
+     * @param dataClass Class of the table
+     * @throws SQLException If the table could not be created or its indexes could not be read
+     */
+    private void createTable(Class<?> dataClass) throws SQLException {
+        ConnectionSource connectionSource = connectionManager.getConnectionSource();
+        Dao<?, ?> dao = DaoManager.createDao(connectionSource, dataClass);
+        if (!dao.isTableExists()) {
+            TableUtils.createTable(connectionSource, dataClass);
+            return;
+        }
+
+        Set<String> existing = indexNames(DatabaseTableConfig.extractTableName(dataClass));
+        for (String statement : TableUtils.getCreateTableStatements(connectionSource, dataClass)) {
+            Matcher matcher = CREATE_INDEX.matcher(statement);
+            if (!matcher.find() || existing.contains(matcher.group(2).toLowerCase(Locale.ROOT))) {
+                continue;
+            }
+            String indexName = matcher.group(2);
+            try {
+                if (indexName.equals(SubjectLecturerDTO.PAIR_INDEX)) {
+                    int deleted = dao.executeRawNoArgs(DELETE_DUPLICATE_PAIRS);
+                    System.out.println("Deleted " + deleted + " duplicate subject_lecturer rows.");
+                }
+                dao.executeRawNoArgs(statement);
+                System.out.println("Created the missing index " + indexName + ".");
+            } catch (SQLException e) {
+                System.err.println("Could not create the index " + indexName
+                        + ", start once without --incremental-seed to seed the database from scratch.");
+                System.err.println(e.getCause() != null ? e.getCause().getMessage() : e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return Names of the indexes the given table has, in lower case
+     */
+    private Set<String> indexNames(String tableName) throws SQLException {
+        ConnectionSource connectionSource = connectionManager.getConnectionSource();
+        DatabaseConnection connection = connectionSource.getReadOnlyConnection(tableName);
+        try {
+            if (!(connection instanceof JdbcDatabaseConnection)) {
+                throw new SQLException("Reading the indexes needs a JDBC connection.");
+            }
+            DatabaseMetaData metaData = ((JdbcDatabaseConnection) connection).getInternalConnection().getMetaData();
+            String storedName = metaData.storesUpperCaseIdentifiers() ? tableName.toUpperCase(Locale.ROOT)
+                    : metaData.storesLowerCaseIdentifiers() ? tableName.toLowerCase(Locale.ROOT) : tableName;
+            Set<String> names = new HashSet<>();
+            try (ResultSet indexes = metaData.getIndexInfo(null, null, storedName, false, true)) {
+                while (indexes.next()) {
+                    String name = indexes.getString("INDEX_NAME");
+                    if (name != null) {
+                        names.add(name.toLowerCase(Locale.ROOT));
                     }
                 }
             }
+            return names;
+        } finally {
+            connectionSource.releaseConnection(connection);
+        }
+    }
+
+    /**
+     * @return true if the database was last seeded with content having the given checksums
+     */
+    private boolean isSeededWith(String lecturersChecksum, String subjectsChecksum) throws SQLException {
+        Dao<SeedChecksumDTO, String> checksumDao = getChecksumDao();
+        SeedChecksumDTO lecturers = checksumDao.queryForId(LECTURERS_FILE);
+        SeedChecksumDTO subjects = checksumDao.queryForId(SUBJECTS_FILE);
+        return lecturers != null && lecturers.getChecksum().equals(lecturersChecksum)
+                && subjects != null && subjects.getChecksum().equals(subjectsChecksum);
+    }
 
-            // we call an update, which updates the subjects with the lecturer details,
-            // as well as creates any lecturers that were missing (if they were missing).
-            for (SubjectDTO subject : subjects) {
-                subjectDao.updateSubject(subject);
+    /**
+     * Writes the differences between the tables and the given content.
+     */
+    private void applyContent(List<String> lecturersJson, List<String> subjectsJson) throws SQLException {
+        DaoDelegator dao = DaoDelegator.shared(connectionManager);
+        LecturerDao lecturerDao = dao.getLecturerDao();
+        SubjectDao subjectDao = dao.getSubjectDao();
+        Dao<SubjectLecturerDTO, Integer> subjectLecturerDao =
+                DaoManager.createDao(connectionManager.getConnectionSource(), SubjectLecturerDTO.class);
+        Gson gson = new Gson();
+
+        // what the tables should hold, lecturers by name and subjects by code
+        Set<String> lecturerNames = new HashSet<>();
+        for (String json : lecturersJson) {
+            for (LecturerDTO lecturer : gson.fromJson(json, LecturerDTO[].class)) {
+                if (lecturer.getName() != null) {
+                    lecturerNames.add(lecturer.getName());
+                }
+            }
+        }
+        Map<String, SubjectDTO> subjects = new LinkedHashMap<>();
+        for (String json : subjectsJson) {
+            for (SubjectDTO subject : gson.fromJson(json, SubjectDTO[].class)) {
+                List<LecturerDTO> lecturers = subject.getLecturers() != null ? subject.getLecturers()
+                        : new ArrayList<>();
+                lecturers.removeIf(lecturer -> lecturer == null || lecturer.getName() == null);
+                lecturers.forEach(lecturer -> lecturerNames.add(lecturer.getName()));
+                subject.setLecturers(lecturers);
+                subjects.put(subject.getShortName(), subject);
             }
+        }
 
-        } catch (SQLException e) {
-            System.out.println("Could not initialize the tables with content.");
-            System.err.println(e.getMessage());
+        // what they hold now
+        Map<String, LecturerDTO> existingLecturers = new HashMap<>();
+        List<LecturerDTO> removedLecturers = new ArrayList<>();
+        for (LecturerDTO lecturer : lecturerDao.queryForAll()) {
+            if (!lecturerNames.contains(lecturer.getName())) {
+                removedLecturers.add(lecturer);
+            } else {
+                existingLecturers.putIfAbsent(lecturer.getName(), lecturer);
+            }
+        }
+        Map<String, SubjectDTO> existingSubjects = new HashMap<>();
+        List<SubjectDTO> removedSubjects = new ArrayList<>();
+        for (SubjectDTO subject : subjectDao.queryForAll()) {
+            if (subjects.containsKey(subject.getShortName())) {
+                existingSubjects.put(subject.getShortName(), subject);
+            } else {
+                removedSubjects.add(subject);
+            }
+        }
+
+        // removed rows go first, so nothing is left pointing at them
+        int unbound = 0;
+        for (SubjectDTO subject : removedSubjects) {
+            unbound += unbind(subjectLecturerDao, SubjectLecturerDTO.SUBJECT_ID_FIELD, subject.getId());
+        }
+        for (LecturerDTO lecturer : removedLecturers) {
+            unbind(subjectLecturerDao, SubjectLecturerDTO.LECTURER_ID_FIELD, lecturer.getId());
+        }
+        if (!removedSubjects.isEmpty()) {
+            subjectDao.delete(removedSubjects);
+        }
+        if (!removedLecturers.isEmpty()) {
+            lecturerDao.delete(removedLecturers);
+        }
+
+        // new lecturers and subjects are inserted in batches, which also binds the new subjects to their lecturers
+        List<LecturerDTO> addedLecturers = new ArrayList<>();
+        for (String name : lecturerNames) {
+            if (!existingLecturers.containsKey(name)) {
+                LecturerDTO lecturer = new LecturerDTO();
+                lecturer.setName(name);
+                addedLecturers.add(lecturer);
+                existingLecturers.put(name, lecturer);
+            }
+        }
+        List<SubjectDTO> addedSubjects = new ArrayList<>();
+        int bound = 0;
+        for (SubjectDTO subject : subjects.values()) {
+            if (!existingSubjects.containsKey(subject.getShortName())) {
+                addedSubjects.add(subject);
+                bound += subject.getLecturers().stream().map(LecturerDTO::getName).distinct().count();
+            }
+        }
+        if (!addedLecturers.isEmpty() || !addedSubjects.isEmpty()) {
+            subjectDao.createAll(addedLecturers, addedSubjects);
+        }
+
+        int changedSubjects = 0;
+        for (SubjectDTO subject : subjects.values()) {
+            SubjectDTO existing = existingSubjects.get(subject.getShortName());
+            if (existing == null) {
+                continue;
+            }
+            if (!Objects.equals(existing.getName(), subject.getName())
+                    || !Objects.equals(existing.getEnrolled(), subject.getEnrolled())) {
+                existing.setName(subject.getName());
+                existing.setEnrolled(subject.getEnrolled());
+                subjectDao.update(existing);
+                changedSubjects++;
+            }
+
+            Set<Integer> lecturerIds = new HashSet<>();
+            for (LecturerDTO lecturer : subject.getLecturers()) {
+                lecturerIds.add(existingLecturers.get(lecturer.getName()).getId());
+            }
+            for (LecturerDTO lecturer : existing.getLecturers()) {
+                if (!lecturerIds.remove(lecturer.getId())) {
+                    unbound += unbind(subjectLecturerDao, existing.getId(), lecturer.getId());
+                }
+            }
+            for (Integer lecturerId : lecturerIds) {
+                LecturerDTO lecturer = new LecturerDTO();
+                lecturer.setId(lecturerId);
+                SubjectLecturerDTO sld = new SubjectLecturerDTO();
+                sld.setSubjectDTO(existing);
+                sld.setLecturerDTO(lecturer);
+                subjectLecturerDao.create(sld);
+                bound++;
+            }
+        }
+
+        System.out.println("Subjects: " + addedSubjects.size() + " added, " + changedSubjects + " changed, "
+                + removedSubjects.size() + " removed. Lecturers: " + addedLecturers.size() + " added, "
+                + removedLecturers.size() + " removed. Bindings: " + bound + " added, " + unbound + " removed.");
+    }
+
+    /**
+     * Deletes the subject_lecturer rows where the given column holds the given ID.
+     * @return Number of rows deleted
+     */
+    private int unbind(Dao<SubjectLecturerDTO, Integer> subjectLecturerDao, String column, Integer id)
+            throws SQLException {
+        DeleteBuilder<SubjectLecturerDTO, Integer> deleteBuilder = subjectLecturerDao.deleteBuilder();
+        deleteBuilder.where().eq(column, id);
+        return deleteBuilder.delete();
+    }
+
+    /**
+     * Deletes the subject_lecturer row binding the lecturer to the subject.
+     * @return Number of rows deleted
+     */
+    private int unbind(Dao<SubjectLecturerDTO, Integer> subjectLecturerDao, Integer subjectId, Integer lecturerId)
+            throws SQLException {
+        DeleteBuilder<SubjectLecturerDTO, Integer> deleteBuilder = subjectLecturerDao.deleteBuilder();
+        deleteBuilder.where().eq(SubjectLecturerDTO.SUBJECT_ID_FIELD, subjectId)
+                .and().eq(SubjectLecturerDTO.LECTURER_ID_FIELD, lecturerId);
+        return deleteBuilder.delete();
+    }
+
+    /**
+     * Stores the checksums of the content the database now holds.
+     */
+    private void saveChecksums(String lecturersChecksum, String subjectsChecksum) throws SQLException {
+        Dao<SeedChecksumDTO, String> checksumDao = getChecksumDao();
+        checksumDao.createOrUpdate(new SeedChecksumDTO(LECTURERS_FILE, lecturersChecksum));
+        checksumDao.createOrUpdate(new SeedChecksumDTO(SUBJECTS_FILE, subjectsChecksum));
+    }
+
+    /**
+     * Opens one of the content files, from the content directory if one was given, or from resources folder if not.
+     * @param fileName Name of the file
+     * @return Stream of the file
+     * @throws IOException If the file could not be found or opened
+     */
+    private InputStream openContent(String fileName) throws IOException {
+        if (contentDirectory != null) {
+            return Files.newInputStream(contentDirectory.resolve(fileName));
+        }
+        return ResourceFetcher.openFile(fileName);
+    }
+
+    /**
+     * Finds the files in the content directory holding the content of the given file,
+     * which is the file itself and the files named like it with something added, such as "subjects-informatics.json".
+     * @param fileName Name of the file
+     * @return The files, sorted by name
+     * @throws IOException If the content directory could not be read
+     */
+    private List<Path> contentFiles(String fileName) throws IOException {
+        String prefix = fileName.substring(0, fileName.length() - JSON_EXTENSION.length());
+        try (Stream<Path> files = Files.list(contentDirectory)) {
+            return files.filter(file -> {
+                String name = file.getFileName().toString();
+                return name.startsWith(prefix) && name.endsWith(JSON_EXTENSION) && Files.isRegularFile(file);
+            }).sorted().collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Reads the content of the given file, from every file holding part of it if there is a content directory.
+     */
+    private List<String> readContent(String fileName) throws IOException {
+        List<String> content = new ArrayList<>();
+        if (contentDirectory == null) {
+            try (InputStream in = ResourceFetcher.openFile(fileName)) {
+                content.add(IOUtils.toString(in, StandardCharsets.UTF_8));
+            }
+            return content;
+        }
+        for (Path file : contentFiles(fileName)) {
+            content.add(new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+        }
+        return content;
+    }
+
+    /**
+     * Calculates the checksum of the given file, or of every file holding part of it one after another,
+     * which is the same as the checksum of what readContent reads.
+     */
+    private String checksumOf(String fileName) throws IOException {
+        MessageDigest digest = newDigest();
+        List<Path> files = contentDirectory != null ? contentFiles(fileName) : Collections.singletonList(null);
+        for (Path file : files) {
+            try (InputStream in = new DigestInputStream(
+                    file != null ? Files.newInputStream(file) : ResourceFetcher.openFile(fileName), digest)) {
+                byte[] buffer = new byte[8192];
+                while (in.read(buffer) != -1) {
+                    // the digest is updated as the stream is read
+                }
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Wraps the stream in a reader, updating the digest with every byte read through it.
+     */
+    private static Reader digestingReader(InputStream in, MessageDigest digest) {
+        return new BufferedReader(new InputStreamReader(new DigestInputStream(in, digest), StandardCharsets.UTF_8));
+    }
+
+    private static void drain(Reader reader) throws IOException {
+        char[] buffer = new char[8192];
+        while (reader.read(buffer) != -1) {
+            // nothing to do with what is left but read it
+        }
+    }
+
+    private Dao<SeedChecksumDTO, String> getChecksumDao() throws SQLException {
+        return DaoManager.createDao(connectionManager.getConnectionSource(), SeedChecksumDTO.class);
+    }
+
+    /**
+     * Calculates the SHA-256 checksum of the given content.
+     * @param content Content to calculate the checksum of
+     * @return The checksum as a hex string
+     */
+    static String checksum(String content) {
+        return checksum(Collections.singletonList(content));
+    }
+
+    /**
+     * Calculates the SHA-256 checksum of the given parts of the content, one after another.
+     * @param content Parts of the content to calculate the checksum of
+     * @return The checksum as a hex string
+     */
+    static String checksum(List<String> content) {
+        MessageDigest digest = newDigest();
+        for (String part : content) {
+            digest.update(part.getBytes(StandardCharsets.UTF_8));
+        }
+        return toHex(digest.digest());
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] digest) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest) {
+            hex.append(String.format("%02x", b));
         }
+        return hex.toString();
     }
 }
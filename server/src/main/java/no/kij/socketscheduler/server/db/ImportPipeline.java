@@ -0,0 +1,442 @@
+package no.kij.socketscheduler.server.db;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import no.kij.socketscheduler.server.dao.SubjectDao;
+import no.kij.socketscheduler.server.dto.LecturerDTO;
+import no.kij.socketscheduler.server.dto.SubjectDTO;
+import no.kij.socketscheduler.server.util.ConnectionManager;
+import no.kij.socketscheduler.server.util.DaoDelegator;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Imports lecturers and subjects from many JSON files at once, such as one file per faculty.
+ *
+ * The import runs in three stages. The files are parsed in parallel on a ForkJoinPool, each into chunks of rows.
+ * The lecturers of every chunk are then looked up by name in a map shared by the whole import,
+ * where the first chunk naming a lecturer claims the name and creates it, so no lecturer is created twice.
+ * Last the chunks are written in batches by a fixed number of writers, each using a pooled connection of its own.
+ * Parsing waits for the writers when a few chunks are waiting to be written, so only those are held in memory.
+ *
+ * Every chunk is written in a transaction of its own, so an import that fails can leave some of its chunks behind.
+ * The import should go into empty tables, which are emptied again if it fails.
+ */
+public class ImportPipeline {
+    private static final int CHUNK_SIZE = 1000;
+    private static final int CHUNKS_PER_WRITER = 2;
+    private static final Chunk END = new Chunk(Collections.emptyList(), Collections.emptyList());
+
+    private final SubjectDao subjectDao;
+    private final int parsers;
+    private final int writers;
+    private final Gson gson = new Gson();
+
+    /**
+     * Creates a pipeline writing through the daos of the given ConnectionManager.
+     * @param connectionManager The ConnectionManager to pool database connections from
+     * @param parsers Number of files parsed at once
+     * @param writers Number of chunks written at once, which is also the number of connections used for writing
+     */
+    public ImportPipeline(ConnectionManager connectionManager, int parsers, int writers) {
+        if (parsers < 1 || writers < 1) {
+            throw new IllegalArgumentException("An import needs at least one parser and one writer.");
+        }
+        this.subjectDao = DaoDelegator.shared(connectionManager).getSubjectDao();
+        this.parsers = parsers;
+        this.writers = writers;
+    }
+
+    /**
+     * Imports every lecturer and subject in the given files.
+     * @param lecturerFiles Files of lecturers, in the format of "lecturers.json"
+     * @param subjectFiles Files of subjects and who teaches them, in the format of "subjects.json"
+     * @return How much every stage did, and how fast
+     * @throws IOException If a file could not be read
+     * @throws SQLException If the rows could not be written
+     */
+    public Report run(List<Path> lecturerFiles, List<Path> subjectFiles) throws IOException, SQLException {
+        List<Source> sources = new ArrayList<>();
+        lecturerFiles.forEach(file -> sources.add(new Source(file, false)));
+        subjectFiles.forEach(file -> sources.add(new Source(file, true)));
+        Import work = new Import();
+
+        long start = System.nanoTime();
+        ForkJoinPool parsePool = new ForkJoinPool(parsers);
+        ExecutorService writePool = Executors.newFixedThreadPool(writers);
+        try {
+            List<Future<?>> writing = new ArrayList<>();
+            for (int i = 0; i < writers; i++) {
+                writing.add(writePool.submit(work::write));
+            }
+            parsePool.invoke(new ParseFiles(work, sources));
+            for (int i = 0; i < writers; i++) {
+                work.chunks.put(END);
+            }
+            for (Future<?> writer : writing) {
+                writer.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            work.fail(new SQLException("The import was interrupted."));
+        } catch (ExecutionException e) {
+            work.fail(new SQLException(e.getCause()));
+        } finally {
+            parsePool.shutdownNow();
+            writePool.shutdownNow();
+        }
+
+        Exception failure = work.failure.get();
+        if (failure instanceof IOException) {
+            throw (IOException) failure;
+        } else if (failure instanceof SQLException) {
+            throw (SQLException) failure;
+        } else if (failure != null) {
+            throw new IOException(failure.getMessage(), failure);
+        }
+        return new Report(sources.size(), work.lecturerIds.size(), work.stages, System.nanoTime() - start);
+    }
+
+    /**
+     * What one import shares between its stages.
+     */
+    private class Import {
+        private final BlockingQueue<Chunk> chunks = new ArrayBlockingQueue<>(writers * CHUNKS_PER_WRITER);
+        private final Map<String, CompletableFuture<Integer>> lecturerIds = new ConcurrentHashMap<>();
+        private final AtomicReference<Exception> failure = new AtomicReference<>();
+        private final Map<String, Stage> stages = new LinkedHashMap<>();
+        private final Stage parseStage = stage("parse", "rows");
+        private final Stage lecturerStage = stage("lecturers", "names");
+        private final Stage writeStage = stage("write", "subjects");
+
+        private Stage stage(String name, String unit) {
+            Stage stage = new Stage(name, unit);
+            stages.put(name, stage);
+            return stage;
+        }
+
+        private void fail(Exception e) {
+            failure.compareAndSet(null, e);
+        }
+
+        private boolean failed() {
+            return failure.get() != null;
+        }
+
+        /**
+         * Parses the file into chunks, handing every chunk to the writers.
+         */
+        private void parse(Source source) throws IOException, InterruptedException {
+            long start = System.nanoTime();
+            long waited = 0;
+            int rows = 0;
+            List<LecturerDTO> lecturers = new ArrayList<>();
+            List<SubjectDTO> subjects = new ArrayList<>();
+            try (Reader reader = Files.newBufferedReader(source.file, StandardCharsets.UTF_8)) {
+                JsonReader json = new JsonReader(reader);
+                json.beginArray();
+                while (json.hasNext() && !failed()) {
+                    if (source.subjects) {
+                        subjects.add(gson.fromJson(json, SubjectDTO.class));
+                    } else {
+                        lecturers.add(gson.fromJson(json, LecturerDTO.class));
+                    }
+                    rows++;
+                    if (lecturers.size() + subjects.size() == CHUNK_SIZE) {
+                        waited += hand(new Chunk(lecturers, subjects));
+                        lecturers = new ArrayList<>();
+                        subjects = new ArrayList<>();
+                    }
+                }
+                if (!failed()) {
+                    json.endArray();
+                }
+            }
+            if (!lecturers.isEmpty() || !subjects.isEmpty()) {
+                waited += hand(new Chunk(lecturers, subjects));
+            }
+            // time spent waiting for the writers is theirs, not parsing's
+            parseStage.record(rows, System.nanoTime() - start - waited);
+        }
+
+        /**
+         * Hands the chunk to the writers, waiting for room if they are behind.
+         * @return Nanoseconds spent waiting
+         */
+        private long hand(Chunk chunk) throws InterruptedException {
+            long start = System.nanoTime();
+            chunks.put(chunk);
+            return System.nanoTime() - start;
+        }
+
+        /**
+         * Writes chunks until the end is reached. Once the import has failed, chunks are only taken and thrown away,
+         * so the parsers are not left waiting for room.
+         */
+        private Void write() throws InterruptedException {
+            for (Chunk chunk = chunks.take(); chunk != END; chunk = chunks.take()) {
+                if (failed()) {
+                    continue;
+                }
+                try {
+                    long start = System.nanoTime();
+                    List<LecturerDTO> named = new ArrayList<>(chunk.lecturers);
+                    for (SubjectDTO subject : chunk.subjects) {
+                        if (subject.getLecturers() != null) {
+                            named.addAll(subject.getLecturers());
+                        }
+                    }
+                    resolveLecturers(named);
+                    lecturerStage.record(named.size(), System.nanoTime() - start);
+
+                    if (!chunk.subjects.isEmpty()) {
+                        start = System.nanoTime();
+                        subjectDao.createAll(Collections.emptyList(), chunk.subjects);
+                        writeStage.record(chunk.subjects.size(), System.nanoTime() - start);
+                    }
+                } catch (SQLException | RuntimeException e) {
+                    fail(e);
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Sets the ID of every lecturer, creating the ones with a name not seen before.
+         * A writer claims the new names it comes across and creates them before waiting for any name
+         * claimed by another writer, so two writers never wait for each other.
+         */
+        private void resolveLecturers(Collection<LecturerDTO> named) throws SQLException {
+            Map<String, CompletableFuture<Integer>> claimed = new LinkedHashMap<>();
+            for (LecturerDTO lecturer : named) {
+                if (lecturer != null && lecturer.getName() != null && !lecturerIds.containsKey(lecturer.getName())) {
+                    CompletableFuture<Integer> claim = new CompletableFuture<>();
+                    if (lecturerIds.putIfAbsent(lecturer.getName(), claim) == null) {
+                        claimed.put(lecturer.getName(), claim);
+                    }
+                }
+            }
+
+            if (!claimed.isEmpty()) {
+                List<LecturerDTO> created = new ArrayList<>();
+                for (String name : claimed.keySet()) {
+                    LecturerDTO lecturer = new LecturerDTO();
+                    lecturer.setName(name);
+                    created.add(lecturer);
+                }
+                try {
+                    subjectDao.createAll(created, Collections.emptyList());
+                } catch (SQLException | RuntimeException e) {
+                    // the writers waiting for these names have to give up as well
+                    claimed.values().forEach(claim -> claim.completeExceptionally(e));
+                    throw e;
+                }
+                for (LecturerDTO lecturer : created) {
+                    claimed.get(lecturer.getName()).complete(lecturer.getId());
+                }
+            }
+
+            for (LecturerDTO lecturer : named) {
+                if (lecturer != null && lecturer.getName() != null) {
+                    try {
+                        lecturer.setId(lecturerIds.get(lecturer.getName()).join());
+                    } catch (CompletionException e) {
+                        throw new SQLException("Lecturer " + lecturer.getName() + " could not be created.",
+                                e.getCause());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Parses the files, splitting them in two until each task has one file to parse.
+     */
+    private static class ParseFiles extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final Import work;
+        private final List<Source> sources;
+
+        private ParseFiles(Import work, List<Source> sources) {
+            this.work = work;
+            this.sources = sources;
+        }
+
+        @Override
+        protected void compute() {
+            if (sources.size() > 1) {
+                int half = sources.size() / 2;
+                invokeAll(new ParseFiles(work, sources.subList(0, half)),
+                        new ParseFiles(work, sources.subList(half, sources.size())));
+                return;
+            }
+            for (Source source : sources) {
+                if (work.failed()) {
+                    return;
+                }
+                try {
+                    work.parse(source);
+                } catch (IOException | JsonParseException e) {
+                    work.fail(new IOException("Could not read " + source.file.getFileName() + ": "
+                            + e.getMessage(), e));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    work.fail(new IOException("Reading " + source.file.getFileName() + " was interrupted."));
+                }
+            }
+        }
+    }
+
+    /**
+     * A file to import, and whether it holds subjects or lecturers.
+     */
+    private static class Source {
+        private final Path file;
+        private final boolean subjects;
+
+        private Source(Path file, boolean subjects) {
+            this.file = file;
+            this.subjects = subjects;
+        }
+    }
+
+    /**
+     * Lecturers or subjects parsed from a file, to be written together.
+     */
+    private static class Chunk {
+        private final List<LecturerDTO> lecturers;
+        private final List<SubjectDTO> subjects;
+
+        private Chunk(List<LecturerDTO> lecturers, List<SubjectDTO> subjects) {
+            this.lecturers = lecturers;
+            this.subjects = subjects;
+        }
+    }
+
+    /**
+     * How much a stage of the import has done, and how long its threads spent doing it.
+     */
+    public static class Stage {
+        private final String name;
+        private final String unit;
+        private final AtomicLong items = new AtomicLong();
+        private final AtomicLong busyNanos = new AtomicLong();
+
+        private Stage(String name, String unit) {
+            this.name = name;
+            this.unit = unit;
+        }
+
+        private void record(long items, long nanos) {
+            this.items.addAndGet(items);
+            busyNanos.addAndGet(nanos);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getItems() {
+            return items.get();
+        }
+
+        /**
+         * @return Milliseconds spent in the stage, added up over all of its threads
+         */
+        public double getBusyMillis() {
+            return busyNanos.get() / 1e6;
+        }
+
+        /**
+         * @return Items handled per second by one thread of the stage
+         */
+        public double getThroughput() {
+            return busyNanos.get() == 0 ? 0 : items.get() / (busyNanos.get() / 1e9);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-9s %9d %-8s %9.0f ms busy %10.0f/s per thread",
+                    name, getItems(), unit, getBusyMillis(), getThroughput());
+        }
+    }
+
+    /**
+     * What an import did.
+     */
+    public static class Report {
+        private final int files;
+        private final int lecturers;
+        private final Map<String, Stage> stages;
+        private final long elapsedNanos;
+
+        private Report(int files, int lecturers, Map<String, Stage> stages, long elapsedNanos) {
+            this.files = files;
+            this.lecturers = lecturers;
+            this.stages = stages;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * @return Number of different lecturers named in the files
+         */
+        public int getLecturers() {
+            return lecturers;
+        }
+
+        /**
+         * @return Number of subjects written by the import
+         */
+        public long getSubjects() {
+            return stages.get("write").getItems();
+        }
+
+        /**
+         * @param name "parse", "lecturers" or "write"
+         * @return The stage with the given name
+         */
+        public Stage getStage(String name) {
+            return stages.get(name);
+        }
+
+        public double getElapsedMillis() {
+            return elapsedNanos / 1e6;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder(String.format(
+                    "Imported %d lecturers and %d subjects from %d files in %.0f ms (%.0f subjects/s).",
+                    getLecturers(), getSubjects(), files, getElapsedMillis(), getSubjects() / (elapsedNanos / 1e9)));
+            for (Stage stage : stages.values()) {
+                sb.append(System.lineSeparator()).append("  ").append(stage);
+            }
+            return sb.toString();
+        }
+    }
+}
@@ -4,6 +4,9 @@ import com.j256.ormlite.field.DatabaseField;
 import com.j256.ormlite.table.DatabaseTable;
 import no.kij.socketscheduler.server.dao.LecturerDaoImpl;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * This class is the data transfer object for the lecturers.
  */
@@ -14,8 +17,9 @@ public class LecturerDTO {
 
     @DatabaseField(generatedId = true, columnName = ID_FIELD)
     private Integer id;
-    @DatabaseField(canBeNull = false, columnName = LECTURER_NAME_FIELD)
+    @DatabaseField(canBeNull = false, index = true, columnName = LECTURER_NAME_FIELD)
     private String name;
+    private List<SubjectDTO> subjects = new ArrayList<>();
 
     public LecturerDTO() {}
 
@@ -34,4 +38,12 @@ public class LecturerDTO {
     public void setName(String name) {
         this.name = name;
     }
+
+    public List<SubjectDTO> getSubjects() {
+        return subjects;
+    }
+
+    public void setSubjects(List<SubjectDTO> subjects) {
+        this.subjects = subjects;
+    }
 }
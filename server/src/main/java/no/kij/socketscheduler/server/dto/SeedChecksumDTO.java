@@ -0,0 +1,34 @@
+package no.kij.socketscheduler.server.dto;
+
+import com.j256.ormlite.field.DatabaseField;
+import com.j256.ormlite.table.DatabaseTable;
+
+/**
+ * This class is the Data Transfer Object for the seed_checksums table,
+ * holding a checksum of every resource file the database was last seeded from.
+ */
+@DatabaseTable(tableName = "seed_checksums")
+public class SeedChecksumDTO {
+    public static final String RESOURCE_FIELD = "resource";
+    public static final String CHECKSUM_FIELD = "checksum";
+
+    @DatabaseField(id = true, columnName = RESOURCE_FIELD)
+    private String resource;
+    @DatabaseField(canBeNull = false, columnName = CHECKSUM_FIELD)
+    private String checksum;
+
+    public SeedChecksumDTO() {}
+
+    public SeedChecksumDTO(String resource, String checksum) {
+        this.resource = resource;
+        this.checksum = checksum;
+    }
+
+    public String getResource() {
+        return resource;
+    }
+
+    public String getChecksum() {
+        return checksum;
+    }
+}
@@ -12,16 +12,18 @@ import java.util.List;
  */
 @DatabaseTable(tableName = "subjects", daoClass = SubjectDaoImpl.class)
 public class SubjectDTO {
+    public static final String ID_FIELD = "id";
     public static final String SHORT_CODE_FIELD = "code";
     public static final String NAME_FIELD = "name";
+    public static final String ENROLLED_FIELD = "enrolled";
 
-    @DatabaseField(generatedId = true)
+    @DatabaseField(generatedId = true, columnName = ID_FIELD)
     private Integer id;
-    @DatabaseField(canBeNull = false, columnName = SHORT_CODE_FIELD)
+    @DatabaseField(canBeNull = false, uniqueIndex = true, columnName = SHORT_CODE_FIELD)
     private String shortName;
-    @DatabaseField(canBeNull = false, columnName = NAME_FIELD)
+    @DatabaseField(canBeNull = false, index = true, columnName = NAME_FIELD)
     private String name;
-    @DatabaseField(defaultValue = "0")
+    @DatabaseField(defaultValue = "0", columnName = ENROLLED_FIELD)
     private Integer enrolled;
     private List<LecturerDTO> lecturers = new ArrayList<>();
 
@@ -31,6 +33,10 @@ public class SubjectDTO {
         return id;
     }
 
+    public void setId(Integer id) {
+        this.id = id;
+    }
+
     public String getShortName() {
         return shortName;
     }
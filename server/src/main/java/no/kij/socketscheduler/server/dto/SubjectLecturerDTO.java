@@ -11,12 +11,14 @@ public class SubjectLecturerDTO {
     public static final String ID_FIELD = "id";
     public static final String SUBJECT_ID_FIELD = "subject_id";
     public static final String LECTURER_ID_FIELD = "lecturer_id";
+    // a lecturer is bound to a subject once, and subject_id leads so the index also finds the lecturers of a subject
+    public static final String PAIR_INDEX = "subject_lecturer_pair_idx";
 
     @DatabaseField(generatedId = true, columnName = ID_FIELD)
     private Integer id;
-    @DatabaseField(foreign = true, columnName = SUBJECT_ID_FIELD)
+    @DatabaseField(foreign = true, uniqueIndexName = PAIR_INDEX, columnName = SUBJECT_ID_FIELD)
     private SubjectDTO subjectDTO;
-    @DatabaseField(foreign = true, columnName = LECTURER_ID_FIELD)
+    @DatabaseField(foreign = true, uniqueIndexName = PAIR_INDEX, index = true, columnName = LECTURER_ID_FIELD)
     private LecturerDTO lecturerDTO;
 
     public SubjectLecturerDTO() {}
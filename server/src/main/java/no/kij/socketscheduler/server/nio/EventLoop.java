@@ -0,0 +1,175 @@
+package no.kij.socketscheduler.server.nio;
+
+import no.kij.socketscheduler.server.util.ConnectionManager;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A single thread that serves many clients at once, by waiting on a selector for any of them
+ * to become readable or writable instead of blocking a thread per client.
+ */
+class EventLoop implements Runnable {
+    private final Selector selector;
+    private final ConnectionManager connectionManager;
+    private final Queue<SocketChannel> newChannels;
+    private final Queue<NioSession> resumedSessions;
+    private final AtomicInteger sessions;
+    private volatile boolean running;
+
+    EventLoop(ConnectionManager connectionManager) throws IOException {
+        this.connectionManager = connectionManager;
+        selector = Selector.open();
+        newChannels = new ConcurrentLinkedQueue<>();
+        resumedSessions = new ConcurrentLinkedQueue<>();
+        sessions = new AtomicInteger();
+        running = true;
+    }
+
+    /**
+     * Hands a newly accepted channel over to this loop.
+     * It is registered by the loop thread itself, since registering while it is selecting would block.
+     * @param channel The channel of the client that connected
+     */
+    void register(SocketChannel channel) {
+        newChannels.add(channel);
+        selector.wakeup();
+    }
+
+    /**
+     * Hands a session back to this loop once the database has answered the request it was waiting for.
+     * Called from the database thread that answered it.
+     * @param session The session to resume
+     */
+    void resume(NioSession session) {
+        resumedSessions.add(session);
+        selector.wakeup();
+    }
+
+    /**
+     * Counts a session as gone. Called once by every session, when it is closed.
+     */
+    void sessionClosed() {
+        sessions.decrementAndGet();
+    }
+
+    /**
+     * @return The number of clients this loop is currently serving
+     */
+    int getSessionCount() {
+        return sessions.get();
+    }
+
+    /**
+     * Stops the loop and closes every client connected to it.
+     */
+    void stop() {
+        running = false;
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                selector.select();
+                registerNewChannels();
+                resumeSessions();
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    handleKey(key);
+                }
+            } catch (IOException e) {
+                System.err.println("Event loop failed to select.");
+                System.err.println(e.getMessage());
+            }
+        }
+        closeAll();
+    }
+
+    private void registerNewChannels() {
+        SocketChannel channel;
+        while ((channel = newChannels.poll()) != null) {
+            NioSession session = null;
+            try {
+                channel.configureBlocking(false);
+                SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+                session = new NioSession(channel, key, this, connectionManager);
+                key.attach(session);
+                sessions.incrementAndGet();
+                session.open();
+            } catch (IOException e) {
+                System.err.println("Could not register the client.");
+                System.err.println(e.getMessage());
+                if (session != null) {
+                    session.close();
+                } else {
+                    closeChannel(channel);
+                }
+            }
+        }
+    }
+
+    private void resumeSessions() {
+        NioSession session;
+        while ((session = resumedSessions.poll()) != null) {
+            if (!session.isOpen()) {
+                // the client left before the database answered
+                continue;
+            }
+            try {
+                session.resume();
+            } catch (IOException e) {
+                System.err.println("Client is gone.");
+                System.err.println(e.getMessage());
+                session.close();
+            }
+        }
+    }
+
+    private void handleKey(SelectionKey key) {
+        NioSession session = (NioSession) key.attachment();
+        try {
+            if (key.isValid() && key.isReadable()) {
+                session.read();
+            }
+            if (key.isValid() && key.isWritable()) {
+                session.write();
+            }
+        } catch (IOException e) {
+            System.err.println("Client is gone.");
+            System.err.println(e.getMessage());
+            session.close();
+        }
+    }
+
+    private void closeAll() {
+        for (SelectionKey key : selector.keys()) {
+            if (key.attachment() != null) {
+                ((NioSession) key.attachment()).close();
+            }
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+        }
+    }
+
+    private void closeChannel(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+        }
+    }
+}
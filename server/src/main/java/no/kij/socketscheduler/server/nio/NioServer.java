@@ -0,0 +1,113 @@
+package no.kij.socketscheduler.server.nio;
+
+import no.kij.socketscheduler.server.util.ConnectionManager;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+
+import static org.fusesource.jansi.Ansi.ansi;
+
+/**
+ * A server that accepts clients on a non-blocking ServerSocketChannel and spreads them over
+ * a small, fixed set of event loop threads, instead of starting a new thread for each client.
+ * The commands are still run by the same ClientThread logic as the blocking server.
+ */
+public class NioServer {
+    private final int port;
+    private final ConnectionManager connectionManager;
+    private final EventLoop[] eventLoops;
+    private Selector acceptSelector;
+    private ServerSocketChannel serverChannel;
+    private volatile boolean running;
+
+    /**
+     * Creates the server, without opening the port yet.
+     * @param port Port to listen for clients on
+     * @param connectionManager The ConnectionManager to pool database connections from
+     * @param loopCount Number of event loop threads to serve the clients with
+     */
+    public NioServer(int port, ConnectionManager connectionManager, int loopCount) {
+        this.port = port;
+        this.connectionManager = connectionManager;
+        eventLoops = new EventLoop[loopCount];
+    }
+
+    /**
+     * Opens the port and starts the event loops, then accepts clients on the calling thread until stopped.
+     * @throws IOException If the port could not be opened
+     */
+    public void start() throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        serverChannel.configureBlocking(false);
+        acceptSelector = Selector.open();
+        serverChannel.register(acceptSelector, SelectionKey.OP_ACCEPT);
+
+        for (int i = 0; i < eventLoops.length; i++) {
+            eventLoops[i] = new EventLoop(connectionManager);
+            Thread loopThread = new Thread(eventLoops[i], "nio-event-loop-" + i);
+            loopThread.setDaemon(true);
+            loopThread.start();
+        }
+
+        running = true;
+        acceptClients();
+    }
+
+    /**
+     * Stops accepting clients and shuts down the event loops.
+     */
+    public void stop() {
+        running = false;
+        if (acceptSelector != null) {
+            acceptSelector.wakeup();
+        }
+    }
+
+    /**
+     * @return The number of clients connected across all the event loops
+     */
+    public int getSessionCount() {
+        int count = 0;
+        for (EventLoop eventLoop : eventLoops) {
+            if (eventLoop != null) {
+                count += eventLoop.getSessionCount();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Accepts clients constantly, and hands them out to the event loops in turn.
+     * @throws IOException If something goes wrong with the I/O
+     */
+    private void acceptClients() throws IOException {
+        int client = 0;
+        System.out.println(ansi().render("@|bold,cyan Accepting connections on " + eventLoops.length + " event loops...|@"));
+        try {
+            while (running) {
+                acceptSelector.select();
+                Iterator<SelectionKey> keys = acceptSelector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    keys.next();
+                    keys.remove();
+                    SocketChannel channel;
+                    while ((channel = serverChannel.accept()) != null) {
+                        eventLoops[client++ % eventLoops.length].register(channel);
+                    }
+                }
+            }
+        } finally {
+            for (EventLoop eventLoop : eventLoops) {
+                eventLoop.stop();
+            }
+            acceptSelector.close();
+            serverChannel.close();
+        }
+    }
+}
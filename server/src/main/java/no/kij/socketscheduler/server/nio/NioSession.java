@@ -0,0 +1,222 @@
+package no.kij.socketscheduler.server.nio;
+
+import no.kij.socketscheduler.server.ClientThread;
+import no.kij.socketscheduler.server.protocol.Frame;
+import no.kij.socketscheduler.server.protocol.FrameCodec;
+import no.kij.socketscheduler.server.util.ConnectionManager;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The state of a single client connected to the NIO server.
+ * It collects the bytes read from the channel until a whole message has arrived,
+ * runs it through the ClientThread command logic, and queues the response for writing.
+ *
+ * A command asking the database is answered on a database thread, so the event loop does not wait for it.
+ * Until it is answered the session stops reading, which keeps the answers in the order they were asked,
+ * and the event loop is told to resume the session once the answer is in. The response is then written
+ * on the event loop, never on the database thread.
+ */
+class NioSession {
+    // a message written with writeUTF is at most 65535 bytes, plus the two bytes telling its length
+    private static final int MAX_LEGACY_MESSAGE_SIZE = 65535 + 2;
+    private static final int MAX_FRAMED_MESSAGE_SIZE =
+            FrameCodec.MAX_FRAME_SIZE + FrameCodec.headerSize(FrameCodec.PIPELINED_VERSION);
+
+    private final SocketChannel channel;
+    private final SelectionKey key;
+    private final EventLoop loop;
+    private final ClientThread clientThread;
+    private final ByteArrayOutputStream responseBuffer;
+    // what the ClientThread writes to, and locks while writing
+    private final DataOutputStream responseStream;
+    private final Queue<ByteBuffer> pendingWrites;
+    private ByteBuffer readBuffer;
+    // the request waiting for the database, or null if none is
+    private CompletableFuture<Runnable> inFlight;
+    private boolean closed;
+
+    NioSession(SocketChannel channel, SelectionKey key, EventLoop loop, ConnectionManager connectionManager) {
+        this.channel = channel;
+        this.key = key;
+        this.loop = loop;
+        responseBuffer = new ByteArrayOutputStream();
+        responseStream = new DataOutputStream(responseBuffer);
+        clientThread = new ClientThread(responseStream, connectionManager);
+        pendingWrites = new ArrayDeque<>();
+        readBuffer = ByteBuffer.allocate(1024);
+    }
+
+    /**
+     * Greets the client, the same way the blocking server does when a client connects.
+     * @throws IOException If the greeting could not be written to the channel
+     */
+    void open() throws IOException {
+        clientThread.sendWelcome();
+        queueResponse();
+    }
+
+    /**
+     * Reads whatever is available on the channel and runs every complete message in it.
+     * @throws IOException If the channel could not be read from, or the client has hung up
+     */
+    void read() throws IOException {
+        int read = channel.read(readBuffer);
+        if (read == -1) {
+            throw new IOException("Client is gone.");
+        }
+        runMessages();
+    }
+
+    /**
+     * Sends the answer of the request that was waiting for the database, and goes on with the messages
+     * that arrived meanwhile. Called by the event loop thread once the answer is in.
+     * @throws IOException If the channel could not be written to, or a message could not be decoded
+     */
+    void resume() throws IOException {
+        Runnable write = inFlight.join();
+        inFlight = null;
+        write.run();
+        if (clientThread.isRunning()) {
+            key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+        }
+        queueResponse();
+        if (key.isValid()) {
+            runMessages();
+        }
+    }
+
+    /**
+     * @return false once the session has been closed
+     */
+    boolean isOpen() {
+        return key.isValid();
+    }
+
+    /**
+     * Runs the complete messages in the read buffer one at a time,
+     * until one has to wait for the database or the buffer holds no more.
+     * @throws IOException If the channel could not be written to, or a message could not be decoded
+     */
+    private void runMessages() throws IOException {
+        readBuffer.flip();
+        Frame request;
+        while (inFlight == null && clientThread.isRunning() && (request = nextMessage()) != null) {
+            CompletableFuture<Runnable> answered = clientThread.answerMessageAsync(request.getRequestId(),
+                    request.getPayload());
+            if (answered.isDone()) {
+                answered.join().run();
+            } else {
+                inFlight = answered;
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+                answered.whenComplete((write, e) -> loop.resume(this));
+            }
+            queueResponse();
+        }
+        readBuffer.compact();
+
+        // make room for a message that is larger than what the buffer currently holds
+        int maxMessageSize = clientThread.getProtocolVersion() == FrameCodec.LEGACY_VERSION
+                ? MAX_LEGACY_MESSAGE_SIZE : MAX_FRAMED_MESSAGE_SIZE;
+        if (!readBuffer.hasRemaining() && readBuffer.capacity() < maxMessageSize) {
+            ByteBuffer larger = ByteBuffer.allocate((int) Math.min(readBuffer.capacity() * 2L, maxMessageSize));
+            readBuffer.flip();
+            larger.put(readBuffer);
+            readBuffer = larger;
+        }
+    }
+
+    /**
+     * Writes as much of the queued responses as the channel accepts,
+     * and only keeps listening for writability while something is left.
+     * @throws IOException If the channel could not be written to
+     */
+    void write() throws IOException {
+        while (!pendingWrites.isEmpty()) {
+            ByteBuffer buffer = pendingWrites.peek();
+            channel.write(buffer);
+            if (buffer.hasRemaining()) {
+                key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                return;
+            }
+            pendingWrites.poll();
+        }
+        key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+
+        if (!clientThread.isRunning()) {
+            close();
+        }
+    }
+
+    /**
+     * Closes the channel and stops listening to it, and tells the event loop the session is gone.
+     * Closing it again does nothing, as it may be closed both while resuming and while handling its key.
+     */
+    void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        loop.sessionClosed();
+        key.cancel();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+        }
+    }
+
+    /**
+     * Takes the next complete message out of the read buffer,
+     * reading it as a frame or a writeUTF message depending on the protocol version agreed on.
+     * @return The message, or null if the whole message has not arrived yet
+     * @throws IOException If the message could not be decoded
+     */
+    private Frame nextMessage() throws IOException {
+        int version = clientThread.getProtocolVersion();
+        if (version != FrameCodec.LEGACY_VERSION) {
+            Frame frame = FrameCodec.decode(readBuffer, version);
+            if (frame != null && frame.getType() == FrameCodec.CLOSE) {
+                throw new IOException("Client closed the connection.");
+            }
+            return frame;
+        }
+
+        if (readBuffer.remaining() < 2) {
+            return null;
+        }
+        int length = readBuffer.getShort(readBuffer.position()) & 0xFFFF;
+        if (readBuffer.remaining() < length + 2) {
+            return null;
+        }
+
+        // let DataInputStream decode it, since the client writes modified UTF-8 and not plain UTF-8
+        byte[] message = new byte[length + 2];
+        readBuffer.get(message);
+        return new Frame(FrameCodec.REQUEST, new DataInputStream(new ByteArrayInputStream(message)).readUTF());
+    }
+
+    /**
+     * Moves whatever the command logic has written into the queue of pending writes, and tries to send it.
+     * @throws IOException If the channel could not be written to
+     */
+    private void queueResponse() throws IOException {
+        synchronized (responseStream) {
+            if (responseBuffer.size() > 0) {
+                pendingWrites.add(ByteBuffer.wrap(responseBuffer.toByteArray()));
+                responseBuffer.reset();
+            }
+        }
+        write();
+    }
+}
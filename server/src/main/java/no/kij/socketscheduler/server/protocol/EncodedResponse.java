@@ -0,0 +1,102 @@
+package no.kij.socketscheduler.server.protocol;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * The lines of a response encoded once, so the same response can be written to any number of clients
+ * without formatting or encoding it again.
+ *
+ * For version 1 the bytes are the whole response: every line written with writeUTF, followed by
+ * END_TRANSMISSION. From version 2 they are the text of the frame, and only the header of the frame is written
+ * for every request, as it holds the id of the request in version 3.
+ * A response can be encoded for either or both, and the bytes must not be changed once encoded.
+ */
+public class EncodedResponse {
+    private final byte[] legacy;
+    private final byte[] payload;
+
+    private EncodedResponse(byte[] legacy, byte[] payload) {
+        this.legacy = legacy;
+        this.payload = payload;
+    }
+
+    /**
+     * Encodes the lines for every protocol version.
+     * @param lines Lines of the response
+     * @return The encoded response
+     * @throws IllegalArgumentException If a line is too long to be written with writeUTF
+     */
+    public static EncodedResponse encode(List<String> lines) {
+        return new EncodedResponse(encodeLegacy(lines), encodePayload(lines));
+    }
+
+    /**
+     * Encodes the lines for the given protocol version only.
+     * @param lines Lines of the response
+     * @param version Protocol version the response is written in
+     * @return The encoded response
+     * @throws IllegalArgumentException If a line is too long to be written with writeUTF in version 1
+     */
+    public static EncodedResponse encode(List<String> lines, int version) {
+        return version == FrameCodec.LEGACY_VERSION
+                ? new EncodedResponse(encodeLegacy(lines), null)
+                : new EncodedResponse(null, encodePayload(lines));
+    }
+
+    /**
+     * @param version A protocol version
+     * @return true if the response can be written in the version
+     */
+    public boolean isEncodedFor(int version) {
+        return (version == FrameCodec.LEGACY_VERSION ? legacy : payload) != null;
+    }
+
+    /**
+     * @return Number of bytes held for the response
+     */
+    public int getSize() {
+        return (legacy == null ? 0 : legacy.length) + (payload == null ? 0 : payload.length);
+    }
+
+    /**
+     * Writes the response to the stream and flushes it.
+     * @param out Stream to write to
+     * @param version Protocol version to write the response in, which it must be encoded for
+     * @param requestId Id of the request answered, left out before version 3
+     * @throws IOException If the response could not be written
+     */
+    public void writeTo(DataOutputStream out, int version, int requestId) throws IOException {
+        if (!isEncodedFor(version)) {
+            throw new IllegalStateException("The response is not encoded for version " + version + ".");
+        }
+        if (version == FrameCodec.LEGACY_VERSION) {
+            out.write(legacy);
+            out.flush();
+        } else {
+            FrameCodec.writeFrame(out, version, FrameCodec.RESPONSE, requestId, payload);
+        }
+    }
+
+    private static byte[] encodeLegacy(List<String> lines) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            for (String line : lines) {
+                out.writeUTF(line);
+            }
+            out.writeUTF(FrameCodec.END_TRANSMISSION);
+        } catch (IOException e) {
+            // writing to memory only fails for a line longer than writeUTF allows
+            throw new IllegalArgumentException(e.getMessage(), e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] encodePayload(List<String> lines) {
+        return String.join("\n", lines).getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,33 @@
+package no.kij.socketscheduler.server.protocol;
+
+/**
+ * A single message sent in the framed protocol, holding what kind of message it is, its text,
+ * and the id of the request it belongs to (always 0 before protocol version 3).
+ */
+public class Frame {
+    private byte type;
+    private int requestId;
+    private String payload;
+
+    public Frame(byte type, String payload) {
+        this(type, 0, payload);
+    }
+
+    public Frame(byte type, int requestId, String payload) {
+        this.type = type;
+        this.requestId = requestId;
+        this.payload = payload;
+    }
+
+    public byte getType() {
+        return type;
+    }
+
+    public int getRequestId() {
+        return requestId;
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+}
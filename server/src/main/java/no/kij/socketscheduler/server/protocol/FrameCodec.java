@@ -0,0 +1,173 @@
+package no.kij.socketscheduler.server.protocol;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This class consists exclusively of static methods used to read and write the framed protocol.
+ *
+ * Version 1 is the original protocol, where every line is sent with writeUTF and a response
+ * ends with an END_TRANSMISSION line. Version 2 sends a whole response as one frame:
+ * a byte telling the frame type, an int telling the length, and the UTF-8 encoded text.
+ * Version 3 adds an int request id between the type and the length, so a client can send
+ * many requests without waiting, and match each response to the request it answers.
+ *
+ * A connection always starts in version 1. A client that wants to use frames sends
+ * "PROTOCOL 2" (or "PROTOCOL 3", optionally followed by "UNORDERED" to allow responses
+ * to come back in any order) as its first message, and the server answers with the version
+ * it agrees to before switching. Servers that don't know about frames answer with an empty
+ * response, so the client knows to stay on version 1.
+ */
+public class FrameCodec {
+    public static final int LEGACY_VERSION = 1;
+    public static final int FRAMED_VERSION = 2;
+    public static final int PIPELINED_VERSION = 3;
+    public static final String HANDSHAKE = "PROTOCOL";
+    public static final String UNORDERED = "UNORDERED";
+    public static final String END_TRANSMISSION = "END_TRANSMISSION";
+
+    public static final byte REQUEST = 1;
+    public static final byte RESPONSE = 2;
+    public static final byte CLOSE = 3;
+
+    public static final int MAX_FRAME_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * Writes a version 2 frame to the stream and flushes it.
+     * @param out Stream to write to
+     * @param type Type of the frame
+     * @param payload Text to send
+     * @throws IOException If the frame could not be written
+     */
+    public static void writeFrame(DataOutputStream out, byte type, String payload) throws IOException {
+        writeFrame(out, FRAMED_VERSION, type, 0, payload);
+    }
+
+    /**
+     * Writes a frame to the stream and flushes it.
+     * @param out Stream to write to
+     * @param version Protocol version to write the frame in
+     * @param type Type of the frame
+     * @param requestId Id of the request the frame belongs to, left out before version 3
+     * @param payload Text to send
+     * @throws IOException If the frame could not be written
+     */
+    public static void writeFrame(DataOutputStream out, int version, byte type, int requestId, String payload)
+            throws IOException {
+        writeFrame(out, version, type, requestId, payload.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Writes a frame with text that is already encoded to the stream and flushes it.
+     * @param out Stream to write to
+     * @param version Protocol version to write the frame in
+     * @param type Type of the frame
+     * @param requestId Id of the request the frame belongs to, left out before version 3
+     * @param bytes The UTF-8 encoded text to send
+     * @throws IOException If the frame could not be written
+     */
+    public static void writeFrame(DataOutputStream out, int version, byte type, int requestId, byte[] bytes)
+            throws IOException {
+        out.writeByte(type);
+        if (version >= PIPELINED_VERSION) {
+            out.writeInt(requestId);
+        }
+        out.writeInt(bytes.length);
+        out.write(bytes);
+        out.flush();
+    }
+
+    /**
+     * Reads a whole version 2 frame from the stream, blocking until it has arrived.
+     * @param in Stream to read from
+     * @return The frame that was read
+     * @throws IOException If the stream ends, or the frame is larger than allowed
+     */
+    public static Frame readFrame(DataInputStream in) throws IOException {
+        return readFrame(in, FRAMED_VERSION);
+    }
+
+    /**
+     * Reads a whole frame from the stream, blocking until it has arrived.
+     * @param in Stream to read from
+     * @param version Protocol version the frame is written in
+     * @return The frame that was read
+     * @throws IOException If the stream ends, or the frame is larger than allowed
+     */
+    public static Frame readFrame(DataInputStream in, int version) throws IOException {
+        byte type = in.readByte();
+        int requestId = version >= PIPELINED_VERSION ? in.readInt() : 0;
+        int length = checkLength(in.readInt());
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new Frame(type, requestId, new String(bytes, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Takes a frame out of the buffer, if the whole frame is in it.
+     * @param buffer Buffer ready to be read from
+     * @param version Protocol version the frame is written in
+     * @return The frame, or null if the whole frame has not arrived yet
+     * @throws IOException If the frame is larger than allowed
+     */
+    public static Frame decode(ByteBuffer buffer, int version) throws IOException {
+        int headerSize = headerSize(version);
+        if (buffer.remaining() < headerSize) {
+            return null;
+        }
+        int length = checkLength(buffer.getInt(buffer.position() + headerSize - 4));
+        if (buffer.remaining() < headerSize + length) {
+            return null;
+        }
+
+        byte type = buffer.get();
+        int requestId = version >= PIPELINED_VERSION ? buffer.getInt() : 0;
+        buffer.getInt();
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new Frame(type, requestId, new String(bytes, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param version Protocol version
+     * @return Number of bytes before the text of a frame in the given version
+     */
+    public static int headerSize(int version) {
+        return version >= PIPELINED_VERSION ? 9 : 5;
+    }
+
+    /**
+     * Finds the version a client asks for in its handshake.
+     * @param msg The message from the client
+     * @return The version asked for, or -1 if the message is not a handshake
+     */
+    public static int parseHandshake(String msg) {
+        if (msg == null || !msg.startsWith(HANDSHAKE + " ")) {
+            return -1;
+        }
+        String[] parts = msg.trim().split(" ");
+        try {
+            return Integer.parseInt(parts[1]);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * @param msg A handshake from the client
+     * @return true if the client allows responses to be sent in any order
+     */
+    public static boolean isUnordered(String msg) {
+        return msg != null && msg.trim().endsWith(" " + UNORDERED);
+    }
+
+    private static int checkLength(int length) throws IOException {
+        if (length < 0 || length > MAX_FRAME_SIZE) {
+            throw new IOException("Frame of " + length + " bytes is not allowed.");
+        }
+        return length;
+    }
+}
@@ -0,0 +1,48 @@
+package no.kij.socketscheduler.server.protocol;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The lines written in answer to a single request, along with the id of that request,
+ * so the response can be matched to its request when many are sent at once.
+ *
+ * A response given an EncodedResponse is sent as those bytes, in place of its lines.
+ */
+public class Response {
+    private int requestId;
+    private List<String> lines;
+    private EncodedResponse encoded;
+
+    public Response(int requestId) {
+        this.requestId = requestId;
+        this.lines = new ArrayList<>();
+    }
+
+    public int getRequestId() {
+        return requestId;
+    }
+
+    public List<String> getLines() {
+        return lines;
+    }
+
+    public void add(String line) {
+        lines.add(line);
+    }
+
+    /**
+     * @return The encoded response to send in place of the lines, or null to send the lines
+     */
+    public EncodedResponse getEncoded() {
+        return encoded;
+    }
+
+    /**
+     * Sends the given bytes in place of the lines, such as a response encoded earlier for another request.
+     * @param encoded The encoded response
+     */
+    public void setEncoded(EncodedResponse encoded) {
+        this.encoded = encoded;
+    }
+}
@@ -0,0 +1,141 @@
+package no.kij.socketscheduler.server.search;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A compact set of strings that can say for certain that a string was never put in it,
+ * while a string it might hold has to be checked elsewhere.
+ *
+ * Every string sets a few bits picked by hashing it, and a string whose bits are not all set was never put.
+ * The bits are sized for the number of strings expected, so that only about the chosen share of the strings
+ * never put find all their bits set anyway. Putting more strings than expected makes that share grow.
+ *
+ * Strings can be put and looked for from several threads at once. Strings cannot be removed.
+ */
+public class BloomFilter {
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final AtomicLongArray words;
+    private final long bits;
+    private final int hashes;
+    private final int expected;
+    private final AtomicInteger count;
+
+    /**
+     * Creates an empty filter.
+     * @param expected Number of strings expected to be put, at least 1
+     * @param falsePositiveRate Share of the strings never put that should be taken for one that was,
+     *                          above 0 and below 1
+     */
+    public BloomFilter(int expected, double falsePositiveRate) {
+        if (expected < 1 || falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("Needs at least 1 string and a rate between 0 and 1, was "
+                    + expected + " and " + falsePositiveRate);
+        }
+        // the sizes giving the lowest rate for the bits used, see Bloom's paper or any textbook
+        long wanted = (long) Math.ceil(-expected * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        words = new AtomicLongArray((int) Math.max(1, (wanted + 63) / 64));
+        bits = words.length() * 64L;
+        hashes = Math.max(1, (int) Math.round((double) bits / expected * Math.log(2)));
+        this.expected = expected;
+        count = new AtomicInteger();
+    }
+
+    /**
+     * Puts a string in the filter.
+     * @param text The string to put
+     */
+    public void put(String text) {
+        long hash = hash(text);
+        int first = (int) hash;
+        int second = (int) (hash >>> 32);
+        for (int i = 0; i < hashes; i++) {
+            long bit = index(first + i * second);
+            long mask = 1L << bit;
+            int word = (int) (bit >>> 6);
+            long old = words.get(word);
+            while ((old & mask) == 0 && !words.compareAndSet(word, old, old | mask)) {
+                old = words.get(word);
+            }
+        }
+        count.incrementAndGet();
+    }
+
+    /**
+     * @param text The string to look for
+     * @return false if the string was never put, true if it might have been
+     */
+    public boolean mightContain(String text) {
+        long hash = hash(text);
+        int first = (int) hash;
+        int second = (int) (hash >>> 32);
+        for (int i = 0; i < hashes; i++) {
+            long bit = index(first + i * second);
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return Number of strings put, counting a string put twice twice
+     */
+    public int getCount() {
+        return count.get();
+    }
+
+    /**
+     * @return Number of strings the filter was sized for
+     */
+    public int getExpected() {
+        return expected;
+    }
+
+    /**
+     * @return Number of bits set for every string
+     */
+    public int getHashes() {
+        return hashes;
+    }
+
+    /**
+     * @return Number of bytes the bits take
+     */
+    public long getSizeBytes() {
+        return bits / 8;
+    }
+
+    /**
+     * @return The share of the strings never put expected to be taken for one that was,
+     * going by the number of strings put so far
+     */
+    public double getExpectedFalsePositiveRate() {
+        return Math.pow(1 - Math.exp(-(double) hashes * count.get() / bits), hashes);
+    }
+
+    private long index(int hash) {
+        return (hash & 0xffffffffL) % bits;
+    }
+
+    /**
+     * FNV-1a over the UTF-8 bytes, mixed so that every bit of the result depends on every byte,
+     * as the two halves of it are used as separate hashes.
+     */
+    private static long hash(String text) {
+        long hash = FNV_OFFSET;
+        for (byte b : text.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= FNV_PRIME;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
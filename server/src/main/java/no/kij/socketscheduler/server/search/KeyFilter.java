@@ -0,0 +1,244 @@
+package no.kij.socketscheduler.server.search;
+
+import no.kij.socketscheduler.server.catalogue.Collation;
+
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * A BloomFilter over a column the daos look rows up by exactly, like the subject codes,
+ * so a lookup for a value no row has can be answered without asking the database.
+ *
+ * The filter reads every value using its Loader the first time it is asked, and is sized for twice as many,
+ * so values written afterwards can be put in it as they are written. It reads them all again when it holds
+ * more than it was sized for, after invalidate is called, and once it is older than the age given,
+ * which bounds how long a value written without going through the daos can be missed.
+ * Values are compared the way the database compares them, and trailing spaces are left out,
+ * as MySQL ignores them when comparing.
+ *
+ * Since values are never removed, a value that is gone is only taken for one that might be there,
+ * which just sends the lookup to the database. If the values cannot be read every value might be there.
+ */
+public class KeyFilter {
+    public static final double FALSE_POSITIVE_RATE = 0.01;
+    private static final int MIN_EXPECTED = 1024;
+
+    private static final AtomicLong totalChecks = new AtomicLong();
+    private static final AtomicLong totalSkipped = new AtomicLong();
+    private static final AtomicLong totalFalsePositives = new AtomicLong();
+    private static final AtomicLong totalBytes = new AtomicLong();
+
+    private final Collation collation;
+    private final Loader loader;
+    private final long maxAgeNanos;
+    private final LongSupplier clock;
+    private final AtomicLong checks;
+    private final AtomicLong skipped;
+    private final AtomicLong falsePositives;
+    private volatile BloomFilter filter;
+    private volatile long loadedAt;
+
+    /**
+     * Creates a filter that reads its values using the given loader when first asked.
+     * @param collation How the database compares the values
+     * @param loader Reads every value
+     * @param maxAge How long the values are used before they are read again
+     * @param unit Unit of maxAge
+     */
+    public KeyFilter(Collation collation, Loader loader, long maxAge, TimeUnit unit) {
+        this(collation, loader, maxAge, unit, System::nanoTime);
+    }
+
+    /**
+     * Creates a filter reading the time from the given clock, so tests can move it forward.
+     * @param clock Gives the time in nanoseconds
+     */
+    KeyFilter(Collation collation, Loader loader, long maxAge, TimeUnit unit, LongSupplier clock) {
+        this.collation = collation;
+        this.loader = loader;
+        this.maxAgeNanos = unit.toNanos(maxAge);
+        this.clock = clock;
+        checks = new AtomicLong();
+        skipped = new AtomicLong();
+        falsePositives = new AtomicLong();
+    }
+
+    /**
+     * Checks whether a row might have the value, reading the values first if needed.
+     * @param value The value looked up
+     * @return false if no row has the value, true if one might
+     */
+    public boolean mightContain(String value) {
+        if (value == null) {
+            return true;
+        }
+        BloomFilter current = current();
+        if (current == null) {
+            return true;
+        }
+        checks.incrementAndGet();
+        totalChecks.incrementAndGet();
+        if (current.mightContain(key(value))) {
+            return true;
+        }
+        skipped.incrementAndGet();
+        totalSkipped.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Reads the values now if they have not been read, so the first lookup does not have to wait for them.
+     */
+    public void load() {
+        current();
+    }
+
+    /**
+     * Tells the filter that a value it said might be there was looked up, and no row had it.
+     */
+    public void recordFalsePositive() {
+        falsePositives.incrementAndGet();
+        totalFalsePositives.incrementAndGet();
+    }
+
+    /**
+     * Adds a value written to the database. Nothing is done if the values have not been read yet,
+     * as reading them will find it.
+     * @param value The value, or null for none
+     */
+    public synchronized void put(String value) {
+        BloomFilter current = filter;
+        if (current != null && value != null) {
+            current.put(key(value));
+        }
+    }
+
+    /**
+     * Forgets every value, so they are read again before the next lookup.
+     * Used when the values were changed in a way the filter cannot follow one by one.
+     */
+    public synchronized void invalidate() {
+        replace(null);
+    }
+
+    /**
+     * @return The filter in use, or null if the values have not been read
+     */
+    public BloomFilter getFilter() {
+        return filter;
+    }
+
+    /**
+     * @return Number of lookups the filter was asked about
+     */
+    public long getChecks() {
+        return checks.get();
+    }
+
+    /**
+     * @return Number of lookups the filter answered, saving a trip to the database
+     */
+    public long getSkipped() {
+        return skipped.get();
+    }
+
+    /**
+     * @return Number of lookups the filter let through that found nothing
+     */
+    public long getFalsePositives() {
+        return falsePositives.get();
+    }
+
+    /**
+     * @return The share of the lookups for values no row has that the filter let through
+     */
+    public double getFalsePositiveRate() {
+        return rate(falsePositives.get(), skipped.get());
+    }
+
+    public static long getTotalChecks() {
+        return totalChecks.get();
+    }
+
+    public static long getTotalSkipped() {
+        return totalSkipped.get();
+    }
+
+    public static double getTotalFalsePositiveRate() {
+        return rate(totalFalsePositives.get(), totalSkipped.get());
+    }
+
+    /**
+     * @return Number of bytes taken by the filters in use
+     */
+    public static long getTotalBytes() {
+        return totalBytes.get();
+    }
+
+    private static double rate(long falsePositives, long skipped) {
+        long misses = falsePositives + skipped;
+        return misses > 0 ? (double) falsePositives / misses : 0;
+    }
+
+    private String key(String value) {
+        int end = value.length();
+        while (end > 0 && value.charAt(end - 1) == ' ') {
+            end--;
+        }
+        return collation.key(value.substring(0, end));
+    }
+
+    /**
+     * @return The filter to use, read again first if it is missing, full or too old, or null if it could not be
+     */
+    private BloomFilter current() {
+        BloomFilter current = filter;
+        if (isUsable(current)) {
+            return current;
+        }
+        synchronized (this) {
+            current = filter;
+            if (isUsable(current)) {
+                return current;
+            }
+            try {
+                // read while holding the lock, so a value put meanwhile is either read or put afterwards
+                Collection<String> values = loader.load();
+                BloomFilter loaded = new BloomFilter(Math.max(MIN_EXPECTED, values.size() * 2), FALSE_POSITIVE_RATE);
+                for (String value : values) {
+                    if (value != null) {
+                        loaded.put(key(value));
+                    }
+                }
+                loadedAt = clock.getAsLong();
+                replace(loaded);
+                return loaded;
+            } catch (SQLException e) {
+                System.err.println(e.getMessage());
+                return null;
+            }
+        }
+    }
+
+    private boolean isUsable(BloomFilter current) {
+        return current != null && current.getCount() <= current.getExpected()
+                && clock.getAsLong() - loadedAt < maxAgeNanos;
+    }
+
+    private void replace(BloomFilter replacement) {
+        BloomFilter old = filter;
+        totalBytes.addAndGet((replacement == null ? 0 : replacement.getSizeBytes())
+                - (old == null ? 0 : old.getSizeBytes()));
+        filter = replacement;
+    }
+
+    /**
+     * Reads every value to put in the filter.
+     */
+    public interface Loader {
+        Collection<String> load() throws SQLException;
+    }
+}
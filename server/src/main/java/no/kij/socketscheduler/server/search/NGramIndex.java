@@ -0,0 +1,412 @@
+package no.kij.socketscheduler.server.search;
+
+import no.kij.socketscheduler.server.catalogue.Collation;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An in-memory index finding the names containing a search term, the same as LIKE '%term%' would.
+ *
+ * Every name is split into trigrams (each run of three characters), and for every trigram the index
+ * keeps the sorted IDs of the names containing it. A search only looks at the names sharing the least
+ * common trigram of the term, and checks that each of them really contains the term, so a search no
+ * longer reads every name. Terms shorter than a trigram are still answered by looking through all names.
+ *
+ * Trigrams are kept in lower case, so the same index can also rank names by how well they match a search
+ * regardless of case, using Ranker. Candidates for ranking are the names sharing the most trigrams with the
+ * search, so names with a typo in them are found too.
+ *
+ * Names can be added, changed and removed one at a time. An index with a Loader starts out empty and
+ * reads all names the first time it is searched, and again after invalidate is called.
+ */
+public class NGramIndex {
+    public static final int GRAM_LENGTH = 3;
+    // ranking looks at this many of the names sharing the most trigrams for every result asked for
+    private static final int CANDIDATES_PER_RESULT = 10;
+    private static final int MIN_CANDIDATES = 50;
+    // the ids of trigrams common enough to push the total above this are not read, if rarer trigrams are there
+    private static final int MAX_POSTINGS_READ = 200000;
+    // above this the trigrams shared are counted in a map instead of an array indexed by ID
+    private static final int MAX_DENSE_ID = 1 << 24;
+    private static final ThreadLocal<byte[]> DENSE_COUNTS = ThreadLocal.withInitial(() -> new byte[0]);
+
+    private final Collation collation;
+    private final Loader loader;
+    private final ReadWriteLock lock;
+    private final TreeMap<Integer, String> keys;
+    private final Map<String, IdList> postings;
+    private boolean loaded;
+
+    /**
+     * Creates an empty index, to be filled with put.
+     * @param collation How names are compared
+     */
+    public NGramIndex(Collation collation) {
+        this(collation, null);
+    }
+
+    /**
+     * Creates an index that reads its names using the given loader when first searched.
+     * @param collation How names are compared
+     * @param loader Reads every name, by ID
+     */
+    public NGramIndex(Collation collation, Loader loader) {
+        this.collation = collation;
+        this.loader = loader;
+        lock = new ReentrantReadWriteLock();
+        keys = new TreeMap<>();
+        postings = new HashMap<>();
+        loaded = loader == null;
+    }
+
+    /**
+     * Adds a name to the index, replacing the name the ID had before.
+     * Nothing is done if the index has not been loaded yet, as loading it will read the name.
+     * @param id ID of the name
+     * @param name The name, or null to remove it
+     */
+    public void put(int id, String name) {
+        lock.writeLock().lock();
+        try {
+            if (loaded) {
+                removeKey(id);
+                if (name != null) {
+                    addKey(id, collation.key(name));
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a name from the index.
+     * @param id ID of the name
+     */
+    public void remove(int id) {
+        lock.writeLock().lock();
+        try {
+            removeKey(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Forgets every name, so they are read again by the loader before the next search.
+     * Used when the names were changed in a way the index cannot follow one by one.
+     */
+    public void invalidate() {
+        lock.writeLock().lock();
+        try {
+            keys.clear();
+            postings.clear();
+            loaded = loader == null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the lowest ID with a name containing the term.
+     * @param term Text the name must contain
+     * @return The ID, or null if no name contains the term
+     * @throws SQLException If the names had to be loaded, and could not be
+     */
+    public Integer first(String term) throws SQLException {
+        List<Integer> ids = search(term, 1);
+        return ids.isEmpty() ? null : ids.get(0);
+    }
+
+    /**
+     * Finds the IDs with a name containing the term.
+     * @param term Text the name must contain
+     * @param limit The most IDs to return
+     * @return The matching IDs, lowest first
+     * @throws SQLException If the names had to be loaded, and could not be
+     */
+    public List<Integer> search(String term, int limit) throws SQLException {
+        if (term == null || limit <= 0) {
+            return Collections.emptyList();
+        }
+        String key = collation.key(term);
+        lockLoaded();
+        try {
+            return key.length() < GRAM_LENGTH ? scan(key, limit) : lookup(key, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the names best matching a search, ignoring case.
+     * @param term What was searched for
+     * @param limit The most names to return
+     * @return The best matches, best first, and by lowest ID when they score the same
+     * @throws SQLException If the names had to be loaded, and could not be
+     */
+    public List<SearchHit> rank(String term, int limit) throws SQLException {
+        if (term == null || limit <= 0) {
+            return Collections.emptyList();
+        }
+        String query = Ranker.normalize(term);
+        if (query.isEmpty()) {
+            return Collections.emptyList();
+        }
+        lockLoaded();
+        try {
+            Collection<Integer> candidates = query.length() < GRAM_LENGTH ? keys.keySet()
+                    : candidates(query, Math.max(MIN_CANDIDATES, limit * CANDIDATES_PER_RESULT));
+            List<SearchHit> hits = new ArrayList<>();
+            for (int id : candidates) {
+                double score = Ranker.score(query, Ranker.normalize(keys.get(id)));
+                if (score > Ranker.NO_MATCH) {
+                    hits.add(new SearchHit(id, score));
+                }
+            }
+            hits.sort(Comparator.comparingDouble(SearchHit::getScore).reversed().thenComparingInt(SearchHit::getId));
+            return hits.size() > limit ? new ArrayList<>(hits.subList(0, limit)) : hits;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return Number of names in the index
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return keys.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Takes the read lock, loading the names first if needed.
+     * @throws SQLException If the names could not be loaded, in which case no lock is held
+     */
+    private void lockLoaded() throws SQLException {
+        lock.readLock().lock();
+        if (loaded) {
+            return;
+        }
+        lock.readLock().unlock();
+        lock.writeLock().lock();
+        try {
+            if (!loaded) {
+                // loaded while holding the write lock, so a name written meanwhile is either read or put afterwards
+                for (Map.Entry<Integer, String> entry : loader.load().entrySet()) {
+                    if (entry.getValue() != null) {
+                        addKey(entry.getKey(), collation.key(entry.getValue()));
+                    }
+                }
+                loaded = true;
+            }
+            lock.readLock().lock();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private List<Integer> lookup(String key, int limit) {
+        String gramKey = key.toLowerCase(Locale.ROOT);
+        IdList candidates = null;
+        for (int i = 0; i + GRAM_LENGTH <= gramKey.length(); i++) {
+            IdList ids = postings.get(gramKey.substring(i, i + GRAM_LENGTH));
+            if (ids == null) {
+                return Collections.emptyList();
+            }
+            if (candidates == null || ids.size < candidates.size) {
+                candidates = ids;
+            }
+        }
+
+        List<Integer> matches = new ArrayList<>();
+        for (int i = 0; i < candidates.size && matches.size() < limit; i++) {
+            int id = candidates.ids[i];
+            if (keys.get(id).contains(key)) {
+                matches.add(id);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Finds the names sharing the most trigrams with the search, by counting how many of its trigrams each
+     * name has. Trigrams shared by very many names are left out while rarer ones are there to go on.
+     * @param query The search, normalized and at least one trigram long
+     * @param max The most names to return
+     * @return IDs of the names sharing the most trigrams
+     */
+    private Collection<Integer> candidates(String query, int max) {
+        List<IdList> lists = new ArrayList<>();
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + GRAM_LENGTH <= query.length(); i++) {
+            String gram = query.substring(i, i + GRAM_LENGTH);
+            IdList ids = postings.get(gram);
+            if (ids != null && grams.add(gram)) {
+                lists.add(ids);
+            }
+        }
+        lists.sort(Comparator.comparingInt(ids -> ids.size));
+        int used = 0;
+        int read = 0;
+        while (used < lists.size() && used < Byte.MAX_VALUE
+                && (used == 0 || read + lists.get(used).size <= MAX_POSTINGS_READ)) {
+            read += lists.get(used++).size;
+        }
+
+        // IDs are database IDs or list positions, so they are few enough to count in an array
+        int[] touched = new int[read];
+        int touchedCount = 0;
+        Map<Integer, Integer> sparseCounts = keys.lastKey() < MAX_DENSE_ID ? null : new HashMap<>();
+        byte[] counts = sparseCounts == null ? denseCounts(keys.lastKey() + 1) : null;
+        for (int k = 0; k < used; k++) {
+            IdList ids = lists.get(k);
+            for (int i = 0; i < ids.size; i++) {
+                int id = ids.ids[i];
+                int count = counts != null ? ++counts[id] : sparseCounts.merge(id, 1, Integer::sum);
+                if (count == 1) {
+                    touched[touchedCount++] = id;
+                }
+            }
+        }
+
+        // take the names sharing the most trigrams, going down from all of them until there are enough
+        int[] namesSharing = new int[used + 1];
+        for (int i = 0; i < touchedCount; i++) {
+            namesSharing[count(counts, sparseCounts, touched[i])]++;
+        }
+        int minShared = used;
+        int taken = namesSharing[used];
+        while (minShared > 1 && taken < max) {
+            taken += namesSharing[--minShared];
+        }
+        List<Integer> candidates = new ArrayList<>(Math.min(max, taken));
+        for (int i = 0; i < touchedCount; i++) {
+            int id = touched[i];
+            if (count(counts, sparseCounts, id) >= minShared && candidates.size() < max) {
+                candidates.add(id);
+            }
+            if (counts != null) {
+                counts[id] = 0;
+            }
+        }
+        return candidates;
+    }
+
+    private static int count(byte[] counts, Map<Integer, Integer> sparseCounts, int id) {
+        return counts != null ? counts[id] : sparseCounts.get(id);
+    }
+
+    /**
+     * @param size Number of IDs to count
+     * @return An array of zeroes for counting, kept for the thread so it is not allocated on every search
+     */
+    private static byte[] denseCounts(int size) {
+        byte[] counts = DENSE_COUNTS.get();
+        if (counts.length < size) {
+            counts = new byte[Math.max(size, counts.length * 2)];
+            DENSE_COUNTS.set(counts);
+        }
+        return counts;
+    }
+
+    private List<Integer> scan(String key, int limit) {
+        List<Integer> matches = new ArrayList<>();
+        for (Map.Entry<Integer, String> entry : keys.entrySet()) {
+            if (matches.size() == limit) {
+                break;
+            }
+            if (entry.getValue().contains(key)) {
+                matches.add(entry.getKey());
+            }
+        }
+        return matches;
+    }
+
+    private void addKey(int id, String key) {
+        keys.put(id, key);
+        String gramKey = key.toLowerCase(Locale.ROOT);
+        for (int i = 0; i + GRAM_LENGTH <= gramKey.length(); i++) {
+            postings.computeIfAbsent(gramKey.substring(i, i + GRAM_LENGTH), gram -> new IdList()).add(id);
+        }
+    }
+
+    private void removeKey(int id) {
+        String key = keys.remove(id);
+        if (key == null) {
+            return;
+        }
+        String gramKey = key.toLowerCase(Locale.ROOT);
+        for (int i = 0; i + GRAM_LENGTH <= gramKey.length(); i++) {
+            String gram = gramKey.substring(i, i + GRAM_LENGTH);
+            IdList ids = postings.get(gram);
+            if (ids != null && ids.remove(id) && ids.size == 0) {
+                postings.remove(gram);
+            }
+        }
+    }
+
+    /**
+     * Reads every name to put in the index.
+     */
+    public interface Loader {
+        Map<Integer, String> load() throws SQLException;
+    }
+
+    /**
+     * A sorted set of IDs, kept in an array to use little memory.
+     * IDs are mostly added in increasing order, which only appends to the array.
+     */
+    private static final class IdList {
+        private int[] ids = new int[4];
+        private int size;
+
+        void add(int id) {
+            if (size > 0 && ids[size - 1] < id) {
+                insert(size, id);
+                return;
+            }
+            int index = Arrays.binarySearch(ids, 0, size, id);
+            if (index < 0) {
+                insert(-index - 1, id);
+            }
+        }
+
+        boolean remove(int id) {
+            int index = Arrays.binarySearch(ids, 0, size, id);
+            if (index < 0) {
+                return false;
+            }
+            System.arraycopy(ids, index + 1, ids, index, size - index - 1);
+            size--;
+            return true;
+        }
+
+        private void insert(int index, int id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            System.arraycopy(ids, index, ids, index + 1, size - index);
+            ids[index] = id;
+            size++;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package no.kij.socketscheduler.server.search;
+
+import java.util.Locale;
+
+/**
+ * Scores how well a name matches what a user searched for, ignoring case.
+ *
+ * A match falls in one of five tiers, from best to worst: the exact name, a prefix of the name,
+ * every searched word starting a word of the name, the name containing the search, and finally names
+ * spelled close to the search, measured by edit distance. Within a tier, a match covering more of the
+ * name scores higher, so the score is the tier plus a fraction below 1.
+ */
+public final class Ranker {
+    public static final double EXACT = 4;
+    public static final double PREFIX = 3;
+    public static final double TOKEN_PREFIX = 2;
+    public static final double SUBSTRING = 1;
+    public static final double NO_MATCH = 0;
+    // how close the spelling must be for a fuzzy match, from 0 (anything) to 1 (only exact)
+    public static final double MIN_SIMILARITY = 0.6;
+
+    private Ranker() {}
+
+    /**
+     * @param text Text to compare
+     * @return The text in lower case, with the whitespace trimmed and collapsed to single spaces
+     */
+    public static String normalize(String text) {
+        // called for every name looked at, so this avoids regular expressions
+        StringBuilder normalized = new StringBuilder(text.length());
+        boolean space = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                space = normalized.length() > 0;
+            } else {
+                if (space) {
+                    normalized.append(' ');
+                    space = false;
+                }
+                normalized.append(c);
+            }
+        }
+        return normalized.toString().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Scores a name against a search.
+     * @param query The search, normalized
+     * @param name The name, normalized
+     * @return Tier plus a fraction below 1, or NO_MATCH
+     */
+    public static double score(String query, String name) {
+        if (query.isEmpty() || name.isEmpty()) {
+            return NO_MATCH;
+        }
+        if (query.equals(name)) {
+            return EXACT;
+        }
+        double coverage = (double) query.length() / name.length();
+        if (name.startsWith(query)) {
+            return PREFIX + coverage;
+        }
+
+        String[] queryTokens = query.split(" ");
+        String[] nameTokens = name.split(" ");
+        if (everyTokenStartsAToken(queryTokens, nameTokens)) {
+            return TOKEN_PREFIX + Math.min(coverage, 0.999);
+        }
+        if (name.contains(query)) {
+            return SUBSTRING + Math.min(coverage, 0.999);
+        }
+
+        double similarity = similarity(queryTokens, nameTokens);
+        return similarity >= MIN_SIMILARITY ? Math.min(similarity, 0.999) : NO_MATCH;
+    }
+
+    /**
+     * Edit distance between two texts, counting an insertion, deletion, substitution
+     * or swap of two neighbouring characters as one edit each.
+     * @param a First text
+     * @param b Second text
+     * @param max Distances above this are not of interest
+     * @return The distance, or max + 1 if it is above max
+     */
+    public static int editDistance(String a, String b, int max) {
+        if (Math.abs(a.length() - b.length()) > max) {
+            return max + 1;
+        }
+        int[] twoBack = new int[b.length() + 1];
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            int rowMin = current[0];
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                int distance = Math.min(Math.min(previous[j] + 1, current[j - 1] + 1), previous[j - 1] + cost);
+                if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+                    distance = Math.min(distance, twoBack[j - 2] + 1);
+                }
+                current[j] = distance;
+                rowMin = Math.min(rowMin, distance);
+            }
+            if (rowMin > max) {
+                return max + 1;
+            }
+            int[] oldest = twoBack;
+            twoBack = previous;
+            previous = current;
+            current = oldest;
+        }
+        return Math.min(previous[b.length()], max + 1);
+    }
+
+    private static boolean everyTokenStartsAToken(String[] queryTokens, String[] nameTokens) {
+        for (String queryToken : queryTokens) {
+            boolean found = false;
+            for (String nameToken : nameTokens) {
+                if (nameToken.startsWith(queryToken)) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * How close the spelling of the searched words is to the words of the name.
+     * Every searched word is compared to the closest word of the name, and the results are averaged.
+     * @return Similarity from 0 to 1
+     */
+    private static double similarity(String[] queryTokens, String[] nameTokens) {
+        double total = 0;
+        for (String queryToken : queryTokens) {
+            // anything further away than this can not reach MIN_SIMILARITY
+            int max = (int) (queryToken.length() * (1 - MIN_SIMILARITY) / MIN_SIMILARITY);
+            double best = 0;
+            for (String nameToken : nameTokens) {
+                int distance = editDistance(queryToken, nameToken, max);
+                if (distance <= max) {
+                    best = Math.max(best, 1 - (double) distance / Math.max(queryToken.length(), nameToken.length()));
+                }
+            }
+            total += best;
+        }
+        return total / queryTokens.length;
+    }
+}
@@ -0,0 +1,25 @@
+package no.kij.socketscheduler.server.search;
+
+/**
+ * An ID found by a ranked search, with the score its name got.
+ */
+public final class SearchHit {
+    private final int id;
+    private final double score;
+
+    public SearchHit(int id, double score) {
+        this.id = id;
+        this.score = score;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * @return The score from Ranker, higher is better
+     */
+    public double getScore() {
+        return score;
+    }
+}
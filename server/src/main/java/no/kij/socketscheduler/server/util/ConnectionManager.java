@@ -1,18 +1,48 @@
 package no.kij.socketscheduler.server.util;
 
-import com.j256.ormlite.jdbc.JdbcPooledConnectionSource;
 import com.j256.ormlite.support.ConnectionSource;
+import no.kij.socketscheduler.server.cache.LookupCache;
+import no.kij.socketscheduler.server.cache.ResponseCache;
+import no.kij.socketscheduler.server.cache.SingleFlight;
+import no.kij.socketscheduler.server.dao.PreparedQueryPool;
+import no.kij.socketscheduler.server.search.KeyFilter;
 
 import java.sql.SQLException;
 import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.fusesource.jansi.Ansi.ansi;
 
 /**
  * The purpose of this class is to manage the database connections.
  * It helps pool the connections, so they can be reused.
+ *
+ * The pool is set up from the properties file, next to the database details:
+ * pool_max_connections is the most connections handed out at once, 0 for no limit,
+ * pool_checkout_timeout_millis is how long to wait for one when they are all in use,
+ * pool_max_idle_connections is how many released connections are kept open,
+ * pool_max_connection_age_millis is how long a connection is used before it is closed and a new one opened,
+ * pool_check_connections_every_millis is how often idle connections are tested, 0 to not test them,
+ * pool_test_before_get tests each connection before handing it out, and
+ * pool_queue_size is how many queries may wait for a thread of the DatabaseExecutor.
+ *
+ * The DatabaseExecutor runs as many queries at once as the pool hands out connections,
+ * or DEFAULT_EXECUTOR_THREADS if the pool has no limit.
  */
 public class ConnectionManager {
-    private ConnectionSource connectionSource;
+    public static final int DEFAULT_MAX_CONNECTIONS = 0;
+    public static final long DEFAULT_CHECKOUT_TIMEOUT_MILLIS = 30000;
+    public static final int DEFAULT_MAX_IDLE_CONNECTIONS = 5;
+    public static final long DEFAULT_MAX_CONNECTION_AGE_MILLIS = 3600000;
+    public static final long DEFAULT_CHECK_CONNECTIONS_EVERY_MILLIS = 30000;
+    public static final int DEFAULT_EXECUTOR_THREADS = 16;
+    public static final int DEFAULT_QUEUE_SIZE = 1000;
+    private volatile ConnectionPool connectionSource;
+    private volatile DatabaseExecutor databaseExecutor;
     private Properties credentials;
+    private ScheduledExecutorService reporter;
 
     /**
      * Creates an instance of the ConnectionManager.
@@ -26,40 +56,149 @@ public class ConnectionManager {
 
     /**
      * Gets a connection from the existing connection pool base-
-     * @return ConnectionSource containing an active connection
+     * Threads asking at the same time while the pool is closed all get the same, newly opened pool.
+     * @return ConnectionSource containing an active connection, or null if the pool could not be opened
      */
     public ConnectionSource getConnectionSource() {
-        if (connectionSource != null) {
-            return connectionSource;
-        } else {
+        return getPool();
+    }
+
+    /**
+     * @return The connection pool, for looking at how it is used, or null if it could not be opened
+     */
+    public ConnectionPool getPool() {
+        ConnectionPool pool = connectionSource;
+        if (pool == null) {
             openPooledConnection();
-            return getConnectionSource();
+            pool = connectionSource;
+        }
+        return pool;
+    }
+
+    /**
+     * Gets the executor the asynchronous daos run their queries on, sized to the connection pool.
+     * @return DatabaseExecutor, created the first time it is asked for after the manager was opened or closed
+     */
+    public DatabaseExecutor getDatabaseExecutor() {
+        DatabaseExecutor executor = databaseExecutor;
+        if (executor != null) {
+            return executor;
+        }
+        synchronized (this) {
+            if (databaseExecutor == null) {
+                ConnectionPool pool = getPool();
+                int threads = pool != null && pool.getMaxConnections() > 0
+                        ? pool.getMaxConnections() : DEFAULT_EXECUTOR_THREADS;
+                databaseExecutor = new DatabaseExecutor(threads,
+                        Math.max(1, intSetting("pool_queue_size", DEFAULT_QUEUE_SIZE)));
+            }
+            return databaseExecutor;
         }
     }
 
     /**
      * Used to close the ConnectionManager and kill any active connections.
+     * Queries already given to the DatabaseExecutor are still run.
      */
-    public void close() {
-        connectionSource.closeQuietly();
-        connectionSource = null;
+    public synchronized void close() {
+        DaoDelegator.release(this);
+        if (databaseExecutor != null) {
+            databaseExecutor.shutdown();
+            databaseExecutor = null;
+        }
+        if (connectionSource != null) {
+            connectionSource.closeQuietly();
+            connectionSource = null;
+        }
+        if (reporter != null) {
+            reporter.shutdownNow();
+            reporter = null;
+        }
+    }
+
+    /**
+     * Prints how the connection pool and the caches in front of it are used to the console at a fixed rate,
+     * until the manager is closed.
+     * @param periodSeconds Seconds between each report
+     */
+    public synchronized void startReporting(int periodSeconds) {
+        if (reporter != null) {
+            return;
+        }
+        reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "connection-pool-stats");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reporter.scheduleAtFixedRate(() -> {
+            ConnectionPool pool = connectionSource;
+            if (pool != null) {
+                System.out.println(ansi().render(statsLine(pool, databaseExecutor)));
+            }
+            System.out.println(ansi().render(cacheStatsLine()));
+        }, periodSeconds, periodSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * @param executor The executor of the asynchronous daos, or null if none has been asked for yet
+     * @return One line describing the use of the pool, marked up for jansi
+     */
+    private static String statsLine(ConnectionPool pool, DatabaseExecutor executor) {
+        return "@|magenta Database pool:|@ " + pool.getInUse() + " in use"
+                + (pool.getMaxConnections() > 0 ? " of " + pool.getMaxConnections() : "")
+                + " (peak " + pool.getPeakInUse() + "), " + pool.getCurrentConnectionsFree() + " idle, "
+                + pool.getOpenCount() + " opened | "
+                + "@|magenta Checkouts:|@ " + pool.getCheckouts() + ", " + pool.getWaits() + " waited, "
+                + pool.getTimeouts() + " timed out, "
+                + String.format("%.2f ms mean, %.2f ms max", pool.getAverageCheckoutMillis(),
+                        pool.getMaxCheckoutMillis())
+                + (executor == null ? "" : " | @|magenta Query queue:|@ " + executor.getQueueDepth() + " of "
+                        + executor.getQueueCapacity() + " (peak " + executor.getPeakQueueDepth() + "), "
+                        + executor.getActive() + " of " + executor.getThreads() + " running, "
+                        + executor.getRejected() + " rejected, "
+                        + String.format("%.2f ms mean wait, %.2f ms max", executor.getAverageQueueMillis(),
+                                executor.getMaxQueueMillis()));
+    }
+
+    /**
+     * @return One line describing the use of the caches sparing the database, across every dao, marked up for jansi
+     */
+    private static String cacheStatsLine() {
+        return "@|magenta Statement cache:|@ "
+                + String.format("%.1f%% hits", PreparedQueryPool.getTotalHitRate() * 100) + " | "
+                + "@|magenta Search cache:|@ " + LookupCache.getTotalHits() + " hits, "
+                + LookupCache.getTotalMisses() + " misses, " + LookupCache.getTotalEvictions() + " evicted | "
+                + "@|magenta Coalesced:|@ " + SingleFlight.getTotalCoalesced() + " of "
+                + (SingleFlight.getTotalLoads() + SingleFlight.getTotalCoalesced()) + " loads | "
+                + "@|magenta Key filters:|@ " + KeyFilter.getTotalBytes() / 1024 + " KB, "
+                + KeyFilter.getTotalSkipped() + " of " + KeyFilter.getTotalChecks() + " lookups answered, "
+                + String.format("%.2f%% false positives", KeyFilter.getTotalFalsePositiveRate() * 100) + " | "
+                + "@|magenta Response cache:|@ " + ResponseCache.getTotalHits() + " hits, "
+                + ResponseCache.getTotalMisses() + " misses";
     }
 
     /**
      * Opens the pooled connection using the provided properties file.
      */
-    private void openPooledConnection() {
+    private synchronized void openPooledConnection() {
         if (connectionSource == null) {
             try {
+                String username = null;
+                String password = null;
                 if (credentials.containsKey("username") && credentials.containsKey("password")) {
-                    connectionSource = new JdbcPooledConnectionSource(
-                            credentials.getProperty("database_url"),
-                            credentials.getProperty("username"),
-                            credentials.getProperty("password")
-                    );
-                } else {
-                    connectionSource = new JdbcPooledConnectionSource(credentials.getProperty("database_url"));
+                    username = credentials.getProperty("username");
+                    password = credentials.getProperty("password");
                 }
+                ConnectionPool pool = new ConnectionPool(credentials.getProperty("database_url"), username, password,
+                        intSetting("pool_max_connections", DEFAULT_MAX_CONNECTIONS),
+                        longSetting("pool_checkout_timeout_millis", DEFAULT_CHECKOUT_TIMEOUT_MILLIS));
+                pool.setMaxConnectionsFree(intSetting("pool_max_idle_connections", DEFAULT_MAX_IDLE_CONNECTIONS));
+                pool.setMaxConnectionAgeMillis(longSetting("pool_max_connection_age_millis",
+                        DEFAULT_MAX_CONNECTION_AGE_MILLIS));
+                pool.setCheckConnectionsEveryMillis(longSetting("pool_check_connections_every_millis",
+                        DEFAULT_CHECK_CONNECTIONS_EVERY_MILLIS));
+                pool.setTestBeforeGet(Boolean.parseBoolean(credentials.getProperty("pool_test_before_get", "false")));
+                connectionSource = pool;
             } catch (SQLException e) {
                 System.err.println("Couldn't open a pooled connection");
                 System.err.println(e.getMessage());
@@ -67,4 +206,31 @@ public class ConnectionManager {
         }
     }
 
-}
\ No newline at end of file
+    /**
+     * Reads a whole number setting from the properties file.
+     * @param key Name of the setting
+     * @param fallback Value to use if the setting is missing or not a number of at least 0
+     * @return Value of the setting
+     */
+    private long longSetting(String key, long fallback) {
+        String value = credentials.getProperty(key);
+        if (value == null) {
+            return fallback;
+        }
+        try {
+            long setting = Long.parseLong(value.trim());
+            if (setting >= 0) {
+                return setting;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        System.err.println("Invalid " + key + " '" + value + "', using " + fallback + ".");
+        return fallback;
+    }
+
+    private int intSetting(String key, int fallback) {
+        return (int) Math.min(Integer.MAX_VALUE, longSetting(key, fallback));
+    }
+
+}
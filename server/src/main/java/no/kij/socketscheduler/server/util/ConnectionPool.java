@@ -0,0 +1,182 @@
+package no.kij.socketscheduler.server.util;
+
+import com.j256.ormlite.jdbc.JdbcPooledConnectionSource;
+import com.j256.ormlite.support.DatabaseConnection;
+
+import java.sql.SQLException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A pool of database connections which can limit how many are handed out at once, and keeps count of its use.
+ * The pool ormlite comes with opens a new connection whenever none are free, however many are in use already.
+ * This one makes anyone asking for a connection beyond the limit wait for one to be released,
+ * and gives up with an SQLException if none is released before the checkout timeout.
+ *
+ * A connection saved for a transaction is handed out again to the thread running the transaction,
+ * which is not counted as another checkout.
+ */
+public class ConnectionPool extends JdbcPooledConnectionSource {
+    private final int maxConnections;
+    private final long checkoutTimeoutMillis;
+    private final Semaphore permits;
+    private final AtomicInteger inUse = new AtomicInteger();
+    private final AtomicInteger peakInUse = new AtomicInteger();
+    private final AtomicLong checkouts = new AtomicLong();
+    private final AtomicLong waits = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong totalCheckoutNanos = new AtomicLong();
+    private final AtomicLong maxCheckoutNanos = new AtomicLong();
+
+    /**
+     * Creates a pool connecting to the given database.
+     * @param url URL of the database
+     * @param username Username to connect with, or null if none is needed
+     * @param password Password to connect with, or null if none is needed
+     * @param maxConnections Most connections handed out at once, or 0 for no limit
+     * @param checkoutTimeoutMillis Milliseconds to wait for a connection when maxConnections are in use
+     * @throws SQLException If the database could not be found
+     */
+    public ConnectionPool(String url, String username, String password, int maxConnections,
+                          long checkoutTimeoutMillis) throws SQLException {
+        super(url, username, password);
+        this.maxConnections = maxConnections;
+        this.checkoutTimeoutMillis = checkoutTimeoutMillis;
+        permits = maxConnections > 0 ? new Semaphore(maxConnections, true) : null;
+    }
+
+    @Override
+    public DatabaseConnection getReadOnlyConnection(String tableName) throws SQLException {
+        return getReadWriteConnection(tableName);
+    }
+
+    @Override
+    public DatabaseConnection getReadWriteConnection(String tableName) throws SQLException {
+        if (getSavedConnection() != null) {
+            // the connection of the transaction this thread is in, which it already has
+            return super.getReadWriteConnection(tableName);
+        }
+
+        long start = System.nanoTime();
+        acquire();
+        try {
+            DatabaseConnection connection = super.getReadWriteConnection(tableName);
+            recordCheckout(System.nanoTime() - start);
+            return connection;
+        } catch (SQLException | RuntimeException e) {
+            if (permits != null) {
+                permits.release();
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public void releaseConnection(DatabaseConnection connection) throws SQLException {
+        if (connection == null || isSavedConnection(connection)) {
+            super.releaseConnection(connection);
+            return;
+        }
+        try {
+            super.releaseConnection(connection);
+        } finally {
+            inUse.decrementAndGet();
+            if (permits != null) {
+                permits.release();
+            }
+        }
+    }
+
+    /**
+     * Takes a permit to hand out a connection, waiting for one if the pool is at its limit.
+     */
+    private void acquire() throws SQLException {
+        if (permits == null || permits.tryAcquire()) {
+            return;
+        }
+        waits.incrementAndGet();
+        try {
+            if (!permits.tryAcquire(checkoutTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                timeouts.incrementAndGet();
+                throw new SQLException("Timed out after " + checkoutTimeoutMillis
+                        + " ms waiting for a database connection, all " + maxConnections + " are in use.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection.", e);
+        }
+    }
+
+    private void recordCheckout(long nanos) {
+        checkouts.incrementAndGet();
+        totalCheckoutNanos.addAndGet(nanos);
+        maxCheckoutNanos.accumulateAndGet(nanos, Math::max);
+        peakInUse.accumulateAndGet(inUse.incrementAndGet(), Math::max);
+    }
+
+    /**
+     * @return Most connections handed out at once, or 0 if there is no limit
+     */
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * @return Number of connections handed out and not yet released
+     */
+    public int getInUse() {
+        return inUse.get();
+    }
+
+    /**
+     * @return Most connections that have been handed out at once
+     */
+    public int getPeakInUse() {
+        return peakInUse.get();
+    }
+
+    /**
+     * @return Share of the connections in use, from 0 to 1, or 0 if there is no limit
+     */
+    public double getUtilization() {
+        return maxConnections > 0 ? (double) inUse.get() / maxConnections : 0;
+    }
+
+    /**
+     * @return Number of connections handed out
+     */
+    public long getCheckouts() {
+        return checkouts.get();
+    }
+
+    /**
+     * @return Number of times someone had to wait for a connection, since all of them were in use
+     */
+    public long getWaits() {
+        return waits.get();
+    }
+
+    /**
+     * @return Number of times no connection was released before the checkout timeout
+     */
+    public long getTimeouts() {
+        return timeouts.get();
+    }
+
+    /**
+     * @return Average milliseconds it took to get a connection, waiting and opening it included
+     */
+    public double getAverageCheckoutMillis() {
+        long count = checkouts.get();
+        return count > 0 ? totalCheckoutNanos.get() / 1e6 / count : 0;
+    }
+
+    /**
+     * @return Most milliseconds it has taken to get a connection
+     */
+    public double getMaxCheckoutMillis() {
+        return maxCheckoutNanos.get() / 1e6;
+    }
+}
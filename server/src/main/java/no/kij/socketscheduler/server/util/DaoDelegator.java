@@ -1,27 +1,91 @@
 package no.kij.socketscheduler.server.util;
 
-import com.j256.ormlite.dao.Dao;
 import com.j256.ormlite.dao.DaoManager;
+import no.kij.socketscheduler.server.catalogue.Catalogue;
+import no.kij.socketscheduler.server.catalogue.DaoCatalogue;
+import no.kij.socketscheduler.server.dao.AsyncLecturerDao;
+import no.kij.socketscheduler.server.dao.AsyncSubjectDao;
 import no.kij.socketscheduler.server.dao.SubjectDao;
-import no.kij.socketscheduler.server.dao.SubjectDaoImpl;
 import no.kij.socketscheduler.server.dao.LecturerDao;
-import no.kij.socketscheduler.server.dao.LecturerDaoImpl;
-import no.kij.socketscheduler.server.dto.SubjectLecturerDTO;
+import no.kij.socketscheduler.server.dto.LecturerDTO;
+import no.kij.socketscheduler.server.dto.SubjectDTO;
 
 import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * A delegator which is used to retrieve Dao's.
+ * The daos are thread safe, so a single delegator per ConnectionManager is shared by every connection,
+ * instead of each connection setting up daos of its own.
  */
 public class DaoDelegator {
+    private static final Map<ConnectionManager, DaoDelegator> sharedDelegators = new ConcurrentHashMap<>();
+
     private ConnectionManager connectionManager;
-    private SubjectDao subjectDao;
-    private LecturerDao lecturerDao;
+    private volatile SubjectDao subjectDao;
+    private volatile LecturerDao lecturerDao;
+    private volatile AsyncSubjectDao asyncSubjectDao;
+    private volatile AsyncLecturerDao asyncLecturerDao;
+    private volatile Catalogue catalogue;
 
     public DaoDelegator(ConnectionManager connectionManager) {
         this.connectionManager = connectionManager;
     }
 
+    /**
+     * Fetch the delegator shared by everyone using the given ConnectionManager.
+     * @param connectionManager The ConnectionManager the daos get their connections from
+     * @return DaoDelegator, created the first time it is asked for
+     */
+    public static DaoDelegator shared(ConnectionManager connectionManager) {
+        return sharedDelegators.computeIfAbsent(connectionManager, DaoDelegator::new);
+    }
+
+    /**
+     * Forget the shared delegator of the given ConnectionManager,
+     * so the next one asked for gets daos using the ConnectionManager's current connection source.
+     * @param connectionManager The ConnectionManager to forget the delegator of
+     */
+    public static void release(ConnectionManager connectionManager) {
+        sharedDelegators.remove(connectionManager);
+    }
+
+    /**
+     * Creates every dao right away, and reads the subject and lecturer names and keys into their indexes and
+     * key filters, so the first client does not have to wait for it.
+     * @return This delegator
+     */
+    public DaoDelegator warmUp() {
+        getSubjectDao().warmUpCaches();
+        getLecturerDao().warmUpCaches();
+        return this;
+    }
+
+    /**
+     * Fetch the catalogue the list and search commands are answered from.
+     * @return The catalogue set with useCatalogue, or one asking the daos if none has been set
+     */
+    public Catalogue getCatalogue() {
+        if (catalogue != null) {
+            return catalogue;
+        }
+        synchronized (this) {
+            if (catalogue == null) {
+                catalogue = new DaoCatalogue(this);
+            }
+            return catalogue;
+        }
+    }
+
+    /**
+     * Answer the list and search commands from the given catalogue, instead of asking the daos directly.
+     * @param catalogue Catalogue to use
+     */
+    public synchronized void useCatalogue(Catalogue catalogue) {
+        this.catalogue = catalogue;
+    }
+
     /**
      * Fetch a dao to manipulate the subjects table.
      * @return SubjectDao
@@ -30,12 +94,16 @@ public class DaoDelegator {
         if (subjectDao != null) {
             return subjectDao;
         }
-        try {
-            subjectDao = new SubjectDaoImpl(connectionManager.getConnectionSource());
-            return subjectDao;
-        } catch (SQLException e) {
-            System.err.println(e.getMessage());
-            return null;
+        synchronized (this) {
+            try {
+                if (subjectDao == null) {
+                    subjectDao = DaoManager.createDao(connectionManager.getConnectionSource(), SubjectDTO.class);
+                }
+                return subjectDao;
+            } catch (SQLException e) {
+                System.err.println(e.getMessage());
+                return null;
+            }
         }
     }
 
@@ -47,12 +115,50 @@ public class DaoDelegator {
         if (lecturerDao != null) {
             return lecturerDao;
         }
-        try {
-            lecturerDao = new LecturerDaoImpl(connectionManager.getConnectionSource());
-            return lecturerDao;
-        } catch (SQLException e) {
-            System.err.println(e.getMessage());
-            return null;
+        synchronized (this) {
+            try {
+                if (lecturerDao == null) {
+                    lecturerDao = DaoManager.createDao(connectionManager.getConnectionSource(), LecturerDTO.class);
+                }
+                return lecturerDao;
+            } catch (SQLException e) {
+                System.err.println(e.getMessage());
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Fetch the subject dao running its queries on the DatabaseExecutor of the ConnectionManager.
+     * @return AsyncSubjectDao, or null if the subject dao could not be created
+     */
+    public AsyncSubjectDao getAsyncSubjectDao() {
+        if (asyncSubjectDao != null) {
+            return asyncSubjectDao;
+        }
+        SubjectDao subjects = getSubjectDao();
+        synchronized (this) {
+            if (asyncSubjectDao == null && subjects != null) {
+                asyncSubjectDao = new AsyncSubjectDao(subjects, connectionManager.getDatabaseExecutor());
+            }
+            return asyncSubjectDao;
+        }
+    }
+
+    /**
+     * Fetch the lecturer dao running its queries on the DatabaseExecutor of the ConnectionManager.
+     * @return AsyncLecturerDao, or null if the lecturer dao could not be created
+     */
+    public AsyncLecturerDao getAsyncLecturerDao() {
+        if (asyncLecturerDao != null) {
+            return asyncLecturerDao;
+        }
+        LecturerDao lecturers = getLecturerDao();
+        synchronized (this) {
+            if (asyncLecturerDao == null && lecturers != null) {
+                asyncLecturerDao = new AsyncLecturerDao(lecturers, connectionManager.getDatabaseExecutor());
+            }
+            return asyncLecturerDao;
         }
     }
 }
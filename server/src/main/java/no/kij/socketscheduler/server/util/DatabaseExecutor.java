@@ -0,0 +1,191 @@
+package no.kij.socketscheduler.server.util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The threads the asynchronous daos run their queries on, about as many as there are database connections,
+ * so a slow database holds up these threads instead of the ones talking to the clients.
+ *
+ * Queries waiting for a thread are kept in a queue of limited size. A query submitted when the queue is full
+ * is not run, and its future fails with a RejectedExecutionException right away, instead of making the caller
+ * wait. The executor keeps count of how deep the queue gets and how long the queries wait in it.
+ */
+public class DatabaseExecutor {
+    private final ThreadPoolExecutor executor;
+    private final int queueCapacity;
+    private final AtomicInteger peakQueueDepth = new AtomicInteger();
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong totalQueueNanos = new AtomicLong();
+    private final AtomicLong maxQueueNanos = new AtomicLong();
+    private final AtomicLong totalRunNanos = new AtomicLong();
+
+    /**
+     * Creates the executor and its threads, which are started as they are needed.
+     * @param threads Number of queries run at once, at least 1
+     * @param queueCapacity Most queries waiting for a thread, at least 1
+     */
+    public DatabaseExecutor(int threads, int queueCapacity) {
+        if (threads < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("Needs at least 1 thread and room for 1 query, was "
+                    + threads + " and " + queueCapacity);
+        }
+        this.queueCapacity = queueCapacity;
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "database-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Runs the given query on one of the database threads.
+     * @param query The query to run
+     * @param <T> Type of the result
+     * @return Future completed with the result of the query, or failed with whatever it threw,
+     * or with a RejectedExecutionException if the queue was full or the executor is shut down
+     */
+    public <T> CompletableFuture<T> submit(Callable<T> query) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        long queued = System.nanoTime();
+        submitted.incrementAndGet();
+        try {
+            executor.execute(() -> {
+                long started = System.nanoTime();
+                recordWait(started - queued);
+                T result;
+                try {
+                    result = query.call();
+                } catch (Throwable e) {
+                    // counted before the future is completed, so whoever waits for it sees the count
+                    recordRun(started, failed);
+                    future.completeExceptionally(e);
+                    return;
+                }
+                recordRun(started, completed);
+                future.complete(result);
+            });
+            peakQueueDepth.accumulateAndGet(executor.getQueue().size(), Math::max);
+        } catch (RejectedExecutionException e) {
+            submitted.decrementAndGet();
+            rejected.incrementAndGet();
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Stops taking new queries. Those already submitted are still run.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private void recordWait(long nanos) {
+        totalQueueNanos.addAndGet(nanos);
+        maxQueueNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    private void recordRun(long started, AtomicLong outcome) {
+        totalRunNanos.addAndGet(System.nanoTime() - started);
+        outcome.incrementAndGet();
+    }
+
+    /**
+     * @return Number of queries run at once
+     */
+    public int getThreads() {
+        return executor.getMaximumPoolSize();
+    }
+
+    /**
+     * @return Number of queries running right now
+     */
+    public int getActive() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * @return Most queries waiting for a thread
+     */
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * @return Number of queries waiting for a thread right now
+     */
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * @return Most queries that have been waiting for a thread at once
+     */
+    public int getPeakQueueDepth() {
+        return peakQueueDepth.get();
+    }
+
+    /**
+     * @return Number of queries taken to be run
+     */
+    public long getSubmitted() {
+        return submitted.get();
+    }
+
+    /**
+     * @return Number of queries that have run and given a result
+     */
+    public long getCompleted() {
+        return completed.get();
+    }
+
+    /**
+     * @return Number of queries that have run and thrown
+     */
+    public long getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * @return Number of queries turned away, since the queue was full
+     */
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    /**
+     * @return Average milliseconds a query waited in the queue before it was run
+     */
+    public double getAverageQueueMillis() {
+        long count = completed.get() + failed.get();
+        return count > 0 ? totalQueueNanos.get() / 1e6 / count : 0;
+    }
+
+    /**
+     * @return Most milliseconds a query has waited in the queue
+     */
+    public double getMaxQueueMillis() {
+        return maxQueueNanos.get() / 1e6;
+    }
+
+    /**
+     * @return Average milliseconds it took to run a query
+     */
+    public double getAverageRunMillis() {
+        long count = completed.get() + failed.get();
+        return count > 0 ? totalRunNanos.get() / 1e6 / count : 0;
+    }
+}
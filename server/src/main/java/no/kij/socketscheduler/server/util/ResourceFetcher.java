@@ -1,6 +1,7 @@
 package no.kij.socketscheduler.server.util;
 
 import org.apache.commons.io.IOUtils;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
@@ -26,6 +27,21 @@ public class ResourceFetcher {
         return getFile(in);
     }
 
+    /**
+     * Opens the given file in the resources path, for reading it a bit at a time instead of all at once.
+     *
+     * @param fileName Name of file to be opened, file extension inclusive
+     * @return Stream of the file's content
+     * @throws FileNotFoundException If the file is not in the resources path
+     */
+    public static InputStream openFile(String fileName) throws FileNotFoundException {
+        InputStream in = ResourceFetcher.class.getClassLoader().getResourceAsStream(fileName);
+        if (in == null) {
+            throw new FileNotFoundException(fileName + " was not found in the resources path.");
+        }
+        return in;
+    }
+
     /**
      * An alternative to getFile with file name.
      * @see ResourceFetcher#getFile(String)
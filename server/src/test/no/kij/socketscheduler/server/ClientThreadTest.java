@@ -1,7 +1,12 @@
 package no.kij.socketscheduler.server;
 
+import no.kij.socketscheduler.server.catalogue.Catalogue;
 import no.kij.socketscheduler.server.db.DatabaseInitializer;
+import no.kij.socketscheduler.server.dto.SubjectDTO;
+import no.kij.socketscheduler.server.protocol.Frame;
+import no.kij.socketscheduler.server.protocol.FrameCodec;
 import no.kij.socketscheduler.server.util.ConnectionManager;
+import no.kij.socketscheduler.server.util.DaoDelegator;
 import no.kij.socketscheduler.server.util.ResourceFetcher;
 import org.h2.tools.Server;
 import org.junit.*;
@@ -9,7 +14,14 @@ import org.junit.*;
 import java.io.*;
 import java.net.Socket;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Predicate;
 
 import static org.mockito.Mockito.*;
 import static org.junit.Assert.*;
@@ -72,6 +84,16 @@ public class ClientThreadTest {
 
     }
 
+    @Test
+    public void testSendBusyTellsClientAndCloses() throws IOException {
+        new ClientThread(socket, cm).sendBusy();
+
+        DataInputStream output = new DataInputStream(new ByteArrayInputStream(outputStream.toByteArray()));
+        assertEquals("@|yellow The server is busy, please try again in a moment.|@", output.readUTF());
+        assertEquals("END_CONNECTION", output.readUTF());
+        verify(socket).close();
+    }
+
     @Test
     public void testServerRespondsToClientCorrectly() throws IOException {
         runWithMsg("help");
@@ -90,6 +112,7 @@ public class ClientThreadTest {
         assertTrue(output.contains("Alexander"));
         assertTrue(output.contains("Vilde"));
         assertTrue(output.contains("Lilly"));
+        assertTrue(output.contains("PG3300"));
     }
 
     @Test
@@ -117,9 +140,59 @@ public class ClientThreadTest {
         runWithMsg("search lecturer vilde");
         String output = outputStream.toString();
 
+        assertTrue(output.contains("Vilde Birkenes"));
+        assertFalse(output.contains("No result was found."));
+    }
+
+    @Test
+    public void testSearchLecturerWithTypo() throws IOException {
+        runWithMsg("search lecturer lily evensn");
+        String output = outputStream.toString();
+
+        assertTrue(output.contains("Lilly Evensen"));
+        assertTrue(output.contains("PG3300"));
+    }
+
+    @Test
+    public void testSearchLecturerWithoutMatch() throws IOException {
+        runWithMsg("search lecturer qqqqqq");
+        String output = outputStream.toString();
+
         assertTrue(output.contains("No result was found."));
     }
 
+    @Test
+    public void testSearchSubjectByCodeInLowerCase() throws IOException {
+        runWithMsg("search subject pgr200");
+        String output = outputStream.toString();
+
+        assertTrue(output.contains("Avansert Javaprogrammering"));
+        assertTrue(output.contains("Alexander Melby"));
+    }
+
+    @Test
+    public void testSearchSubjectShowsSeveralResults() throws IOException {
+        runWithMsg("search subject er");
+        String output = outputStream.toString();
+
+        assertTrue(output.contains("Avansert Javaprogrammering"));
+        assertTrue(output.contains("Algoritmer og datastrukturer"));
+    }
+
+    @Test
+    public void testSearchLimit() throws IOException {
+        ClientThread.setSearchLimit(1);
+        try {
+            runWithMsg("search subject er");
+        } finally {
+            ClientThread.setSearchLimit(ClientThread.DEFAULT_SEARCH_LIMIT);
+        }
+        String output = outputStream.toString();
+
+        assertTrue(output.contains("Avansert Javaprogrammering"));
+        assertFalse(output.contains("Algoritmer og datastrukturer"));
+    }
+
     @Test
     public void testSearchSubject() throws IOException {
         runWithMsg("search subject pgr200asdf");
@@ -149,6 +222,96 @@ public class ClientThreadTest {
         assertTrue(output.contains("The command 'asdf' does not exist."));
     }
 
+    @Test
+    public void testHandshakeSwitchesToFramedResponses() throws IOException {
+        ByteArrayOutputStream input = new ByteArrayOutputStream();
+        input.write(createUTFMessage("PROTOCOL 2"));
+        FrameCodec.writeFrame(new DataOutputStream(input), FrameCodec.REQUEST, "list subject");
+        FrameCodec.writeFrame(new DataOutputStream(input), FrameCodec.REQUEST, "exit");
+        when(socket.getInputStream()).thenReturn(new ByteArrayInputStream(input.toByteArray()));
+
+        new ClientThread(socket, cm).run();
+        DataInputStream output = new DataInputStream(new ByteArrayInputStream(outputStream.toByteArray()));
+
+        // the welcome and the answer to the handshake are sent in the original protocol
+        assertTrue(output.readUTF().contains("You have been successfully connected to the Scheduler Database."));
+        assertEquals("END_TRANSMISSION", output.readUTF());
+        assertEquals("PROTOCOL 2", output.readUTF());
+        assertEquals("END_TRANSMISSION", output.readUTF());
+
+        // while the whole list is sent as a single frame
+        Frame list = FrameCodec.readFrame(output);
+        assertEquals(FrameCodec.RESPONSE, list.getType());
+        assertTrue(list.getPayload().contains("PGR200"));
+        assertTrue(list.getPayload().contains("PG4200"));
+        assertTrue(list.getPayload().contains("PG3300"));
+        assertFalse(list.getPayload().contains("END_TRANSMISSION"));
+
+        assertEquals(FrameCodec.CLOSE, FrameCodec.readFrame(output).getType());
+    }
+
+    @Test
+    public void testHandshakeForUnknownVersionAgreesOnHighestSupported() throws IOException {
+        runWithMsg("PROTOCOL 9");
+        assertTrue(outputStream.toString().contains("PROTOCOL 3"));
+    }
+
+    @Test
+    public void testPipelinedRequestsAreAnsweredInOrder() throws IOException {
+        List<Frame> responses = runPipelined("PROTOCOL 3", "list subject", "help", "search subject pgr200asdf");
+
+        assertEquals(3, responses.size());
+        assertEquals(1, responses.get(0).getRequestId());
+        assertTrue(responses.get(0).getPayload().contains("PG3300"));
+        assertEquals(2, responses.get(1).getRequestId());
+        assertTrue(responses.get(1).getPayload().contains("The following commands are available."));
+        assertEquals(3, responses.get(2).getRequestId());
+        assertTrue(responses.get(2).getPayload().contains("No result was found."));
+    }
+
+    @Test
+    public void testUnorderedPipelinedRequestsAreAllAnsweredWithTheirIds() throws IOException {
+        String[] commands = new String[40];
+        for (int i = 0; i < commands.length; i++) {
+            commands[i] = i % 2 == 0 ? "list lecturer" : "help list";
+        }
+        List<Frame> responses = runPipelined("PROTOCOL 3 UNORDERED", commands);
+
+        assertEquals(commands.length, responses.size());
+        Set<Integer> answered = new HashSet<>();
+        for (Frame response : responses) {
+            assertTrue(answered.add(response.getRequestId()));
+            boolean isLecturerList = (response.getRequestId() - 1) % 2 == 0;
+            assertEquals(isLecturerList, response.getPayload().contains("Alexander"));
+            assertEquals(!isLecturerList, response.getPayload().contains("You can use it to view all lecturers"));
+        }
+    }
+
+    private List<Frame> runPipelined(String handshake, String... commands) throws IOException {
+        ByteArrayOutputStream input = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(input);
+        input.write(createUTFMessage(handshake));
+        for (int i = 0; i < commands.length; i++) {
+            FrameCodec.writeFrame(out, FrameCodec.PIPELINED_VERSION, FrameCodec.REQUEST, i + 1, commands[i]);
+        }
+        FrameCodec.writeFrame(out, FrameCodec.PIPELINED_VERSION, FrameCodec.REQUEST, commands.length + 1, "exit");
+        when(socket.getInputStream()).thenReturn(new ByteArrayInputStream(input.toByteArray()));
+
+        new ClientThread(socket, cm).run();
+        DataInputStream output = new DataInputStream(new ByteArrayInputStream(outputStream.toByteArray()));
+
+        // skip the welcome and the answer to the handshake
+        while (!output.readUTF().startsWith("PROTOCOL 3")) ;
+        assertEquals("END_TRANSMISSION", output.readUTF());
+
+        List<Frame> responses = new ArrayList<>();
+        Frame frame;
+        while ((frame = FrameCodec.readFrame(output, FrameCodec.PIPELINED_VERSION)).getType() != FrameCodec.CLOSE) {
+            responses.add(frame);
+        }
+        assertEquals(commands.length + 1, frame.getRequestId());
+        return responses;
+    }
 
     private void runWithMsg(String msg) throws IOException {
         when(socket.getInputStream()).thenReturn(
@@ -179,4 +342,234 @@ public class ClientThreadTest {
         // (since it's added by writeUTF to tell how long the message is)
         return new String(Arrays.copyOfRange(msg, 2, msg.length));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testListWithLimitContinuesWithMore() throws IOException {
+        runWithMsgs("list subject limit 2", "more", "more");
+        String output = outputStream.toString();
+
+        int firstPage = output.indexOf("Type \"more\" to see the next 2.");
+        assertTrue(output.indexOf("PG3300") < firstPage);
+        assertTrue(output.indexOf("PG4200") < firstPage);
+        assertTrue(output.indexOf("PGR200") > firstPage);
+        assertEquals(firstPage, output.lastIndexOf("Type \"more\""));
+        assertTrue(output.indexOf("There is nothing more to list.") > output.indexOf("PGR200"));
+    }
+
+    @Test
+    public void testListWithoutLimitShowsOnePage() throws IOException {
+        ClientThread.setListLimit(2);
+        try {
+            runWithMsgs("list subject", "more");
+        } finally {
+            ClientThread.setListLimit(ClientThread.DEFAULT_LIST_LIMIT);
+        }
+        String output = outputStream.toString();
+
+        int firstPage = output.indexOf("Type \"more\" to see the next 2.");
+        assertTrue(output.indexOf("PG4200") < firstPage);
+        assertTrue(output.indexOf("PGR200") > firstPage);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testListLimitAboveMaximumIsRefused() {
+        ClientThread.setListLimit(ClientThread.MAX_LIST_LIMIT + 1);
+    }
+
+    @Test
+    public void testListLecturerAfterName() throws IOException {
+        runWithMsg("list lecturer after Lilly Evensen limit 1");
+        String output = outputStream.toString();
+
+        assertTrue(output.contains("Vilde Birkenes"));
+        assertFalse(output.contains("Alexander Melby"));
+        assertFalse(output.contains("Type \"more\""));
+    }
+
+    @Test
+    public void testMoreWithoutList() throws IOException {
+        runWithMsg("more");
+        assertTrue(outputStream.toString().contains("There is nothing more to list."));
+    }
+
+    @Test
+    public void testBusyDatabaseIsReported() throws IOException {
+        CompletableFuture<List<SubjectDTO>> busy = new CompletableFuture<>();
+        busy.completeExceptionally(new RejectedExecutionException("Queue is full"));
+        Catalogue catalogue = mock(Catalogue.class);
+        when(catalogue.searchSubjectsAsync(anyString(), anyInt())).thenReturn(busy);
+        DaoDelegator dao = new DaoDelegator(cm);
+        dao.useCatalogue(catalogue);
+
+        new ClientThread(socket, dao).handleMessage("search subject PG4200");
+        String output = outputStream.toString();
+        assertTrue(output.contains("The server is busy, please try again in a moment."));
+        assertFalse(output.contains("No result was found."));
+    }
+
+    @Test
+    public void testAnswerWaitsForDatabaseThread() throws Exception {
+        CompletableFuture<List<SubjectDTO>> answer = new CompletableFuture<>();
+        Catalogue catalogue = mock(Catalogue.class);
+        when(catalogue.searchSubjectsAsync(anyString(), anyInt())).thenReturn(answer);
+        DaoDelegator dao = new DaoDelegator(cm);
+        dao.useCatalogue(catalogue);
+        ClientThread clientThread = new ClientThread(socket, dao);
+
+        CompletableFuture<Runnable> handled = clientThread.answerMessageAsync(0, "search subject PG4200");
+        assertFalse(handled.isDone());
+        assertFalse(outputStream.toString().contains("No result was found."));
+
+        // the thread completing the answer only collects it, and the response is written by whoever runs the write
+        answer.complete(new ArrayList<>());
+        assertTrue(handled.isDone());
+        assertFalse(outputStream.toString().contains("No result was found."));
+        handled.get().run();
+        assertTrue(outputStream.toString().contains("No result was found."));
+    }
+
+    @Test
+    public void testRepeatedFramedListIsSentFromTheCache() throws IOException {
+        Catalogue catalogue = mockSubjectCatalogue("PGR200", "PG3300", "PG4200");
+        ClientThread clientThread = framedClient(catalogue);
+
+        clientThread.handleMessage(1, "list subject limit 2");
+        clientThread.handleMessage(2, "list subject limit 2");
+        clientThread.handleMessage(3, "more");
+        List<Frame> responses = readFrames();
+
+        assertEquals(3, responses.size());
+        assertEquals(2, responses.get(1).getRequestId());
+        assertEquals(responses.get(0).getPayload(), responses.get(1).getPayload());
+        assertTrue(responses.get(1).getPayload().contains("Type \"more\" to see the next 2."));
+        // more continues after the cached page, which only the first list asked the catalogue for
+        assertTrue(responses.get(2).getPayload().contains("PG4200"));
+        assertFalse(responses.get(2).getPayload().contains("PG3300"));
+        verify(catalogue, times(1)).forEachSubjectAsync((String) isNull(), eq(3), any());
+        verify(catalogue, times(1)).forEachSubjectAsync(eq("PG3300"), eq(3), any());
+    }
+
+    @Test
+    public void testNewerCatalogueVersionIsListedAgain() throws IOException {
+        Catalogue catalogue = mockSubjectCatalogue("PGR200", "PG3300");
+        ClientThread clientThread = framedClient(catalogue);
+
+        clientThread.handleMessage(1, "list subject");
+        mockSubjects(catalogue, "PGR200", "PG3300", "PG4200");
+        when(catalogue.getVersion()).thenReturn(1L);
+        clientThread.handleMessage(2, "list subject");
+        List<Frame> responses = readFrames();
+
+        assertFalse(responses.get(0).getPayload().contains("PG4200"));
+        assertTrue(responses.get(1).getPayload().contains("PG4200"));
+        verify(catalogue, times(2))
+                .forEachSubjectAsync((String) isNull(), eq(ClientThread.DEFAULT_LIST_LIMIT + 1), any());
+    }
+
+    @Test
+    public void testFailedListIsNotCached() throws IOException {
+        Catalogue catalogue = mock(Catalogue.class);
+        CompletableFuture<Void> busy = new CompletableFuture<>();
+        busy.completeExceptionally(new RejectedExecutionException("Queue is full"));
+        when(catalogue.forEachSubjectAsync(any(), anyInt(), any())).thenReturn(busy);
+        ClientThread clientThread = framedClient(catalogue);
+
+        clientThread.handleMessage(1, "list subject");
+        mockSubjects(catalogue, "PGR200");
+        clientThread.handleMessage(2, "list subject");
+        List<Frame> responses = readFrames();
+
+        assertTrue(responses.get(0).getPayload().contains("The server is busy, please try again in a moment."));
+        assertTrue(responses.get(1).getPayload().contains("PGR200"));
+    }
+
+    @Test
+    public void testLegacyListIsNotCached() throws IOException {
+        Catalogue catalogue = mockSubjectCatalogue("PGR200");
+        DaoDelegator dao = new DaoDelegator(cm);
+        dao.useCatalogue(catalogue);
+        ClientThread clientThread = new ClientThread(socket, dao);
+
+        clientThread.handleMessage("list subject");
+        clientThread.handleMessage("list subject");
+
+        verify(catalogue, times(2))
+                .forEachSubjectAsync((String) isNull(), eq(ClientThread.DEFAULT_LIST_LIMIT + 1), any());
+        assertEquals(2, outputStream.toString().split("PGR200", -1).length - 1);
+    }
+
+    @Test
+    public void testEncodedHelpIsSentInEitherVersion() throws IOException {
+        ClientThread clientThread = new ClientThread(socket, cm);
+        clientThread.handleMessage("help search");
+        DataInputStream legacy = new DataInputStream(new ByteArrayInputStream(outputStream.toByteArray()));
+        assertEquals("@|bold,cyan Search:|@", legacy.readUTF());
+
+        outputStream.reset();
+        clientThread.handleMessage("PROTOCOL 3");
+        clientThread.handleMessage(7, "help search");
+        List<Frame> responses = readFrames();
+        assertEquals(7, responses.get(0).getRequestId());
+        assertTrue(responses.get(0).getPayload().startsWith("@|bold,cyan Search:|@\n"));
+        assertTrue(responses.get(0).getPayload().contains("search subject PGR200"));
+    }
+
+    private Catalogue mockSubjectCatalogue(String... codes) {
+        Catalogue catalogue = mock(Catalogue.class);
+        mockSubjects(catalogue, codes);
+        return catalogue;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void mockSubjects(Catalogue catalogue, String... codes) {
+        doAnswer(invocation -> {
+            String after = (String) invocation.getArguments()[0];
+            Predicate<SubjectDTO> visitor = (Predicate<SubjectDTO>) invocation.getArguments()[2];
+            for (String code : codes) {
+                if (after == null || code.compareTo(after) > 0) {
+                    SubjectDTO subject = new SubjectDTO();
+                    subject.setShortName(code);
+                    subject.setName("Programming");
+                    subject.setEnrolled(10);
+                    subject.setLecturers(new ArrayList<>());
+                    if (!visitor.test(subject)) {
+                        break;
+                    }
+                }
+            }
+            return CompletableFuture.completedFuture(null);
+        }).when(catalogue).forEachSubjectAsync(any(), anyInt(), any());
+    }
+
+    private ClientThread framedClient(Catalogue catalogue) {
+        DaoDelegator dao = new DaoDelegator(cm);
+        dao.useCatalogue(catalogue);
+        ClientThread clientThread = new ClientThread(socket, dao);
+        clientThread.handleMessage("PROTOCOL 3");
+        return clientThread;
+    }
+
+    private List<Frame> readFrames() throws IOException {
+        DataInputStream output = new DataInputStream(new ByteArrayInputStream(outputStream.toByteArray()));
+        // skip the answer to the handshake
+        while (!output.readUTF().startsWith("PROTOCOL 3")) ;
+        assertEquals("END_TRANSMISSION", output.readUTF());
+
+        List<Frame> responses = new ArrayList<>();
+        while (output.available() > 0) {
+            responses.add(FrameCodec.readFrame(output, FrameCodec.PIPELINED_VERSION));
+        }
+        return responses;
+    }
+
+    private void runWithMsgs(String... msgs) throws IOException {
+        ByteArrayOutputStream input = new ByteArrayOutputStream();
+        for (String msg : msgs) {
+            input.write(createUTFMessage(msg));
+        }
+        input.write(createUTFMessage("exit"));
+        when(socket.getInputStream()).thenReturn(new ByteArrayInputStream(input.toByteArray()));
+
+        new ClientThread(socket, cm).run();
+    }
+}
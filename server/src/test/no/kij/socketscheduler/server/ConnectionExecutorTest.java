@@ -0,0 +1,99 @@
+package no.kij.socketscheduler.server;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ConnectionExecutorTest {
+    private ConnectionExecutor executor;
+
+    @Before
+    public void setUp() {
+        executor = new ConnectionExecutor(4, 2);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    public void testExecuteRunsConnection() throws InterruptedException {
+        CountDownLatch ran = new CountDownLatch(1);
+        executor.execute(ran::countDown);
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+        assertEquals(1, executor.getTotalConnections());
+    }
+
+    @Test
+    public void testActiveConnectionsAreCounted() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(3);
+        CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < 3; i++) {
+            executor.execute(() -> {
+                started.countDown();
+                awaitQuietly(release);
+            });
+        }
+
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertEquals(3, executor.getActiveConnections());
+        assertTrue(executor.getCarrierThreads() > 0);
+
+        release.countDown();
+        for (int i = 0; i < 50 && executor.getActiveConnections() > 0; i++) {
+            Thread.sleep(20);
+        }
+        assertEquals(0, executor.getActiveConnections());
+        assertEquals(3, executor.getTotalConnections());
+    }
+
+    @Test
+    public void testFallbackPoolIsBounded() throws InterruptedException {
+        if (executor.isVirtual()) {
+            return;
+        }
+
+        CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < 6; i++) {
+            executor.execute(() -> awaitQuietly(release));
+        }
+        Thread.sleep(100);
+
+        assertEquals(4, executor.getActiveConnections());
+        assertEquals(2, executor.getQueuedConnections());
+        assertEquals(4, executor.getCarrierThreads());
+        assertEquals(-1, executor.getPinnedEvents());
+        release.countDown();
+    }
+
+    @Test
+    public void testFallbackPoolRejectsWhenQueueIsFull() throws InterruptedException {
+        if (executor.isVirtual()) {
+            return;
+        }
+
+        CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < 6; i++) {
+            assertTrue(executor.execute(() -> awaitQuietly(release)));
+        }
+
+        assertFalse(executor.execute(() -> awaitQuietly(release)));
+        assertEquals(6, executor.getTotalConnections());
+        assertEquals(1, executor.getRejectedConnections());
+        release.countDown();
+    }
+
+    private void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package no.kij.socketscheduler.server.bench;
+
+import com.j256.ormlite.logger.LocalLog;
+import com.j256.ormlite.table.TableUtils;
+import no.kij.socketscheduler.server.dto.LecturerDTO;
+import no.kij.socketscheduler.server.dto.SubjectDTO;
+import no.kij.socketscheduler.server.dto.SubjectLecturerDTO;
+import no.kij.socketscheduler.server.util.ConnectionManager;
+import org.h2.tools.Server;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+
+/**
+ * An in-memory H2 database for the benchmarks, filled with a catalogue from CatalogueGenerator.
+ * The rows are inserted with plain JDBC batches, since going through the DAOs would make
+ * setting up the larger sizes take longer than the benchmark itself.
+ */
+public class BenchmarkDatabase {
+    static {
+        // the debug log of ormlite would otherwise be most of what is measured
+        System.setProperty(LocalLog.LOCAL_LOG_LEVEL_PROPERTY, "ERROR");
+    }
+
+    private static final int BATCH_SIZE = 10000;
+
+    private final String url;
+    private final ConnectionManager connectionManager;
+    private final Connection connection;
+    private final Server tcpServer;
+    private final LatencyProxy proxy;
+
+    /**
+     * Creates an empty database with the tables of the server.
+     * @param name Name of the in-memory database, so benchmarks don't see each others data
+     * @throws SQLException If the database could not be created
+     */
+    public BenchmarkDatabase(String name) throws SQLException {
+        this(name, "", null, null);
+    }
+
+    private BenchmarkDatabase(String name, String settings, Server tcpServer, LatencyProxy proxy) throws SQLException {
+        url = "jdbc:h2:mem:" + name + settings + ";DB_CLOSE_DELAY=-1";
+        this.tcpServer = tcpServer;
+        this.proxy = proxy;
+        // kept open so the database lives as long as this object does
+        connection = DriverManager.getConnection(url);
+
+        Properties props = new Properties();
+        props.setProperty("database_url", proxy == null ? url
+                : "jdbc:h2:tcp://localhost:" + proxy.getPort() + "/mem:" + name + settings);
+        connectionManager = new ConnectionManager(props);
+
+        TableUtils.createTableIfNotExists(connectionManager.getConnectionSource(), SubjectDTO.class);
+        TableUtils.createTableIfNotExists(connectionManager.getConnectionSource(), LecturerDTO.class);
+        TableUtils.createTableIfNotExists(connectionManager.getConnectionSource(), SubjectLecturerDTO.class);
+    }
+
+    /**
+     * Creates an empty database running in MySQL mode, which the daos reach over TCP
+     * through a LatencyProxy, as a stand-in for a MySQL server somewhere else on the network.
+     * Filling the database and counting statements still happen in-process, without the delay.
+     * @param name Name of the in-memory database, so benchmarks don't see each others data
+     * @param roundTripMillis Time added to every round trip between the daos and the database
+     * @return The database
+     * @throws Exception If the database, its server or the proxy could not be started
+     */
+    public static BenchmarkDatabase overNetwork(String name, double roundTripMillis) throws Exception {
+        Server tcpServer = Server.createTcpServer("-tcpPort", "0").start();
+        LatencyProxy proxy = new LatencyProxy(tcpServer.getPort(), roundTripMillis);
+        return new BenchmarkDatabase(name, ";MODE=MySQL", tcpServer, proxy);
+    }
+
+    /**
+     * Empties the tables and fills them with the given number of subjects,
+     * from the catalogue chosen with the system properties, see CatalogueGenerator.forBenchmark.
+     * Unless another is chosen, there is one lecturer per two subjects, and every subject has between zero and two.
+     * @param subjects Number of subjects to insert
+     * @return The catalogue the tables were filled with, to pick what to look up from
+     * @throws SQLException If the rows could not be inserted
+     */
+    public CatalogueGenerator populate(int subjects) throws SQLException {
+        return populate(CatalogueGenerator.forBenchmark(subjects));
+    }
+
+    /**
+     * Empties the tables and fills them with the given catalogue.
+     * The subjects and lecturers get their numbers in the catalogue as IDs.
+     * @param catalogue Catalogue to insert
+     * @return The catalogue
+     * @throws SQLException If the rows could not be inserted
+     */
+    public CatalogueGenerator populate(CatalogueGenerator catalogue) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("TRUNCATE TABLE subject_lecturer");
+            statement.execute("TRUNCATE TABLE subjects");
+            statement.execute("TRUNCATE TABLE lecturers");
+            statement.execute("ALTER TABLE subject_lecturer ALTER COLUMN id RESTART WITH 1");
+            statement.execute("ALTER TABLE subjects ALTER COLUMN id RESTART WITH 1");
+            statement.execute("ALTER TABLE lecturers ALTER COLUMN id RESTART WITH 1");
+        }
+
+        try (PreparedStatement insert = connection.prepareStatement("INSERT INTO lecturers (name) VALUES (?)")) {
+            for (int i = 1; i <= catalogue.getLecturers(); i++) {
+                insert.setString(1, catalogue.lecturerName(i));
+                addBatch(insert, i);
+            }
+            insert.executeBatch();
+        }
+        try (PreparedStatement insert = connection.prepareStatement(
+                "INSERT INTO subjects (code, name, enrolled) VALUES (?, ?, ?)")) {
+            for (int i = 1; i <= catalogue.getSubjects(); i++) {
+                insert.setString(1, catalogue.code(i));
+                insert.setString(2, catalogue.subjectName(i));
+                insert.setInt(3, catalogue.enrolled(i));
+                addBatch(insert, i);
+            }
+            insert.executeBatch();
+        }
+        try (PreparedStatement insert = connection.prepareStatement(
+                "INSERT INTO subject_lecturer (subject_id, lecturer_id) VALUES (?, ?)")) {
+            int rows = 0;
+            for (int i = 1; i <= catalogue.getSubjects(); i++) {
+                for (int lecturer : catalogue.lecturersOf(i)) {
+                    insert.setInt(1, i);
+                    insert.setInt(2, lecturer);
+                    addBatch(insert, ++rows);
+                }
+            }
+            insert.executeBatch();
+        }
+        return catalogue;
+    }
+
+    /**
+     * Adds the row to the batch, sending it every BATCH_SIZE rows so a million rows are not held at once.
+     */
+    private static void addBatch(PreparedStatement insert, int rows) throws SQLException {
+        insert.addBatch();
+        if (rows % BATCH_SIZE == 0) {
+            insert.executeBatch();
+        }
+    }
+
+    /**
+     * Runs the task and counts how many statements it sent to the database.
+     * @param task Task to run
+     * @return Number of statements executed while the task ran
+     * @throws Exception If the task fails
+     */
+    public long countStatements(Task task) throws Exception {
+        try (Statement statement = connection.createStatement()) {
+            // turning the statistics off and on again clears them
+            statement.execute("SET QUERY_STATISTICS FALSE");
+            statement.execute("SET QUERY_STATISTICS TRUE");
+            task.run();
+
+            long statements = 0;
+            try (ResultSet rs = statement.executeQuery(
+                    "SELECT SUM(EXECUTION_COUNT) FROM INFORMATION_SCHEMA.QUERY_STATISTICS")) {
+                if (rs.next()) {
+                    statements = rs.getLong(1);
+                }
+            }
+            statement.execute("SET QUERY_STATISTICS FALSE");
+            return statements;
+        }
+    }
+
+    public ConnectionManager getConnectionManager() {
+        return connectionManager;
+    }
+
+    /**
+     * Drops the database and closes its connections.
+     */
+    public void close() throws Exception {
+        connectionManager.close();
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP ALL OBJECTS");
+        }
+        connection.close();
+        if (proxy != null) {
+            proxy.close();
+            tcpServer.stop();
+        }
+    }
+
+    /**
+     * A piece of work to measure.
+     */
+    public interface Task {
+        void run() throws Exception;
+    }
+}
@@ -0,0 +1,90 @@
+package no.kij.socketscheduler.server.bench;
+
+import com.google.gson.Gson;
+import no.kij.socketscheduler.server.dao.LecturerDao;
+import no.kij.socketscheduler.server.dao.SubjectDao;
+import no.kij.socketscheduler.server.db.DatabaseInitializer;
+import no.kij.socketscheduler.server.dto.LecturerDTO;
+import no.kij.socketscheduler.server.dto.SubjectDTO;
+import no.kij.socketscheduler.server.util.DaoDelegator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compares filling empty tables row by row through the daos, the way DatabaseInitializer used to,
+ * against the batched load it does now.
+ *
+ * Run with the subject counts to measure as arguments, for example "10000 100000 1000000".
+ * The catalogue is chosen as described in CatalogueGenerator, and the row by row load is only run
+ * up to ROW_BY_ROW_LIMIT subjects.
+ */
+public class BulkImportBenchmark {
+    private static final int ROW_BY_ROW_LIMIT = 10000;
+
+    public static void main(String[] args) throws Exception {
+        int[] sizes = args.length > 0 ? Arrays.stream(args).mapToInt(Integer::parseInt).toArray()
+                : new int[] { 10000, 100000, 1000000 };
+
+        BenchmarkDatabase db = new BenchmarkDatabase("bulk_import_bench");
+        DatabaseInitializer initializer = new DatabaseInitializer(db.getConnectionManager());
+        DaoDelegator delegator = DaoDelegator.shared(db.getConnectionManager());
+
+        System.out.printf("%10s %10s %-12s %12s %14s%n", "subjects", "lecturers", "load", "ms", "rows/s");
+        for (int size : sizes) {
+            CatalogueGenerator catalogue = CatalogueGenerator.forBenchmark(size);
+            int lecturers = catalogue.getLecturers();
+            String lecturersJson = catalogue.lecturersJson();
+            String subjectsJson = catalogue.subjectsJson();
+            long rows = lecturers + size;
+            for (int i = 1; i <= size; i++) {
+                rows += catalogue.lecturersOf(i).length;
+            }
+
+            if (size <= ROW_BY_ROW_LIMIT) {
+                initializer.initializeTables();
+                long start = System.nanoTime();
+                loadRowByRow(delegator, lecturersJson, subjectsJson);
+                report(size, lecturers, "row by row", start, rows);
+            }
+
+            initializer.initializeTables();
+            long start = System.nanoTime();
+            initializer.initializeTableContent(lecturersJson, subjectsJson);
+            report(size, lecturers, "batched", start, rows);
+        }
+        db.close();
+    }
+
+    /**
+     * The way the tables used to be filled: each lecturer and subject created on its own,
+     * every lecturer of a subject looked up by name, and then every subject updated with its lecturers.
+     */
+    private static void loadRowByRow(DaoDelegator delegator, String lecturersJson, String subjectsJson)
+            throws Exception {
+        Gson gson = new Gson();
+        LecturerDao lecturerDao = delegator.getLecturerDao();
+        SubjectDao subjectDao = delegator.getSubjectDao();
+        for (LecturerDTO lecturer : gson.fromJson(lecturersJson, LecturerDTO[].class)) {
+            lecturerDao.createIfNotExists(lecturer);
+        }
+        SubjectDTO[] subjects = gson.fromJson(subjectsJson, SubjectDTO[].class);
+        for (SubjectDTO subject : subjects) {
+            List<LecturerDTO> lecturers = subject.getLecturers();
+            subject.setLecturers(new ArrayList<>());
+            subjectDao.createIfNotExists(subject);
+            for (LecturerDTO lecturer : lecturers) {
+                subject.getLecturers().add(lecturerDao.queryForLecturerName(lecturer.getName()));
+            }
+        }
+        for (SubjectDTO subject : subjects) {
+            subjectDao.updateSubject(subject);
+        }
+    }
+
+    private static void report(int subjects, int lecturers, String load, long start, long rows) {
+        double ms = (System.nanoTime() - start) / 1e6;
+        System.out.printf("%10d %10d %-12s %12.1f %14.0f%n", subjects, lecturers, load, ms, rows / ms * 1000);
+    }
+}
@@ -0,0 +1,576 @@
+package no.kij.socketscheduler.server.bench;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Makes up catalogues of any size for the benchmarks, the same every time it is asked for the same one.
+ * Subjects are numbered from 1 to the number of subjects, and lecturers from 1 to the number of lecturers,
+ * which are the IDs they get when loaded into empty tables.
+ *
+ * There are two kinds of catalogue. A sequential one is made by formula, with subjects named "Subject number 1"
+ * and so on, each taught by zero to two of the lecturers named "Lecturer 1" and so on.
+ * A seeded one is made up from the seed, with names drawn from lists of common words and names,
+ * the common ones far more often than the rest, and the first lecturers teaching far more subjects than the last.
+ *
+ * Benchmarks get the catalogue to run against from forBenchmark, which is chosen with system properties:
+ * -Dcatalogue=seeded for a seeded one instead of a sequential one, and for a seeded one
+ * -Dcatalogue.seed, -Dcatalogue.lecturers, -Dcatalogue.lecturersPerSubject=MIN-MAX and -Dcatalogue.skew.
+ * Run main to write a catalogue as content files, to start the server with --content-dir.
+ */
+public abstract class CatalogueGenerator {
+    public static final String DATASET_PROPERTY = "catalogue";
+    public static final long DEFAULT_SEED = 20171107L;
+    public static final double DEFAULT_SKEW = 0.5;
+    private static final int ENROLLED_LIMIT = 120;
+
+    protected final int subjects;
+    protected final int lecturers;
+
+    private CatalogueGenerator(int subjects, int lecturers) {
+        if (subjects < 0 || lecturers < 1) {
+            throw new IllegalArgumentException("A catalogue needs at least one lecturer, and cannot have "
+                    + subjects + " subjects.");
+        }
+        this.subjects = subjects;
+        this.lecturers = lecturers;
+    }
+
+    /**
+     * @param subjects Number of subjects
+     * @return A sequential catalogue, with one lecturer per two subjects
+     */
+    public static CatalogueGenerator sequential(int subjects) {
+        return sequential(subjects, Math.max(1, subjects / 2));
+    }
+
+    /**
+     * @param subjects Number of subjects
+     * @param lecturers Number of lecturers
+     * @return A sequential catalogue
+     */
+    public static CatalogueGenerator sequential(int subjects, int lecturers) {
+        return new Sequential(subjects, lecturers);
+    }
+
+    /**
+     * @param subjects Number of subjects
+     * @param seed Seed to make the catalogue up from
+     * @return A seeded catalogue, with one lecturer per two subjects, each subject taught by zero to three of them
+     */
+    public static CatalogueGenerator seeded(int subjects, long seed) {
+        return new Seeded(subjects, Math.max(1, subjects / 2), seed, 0, 3, DEFAULT_SKEW);
+    }
+
+    /**
+     * @param subjects Number of subjects
+     * @param lecturers Number of lecturers
+     * @param seed Seed to make the catalogue up from
+     * @param minLecturersPerSubject Fewest lecturers teaching a subject
+     * @param maxLecturersPerSubject Most lecturers teaching a subject
+     * @param skew How much more the first lecturers teach than the last, 0 for all the same
+     * @return A seeded catalogue
+     */
+    public static CatalogueGenerator seeded(int subjects, int lecturers, long seed, int minLecturersPerSubject,
+                                            int maxLecturersPerSubject, double skew) {
+        return new Seeded(subjects, lecturers, seed, minLecturersPerSubject, maxLecturersPerSubject, skew);
+    }
+
+    /**
+     * Gets the catalogue chosen with the system properties, which is a sequential one unless -Dcatalogue=seeded.
+     * @param subjects Number of subjects
+     * @return The catalogue
+     */
+    public static CatalogueGenerator forBenchmark(int subjects) {
+        String dataset = System.getProperty(DATASET_PROPERTY, "sequential");
+        int lecturers = Integer.getInteger(DATASET_PROPERTY + ".lecturers", Math.max(1, subjects / 2));
+        switch (dataset) {
+            case "sequential":
+                return sequential(subjects, lecturers);
+            case "seeded":
+                int[] perSubject = parseRange(System.getProperty(DATASET_PROPERTY + ".lecturersPerSubject", "0-3"));
+                String skew = System.getProperty(DATASET_PROPERTY + ".skew", String.valueOf(DEFAULT_SKEW));
+                return seeded(subjects, lecturers, Long.getLong(DATASET_PROPERTY + ".seed", DEFAULT_SEED),
+                        perSubject[0], perSubject[1], Double.parseDouble(skew));
+            default:
+                throw new IllegalArgumentException("Unknown catalogue '" + dataset
+                        + "', it should be sequential or seeded.");
+        }
+    }
+
+    public int getSubjects() {
+        return subjects;
+    }
+
+    public int getLecturers() {
+        return lecturers;
+    }
+
+    /**
+     * @param subject Number of the subject, from 1
+     * @return Code of the subject, which no other subject has
+     */
+    public abstract String code(int subject);
+
+    /**
+     * @param subject Number of the subject, from 1
+     * @return Name of the subject
+     */
+    public abstract String subjectName(int subject);
+
+    /**
+     * @param subject Number of the subject, from 1
+     * @return A part of the name of the subject, which it is the first subject to have
+     */
+    public abstract String partialSubjectName(int subject);
+
+    /**
+     * @param subject Number of the subject, from 1
+     * @return Number of students enrolled, below 120
+     */
+    public abstract int enrolled(int subject);
+
+    /**
+     * @param subject Number of the subject, from 1
+     * @return Numbers of the lecturers teaching the subject, each given once
+     */
+    public abstract int[] lecturersOf(int subject);
+
+    /**
+     * @param lecturer Number of the lecturer, from 1
+     * @return Name of the lecturer, which no other lecturer has
+     */
+    public abstract String lecturerName(int lecturer);
+
+    /**
+     * @param lecturer Number of the lecturer, from 1
+     * @return The name of the lecturer without its first three letters
+     */
+    public String partialLecturerName(int lecturer) {
+        return lecturerName(lecturer).substring(3);
+    }
+
+    /**
+     * Makes a new revision of this catalogue, where every changedEvery-th subject has another enrolment
+     * and other lecturers, and every 10 * changedEvery-th has been replaced by a new subject with a new code.
+     * @param changedEvery How far apart the changed subjects are
+     * @return The revised catalogue
+     */
+    public CatalogueGenerator revised(int changedEvery) {
+        return new Revised(this, changedEvery);
+    }
+
+    /**
+     * Writes every lecturer, in the format of "lecturers.json".
+     * @param out Where to write them
+     * @throws IOException If they could not be written
+     */
+    public void writeLecturers(Appendable out) throws IOException {
+        out.append('[');
+        for (int i = 1; i <= lecturers; i++) {
+            out.append(i > 1 ? "," : "").append("{\"name\":").append(quote(lecturerName(i))).append('}');
+        }
+        out.append(']');
+    }
+
+    /**
+     * Writes every subject and who teaches them, in the format of "subjects.json".
+     * @param out Where to write them
+     * @throws IOException If they could not be written
+     */
+    public void writeSubjects(Appendable out) throws IOException {
+        writeSubjects(out, 1, subjects);
+    }
+
+    /**
+     * Writes a range of the subjects and who teaches them, in the format of "subjects.json".
+     * @param out Where to write them
+     * @param first Number of the first subject to write
+     * @param count Number of subjects to write
+     * @throws IOException If they could not be written
+     */
+    public void writeSubjects(Appendable out, int first, int count) throws IOException {
+        out.append('[');
+        for (int i = first; i < first + count; i++) {
+            out.append(i > first ? "," : "").append("{\"name\":").append(quote(subjectName(i)))
+                    .append(",\"shortName\":").append(quote(code(i)))
+                    .append(",\"enrolled\":").append(String.valueOf(enrolled(i))).append(",\"lecturers\":[");
+            int[] taughtBy = lecturersOf(i);
+            for (int l = 0; l < taughtBy.length; l++) {
+                out.append(l > 0 ? "," : "").append("{\"name\":").append(quote(lecturerName(taughtBy[l]))).append('}');
+            }
+            out.append("]}");
+        }
+        out.append(']');
+    }
+
+    /**
+     * @return Every lecturer, in the format of "lecturers.json"
+     */
+    public String lecturersJson() {
+        StringBuilder json = new StringBuilder();
+        try {
+            writeLecturers(json);
+        } catch (IOException e) {
+            // a StringBuilder does not throw
+            throw new IllegalStateException(e);
+        }
+        return json.toString();
+    }
+
+    /**
+     * @return Every subject and who teaches them, in the format of "subjects.json"
+     */
+    public String subjectsJson() {
+        return subjectsJson(1, subjects);
+    }
+
+    /**
+     * @param first Number of the first subject
+     * @param count Number of subjects
+     * @return A range of the subjects and who teaches them, in the format of "subjects.json"
+     */
+    public String subjectsJson(int first, int count) {
+        StringBuilder json = new StringBuilder();
+        try {
+            writeSubjects(json, first, count);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return json.toString();
+    }
+
+    /**
+     * Writes the catalogue as content files for DatabaseInitializer, as "lecturers.json" and "subjects.json",
+     * or with the subjects split over several files, such as "subjects-part1.json".
+     * @param directory Directory to write the files to
+     * @param files Number of files to split the subjects over
+     * @throws IOException If the files could not be written
+     */
+    public void writeContent(Path directory, int files) throws IOException {
+        Files.createDirectories(directory);
+        try (Writer out = Files.newBufferedWriter(directory.resolve("lecturers.json"), StandardCharsets.UTF_8)) {
+            writeLecturers(out);
+        }
+        for (int part = 0; part < files; part++) {
+            int first = (int) ((long) subjects * part / files) + 1;
+            int next = (int) ((long) subjects * (part + 1) / files) + 1;
+            String name = files == 1 ? "subjects.json" : "subjects-part" + (part + 1) + ".json";
+            try (Writer out = Files.newBufferedWriter(directory.resolve(name), StandardCharsets.UTF_8)) {
+                writeSubjects(out, first, next - first);
+            }
+        }
+    }
+
+    private static String quote(String text) {
+        return "\"" + text.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    private static int[] parseRange(String range) {
+        String[] bounds = range.split("-");
+        int min = Integer.parseInt(bounds[0].trim());
+        return new int[] { min, bounds.length > 1 ? Integer.parseInt(bounds[1].trim()) : min };
+    }
+
+    /**
+     * Writes a catalogue as content files, which the server can be started with using --content-dir.
+     * Run with the directory and the number of subjects as arguments, followed by any of
+     * --seed=N, --lecturers=N, --lecturers-per-subject=MIN-MAX, --skew=S, --files=N and --sequential.
+     * A seeded catalogue is written unless --sequential is given.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: CatalogueGenerator <directory> <subjects> [--seed=N] [--lecturers=N] "
+                    + "[--lecturers-per-subject=MIN-MAX] [--skew=S] [--files=N] [--sequential]");
+            return;
+        }
+        Path directory = Paths.get(args[0]);
+        int subjects = Integer.parseInt(args[1]);
+        Map<String, String> options = new HashMap<>();
+        for (String arg : Arrays.copyOfRange(args, 2, args.length)) {
+            int equals = arg.indexOf('=');
+            options.put(equals < 0 ? arg : arg.substring(0, equals), equals < 0 ? "" : arg.substring(equals + 1));
+        }
+        int lecturers = options.containsKey("--lecturers") ? Integer.parseInt(options.get("--lecturers"))
+                : Math.max(1, subjects / 2);
+        long seed = options.containsKey("--seed") ? Long.parseLong(options.get("--seed")) : DEFAULT_SEED;
+        int[] perSubject = parseRange(options.getOrDefault("--lecturers-per-subject", "0-3"));
+        CatalogueGenerator catalogue = options.containsKey("--sequential") ? sequential(subjects, lecturers)
+                : seeded(subjects, lecturers, seed, perSubject[0], perSubject[1],
+                        Double.parseDouble(options.getOrDefault("--skew", String.valueOf(DEFAULT_SKEW))));
+
+        long start = System.nanoTime();
+        catalogue.writeContent(directory, Integer.parseInt(options.getOrDefault("--files", "1")));
+        System.out.printf("Wrote %s to %s in %.0f ms.%n", catalogue, directory, (System.nanoTime() - start) / 1e6);
+    }
+
+    /**
+     * The catalogue BenchmarkDatabase has always been filled with.
+     */
+    private static class Sequential extends CatalogueGenerator {
+        private Sequential(int subjects, int lecturers) {
+            super(subjects, lecturers);
+        }
+
+        @Override
+        public String code(int subject) {
+            return "PG" + subject;
+        }
+
+        @Override
+        public String subjectName(int subject) {
+            return "Subject number " + subject;
+        }
+
+        @Override
+        public String partialSubjectName(int subject) {
+            return "number " + subject;
+        }
+
+        @Override
+        public int enrolled(int subject) {
+            return subject % ENROLLED_LIMIT;
+        }
+
+        @Override
+        public int[] lecturersOf(int subject) {
+            int[] taughtBy = new int[subject % 3];
+            for (int l = 0; l < taughtBy.length; l++) {
+                taughtBy[l] = (subject + l * 7) % lecturers + 1;
+            }
+            return taughtBy;
+        }
+
+        @Override
+        public String lecturerName(int lecturer) {
+            return "Lecturer " + lecturer;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("a sequential catalogue of %d subjects and %d lecturers", subjects, lecturers);
+        }
+    }
+
+    /**
+     * A catalogue made up from a seed. Every subject and lecturer gets a random generator of its own,
+     * seeded from the seed and its number, so any part of the catalogue can be made without the rest.
+     * The lecturer names are the exception, since they are made unique by counting the ones made before them,
+     * so they are all made the first time one is asked for.
+     */
+    private static class Seeded extends CatalogueGenerator {
+        private static final String[] FIRST_NAMES = { "Ingrid", "Ole", "Kari", "Lars", "Anne", "Per", "Marit",
+                "Jan", "Nora", "Bjørn", "Emma", "Kjell", "Sofie", "Arne", "Hilde", "Magnus", "Sara", "Tor", "Ida",
+                "Knut", "Vilde", "Erik", "Liv", "Anders", "Maja", "Håkon", "Silje", "Sindre", "Tone", "Jonas" };
+        private static final String[] LAST_NAMES = { "Hansen", "Johansen", "Olsen", "Larsen", "Andersen",
+                "Pedersen", "Nilsen", "Kristiansen", "Jensen", "Karlsen", "Johnsen", "Pettersen", "Eriksen", "Berg",
+                "Haugen", "Hagen", "Johannessen", "Andreassen", "Jacobsen", "Dahl", "Jørgensen", "Halvorsen",
+                "Henriksen", "Lund", "Sørensen", "Jakobsen", "Moen", "Gundersen", "Iversen", "Strand" };
+        private static final String[] LEVELS = { "Introduction to", "Advanced", "Applied", "Topics in",
+                "Foundations of", "Practical", "Project in", "Research Methods in" };
+        private static final String[] TOPICS = { "Programming", "Databases", "Algorithms", "Web Development",
+                "Software Engineering", "Operating Systems", "Networks", "Machine Learning", "Mathematics",
+                "Statistics", "Interaction Design", "Information Security", "Game Development", "Mobile Development",
+                "Cloud Computing", "Data Structures", "Compilers", "Project Management", "Marketing", "Economics",
+                "Accounting", "Organisation", "Visual Design", "Digital Media", "Ethics" };
+        private static final long SUBJECT_STREAM = 1;
+        private static final long LECTURER_STREAM = 2;
+
+        private final long seed;
+        private final int minLecturersPerSubject;
+        private final int maxLecturersPerSubject;
+        private final double skew;
+        private final Zipf firstNames = new Zipf(FIRST_NAMES.length, 1.0);
+        private final Zipf lastNames = new Zipf(LAST_NAMES.length, 1.0);
+        private final Zipf levels = new Zipf(LEVELS.length, 1.0);
+        private final Zipf topics = new Zipf(TOPICS.length, 0.8);
+        private Zipf popularity;
+        private String[] lecturerNames;
+
+        private Seeded(int subjects, int lecturers, long seed, int minLecturersPerSubject, int maxLecturersPerSubject,
+                       double skew) {
+            super(subjects, lecturers);
+            if (minLecturersPerSubject < 0 || maxLecturersPerSubject < minLecturersPerSubject) {
+                throw new IllegalArgumentException("Invalid number of lecturers per subject: "
+                        + minLecturersPerSubject + "-" + maxLecturersPerSubject);
+            }
+            this.seed = seed;
+            this.minLecturersPerSubject = minLecturersPerSubject;
+            this.maxLecturersPerSubject = Math.min(maxLecturersPerSubject, lecturers);
+            this.skew = skew;
+        }
+
+        private SplittableRandom random(long stream, int number) {
+            return new SplittableRandom(seed * 0x9E3779B97F4A7C15L + stream * 0xBF58476D1CE4E5B9L + number);
+        }
+
+        @Override
+        public String code(int subject) {
+            // the department is drawn from the same words as the name, so the codes are skewed as well
+            String topic = TOPICS[topics.next(random(SUBJECT_STREAM, subject))];
+            return topic.substring(0, Math.min(3, topic.length())).toUpperCase() + subject;
+        }
+
+        @Override
+        public String subjectName(int subject) {
+            SplittableRandom random = random(SUBJECT_STREAM, subject);
+            String topic = TOPICS[topics.next(random)];
+            return LEVELS[levels.next(random)] + " " + topic + " " + subject;
+        }
+
+        @Override
+        public String partialSubjectName(int subject) {
+            return TOPICS[topics.next(random(SUBJECT_STREAM, subject))] + " " + subject;
+        }
+
+        @Override
+        public int enrolled(int subject) {
+            SplittableRandom random = random(SUBJECT_STREAM, subject);
+            // skip what the name was drawn from, so the enrolment does not follow the topic
+            topics.next(random);
+            levels.next(random);
+            double students = Math.exp(3.2 + 0.7 * gaussian(random));
+            return (int) Math.min(ENROLLED_LIMIT - 1, students);
+        }
+
+        @Override
+        public int[] lecturersOf(int subject) {
+            if (popularity == null) {
+                popularity = new Zipf(lecturers, skew);
+            }
+            SplittableRandom random = random(SUBJECT_STREAM, -subject);
+            int[] taughtBy = new int[minLecturersPerSubject
+                    + random.nextInt(maxLecturersPerSubject - minLecturersPerSubject + 1)];
+            for (int l = 0; l < taughtBy.length; l++) {
+                int lecturer;
+                boolean taken;
+                do {
+                    lecturer = popularity.next(random) + 1;
+                    taken = false;
+                    for (int k = 0; k < l; k++) {
+                        taken |= taughtBy[k] == lecturer;
+                    }
+                } while (taken);
+                taughtBy[l] = lecturer;
+            }
+            return taughtBy;
+        }
+
+        @Override
+        public String lecturerName(int lecturer) {
+            if (lecturerNames == null) {
+                lecturerNames = new String[lecturers];
+                Map<String, Integer> seen = new HashMap<>();
+                for (int i = 0; i < lecturers; i++) {
+                    SplittableRandom random = random(LECTURER_STREAM, i + 1);
+                    String name = FIRST_NAMES[firstNames.next(random)] + " " + LAST_NAMES[lastNames.next(random)];
+                    int count = seen.merge(name, 1, Integer::sum);
+                    lecturerNames[i] = count == 1 ? name : name + " " + count;
+                }
+            }
+            return lecturerNames[lecturer - 1];
+        }
+
+        private static double gaussian(SplittableRandom random) {
+            // Box-Muller, since SplittableRandom has no nextGaussian
+            return Math.sqrt(-2 * Math.log(1 - random.nextDouble())) * Math.cos(2 * Math.PI * random.nextDouble());
+        }
+
+        @Override
+        public String toString() {
+            return String.format("a catalogue of %d subjects and %d lecturers seeded with %d, "
+                            + "%d-%d lecturers per subject, skew %.2f", subjects, lecturers, seed,
+                    minLecturersPerSubject, maxLecturersPerSubject, skew);
+        }
+    }
+
+    /**
+     * Another revision of a catalogue, where some of the subjects have changed.
+     */
+    private static class Revised extends CatalogueGenerator {
+        private final CatalogueGenerator original;
+        private final int changedEvery;
+
+        private Revised(CatalogueGenerator original, int changedEvery) {
+            super(original.subjects, original.lecturers);
+            this.original = original;
+            this.changedEvery = changedEvery;
+        }
+
+        private boolean changed(int subject) {
+            return subject % changedEvery == 0;
+        }
+
+        @Override
+        public String code(int subject) {
+            return changed(subject) && subject % (10 * changedEvery) == 0 ? "NEW" + subject : original.code(subject);
+        }
+
+        @Override
+        public String subjectName(int subject) {
+            return original.subjectName(subject);
+        }
+
+        @Override
+        public String partialSubjectName(int subject) {
+            return original.partialSubjectName(subject);
+        }
+
+        @Override
+        public int enrolled(int subject) {
+            return changed(subject) ? (original.enrolled(subject) + 1) % ENROLLED_LIMIT : original.enrolled(subject);
+        }
+
+        @Override
+        public int[] lecturersOf(int subject) {
+            int[] taughtBy = original.lecturersOf(subject);
+            if (changed(subject)) {
+                // the next lecturer over, which keeps them apart
+                for (int l = 0; l < taughtBy.length; l++) {
+                    taughtBy[l] = taughtBy[l] % lecturers + 1;
+                }
+            }
+            return taughtBy;
+        }
+
+        @Override
+        public String lecturerName(int lecturer) {
+            return original.lecturerName(lecturer);
+        }
+
+        @Override
+        public String toString() {
+            return original + ", every " + changedEvery + "th subject changed";
+        }
+    }
+
+    /**
+     * Draws numbers from 0 up to n, where number k is drawn 1 / (k + 1)^exponent as often as 0.
+     */
+    private static class Zipf {
+        private final double[] cumulative;
+
+        private Zipf(int n, double exponent) {
+            cumulative = new double[n];
+            double total = 0;
+            for (int k = 0; k < n; k++) {
+                total += 1 / Math.pow(k + 1, exponent);
+                cumulative[k] = total;
+            }
+        }
+
+        private int next(SplittableRandom random) {
+            double target = random.nextDouble() * cumulative[cumulative.length - 1];
+            int index = Arrays.binarySearch(cumulative, target);
+            return Math.min(index >= 0 ? index : -index - 1, cumulative.length - 1);
+        }
+    }
+}
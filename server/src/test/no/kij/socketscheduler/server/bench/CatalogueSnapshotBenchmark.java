@@ -0,0 +1,87 @@
+package no.kij.socketscheduler.server.bench;
+
+import no.kij.socketscheduler.server.catalogue.Catalogue;
+import no.kij.socketscheduler.server.catalogue.CatalogueSnapshot;
+import no.kij.socketscheduler.server.catalogue.DaoCatalogue;
+import no.kij.socketscheduler.server.catalogue.SnapshotCatalogue;
+import no.kij.socketscheduler.server.util.DaoDelegator;
+
+import java.util.Arrays;
+
+/**
+ * Measures how much heap a CatalogueSnapshot takes and how long it takes to build,
+ * and compares search latency from the snapshot against asking the database.
+ *
+ * Run with the number of subjects as the first argument (default 100000).
+ * Run with a fixed heap (for example -Xms1g -Xmx1g) for steadier memory numbers.
+ */
+public class CatalogueSnapshotBenchmark {
+    private static final int LOOKUPS = 2000;
+
+    public static void main(String[] args) throws Exception {
+        int subjects = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+
+        BenchmarkDatabase db = new BenchmarkDatabase("snapshot_bench");
+        CatalogueGenerator catalogue = db.populate(subjects);
+        DaoDelegator dao = new DaoDelegator(db.getConnectionManager()).warmUp();
+
+        long heapBefore = usedHeap();
+        long start = System.nanoTime();
+        CatalogueSnapshot snapshot = CatalogueSnapshot.build(dao);
+        long buildNanos = System.nanoTime() - start;
+        long heapAfter = usedHeap();
+
+        System.out.printf("%d subjects, %d lecturers%n", snapshot.getSubjects().size(), snapshot.getLecturers().size());
+        System.out.printf("build: %.1f ms, retained heap: %.1f MB (%.0f bytes per subject)%n",
+                buildNanos / 1e6, (heapAfter - heapBefore) / 1e6, (double) (heapAfter - heapBefore) / subjects);
+
+        SnapshotCatalogue snapshotCatalogue = new SnapshotCatalogue(dao);
+        System.out.printf("%-10s %-14s %12s %12s%n", "catalogue", "lookup", "p50 us", "p99 us");
+        report("snapshot", snapshotCatalogue, catalogue);
+        report("database", new DaoCatalogue(dao), catalogue);
+
+        snapshotCatalogue.close();
+        // keep the first snapshot reachable until the memory has been measured
+        if (snapshot.getVersion() < 0) {
+            System.out.println(snapshot);
+        }
+        db.close();
+    }
+
+    private static void report(String name, Catalogue catalogue, CatalogueGenerator data) {
+        int subjects = data.getSubjects();
+        long[] code = time(catalogue, i -> data.code(i % subjects + 1));
+        System.out.printf("%-10s %-14s %12.1f %12.1f%n", name, "code", percentile(code, 0.5),
+                percentile(code, 0.99));
+        long[] partial = time(catalogue, i -> data.partialSubjectName(subjects - i % 100));
+        System.out.printf("%-10s %-14s %12.1f %12.1f%n", name, "partial name", percentile(partial, 0.5),
+                percentile(partial, 0.99));
+    }
+
+    private static long[] time(Catalogue catalogue, java.util.function.IntFunction<String> terms) {
+        long[] times = new long[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            // unique terms, so the lookups are not shared and every one reaches the queries
+            String term = terms.apply(i);
+            long start = System.nanoTime();
+            catalogue.findSubject(term);
+            times[i] = System.nanoTime() - start;
+        }
+        return times;
+    }
+
+    private static double percentile(long[] times, double percentile) {
+        long[] sorted = times.clone();
+        Arrays.sort(sorted);
+        return sorted[(int) (sorted.length * percentile)] / 1e3;
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
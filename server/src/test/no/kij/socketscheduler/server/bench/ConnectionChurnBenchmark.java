@@ -0,0 +1,153 @@
+package no.kij.socketscheduler.server.bench;
+
+import no.kij.socketscheduler.server.ClientThread;
+import no.kij.socketscheduler.server.dao.LecturerDao;
+import no.kij.socketscheduler.server.dao.LecturerDaoImpl;
+import no.kij.socketscheduler.server.dao.SubjectDao;
+import no.kij.socketscheduler.server.dao.SubjectDaoImpl;
+import no.kij.socketscheduler.server.util.ConnectionManager;
+import no.kij.socketscheduler.server.util.DaoDelegator;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+/**
+ * Measures how long a new client waits from connecting until it has the answer to its first command,
+ * with daos set up per connection (how every ClientThread used to work) and with the shared delegator.
+ *
+ * Every connection is greeted, sends "list subject", reads the answer and exits, like a short-lived client would.
+ * Run with the number of connections to measure as the first argument (default 500).
+ */
+public class ConnectionChurnBenchmark {
+    private static final int WARMUP_CONNECTIONS = 100;
+
+    public static void main(String[] args) throws Exception {
+        int connections = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+
+        BenchmarkDatabase db = new BenchmarkDatabase("churn_bench");
+        db.populate(50);
+        ConnectionManager connectionManager = db.getConnectionManager();
+
+        // the client threads log every closed connection, which would drown the results
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+        }));
+
+        out.printf("%-15s %10s %10s %10s %10s%n", "daos", "mean ms", "p50 ms", "p99 ms", "max ms");
+        report(out, "per-connection", connections, () -> new PerConnectionDaoDelegator(connectionManager));
+        DaoDelegator shared = DaoDelegator.shared(connectionManager).warmUp();
+        report(out, "shared", connections, () -> shared);
+
+        System.setOut(out);
+        db.close();
+    }
+
+    private static void report(PrintStream out, String name, int connections, Supplier<DaoDelegator> delegators)
+            throws Exception {
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            Thread acceptor = new Thread(() -> {
+                while (!serverSocket.isClosed()) {
+                    try {
+                        Socket socket = serverSocket.accept();
+                        new Thread(new ClientThread(socket, delegators.get())).start();
+                    } catch (IOException e) {
+                        return;
+                    }
+                }
+            });
+            acceptor.setDaemon(true);
+            acceptor.start();
+
+            for (int i = 0; i < WARMUP_CONNECTIONS; i++) {
+                timeConnection(serverSocket.getLocalPort());
+            }
+            long[] times = new long[connections];
+            for (int i = 0; i < connections; i++) {
+                times[i] = timeConnection(serverSocket.getLocalPort());
+            }
+            Arrays.sort(times);
+            out.printf("%-15s %10.3f %10.3f %10.3f %10.3f%n", name,
+                    Arrays.stream(times).average().orElse(0) / 1e6,
+                    times[connections / 2] / 1e6,
+                    times[(int) (connections * 0.99)] / 1e6,
+                    times[connections - 1] / 1e6);
+        }
+    }
+
+    /**
+     * Connects, waits for the greeting, and sends the first command.
+     * @return Nanoseconds from connecting until the answer to the first command was read
+     */
+    private static long timeConnection(int port) throws IOException {
+        long start = System.nanoTime();
+        try (Socket socket = new Socket("127.0.0.1", port)) {
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            DataOutputStream dataOut = new DataOutputStream(socket.getOutputStream());
+            readResponse(in);
+            dataOut.writeUTF("list subject");
+            dataOut.flush();
+            readResponse(in);
+            long elapsed = System.nanoTime() - start;
+
+            dataOut.writeUTF("exit");
+            dataOut.flush();
+            readResponse(in);
+            return elapsed;
+        }
+    }
+
+    private static void readResponse(DataInputStream in) throws IOException {
+        while (!in.readUTF().equals("END_TRANSMISSION")) {
+            // only the time it takes matters
+        }
+    }
+
+    /**
+     * Sets up new daos the first time they are used, the way a delegator per connection used to.
+     */
+    private static class PerConnectionDaoDelegator extends DaoDelegator {
+        private final ConnectionManager connectionManager;
+        private SubjectDao subjectDao;
+        private LecturerDao lecturerDao;
+
+        PerConnectionDaoDelegator(ConnectionManager connectionManager) {
+            super(connectionManager);
+            this.connectionManager = connectionManager;
+        }
+
+        @Override
+        public SubjectDao getSubjectDao() {
+            try {
+                if (subjectDao == null) {
+                    subjectDao = new SubjectDaoImpl(connectionManager.getConnectionSource());
+                }
+                return subjectDao;
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public LecturerDao getLecturerDao() {
+            try {
+                if (lecturerDao == null) {
+                    lecturerDao = new LecturerDaoImpl(connectionManager.getConnectionSource());
+                }
+                return lecturerDao;
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
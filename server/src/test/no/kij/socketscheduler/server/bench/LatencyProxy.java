@@ -0,0 +1,117 @@
+package no.kij.socketscheduler.server.bench;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Forwards TCP connections to a local port, holding back everything sent either way for a while,
+ * so a database on the same machine answers as if it was across a network.
+ * Every chunk is sent on when its delay is up, counted from when it arrived, like on a real link.
+ */
+public class LatencyProxy implements Closeable {
+    private final ServerSocket serverSocket;
+    private final int targetPort;
+    private final long oneWayDelayNanos;
+
+    /**
+     * Starts accepting connections on a free port.
+     * @param targetPort Local port to forward the connections to
+     * @param roundTripMillis Time added to every round trip, half of it each way
+     * @throws IOException If the proxy could not listen for connections
+     */
+    public LatencyProxy(int targetPort, double roundTripMillis) throws IOException {
+        this.targetPort = targetPort;
+        oneWayDelayNanos = (long) (roundTripMillis * 1e6 / 2);
+        serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        start("latency-proxy", this::accept);
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+    }
+
+    private void accept() {
+        try {
+            while (true) {
+                Socket client = serverSocket.accept();
+                Socket target = new Socket(InetAddress.getLoopbackAddress(), targetPort);
+                client.setTcpNoDelay(true);
+                target.setTcpNoDelay(true);
+                forward(client, target);
+                forward(target, client);
+            }
+        } catch (IOException e) {
+            // the proxy was closed
+        }
+    }
+
+    /**
+     * Reads from one socket and writes to the other once the delay of each chunk is up.
+     */
+    private void forward(Socket from, Socket to) throws IOException {
+        BlockingQueue<Chunk> chunks = new LinkedBlockingQueue<>();
+        InputStream in = from.getInputStream();
+        OutputStream out = to.getOutputStream();
+        start("latency-proxy-read", () -> {
+            byte[] buffer = new byte[64 * 1024];
+            try {
+                int read;
+                while ((read = in.read(buffer)) > 0) {
+                    chunks.add(new Chunk(System.nanoTime() + oneWayDelayNanos, Arrays.copyOf(buffer, read)));
+                }
+            } catch (IOException e) {
+                // the connection was closed
+            }
+            chunks.add(new Chunk(0, null));
+        });
+        start("latency-proxy-write", () -> {
+            try {
+                while (true) {
+                    Chunk chunk = chunks.take();
+                    if (chunk.bytes == null) {
+                        break;
+                    }
+                    long wait;
+                    while ((wait = chunk.due - System.nanoTime()) > 0) {
+                        LockSupport.parkNanos(wait);
+                    }
+                    out.write(chunk.bytes);
+                    out.flush();
+                }
+                to.shutdownOutput();
+            } catch (IOException | InterruptedException e) {
+                // the connection was closed
+            }
+        });
+    }
+
+    private static void start(String name, Runnable runnable) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static final class Chunk {
+        private final long due;
+        private final byte[] bytes;
+
+        private Chunk(long due, byte[] bytes) {
+            this.due = due;
+            this.bytes = bytes;
+        }
+    }
+}
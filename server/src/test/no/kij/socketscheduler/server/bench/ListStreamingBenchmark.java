@@ -0,0 +1,147 @@
+package no.kij.socketscheduler.server.bench;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import no.kij.socketscheduler.server.ClientThread;
+import no.kij.socketscheduler.server.dao.SubjectDao;
+import no.kij.socketscheduler.server.dto.LecturerDTO;
+import no.kij.socketscheduler.server.dto.SubjectDTO;
+import no.kij.socketscheduler.server.util.DaoDelegator;
+
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+import java.io.DataOutputStream;
+import java.io.OutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares answering "list subject" the way ClientThread used to, reading every subject into a list
+ * and formatting every line before the first is sent, against the ClientThread going through the rows with
+ * a cursor, which collects the lines on the database thread and sends them from the calling thread,
+ * and against a page of 50 subjects from the middle of the catalogue.
+ * The ClientThread stops a list given no limit after ClientThread.DEFAULT_LIST_LIMIT subjects, so "cursor"
+ * measures the first page, which is as much as a client gets before asking for more.
+ *
+ * The response is written in protocol version 1 to a stream that only counts it, noting when the first subject
+ * arrives. The heap is the most in use after any garbage collection while listing, less what was in use before,
+ * as the database lives in the same heap. Run with the subject counts as arguments, for example "10000 100000".
+ */
+public class ListStreamingBenchmark {
+    // the table header is sent as two lines before the first subject
+    private static final int HEADER_LINES = 2;
+    private static final int PAGE_SIZE = 50;
+    private static final AtomicLong maxLiveHeap = new AtomicLong();
+
+    public static void main(String[] args) throws Exception {
+        int[] sizes = args.length > 0 ? Arrays.stream(args).mapToInt(Integer::parseInt).toArray()
+                : new int[] { 10000, 100000 };
+        watchGarbageCollections();
+        BenchmarkDatabase db = new BenchmarkDatabase("list_streaming_bench");
+        SubjectDao subjectDao = DaoDelegator.shared(db.getConnectionManager()).getSubjectDao();
+
+        System.out.printf("%10s %-10s %14s %12s %12s %14s%n", "subjects", "list", "first row ms", "total ms", "MB sent",
+                "extra heap MB");
+        for (int size : sizes) {
+            CatalogueGenerator catalogue = db.populate(size);
+            for (int run = 0; run < 2; run++) {
+                // the first run warms up, and only the second is shown
+                boolean show = run == 1;
+                measure(size, "read all", show, out -> listAllAtOnce(subjectDao, new DataOutputStream(out)));
+                measure(size, "cursor", show, out -> new ClientThread(new DataOutputStream(out),
+                        db.getConnectionManager()).handleMessage("list subject"));
+                String middle = catalogue.code(size / 2);
+                measure(size, "page", show, out -> new ClientThread(new DataOutputStream(out),
+                        db.getConnectionManager()).handleMessage("list subject after " + middle + " limit "
+                        + PAGE_SIZE));
+            }
+        }
+        db.close();
+    }
+
+    /**
+     * Lists the subjects the way ClientThread used to, with every line ready before the first is written.
+     */
+    private static void listAllAtOnce(SubjectDao subjectDao, DataOutputStream out) throws Exception {
+        List<String> lines = new ArrayList<>();
+        lines.add("Subject Code Enrolled Lecturer(s)");
+        lines.add("-------------------------------");
+        for (SubjectDTO subject : subjectDao.queryForAll()) {
+            List<LecturerDTO> lecturers = subject.getLecturers();
+            lines.add(String.format("%-30s %-10s %-10d %s", subject.getName(), subject.getShortName(),
+                    subject.getEnrolled(), !lecturers.isEmpty() ? lecturers.get(0).getName() : "None"));
+            for (int i = 1; i < lecturers.size(); i++) {
+                lines.add(String.format("%-30s %-10s %-10s %s", "", "", "", lecturers.get(i).getName()));
+            }
+        }
+        for (String line : lines) {
+            out.writeUTF(line);
+        }
+        out.writeUTF("END_TRANSMISSION");
+        out.flush();
+    }
+
+    private static void measure(int size, String list, boolean show, Listing listing) throws Exception {
+        System.gc();
+        long before = maxLiveHeap.getAndSet(0);
+        CountingStream out = new CountingStream();
+        long start = System.nanoTime();
+        listing.run(out);
+        long total = System.nanoTime() - start;
+        System.gc();
+        if (show) {
+            System.out.printf("%10d %-10s %14.2f %12.1f %12.2f %14.1f%n", size, list, (out.firstRow - start) / 1e6,
+                    total / 1e6, out.bytes / 1e6, Math.max(0, maxLiveHeap.get() - before) / 1e6);
+        }
+    }
+
+    /**
+     * Keeps track of the most heap still in use after a garbage collection.
+     */
+    private static void watchGarbageCollections() {
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            ((NotificationEmitter) gc).addNotificationListener((notification, handback) -> {
+                if (GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+                    GarbageCollectionNotificationInfo info =
+                            GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+                    long used = 0;
+                    for (MemoryUsage usage : info.getGcInfo().getMemoryUsageAfterGc().values()) {
+                        used += usage.getUsed();
+                    }
+                    maxLiveHeap.accumulateAndGet(used, Math::max);
+                }
+            }, null, null);
+        }
+    }
+
+    /**
+     * A stream that throws away what is written to it, counting the bytes,
+     * and noting when the first subject is written. Every line is written in a single call by writeUTF.
+     */
+    private static class CountingStream extends OutputStream {
+        private long bytes;
+        private int writes;
+        private long firstRow;
+
+        @Override
+        public void write(int b) {
+            bytes++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            bytes += len;
+            if (++writes == HEADER_LINES + 1) {
+                firstRow = System.nanoTime();
+            }
+        }
+    }
+
+    private interface Listing {
+        void run(OutputStream out) throws Exception;
+    }
+}
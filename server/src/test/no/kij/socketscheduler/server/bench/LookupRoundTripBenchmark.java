@@ -0,0 +1,99 @@
+package no.kij.socketscheduler.server.bench;
+
+import no.kij.socketscheduler.server.ClientThread;
+import no.kij.socketscheduler.server.dao.LecturerDao;
+import no.kij.socketscheduler.server.dao.SubjectDao;
+import no.kij.socketscheduler.server.dto.LecturerDTO;
+import no.kij.socketscheduler.server.dto.SubjectDTO;
+import no.kij.socketscheduler.server.util.DaoDelegator;
+
+import java.util.Arrays;
+import java.util.function.IntFunction;
+
+/**
+ * Compares looking up a subject by code or name, and a lecturer by full or partial name,
+ * the way it used to be done, with an exact lookup followed by a partial one, each followed by a query for the
+ * lecturers or subjects, against the single statement searchSubjects and searchLecturers use now.
+ * The searches ask for as many results as the search command does, and are made on the sync daos, so no cache
+ * answers them.
+ *
+ * The daos reach an H2 database in MySQL mode through a proxy adding the round trip time given,
+ * as a stand-in for a MySQL server elsewhere on the network.
+ * Run with the round trip times to measure in milliseconds as arguments, for example "0 1 5 20".
+ */
+public class LookupRoundTripBenchmark {
+    private static final int SUBJECTS = 1000;
+    private static final int WARMUP_LOOKUPS = 20;
+    private static final int MEASURED_LOOKUPS = 100;
+
+    public static void main(String[] args) throws Exception {
+        double[] roundTrips = args.length > 0 ? Arrays.stream(args).mapToDouble(Double::parseDouble).toArray()
+                : new double[] { 0, 1, 5, 20 };
+
+        System.out.printf("%8s %-10s %-10s %-8s %12s %12s %12s%n",
+                "rtt ms", "lookup", "term", "path", "statements", "p50 ms", "p99 ms");
+        for (double roundTrip : roundTrips) {
+            BenchmarkDatabase db = BenchmarkDatabase.overNetwork("round_trip_bench", roundTrip);
+            CatalogueGenerator catalogue = db.populate(SUBJECTS);
+            // read the names into the indexes before anything is measured
+            DaoDelegator delegator = new DaoDelegator(db.getConnectionManager()).warmUp();
+            SubjectDao subjectDao = delegator.getSubjectDao();
+            LecturerDao lecturerDao = delegator.getLecturerDao();
+
+            IntFunction<String> codes = i -> catalogue.code(i % SUBJECTS + 1);
+            IntFunction<String> subjectNames = i -> catalogue.partialSubjectName(i % SUBJECTS + 1);
+            IntFunction<String> lecturerNames = i -> catalogue.lecturerName(i % catalogue.getLecturers() + 1);
+            IntFunction<String> partialLecturerNames =
+                    i -> catalogue.partialLecturerName(i % catalogue.getLecturers() + 1);
+            IntFunction<String> nothing = i -> "Nothing " + i;
+
+            for (IntFunction<String> terms : Arrays.asList(codes, subjectNames, nothing)) {
+                String termName = terms == codes ? "code" : terms == nothing ? "miss" : "name";
+                report(db, roundTrip, "subject", termName, "before", terms, term -> {
+                    SubjectDTO subject = subjectDao.findSubjectByCode(term);
+                    if (subject == null) {
+                        subject = subjectDao.findSubjectByName(term);
+                    }
+                    return subject;
+                });
+                report(db, roundTrip, "subject", termName, "after", terms,
+                        term -> subjectDao.searchSubjects(term, ClientThread.DEFAULT_SEARCH_LIMIT));
+            }
+            for (IntFunction<String> terms : Arrays.asList(lecturerNames, partialLecturerNames, nothing)) {
+                String termName = terms == lecturerNames ? "full" : terms == nothing ? "miss" : "partial";
+                report(db, roundTrip, "lecturer", termName, "before", terms, term -> {
+                    LecturerDTO lecturer = lecturerDao.queryForLecturerName(term);
+                    if (lecturer == null) {
+                        lecturer = lecturerDao.queryForPartialName(term);
+                    }
+                    return lecturer;
+                });
+                report(db, roundTrip, "lecturer", termName, "after", terms,
+                        term -> lecturerDao.searchLecturers(term, ClientThread.DEFAULT_SEARCH_LIMIT));
+            }
+            db.close();
+        }
+    }
+
+    private static void report(BenchmarkDatabase db, double roundTrip, String lookup, String termName, String path,
+                               IntFunction<String> terms, Lookup task) throws Exception {
+        for (int i = 0; i < WARMUP_LOOKUPS; i++) {
+            task.run(terms.apply(i));
+        }
+        long statements = db.countStatements(() -> task.run(terms.apply(0)));
+        long[] times = new long[MEASURED_LOOKUPS];
+        for (int i = 0; i < MEASURED_LOOKUPS; i++) {
+            String term = terms.apply(i);
+            long start = System.nanoTime();
+            task.run(term);
+            times[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(times);
+        System.out.printf("%8.0f %-10s %-10s %-8s %12d %12.2f %12.2f%n", roundTrip, lookup, termName, path,
+                statements, times[times.length / 2] / 1e6, times[(int) (times.length * 0.99)] / 1e6);
+    }
+
+    private interface Lookup {
+        Object run(String term) throws Exception;
+    }
+}
@@ -0,0 +1,69 @@
+package no.kij.socketscheduler.server.bench;
+
+import no.kij.socketscheduler.server.dao.SubjectDao;
+import no.kij.socketscheduler.server.dao.SubjectDaoImpl;
+import no.kij.socketscheduler.server.search.BloomFilter;
+import no.kij.socketscheduler.server.search.KeyFilter;
+import no.kij.socketscheduler.server.util.DaoDelegator;
+
+import java.util.Arrays;
+import java.util.function.IntFunction;
+
+/**
+ * Measures lookups and searches for subject codes no subject has, as students make when they mistype a code,
+ * next to lookups for codes that are there: the statements sent to the database and the mean time per lookup.
+ * Every code is looked up once, so the search cache does not answer any of them.
+ * Also shows the size of the key filter over the codes, and the share of the missing codes it let through.
+ *
+ * The daos reach an H2 database in MySQL mode through a proxy adding the round trip time given,
+ * as a stand-in for a MySQL server elsewhere on the network.
+ * Run with the round trip times to measure in milliseconds as arguments, for example "5 20".
+ */
+public class MissingCodeBenchmark {
+    private static final int SUBJECTS = 10000;
+    private static final int LOOKUPS = 500;
+
+    public static void main(String[] args) throws Exception {
+        double[] roundTrips = args.length > 0 ? Arrays.stream(args).mapToDouble(Double::parseDouble).toArray()
+                : new double[] { 5, 20 };
+
+        System.out.printf("%8s %-16s %12s %12s%n", "rtt ms", "lookup", "statements", "mean ms");
+        for (double roundTrip : roundTrips) {
+            BenchmarkDatabase db = BenchmarkDatabase.overNetwork("missing_code_bench", roundTrip);
+            CatalogueGenerator catalogue = db.populate(SUBJECTS);
+            // read the names into the index and the codes into the filter before anything is measured
+            SubjectDao subjectDao = new DaoDelegator(db.getConnectionManager()).warmUp().getSubjectDao();
+
+            // codes after the last subject, and codes of subjects with the first letter typed twice
+            measure(db, roundTrip, "missing code", i -> subjectDao.findSubjectByCodeOrName(
+                    catalogue.code(SUBJECTS + 1 + i)));
+            measure(db, roundTrip, "mistyped code", i -> subjectDao.findSubjectByCodeOrName(
+                    catalogue.code(i + 1).charAt(0) + catalogue.code(i + 1)));
+            measure(db, roundTrip, "search missing", i -> subjectDao.searchSubjects(
+                    catalogue.code(2 * SUBJECTS + 1 + i), 5));
+            measure(db, roundTrip, "existing code", i -> subjectDao.findSubjectByCodeOrName(
+                    catalogue.code(1 + i * (SUBJECTS / LOOKUPS))));
+
+            KeyFilter keyFilter = ((SubjectDaoImpl) subjectDao).getKeyFilter();
+            BloomFilter filter = keyFilter.getFilter();
+            System.out.printf("%8.0f key filter: %d codes in %.1f KB, %d hashes, %.2f%% expected and %.2f%% seen "
+                            + "false positives, %d of %d lookups answered%n", roundTrip, filter.getCount(),
+                    filter.getSizeBytes() / 1024.0, filter.getHashes(), filter.getExpectedFalsePositiveRate() * 100,
+                    keyFilter.getFalsePositiveRate() * 100, keyFilter.getSkipped(), keyFilter.getChecks());
+            db.close();
+        }
+    }
+
+    private static void measure(BenchmarkDatabase db, double roundTrip, String lookup, IntFunction<?> task)
+            throws Exception {
+        long[] nanos = new long[1];
+        long statements = db.countStatements(() -> {
+            long start = System.nanoTime();
+            for (int i = 0; i < LOOKUPS; i++) {
+                task.apply(i);
+            }
+            nanos[0] = System.nanoTime() - start;
+        });
+        System.out.printf("%8.0f %-16s %12d %12.3f%n", roundTrip, lookup, statements, nanos[0] / 1e6 / LOOKUPS);
+    }
+}
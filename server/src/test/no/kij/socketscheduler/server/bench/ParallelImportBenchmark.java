@@ -0,0 +1,84 @@
+package no.kij.socketscheduler.server.bench;
+
+import no.kij.socketscheduler.server.db.CatalogueImporter;
+import no.kij.socketscheduler.server.db.DatabaseInitializer;
+import no.kij.socketscheduler.server.db.ImportPipeline;
+import no.kij.socketscheduler.server.util.DaoDelegator;
+
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Compares importing a catalogue split over one file per faculty one file at a time,
+ * the way DatabaseInitializer reads a single file, against the ImportPipeline with more and more writers.
+ *
+ * The database is reached through a LatencyProxy, as a stand-in for a database server somewhere else on the network.
+ * Run with the number of faculties, the subjects in each and the round trip time in milliseconds as arguments,
+ * for example "8 5000 0.5".
+ */
+public class ParallelImportBenchmark {
+    private static final int[] WRITERS = { 1, 2, 4, 8 };
+
+    public static void main(String[] args) throws Exception {
+        int faculties = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int subjectsPerFaculty = args.length > 1 ? Integer.parseInt(args[1]) : 5000;
+        double roundTripMillis = args.length > 2 ? Double.parseDouble(args[2]) : 0.5;
+        int subjects = faculties * subjectsPerFaculty;
+        CatalogueGenerator catalogue = CatalogueGenerator.forBenchmark(subjects);
+
+        // every faculty file names lecturers from all over, so the import has to tell them apart across files
+        Path directory = Files.createTempDirectory("parallel_import_bench");
+        List<Path> subjectFiles = new ArrayList<>();
+        for (int faculty = 0; faculty < faculties; faculty++) {
+            Path file = directory.resolve("subjects-faculty" + faculty + ".json");
+            Files.write(file, catalogue.subjectsJson(faculty * subjectsPerFaculty + 1, subjectsPerFaculty)
+                    .getBytes(StandardCharsets.UTF_8));
+            subjectFiles.add(file);
+        }
+
+        BenchmarkDatabase db = BenchmarkDatabase.overNetwork("parallel_import_bench", roundTripMillis);
+        DatabaseInitializer initializer = new DatabaseInitializer(db.getConnectionManager());
+        System.out.printf("%d faculties of %d subjects, %.1f ms round trips%n", faculties, subjectsPerFaculty,
+                roundTripMillis);
+        System.out.printf("%-14s %12s %14s%n", "import", "ms", "subjects/s");
+
+        initializer.initializeTables();
+        long start = System.nanoTime();
+        CatalogueImporter importer = new CatalogueImporter(DaoDelegator.shared(db.getConnectionManager())
+                .getSubjectDao());
+        for (Path file : subjectFiles) {
+            try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                importer.importSubjects(reader);
+            }
+        }
+        report("one at a time", start, subjects);
+
+        for (int writers : WRITERS) {
+            initializer.initializeTables();
+            start = System.nanoTime();
+            ImportPipeline.Report report = new ImportPipeline(db.getConnectionManager(),
+                    Runtime.getRuntime().availableProcessors(), writers).run(Collections.emptyList(), subjectFiles);
+            report(writers + " writers", start, subjects);
+            if (report.getSubjects() != subjects) {
+                throw new IllegalStateException(report.getSubjects() + " subjects were imported, not " + subjects);
+            }
+            System.out.println(report);
+        }
+
+        db.close();
+        for (Path file : subjectFiles) {
+            Files.delete(file);
+        }
+        Files.delete(directory);
+    }
+
+    private static void report(String load, long start, int subjects) {
+        double ms = (System.nanoTime() - start) / 1e6;
+        System.out.printf("%-14s %12.1f %14.0f%n", load, ms, subjects / ms * 1000);
+    }
+}
@@ -0,0 +1,84 @@
+package no.kij.socketscheduler.server.bench;
+
+import com.j256.ormlite.stmt.PreparedQuery;
+import com.j256.ormlite.stmt.QueryBuilder;
+import com.j256.ormlite.stmt.SelectArg;
+import no.kij.socketscheduler.server.dao.SubjectDao;
+import no.kij.socketscheduler.server.dao.SubjectDaoImpl;
+import no.kij.socketscheduler.server.dto.SubjectDTO;
+import no.kij.socketscheduler.server.util.DaoDelegator;
+
+import java.util.Arrays;
+import java.util.function.IntFunction;
+
+/**
+ * Compares finding a subject by part of its name with LIKE '%term%', the way findSubjectByName used to,
+ * against findSubjectByName searching the name index, and against the name index on its own.
+ *
+ * Run with the subject counts to measure as arguments, for example "1000 10000 100000".
+ * Terms are picked to match the last subjects or nothing at all, which is where LIKE has to read the most rows.
+ */
+public class PartialNameSearchBenchmark {
+    private static final int WARMUP_LOOKUPS = 200;
+    private static final int MEASURED_LOOKUPS = 1000;
+
+    public static void main(String[] args) throws Exception {
+        int[] sizes = args.length > 0 ? Arrays.stream(args).mapToInt(Integer::parseInt).toArray()
+                : new int[] { 1000, 10000, 100000 };
+
+        BenchmarkDatabase db = new BenchmarkDatabase("partial_name_bench");
+        // the name index is measured on its own as well, which only the implementation shows
+        SubjectDaoImpl subjectDao = (SubjectDaoImpl) new DaoDelegator(db.getConnectionManager()).getSubjectDao();
+        PreparedQuery<SubjectDTO> likeQuery = makeLikeQuery(subjectDao);
+
+        System.out.printf("%10s %-8s %-12s %12s %12s%n", "subjects", "term", "search", "p50 us", "p99 us");
+        for (int size : sizes) {
+            CatalogueGenerator catalogue = db.populate(size);
+            // the rows were inserted without the dao, so the index has to read them
+            subjectDao.invalidateCaches();
+
+            IntFunction<String> lastSubjects = i -> catalogue.partialSubjectName(size - i % 100);
+            IntFunction<String> nothing = i -> "Nothing " + i;
+            for (IntFunction<String> terms : Arrays.asList(lastSubjects, nothing)) {
+                String termName = terms == nothing ? "miss" : "hit";
+                report(size, termName, "like", terms, term -> {
+                    likeQuery.setArgumentHolderValue(0, "%" + term + "%");
+                    SubjectDTO subject = subjectDao.queryForFirst(likeQuery);
+                    if (subject != null) {
+                        subject.setLecturers(subjectDao.findLecturersForSubject(subject));
+                    }
+                });
+                report(size, termName, "dao", terms, subjectDao::findSubjectByName);
+                report(size, termName, "index only", terms, term -> subjectDao.getNameIndex().first(term));
+            }
+        }
+        db.close();
+    }
+
+    private static PreparedQuery<SubjectDTO> makeLikeQuery(SubjectDao subjectDao) throws Exception {
+        QueryBuilder<SubjectDTO, Integer> queryBuilder = subjectDao.queryBuilder();
+        queryBuilder.where().like(SubjectDTO.NAME_FIELD, new SelectArg());
+        return queryBuilder.prepare();
+    }
+
+    private static void report(int size, String termName, String search, IntFunction<String> terms, Search task)
+            throws Exception {
+        for (int i = 0; i < WARMUP_LOOKUPS; i++) {
+            task.run(terms.apply(i));
+        }
+        long[] times = new long[MEASURED_LOOKUPS];
+        for (int i = 0; i < MEASURED_LOOKUPS; i++) {
+            String term = terms.apply(i);
+            long start = System.nanoTime();
+            task.run(term);
+            times[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(times);
+        System.out.printf("%10d %-8s %-12s %12.1f %12.1f%n", size, termName, search,
+                times[times.length / 2] / 1e3, times[(int) (times.length * 0.99)] / 1e3);
+    }
+
+    private interface Search {
+        void run(String term) throws Exception;
+    }
+}
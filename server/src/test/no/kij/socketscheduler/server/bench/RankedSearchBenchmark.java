@@ -0,0 +1,100 @@
+package no.kij.socketscheduler.server.bench;
+
+import no.kij.socketscheduler.server.catalogue.Collation;
+import no.kij.socketscheduler.server.search.NGramIndex;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.IntFunction;
+
+/**
+ * Measures how long NGramIndex.rank takes to find the best matching names, for searches of different kinds:
+ * a whole name, the start of a name, a last name, a name with a typo in it, and a name that is not there.
+ *
+ * Run with the name counts to measure as arguments, for example "10000 1000000".
+ * A million names needs about 1 GB of heap, for example -Xmx2g.
+ */
+public class RankedSearchBenchmark {
+    private static final String[] SYLLABLES = {
+            "ka", "ri", "no", "be", "sa", "lo", "vi", "de", "ma", "ta", "en", "ro", "li", "an", "se", "mu",
+            "ha", "jo", "ke", "el", "in", "or", "un", "ve", "ni", "sk", "to", "la", "ar", "ei"
+    };
+    private static final int LIMIT = 5;
+    private static final int WARMUP_SEARCHES = 500;
+    private static final int MEASURED_SEARCHES = 2000;
+
+    public static void main(String[] args) throws Exception {
+        int[] sizes = args.length > 0 ? Arrays.stream(args).mapToInt(Integer::parseInt).toArray()
+                : new int[] { 10000, 1000000 };
+
+        System.out.printf("%10s %-10s %12s %12s%n", "names", "search", "p50 us", "p99 us");
+        for (int size : sizes) {
+            String[] names = makeNames(size, new Random(size));
+            NGramIndex index = new NGramIndex(Collation.EXACT);
+            long start = System.nanoTime();
+            for (int i = 0; i < names.length; i++) {
+                index.put(i, names[i]);
+            }
+            System.out.printf("%10d %-10s %12.1f ms to build%n", size, "", (System.nanoTime() - start) / 1e6);
+
+            Random random = new Random(42);
+            report(index, size, "exact", i -> names[random.nextInt(size)]);
+            report(index, size, "prefix", i -> names[random.nextInt(size)].substring(0, 5));
+            report(index, size, "last name", i -> {
+                String name = names[random.nextInt(size)];
+                return name.substring(name.indexOf(' ') + 1);
+            });
+            report(index, size, "typo", i -> swapTwo(names[random.nextInt(size)], random));
+            report(index, size, "missing", i -> "qqxq wwzw " + i);
+        }
+    }
+
+    private static void report(NGramIndex index, int size, String search, IntFunction<String> terms) throws Exception {
+        for (int i = 0; i < WARMUP_SEARCHES; i++) {
+            index.rank(terms.apply(i), LIMIT);
+        }
+        long[] times = new long[MEASURED_SEARCHES];
+        for (int i = 0; i < MEASURED_SEARCHES; i++) {
+            String term = terms.apply(i);
+            long start = System.nanoTime();
+            index.rank(term, LIMIT);
+            times[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(times);
+        System.out.printf("%10d %-10s %12.1f %12.1f%n", size, search,
+                times[times.length / 2] / 1e3, times[(int) (times.length * 0.99)] / 1e3);
+    }
+
+    /**
+     * Makes names of a first and a last name, each of two to four syllables.
+     */
+    private static String[] makeNames(int count, Random random) {
+        String[] names = new String[count];
+        for (int i = 0; i < count; i++) {
+            names[i] = capitalize(word(random)) + " " + capitalize(word(random));
+        }
+        return names;
+    }
+
+    private static String word(Random random) {
+        StringBuilder word = new StringBuilder();
+        int syllables = 2 + random.nextInt(3);
+        for (int i = 0; i < syllables; i++) {
+            word.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+        }
+        return word.toString();
+    }
+
+    private static String capitalize(String word) {
+        return Character.toUpperCase(word.charAt(0)) + word.substring(1);
+    }
+
+    private static String swapTwo(String name, Random random) {
+        char[] chars = name.toCharArray();
+        int i = 1 + random.nextInt(chars.length - 2);
+        char swapped = chars[i];
+        chars[i] = chars[i + 1];
+        chars[i + 1] = swapped;
+        return new String(chars);
+    }
+}
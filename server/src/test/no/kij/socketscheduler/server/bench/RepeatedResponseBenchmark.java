@@ -0,0 +1,53 @@
+package no.kij.socketscheduler.server.bench;
+
+import no.kij.socketscheduler.server.ClientThread;
+
+import java.io.DataOutputStream;
+import java.io.OutputStream;
+
+/**
+ * Measures commands every client sends with the same answer, such as help and the first page of a list,
+ * sent again and again by a framed client: the mean time per command and the statements sent to the database.
+ * The responses are written to a stream throwing them away, so only building and encoding them is measured.
+ *
+ * Run with the number of subjects as the argument, for example "10000".
+ */
+public class RepeatedResponseBenchmark {
+    private static final int WARMUP_COMMANDS = 20000;
+    private static final int MEASURED_COMMANDS = 20000;
+
+    public static void main(String[] args) throws Exception {
+        int subjects = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+
+        BenchmarkDatabase db = new BenchmarkDatabase("repeated_response_bench");
+        db.populate(subjects);
+        DataOutputStream sink = new DataOutputStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        });
+        ClientThread client = new ClientThread(sink, db.getConnectionManager());
+        client.handleMessage("PROTOCOL 3");
+
+        System.out.printf("%-24s %12s %12s%n", "command", "statements", "mean us");
+        for (String command : new String[] { "help", "help search", "list subject limit 20", "list lecturer limit 20" }) {
+            for (int i = 0; i < WARMUP_COMMANDS; i++) {
+                client.handleMessage(i, command);
+            }
+            long[] nanos = new long[1];
+            long statements = db.countStatements(() -> {
+                long start = System.nanoTime();
+                for (int i = 0; i < MEASURED_COMMANDS; i++) {
+                    client.handleMessage(i, command);
+                }
+                nanos[0] = System.nanoTime() - start;
+            });
+            System.out.printf("%-24s %12d %12.2f%n", command, statements, nanos[0] / 1e3 / MEASURED_COMMANDS);
+        }
+        db.close();
+    }
+}
@@ -0,0 +1,102 @@
+package no.kij.socketscheduler.server.bench;
+
+import no.kij.socketscheduler.server.dao.AsyncSubjectDao;
+import no.kij.socketscheduler.server.util.DaoDelegator;
+import no.kij.socketscheduler.server.util.DatabaseExecutor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Measures a crowd of students running the same search for a subject code at the same moment,
+ * as when a course opens: the statements the crowd sends to the database, the tasks it hands the DatabaseExecutor
+ * and how many of those were turned away, how long the slowest student waits, and how long the whole crowd takes.
+ * "search subject" is asked through the asynchronous dao, the way the server asks it.
+ *
+ * The daos reach an H2 database in MySQL mode through a proxy adding the round trip time given,
+ * as a stand-in for a MySQL server elsewhere on the network.
+ * Run with the round trip times to measure in milliseconds as arguments, for example "5 20".
+ */
+public class SearchStampedeBenchmark {
+    private static final int SUBJECTS = 1000;
+    private static final int[] CROWDS = { 50, 200 };
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws Exception {
+        double[] roundTrips = args.length > 0 ? Arrays.stream(args).mapToDouble(Double::parseDouble).toArray()
+                : new double[] { 5, 20 };
+
+        System.out.printf("%8s %8s %-8s %12s %8s %10s %12s %12s%n", "rtt ms", "crowd", "call", "statements",
+                "tasks", "rejected", "p99 ms", "crowd ms");
+        for (double roundTrip : roundTrips) {
+            BenchmarkDatabase db = BenchmarkDatabase.overNetwork("stampede_bench", roundTrip);
+            CatalogueGenerator catalogue = db.populate(SUBJECTS);
+            // read the names into the index before anything is measured
+            DaoDelegator delegator = new DaoDelegator(db.getConnectionManager()).warmUp();
+            AsyncSubjectDao asyncDao = delegator.getAsyncSubjectDao();
+            DatabaseExecutor executor = db.getConnectionManager().getDatabaseExecutor();
+            String code = catalogue.code(SUBJECTS / 2);
+
+            for (int crowd : CROWDS) {
+                ExecutorService students = Executors.newFixedThreadPool(crowd);
+                for (int round = 0; round <= ROUNDS; round++) {
+                    // the first round warms up, and only the last is shown
+                    boolean show = round == ROUNDS;
+                    // a crowd only reaches the database when the search is not cached, as after the catalogue changed
+                    asyncDao.getSearchCache().invalidateAll();
+                    measure(db, executor, students, roundTrip, crowd, "search", show,
+                            () -> asyncDao.searchSubjects(code, 5).join());
+                }
+                students.shutdown();
+            }
+            db.close();
+        }
+    }
+
+    private static void measure(BenchmarkDatabase db, DatabaseExecutor executor, ExecutorService students,
+                                double roundTrip, int crowd, String call, boolean show, Runnable search)
+            throws Exception {
+        long submitted = executor.getSubmitted();
+        long rejected = executor.getRejected();
+        long[] times = new long[crowd];
+        long[] crowdNanos = new long[1];
+        long statements = db.countStatements(() -> {
+            CountDownLatch ready = new CountDownLatch(crowd);
+            CountDownLatch go = new CountDownLatch(1);
+            List<Future<?>> done = new ArrayList<>();
+            for (int i = 0; i < crowd; i++) {
+                int student = i;
+                done.add(students.submit(() -> {
+                    ready.countDown();
+                    go.await();
+                    long start = System.nanoTime();
+                    try {
+                        search.run();
+                    } catch (RuntimeException e) {
+                        // turned away by the executor, which is counted below
+                    }
+                    times[student] = System.nanoTime() - start;
+                    return null;
+                }));
+            }
+            ready.await();
+            long start = System.nanoTime();
+            go.countDown();
+            for (Future<?> student : done) {
+                student.get();
+            }
+            crowdNanos[0] = System.nanoTime() - start;
+        });
+        if (show) {
+            Arrays.sort(times);
+            System.out.printf("%8.0f %8d %-8s %12d %8d %10d %12.2f %12.2f%n", roundTrip, crowd, call, statements,
+                    executor.getSubmitted() - submitted, executor.getRejected() - rejected,
+                    times[(int) (times.length * 0.99)] / 1e6, crowdNanos[0] / 1e6);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package no.kij.socketscheduler.server.bench;
+
+import no.kij.socketscheduler.server.nio.NioServer;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures how long the NIO server takes to answer "help", which needs no database,
+ * while other clients on the same event loop keep listing subjects from a slow database.
+ * With the database asked on the event loop thread, help waits for every list queued ahead of it,
+ * while with the database asked on the DatabaseExecutor, it is answered right away.
+ *
+ * The daos reach an H2 database in MySQL mode through a proxy adding the round trip time given,
+ * as a stand-in for a MySQL server elsewhere on the network.
+ * Run with the round trip times to measure in milliseconds as arguments, for example "5 20".
+ */
+public class SlowDatabaseBenchmark {
+    private static final int SUBJECTS = 1000;
+    private static final int LISTING_CLIENTS = 8;
+    private static final int WARMUP_PROBES = 20;
+    private static final int MEASURED_PROBES = 200;
+    // spreads the probes over a few seconds, so they land among the lists
+    private static final int PROBE_PAUSE_MILLIS = 20;
+
+    public static void main(String[] args) throws Exception {
+        double[] roundTrips = args.length > 0 ? Arrays.stream(args).mapToDouble(Double::parseDouble).toArray()
+                : new double[] { 5, 20 };
+
+        System.out.printf("%8s %14s %14s %14s%n", "rtt ms", "help p50 ms", "help p99 ms", "lists/s");
+        for (double roundTrip : roundTrips) {
+            BenchmarkDatabase db = BenchmarkDatabase.overNetwork("slow_database_bench", roundTrip);
+            db.populate(SUBJECTS);
+            int port = freePort();
+            // a single event loop, so every client shares it with the one measured
+            NioServer server = new NioServer(port, db.getConnectionManager(), 1);
+            Thread serverThread = new Thread(() -> {
+                try {
+                    server.start();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            serverThread.setDaemon(true);
+            serverThread.start();
+
+            AtomicBoolean listing = new AtomicBoolean(true);
+            AtomicLong lists = new AtomicLong();
+            List<Thread> listers = new ArrayList<>();
+            for (int i = 0; i < LISTING_CLIENTS; i++) {
+                Thread lister = new Thread(() -> {
+                    try (Socket socket = connect(port)) {
+                        DataInputStream in = new DataInputStream(socket.getInputStream());
+                        DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+                        readResponse(in);
+                        while (listing.get()) {
+                            out.writeUTF("list subject limit 20");
+                            out.flush();
+                            readResponse(in);
+                            lists.incrementAndGet();
+                        }
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                });
+                lister.start();
+                listers.add(lister);
+            }
+
+            List<Double> latencies = new ArrayList<>();
+            long start;
+            long listsBefore;
+            try (Socket socket = connect(port)) {
+                DataInputStream in = new DataInputStream(socket.getInputStream());
+                DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+                readResponse(in);
+                for (int i = 0; i < WARMUP_PROBES; i++) {
+                    probe(in, out);
+                }
+                start = System.nanoTime();
+                listsBefore = lists.get();
+                for (int i = 0; i < MEASURED_PROBES; i++) {
+                    latencies.add(probe(in, out));
+                    Thread.sleep(PROBE_PAUSE_MILLIS);
+                }
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            long listed = lists.get() - listsBefore;
+            listing.set(false);
+            for (Thread lister : listers) {
+                lister.join();
+            }
+            server.stop();
+            db.close();
+
+            Collections.sort(latencies);
+            System.out.printf("%8.1f %14.2f %14.2f %14.1f%n", roundTrip, latencies.get(latencies.size() / 2),
+                    latencies.get(latencies.size() * 99 / 100), listed / seconds);
+        }
+    }
+
+    private static double probe(DataInputStream in, DataOutputStream out) throws IOException {
+        long sent = System.nanoTime();
+        out.writeUTF("help");
+        out.flush();
+        readResponse(in);
+        return (System.nanoTime() - sent) / 1e6;
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static Socket connect(int port) throws Exception {
+        // the server is started on another thread, so give it a moment to open the port
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return new Socket("127.0.0.1", port);
+            } catch (IOException e) {
+                if (attempt > 50) {
+                    throw e;
+                }
+                Thread.sleep(100);
+            }
+        }
+    }
+
+    private static void readResponse(DataInputStream in) throws IOException {
+        while (!in.readUTF().equals("END_TRANSMISSION")) {
+            // only the end of the response matters here
+        }
+    }
+}
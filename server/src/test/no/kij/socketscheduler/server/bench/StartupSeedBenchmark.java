@@ -0,0 +1,44 @@
+package no.kij.socketscheduler.server.bench;
+
+import no.kij.socketscheduler.server.db.DatabaseInitializer;
+
+/**
+ * Measures how long it takes to get the database ready on startup with a large catalogue,
+ * dropping and filling the tables the way the server always used to, against seeding incrementally,
+ * both when the content has not changed since the last start and when a few subjects have.
+ *
+ * Run with the number of subjects as argument, 100000 by default.
+ */
+public class StartupSeedBenchmark {
+    private static final int CHANGED_EVERY = 100;
+
+    public static void main(String[] args) throws Exception {
+        int subjects = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        CatalogueGenerator catalogue = CatalogueGenerator.forBenchmark(subjects);
+
+        BenchmarkDatabase db = new BenchmarkDatabase("startup_seed_bench");
+        DatabaseInitializer initializer = new DatabaseInitializer(db.getConnectionManager());
+        String lecturersJson = catalogue.lecturersJson();
+        String subjectsJson = catalogue.subjectsJson();
+        String changedSubjectsJson = catalogue.revised(CHANGED_EVERY).subjectsJson();
+
+        System.out.printf("%s, every %dth subject changed in the new content%n", catalogue, CHANGED_EVERY);
+        long start = System.nanoTime();
+        initializer.initializeTables();
+        initializer.initializeTableContent(lecturersJson, subjectsJson);
+        report("drop and fill", start);
+
+        start = System.nanoTime();
+        initializer.initializeIncrementally(lecturersJson, subjectsJson);
+        report("incremental, unchanged", start);
+
+        start = System.nanoTime();
+        initializer.initializeIncrementally(lecturersJson, changedSubjectsJson);
+        report("incremental, changed", start);
+        db.close();
+    }
+
+    private static void report(String seeding, long start) {
+        System.out.printf("%-24s %10.1f ms%n", seeding, (System.nanoTime() - start) / 1e6);
+    }
+}
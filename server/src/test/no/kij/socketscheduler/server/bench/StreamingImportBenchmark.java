@@ -0,0 +1,141 @@
+package no.kij.socketscheduler.server.bench;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonParser;
+import com.sun.management.GarbageCollectionNotificationInfo;
+import no.kij.socketscheduler.server.dao.SubjectDao;
+import no.kij.socketscheduler.server.db.CatalogueImporter;
+import no.kij.socketscheduler.server.dto.LecturerDTO;
+import no.kij.socketscheduler.server.dto.SubjectDTO;
+import no.kij.socketscheduler.server.util.ResourceFetcher;
+
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares the heap needed to read a subjects file the way DatabaseInitializer used to,
+ * reading it into a String and parsing it twice, against streaming it through CatalogueImporter.
+ *
+ * The subjects are handed to a dao that only counts them, so the heap of the database does not count.
+ * The heap needed is the most still in use after any garbage collection while the file was read.
+ * Run with a small heap, such as -Xmx512m, and the subject counts to measure as arguments,
+ * for example "10000 100000 1000000". Reading the whole file fails once it does not fit in the heap.
+ */
+public class StreamingImportBenchmark {
+    private static final AtomicLong maxLiveHeap = new AtomicLong();
+    private static final AtomicLong subjectsSeen = new AtomicLong();
+
+    public static void main(String[] args) throws Exception {
+        int[] sizes = args.length > 0 ? Arrays.stream(args).mapToInt(Integer::parseInt).toArray()
+                : new int[] { 10000, 100000, 1000000 };
+        watchGarbageCollections();
+        SubjectDao countingDao = countingDao();
+        Path directory = Files.createTempDirectory("streaming_import_bench");
+
+        System.out.printf("%10s %10s %-10s %12s %14s%n", "subjects", "file MB", "read", "ms", "max live MB");
+        for (int size : sizes) {
+            Path file = directory.resolve("subjects-" + size + ".json");
+            try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                CatalogueGenerator.forBenchmark(size).writeSubjects(out);
+            }
+            double fileMb = Files.size(file) / 1e6;
+
+            measure(size, fileMb, "streaming", () -> {
+                try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                    new CatalogueImporter(countingDao).importSubjects(reader);
+                }
+            });
+            measure(size, fileMb, "string", () -> {
+                try (InputStream in = Files.newInputStream(file)) {
+                    String json = ResourceFetcher.getFile(in);
+                    SubjectDTO[] subjects = new Gson().fromJson(json, SubjectDTO[].class);
+                    JsonArray lecturers = new JsonParser().parse(json).getAsJsonArray();
+                    countingDao.createAll(Arrays.asList(new LecturerDTO[0]), Arrays.asList(subjects));
+                    if (lecturers.size() != subjects.length) {
+                        throw new IllegalStateException("The two parses do not agree");
+                    }
+                }
+            });
+            Files.delete(file);
+        }
+        Files.delete(directory);
+    }
+
+    private static void measure(int size, double fileMb, String read, Task task) {
+        System.gc();
+        maxLiveHeap.set(0);
+        subjectsSeen.set(0);
+        long start = System.nanoTime();
+        try {
+            task.run();
+            // a last collection, so anything the task still held when it finished is seen
+            System.gc();
+            System.out.printf("%10d %10.1f %-10s %12.1f %14.1f%n", size, fileMb, read,
+                    (System.nanoTime() - start) / 1e6, maxLiveHeap.get() / 1e6);
+            if (subjectsSeen.get() != size) {
+                throw new IllegalStateException(subjectsSeen.get() + " subjects were read, not " + size);
+            }
+        } catch (Throwable e) {
+            // gson hands running out of memory on as a JsonParseException
+            Throwable cause = e;
+            while (cause != null && !(cause instanceof OutOfMemoryError)) {
+                cause = cause.getCause();
+            }
+            if (cause == null) {
+                throw new IllegalStateException(e);
+            }
+            System.out.printf("%10d %10.1f %-10s %12s %14s%n", size, fileMb, read, "-", "out of memory");
+        }
+    }
+
+    /**
+     * Keeps track of the most heap still in use after a garbage collection.
+     */
+    private static void watchGarbageCollections() {
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            ((NotificationEmitter) gc).addNotificationListener((notification, handback) -> {
+                if (GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+                    GarbageCollectionNotificationInfo info =
+                            GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+                    long used = 0;
+                    for (MemoryUsage usage : info.getGcInfo().getMemoryUsageAfterGc().values()) {
+                        used += usage.getUsed();
+                    }
+                    maxLiveHeap.accumulateAndGet(used, Math::max);
+                }
+            }, null, null);
+        }
+    }
+
+    /**
+     * A dao that counts the subjects it is asked to create, and does nothing else.
+     */
+    @SuppressWarnings("unchecked")
+    private static SubjectDao countingDao() {
+        return (SubjectDao) Proxy.newProxyInstance(SubjectDao.class.getClassLoader(),
+                new Class<?>[] { SubjectDao.class }, (proxy, method, arguments) -> {
+                    if (method.getName().equals("createAll")) {
+                        subjectsSeen.addAndGet(((Collection<SubjectDTO>) arguments[1]).size());
+                    }
+                    return null;
+                });
+    }
+
+    private interface Task {
+        void run() throws Exception;
+    }
+}
@@ -0,0 +1,75 @@
+package no.kij.socketscheduler.server.bench;
+
+import no.kij.socketscheduler.server.dao.SubjectDao;
+import no.kij.socketscheduler.server.dto.SubjectDTO;
+import no.kij.socketscheduler.server.util.DaoDelegator;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compares listing every subject with its lecturers the old way, one lecturer query per subject,
+ * against SubjectDao.queryForAll, which fetches the lecturers of all subjects in one query.
+ *
+ * Run with the subject counts to measure as arguments, for example "3 1000 10000 100000".
+ * The old way is skipped above 10000 subjects, since it grows with the square of the subject count
+ * on an unindexed join table; pass "--legacy-max=N" to change that.
+ */
+public class SubjectListBenchmark {
+    private static final int WARMUP_RUNS = 3;
+    private static final int MEASURED_RUNS = 5;
+
+    public static void main(String[] args) throws Exception {
+        int legacyMax = 10000;
+        int[] sizes = { 3, 1000, 10000, 100000 };
+        int[] given = Arrays.stream(args).filter(arg -> !arg.startsWith("--")).mapToInt(Integer::parseInt).toArray();
+        if (given.length > 0) {
+            sizes = given;
+        }
+        for (String arg : args) {
+            if (arg.startsWith("--legacy-max=")) {
+                legacyMax = Integer.parseInt(arg.substring("--legacy-max=".length()));
+            }
+        }
+
+        BenchmarkDatabase db = new BenchmarkDatabase("subject_list_bench");
+        SubjectDao subjectDao = new DaoDelegator(db.getConnectionManager()).getSubjectDao();
+
+        System.out.printf("%10s %-8s %12s %12s%n", "subjects", "loader", "statements", "median ms");
+        for (int size : sizes) {
+            db.populate(size);
+            if (size <= legacyMax) {
+                report(db, size, "per-row", () -> listPerRow(subjectDao));
+            }
+            report(db, size, "batched", subjectDao::queryForAll);
+        }
+        db.close();
+    }
+
+    /**
+     * Lists the subjects the way queryForAll used to, asking for the lecturers of one subject at a time.
+     */
+    private static List<SubjectDTO> listPerRow(SubjectDao subjectDao) throws Exception {
+        List<SubjectDTO> subjects = subjectDao.query(subjectDao.queryBuilder().prepare());
+        for (SubjectDTO subject : subjects) {
+            subject.setLecturers(subjectDao.findLecturersForSubject(subject));
+        }
+        return subjects;
+    }
+
+    private static void report(BenchmarkDatabase db, int size, String loader, BenchmarkDatabase.Task task)
+            throws Exception {
+        long statements = db.countStatements(task);
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+            task.run();
+        }
+        long[] times = new long[MEASURED_RUNS];
+        for (int i = 0; i < MEASURED_RUNS; i++) {
+            long start = System.nanoTime();
+            task.run();
+            times[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(times);
+        System.out.printf("%10d %-8s %12d %12.2f%n", size, loader, statements, times[MEASURED_RUNS / 2] / 1e6);
+    }
+}
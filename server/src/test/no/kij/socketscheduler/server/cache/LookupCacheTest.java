@@ -0,0 +1,161 @@
+package no.kij.socketscheduler.server.cache;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.Assert.*;
+
+public class LookupCacheTest {
+    private long now;
+    private AtomicInteger loads;
+    private Function<String, String> loader;
+    private LookupCache<String> cache;
+
+    @Before
+    public void setUp() {
+        now = 0;
+        loads = new AtomicInteger();
+        loader = term -> {
+            loads.incrementAndGet();
+            return term.equals("missing") ? null : term.toUpperCase();
+        };
+        cache = new LookupCache<>(2, 10, TimeUnit.SECONDS, () -> now);
+    }
+
+    @Test
+    public void testResultIsLoadedOnce() {
+        assertEquals("PGR200", cache.get("pgr200", loader));
+        assertEquals("PGR200", cache.get("pgr200", loader));
+
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void testTermIsNormalized() {
+        cache.get("avansert javaprogrammering", loader);
+        cache.get("  avansert   javaprogrammering ", loader);
+
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void testNotFoundIsCached() {
+        assertNull(cache.get("missing", loader));
+        assertNull(cache.get("missing", loader));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() {
+        cache.get("a", loader);
+        cache.get("b", loader);
+        cache.get("a", loader);
+        cache.get("c", loader);
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictions());
+        cache.get("a", loader);
+        assertEquals(3, loads.get());
+        cache.get("b", loader);
+        assertEquals(4, loads.get());
+    }
+
+    @Test
+    public void testExpiredResultIsReloaded() {
+        cache.get("a", loader);
+        now += TimeUnit.SECONDS.toNanos(11);
+        cache.get("a", loader);
+
+        assertEquals(2, loads.get());
+        assertEquals(1, cache.getEvictions());
+    }
+
+    @Test
+    public void testCatalogueChangeClearsCache() {
+        cache.get("a", loader);
+        CatalogueVersion.bump();
+        cache.get("a", loader);
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void testResultLoadedDuringChangeIsNotCached() {
+        cache.get("a", term -> {
+            CatalogueVersion.bump();
+            return "stale";
+        });
+        assertEquals("A", cache.get("a", loader));
+    }
+
+    @Test
+    public void testConcurrentMissesShareOneLoad() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        Function<String, String> slowLoader = term -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            return loader.apply(term);
+        };
+        ExecutorService callers = Executors.newFixedThreadPool(2);
+        Future<String> first = callers.submit(() -> cache.get("pgr200", slowLoader));
+        Future<String> second = callers.submit(() -> cache.get("pgr200", slowLoader));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (cache.getCoalesced() < 1) {
+            assertTrue("Timed out waiting for the misses to share the load.", System.nanoTime() < deadline);
+            Thread.sleep(1);
+        }
+        release.countDown();
+
+        assertEquals("PGR200", first.get());
+        assertEquals("PGR200", second.get());
+        assertEquals(1, loads.get());
+        assertEquals(2, cache.getMisses());
+        callers.shutdown();
+    }
+
+    @Test
+    public void testAsyncResultIsLoadedOnce() throws Exception {
+        Function<String, CompletableFuture<String>> asyncLoader =
+                term -> CompletableFuture.completedFuture(loader.apply(term));
+        assertEquals("PGR200", cache.getAsync("pgr200", asyncLoader).get());
+        CompletableFuture<String> cached = cache.getAsync(" pgr200", asyncLoader);
+
+        assertTrue(cached.isDone());
+        assertEquals("PGR200", cached.get());
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void testAsyncMissesShareOneLoad() throws Exception {
+        CompletableFuture<String> loading = new CompletableFuture<>();
+        Function<String, CompletableFuture<String>> asyncLoader = term -> {
+            loads.incrementAndGet();
+            return loading;
+        };
+        CompletableFuture<String> first = cache.getAsync("pgr200", asyncLoader);
+        CompletableFuture<String> second = cache.getAsync("pgr200", asyncLoader);
+        loading.complete("PGR200");
+
+        assertEquals("PGR200", first.get());
+        assertEquals("PGR200", second.get());
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.getCoalesced());
+        assertEquals(1, cache.size());
+    }
+}
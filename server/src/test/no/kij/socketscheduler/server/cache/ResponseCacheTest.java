@@ -0,0 +1,71 @@
+package no.kij.socketscheduler.server.cache;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ResponseCacheTest {
+    private long now;
+    private ResponseCache<String> cache;
+
+    @Before
+    public void setUp() {
+        now = 0;
+        cache = new ResponseCache<>(2, 10, TimeUnit.SECONDS, () -> now);
+    }
+
+    @Test
+    public void testResponseIsGivenForTheSameVersion() {
+        assertNull(cache.get("list subject", 1));
+        cache.put("list subject", 1, "PGR200");
+
+        assertEquals("PGR200", cache.get("list subject", 1));
+        assertNull(cache.get("list lecturer", 1));
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void testNewerVersionThrowsEverythingAway() {
+        cache.put("list subject", 1, "PGR200");
+        cache.put("list lecturer", 1, "Alexander");
+
+        assertNull(cache.get("list subject", 2));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testResponseFromAnOlderVersionIsNotKept() {
+        cache.get("list subject", 2);
+        cache.put("list subject", 1, "PGR200");
+
+        assertEquals(0, cache.size());
+        assertNull(cache.get("list subject", 1));
+    }
+
+    @Test
+    public void testResponseExpires() {
+        cache.put("list subject", 1, "PGR200");
+        now = TimeUnit.SECONDS.toNanos(9);
+        assertEquals("PGR200", cache.get("list subject", 1));
+
+        now = TimeUnit.SECONDS.toNanos(10);
+        assertNull(cache.get("list subject", 1));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() {
+        cache.put("list subject", 1, "PGR200");
+        cache.put("list lecturer", 1, "Alexander");
+        cache.get("list subject", 1);
+        cache.put("list subject limit 5", 1, "PG3300");
+
+        assertEquals(2, cache.size());
+        assertEquals("PGR200", cache.get("list subject", 1));
+        assertNull(cache.get("list lecturer", 1));
+    }
+}
@@ -0,0 +1,181 @@
+package no.kij.socketscheduler.server.cache;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.Assert.*;
+
+public class SingleFlightTest {
+    private SingleFlight<String> flights;
+    private AtomicInteger loads;
+    private CountDownLatch release;
+    private Function<String, String> slowLoader;
+    private ExecutorService callers;
+
+    @Before
+    public void setUp() {
+        flights = new SingleFlight<>();
+        loads = new AtomicInteger();
+        release = new CountDownLatch(1);
+        slowLoader = term -> {
+            loads.incrementAndGet();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            return term.toUpperCase();
+        };
+        callers = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        callers.shutdownNow();
+    }
+
+    @Test
+    public void testAsyncLookupsShareOneFuture() {
+        CompletableFuture<String> loading = new CompletableFuture<>();
+        List<CompletableFuture<String>> results = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            results.add(flights.getAsync(i % 2 == 0 ? "pgr200" : " pgr200 ", term -> {
+                loads.incrementAndGet();
+                return loading;
+            }));
+        }
+
+        assertEquals(1, loads.get());
+        assertEquals(9, flights.getCoalesced());
+        loading.complete("PGR200");
+        for (CompletableFuture<String> result : results) {
+            assertEquals("PGR200", result.join());
+        }
+        assertEquals(0, flights.getInFlight());
+    }
+
+    @Test
+    public void testAsyncFailureIsSharedAndNotKept() {
+        CompletableFuture<String> failing = new CompletableFuture<>();
+        CompletableFuture<String> first = flights.getAsync("pgr200", term -> failing);
+        CompletableFuture<String> second = flights.getAsync("pgr200", term -> failing);
+        failing.completeExceptionally(new IllegalStateException("Database is gone"));
+
+        assertTrue(first.isCompletedExceptionally());
+        assertTrue(second.isCompletedExceptionally());
+        assertEquals("PGR200", flights.getAsync("pgr200", term -> CompletableFuture.completedFuture("PGR200")).join());
+        assertEquals(2, flights.getLoads());
+    }
+
+    @Test
+    public void testConcurrentLookupsShareOneLoad() throws Exception {
+        List<Future<String>> results = new ArrayList<>();
+        results.add(callers.submit(() -> flights.get("pgr200", slowLoader)));
+        awaitInFlight(1);
+        for (int i = 0; i < 9; i++) {
+            results.add(callers.submit(() -> flights.get("pgr200", slowLoader)));
+        }
+        awaitCoalesced(9);
+        release.countDown();
+
+        String first = results.get(0).get();
+        assertEquals("PGR200", first);
+        for (Future<String> result : results) {
+            assertSame(first, result.get());
+        }
+        assertEquals(1, loads.get());
+        assertEquals(1, flights.getLoads());
+        assertEquals(0, flights.getInFlight());
+    }
+
+    @Test
+    public void testTermIsNormalized() throws Exception {
+        Future<String> first = callers.submit(() -> flights.get("avansert javaprogrammering", slowLoader));
+        awaitInFlight(1);
+        Future<String> second = callers.submit(() -> flights.get("  avansert   javaprogrammering ", slowLoader));
+        awaitCoalesced(1);
+        release.countDown();
+
+        assertSame(first.get(), second.get());
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void testLookupsOneAfterAnotherLoadEachTime() {
+        release.countDown();
+        flights.get("pgr200", slowLoader);
+        flights.get("pgr200", slowLoader);
+
+        assertEquals(2, loads.get());
+        assertEquals(0, flights.getCoalesced());
+    }
+
+    @Test
+    public void testFailureIsThrownToEveryoneSharingTheLoad() throws Exception {
+        Function<String, String> failing = term -> {
+            slowLoader.apply(term);
+            throw new IllegalStateException("Database is gone");
+        };
+        Future<String> first = callers.submit(() -> flights.get("pgr200", failing));
+        awaitInFlight(1);
+        Future<String> second = callers.submit(() -> flights.get("pgr200", failing));
+        awaitCoalesced(1);
+        release.countDown();
+
+        for (Future<String> result : Arrays.asList(first, second)) {
+            try {
+                result.get();
+                fail("The load failed, but a result was given.");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IllegalStateException);
+            }
+        }
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void testLookupAfterWriteDoesNotShareOlderLoad() throws Exception {
+        Future<String> before = callers.submit(() -> flights.get("pgr200", slowLoader));
+        awaitInFlight(1);
+        CatalogueVersion.bump();
+        Future<String> after = callers.submit(() -> flights.get("pgr200", slowLoader));
+        awaitInFlight(2);
+        release.countDown();
+
+        assertEquals("PGR200", before.get());
+        assertEquals("PGR200", after.get());
+        assertEquals(2, loads.get());
+        assertEquals(0, flights.getCoalesced());
+    }
+
+    private void awaitInFlight(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (flights.getInFlight() < count || loads.get() < count) {
+            assertTrue("Timed out waiting for the loads to start.", System.nanoTime() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    private void awaitCoalesced(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (flights.getCoalesced() < count) {
+            assertTrue("Timed out waiting for the lookups to join the load.", System.nanoTime() < deadline);
+            Thread.sleep(1);
+        }
+    }
+}
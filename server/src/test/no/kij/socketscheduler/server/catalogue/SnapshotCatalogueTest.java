@@ -0,0 +1,157 @@
+package no.kij.socketscheduler.server.catalogue;
+
+import no.kij.socketscheduler.server.db.DatabaseInitializer;
+import no.kij.socketscheduler.server.dto.LecturerDTO;
+import no.kij.socketscheduler.server.dto.SubjectDTO;
+import no.kij.socketscheduler.server.util.ConnectionManager;
+import no.kij.socketscheduler.server.util.DaoDelegator;
+import no.kij.socketscheduler.server.util.ResourceFetcher;
+import org.h2.tools.Server;
+import org.junit.*;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SnapshotCatalogueTest {
+    private static Server server;
+    private static ConnectionManager connectionManager;
+    private static DatabaseInitializer dbInit;
+    private DaoDelegator dao;
+    private SnapshotCatalogue catalogue;
+
+    @BeforeClass
+    public static void setUpClass() throws SQLException {
+        server = Server.createTcpServer("-tcpPort", "8372", "-tcpAllowOthers").start();
+        connectionManager = new ConnectionManager(ResourceFetcher.getProperty("testProps"));
+        dbInit = new DatabaseInitializer(connectionManager);
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        server.stop();
+        connectionManager.close();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        dbInit.initializeTables();
+        dbInit.initializeTableContent();
+        dao = DaoDelegator.shared(connectionManager);
+        catalogue = new SnapshotCatalogue(dao);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        catalogue.close();
+        dao.getSubjectDao().executeRaw("DROP ALL OBJECTS");
+    }
+
+    @Test
+    public void testSnapshotAnswersLikeDatabase() throws SQLException {
+        DaoCatalogue database = new DaoCatalogue(dao);
+
+        assertEquals(database.listSubjects().size(), catalogue.listSubjects().size());
+        assertEquals(database.listLecturers().size(), catalogue.listLecturers().size());
+        for (String term : new String[] { "PGR200", "Java", "Design", "pgr200", "Nothing" }) {
+            SubjectDTO expected = database.findSubject(term);
+            SubjectDTO actual = catalogue.findSubject(term);
+            assertEquals(expected == null ? null : expected.getId(), actual == null ? null : actual.getId());
+        }
+        for (String term : new String[] { "Vilde Birkenes", "Lilly", "Melby", "vilde" }) {
+            LecturerDTO expected = database.findLecturer(term);
+            LecturerDTO actual = catalogue.findLecturer(term);
+            assertEquals(expected == null ? null : expected.getId(), actual == null ? null : actual.getId());
+        }
+    }
+
+    @Test
+    public void testSnapshotSearchesLikeDatabase() {
+        DaoCatalogue database = new DaoCatalogue(dao);
+
+        for (String term : new String[] { "pgr200", "er", "desing", "Javaprogrammering", "qqqqqq" }) {
+            assertEquals(subjectIds(database.searchSubjects(term, 5)), subjectIds(catalogue.searchSubjects(term, 5)));
+        }
+        for (String term : new String[] { "vilde", "melby", "lily", "e", "qqqqqq" }) {
+            List<LecturerDTO> expected = database.searchLecturers(term, 5);
+            List<LecturerDTO> actual = catalogue.searchLecturers(term, 5);
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i).getId(), actual.get(i).getId());
+            }
+        }
+    }
+
+    private static List<Integer> subjectIds(List<SubjectDTO> subjects) {
+        List<Integer> ids = new ArrayList<>();
+        for (SubjectDTO subject : subjects) {
+            ids.add(subject.getId());
+        }
+        return ids;
+    }
+
+    @Test
+    public void testSubjectIncludesLecturers() {
+        SubjectDTO subject = catalogue.findSubject("PGR200");
+        assertEquals(2, subject.getLecturers().size());
+        assertEquals("Alexander Melby", subject.getLecturers().get(0).getName());
+        assertEquals("PG3300", catalogue.findLecturer("Lilly").getSubjects().get(0).getShortName());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testSnapshotCannotBeChanged() {
+        List<SubjectDTO> subjects = catalogue.listSubjects();
+        subjects.get(0).getLecturers().clear();
+    }
+
+    @Test
+    public void testSnapshotIsReplacedAfterWrite() throws Exception {
+        long version = catalogue.getVersion();
+        CatalogueSnapshot before = catalogue.getSnapshot();
+
+        SubjectDTO subject = new SubjectDTO();
+        subject.setName("Smidig Prosjekt");
+        subject.setShortName("PRO200");
+        subject.setEnrolled(6);
+        dao.getSubjectDao().createIfNotExists(subject);
+
+        for (int i = 0; i < 50 && catalogue.findSubject("PRO200") == null; i++) {
+            Thread.sleep(100);
+        }
+        assertEquals("Smidig Prosjekt", catalogue.findSubject("PRO200").getName());
+        assertTrue(catalogue.getVersion() > version);
+        // the old snapshot is left as it was
+        assertNull(before.findSubject("PRO200"));
+        assertEquals(3, before.getSubjects().size());
+    }
+
+    @Test
+    public void testSnapshotPagesLikeDatabase() throws SQLException {
+        LecturerDTO namesake = new LecturerDTO();
+        namesake.setName("Vilde Birkenes");
+        dao.getLecturerDao().create(namesake);
+        CatalogueSnapshot snapshot = CatalogueSnapshot.build(dao);
+        DaoCatalogue database = new DaoCatalogue(dao);
+
+        for (String after : new String[] { null, "PG3300", "PG4", "PGR200", "A", "Z" }) {
+            for (int limit = 0; limit <= 3; limit++) {
+                List<String> expected = new ArrayList<>();
+                database.forEachSubject(after, limit, subject -> expected.add(subject.getShortName()));
+                List<String> actual = new ArrayList<>();
+                snapshot.forEachSubject(after, limit, subject -> actual.add(subject.getShortName()));
+                assertEquals(expected, actual);
+            }
+        }
+        for (String after : new String[] { null, "Lilly Evensen", "Vilde Birkenes", "M" }) {
+            for (Integer afterId : new Integer[] { null, 2 }) {
+                List<Integer> expected = new ArrayList<>();
+                database.forEachLecturer(after, afterId, 0, lecturer -> expected.add(lecturer.getId()));
+                List<Integer> actual = new ArrayList<>();
+                snapshot.forEachLecturer(after, afterId, 0, lecturer -> actual.add(lecturer.getId()));
+                assertEquals(expected, actual);
+            }
+        }
+    }
+}
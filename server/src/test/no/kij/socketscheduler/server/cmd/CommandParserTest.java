@@ -145,4 +145,38 @@ public class CommandParserTest {
         assertNull(details);
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testParseListWithAfterAndLimit() {
+        CommandDetails details = parser.parse("list subject after PG4200 limit 50");
+
+        assertEquals(CommandAction.LIST, details.getAction());
+        assertEquals(CommandType.SUBJECT, details.getType());
+        assertEquals("PG4200", details.getAfter());
+        assertEquals(50, details.getLimit());
+    }
+
+    @Test
+    public void testParseListAfterNameOfSeveralWords() {
+        CommandDetails details = parser.parse("list lecturer after Vilde Birkenes");
+
+        assertEquals(CommandAction.LIST, details.getAction());
+        assertEquals("Vilde Birkenes", details.getAfter());
+        assertEquals(0, details.getLimit());
+    }
+
+    @Test
+    public void testParseListReturnsUsageOnInvalidLimit() {
+        assertEquals(CommandAction.SEND_USAGE, parser.parse("list subject limit 0").getAction());
+        assertEquals(CommandAction.SEND_USAGE, parser.parse("list subject limit many").getAction());
+        assertEquals(CommandAction.SEND_USAGE, parser.parse("list subject after limit 5").getAction());
+        assertEquals(CommandAction.SEND_USAGE, parser.parse("list subject sideways").getAction());
+    }
+
+    @Test
+    public void testParseMore() {
+        CommandDetails details = parser.parse("more");
+
+        assertEquals(CommandAction.MORE, details.getAction());
+        assertEquals(CommandType.NONE, details.getType());
+    }
+}
@@ -8,10 +8,16 @@ import no.kij.socketscheduler.server.util.ResourceFetcher;
 import org.h2.tools.Server;
 import org.junit.*;
 
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.List;
+import java.util.Properties;
 
 import static org.junit.Assert.*;
+import java.util.ArrayList;
 
 public class LecturerDaoImplTest {
     private static Server server;
@@ -123,4 +129,191 @@ public class LecturerDaoImplTest {
         assertEquals("Avansert Javaprogrammering", subjectList.get(0).getName());
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testQueryForAllWithSubjects() throws SQLException {
+        List<LecturerDTO> lecturers = lecturerDaoImpl.queryForAllWithSubjects();
+
+        assertEquals(3, lecturers.size());
+        assertEquals(Integer.valueOf(1), lecturers.get(0).getId());
+        assertEquals("Alexander Melby", lecturers.get(0).getName());
+        assertEquals(1, lecturers.get(0).getSubjects().size());
+        assertEquals("PGR200", lecturers.get(0).getSubjects().get(0).getShortName());
+        assertEquals("Vilde Birkenes", lecturers.get(1).getName());
+        assertEquals("PGR200", lecturers.get(1).getSubjects().get(0).getShortName());
+        assertEquals("PG3300", lecturers.get(2).getSubjects().get(0).getShortName());
+    }
+
+    @Test
+    public void testQueryForAllWithSubjectsKeepsLecturersWithoutSubjects() throws SQLException {
+        LecturerDTO lecturer = new LecturerDTO();
+        lecturer.setName("Ada Rosseland");
+        lecturerDaoImpl.create(lecturer);
+
+        List<LecturerDTO> lecturers = lecturerDaoImpl.queryForAllWithSubjects();
+
+        assertEquals(4, lecturers.size());
+        assertEquals("Ada Rosseland", lecturers.get(3).getName());
+        assertTrue(lecturers.get(3).getSubjects().isEmpty());
+    }
+
+    @Test
+    public void testQueryForExactOrPartialNameIncludesSubjects() {
+        LecturerDTO lecturer = lecturerDaoImpl.queryForExactOrPartialName("Lilly");
+
+        assertEquals(1, lecturer.getSubjects().size());
+        assertEquals("PG3300", lecturer.getSubjects().get(0).getShortName());
+    }
+
+    @Test
+    public void testLecturerWriteInvalidatesCache() throws SQLException {
+        assertNull(lecturerDaoImpl.queryForExactOrPartialName("Ada"));
+
+        LecturerDTO lecturer = new LecturerDTO();
+        lecturer.setName("Ada Rosseland");
+        lecturerDaoImpl.create(lecturer);
+
+        assertEquals("Ada Rosseland", lecturerDaoImpl.queryForExactOrPartialName("Ada").getName());
+    }
+
+    @Test
+    public void testQueryForPartialNameFollowsUpdates() throws SQLException {
+        assertEquals(Integer.valueOf(2), lecturerDaoImpl.queryForPartialName("Birk").getId());
+
+        LecturerDTO lecturer = lecturerDaoImpl.queryForId(2);
+        lecturer.setName("Vilde Hansen");
+        lecturerDaoImpl.update(lecturer);
+
+        assertNull(lecturerDaoImpl.queryForPartialName("Birk"));
+        assertEquals(Integer.valueOf(2), lecturerDaoImpl.queryForPartialName("Hansen").getId());
+    }
+
+    @Test
+    public void testQueryForPartialNameSeesRawUpdates() throws SQLException {
+        assertNull(lecturerDaoImpl.queryForPartialName("Nordmann"));
+
+        lecturerDaoImpl.executeRaw("UPDATE lecturers SET name = 'Ola Nordmann' WHERE id = 3");
+
+        assertEquals(Integer.valueOf(3), lecturerDaoImpl.queryForPartialName("Nordmann").getId());
+    }
+
+    @Test
+    public void testQueryForPartialNameChecksRowsChangedElsewhere() throws SQLException {
+        assertEquals(Integer.valueOf(3), lecturerDaoImpl.queryForPartialName("Lilly").getId());
+
+        // a second dao does not tell the first one about its writes
+        LecturerDaoImpl otherDao = new LecturerDaoImpl(connectionManager.getConnectionSource());
+        LecturerDTO lecturer = otherDao.queryForId(3);
+        lecturer.setName("Ola Nordmann");
+        otherDao.update(lecturer);
+
+        assertNull(lecturerDaoImpl.queryForPartialName("Lilly"));
+        assertEquals(Integer.valueOf(3), lecturerDaoImpl.queryForPartialName("Nordmann").getId());
+    }
+
+    @Test
+    public void testSearchLecturersIncludesSubjects() {
+        List<LecturerDTO> lecturers = lecturerDaoImpl.searchLecturers("alexander", 5);
+
+        assertEquals(1, lecturers.size());
+        assertEquals("Alexander Melby", lecturers.get(0).getName());
+        assertEquals("PGR200", lecturers.get(0).getSubjects().get(0).getShortName());
+    }
+
+    @Test
+    public void testSearchLecturersTakesOneStatement() throws SQLException {
+        // the names are read into the index once, before the search is counted
+        lecturerDaoImpl.queryForPartialName("Lilly");
+
+        assertEquals(1, countStatements(() -> {
+            List<LecturerDTO> lecturers = lecturerDaoImpl.searchLecturers("e", 5);
+            assertEquals(3, lecturers.size());
+            assertTrue(lecturers.stream().allMatch(lecturer -> lecturer.getSubjects().size() == 1));
+        }));
+        assertEquals(0, countStatements(() -> assertTrue(lecturerDaoImpl.searchLecturers("qqqqqq", 5).isEmpty())));
+    }
+
+    @Test
+    public void testQueryForExactOrPartialNameTakesOneStatement() throws SQLException {
+        // the names are read into the index and the filter once, before the lookups are counted
+        lecturerDaoImpl.queryForPartialName("Lilly");
+        lecturerDaoImpl.getKeyFilter().load();
+
+        assertEquals(1, countStatements(() -> assertEquals("PGR200",
+                lecturerDaoImpl.queryForExactOrPartialName("Vilde Birkenes").getSubjects().get(0).getShortName())));
+        assertEquals(1, countStatements(() -> assertEquals("PG3300",
+                lecturerDaoImpl.queryForExactOrPartialName("Evensen").getSubjects().get(0).getShortName())));
+        assertEquals(0, countStatements(() -> assertNull(lecturerDaoImpl.queryForExactOrPartialName("qwerty"))));
+    }
+
+    @Test
+    public void testUnknownNamesAreAnsweredWithoutDatabase() throws SQLException {
+        lecturerDaoImpl.getKeyFilter().load();
+
+        assertEquals(0, countStatements(() -> assertNull(lecturerDaoImpl.queryForLecturerName("Ola Nordmann"))));
+
+        LecturerDTO lecturer = new LecturerDTO();
+        lecturer.setName("Ola Nordmann");
+        lecturerDaoImpl.create(lecturer);
+
+        assertEquals(lecturer.getId(), lecturerDaoImpl.queryForLecturerName("Ola Nordmann").getId());
+    }
+
+    @Test
+    public void testQueryForExactOrPartialNameWithoutSubjects() throws SQLException {
+        LecturerDTO lecturer = new LecturerDTO();
+        lecturer.setName("Ada Rosseland");
+        lecturerDaoImpl.create(lecturer);
+
+        LecturerDTO found = lecturerDaoImpl.queryForExactOrPartialName("Rosseland");
+        assertEquals(lecturer.getId(), found.getId());
+        assertTrue(found.getSubjects().isEmpty());
+    }
+
+    /**
+     * Counts the statements the database ran while the task ran, using the query statistics of H2.
+     */
+    private static long countStatements(Runnable task) throws SQLException {
+        Properties props = ResourceFetcher.getProperty("testProps");
+        try (Connection connection = DriverManager.getConnection(props.getProperty("database_url"),
+                props.getProperty("username"), props.getProperty("password"));
+             Statement statement = connection.createStatement()) {
+            statement.execute("SET QUERY_STATISTICS FALSE");
+            statement.execute("SET QUERY_STATISTICS TRUE");
+            task.run();
+            try (ResultSet rs = statement.executeQuery(
+                    "SELECT SUM(EXECUTION_COUNT) FROM INFORMATION_SCHEMA.QUERY_STATISTICS")) {
+                rs.next();
+                return rs.getLong(1);
+            } finally {
+                statement.execute("SET QUERY_STATISTICS FALSE");
+            }
+        }
+    }
+
+    @Test
+    public void testForEachByNameContinuesAmongLecturersSharingName() throws SQLException {
+        LecturerDTO namesake = new LecturerDTO();
+        namesake.setName("Lilly Evensen");
+        lecturerDaoImpl.create(namesake);
+
+        List<LecturerDTO> all = new ArrayList<>();
+        lecturerDaoImpl.forEachByName(null, null, 0, all::add);
+        assertEquals(4, all.size());
+        assertEquals("Alexander Melby", all.get(0).getName());
+        assertEquals(Integer.valueOf(3), all.get(1).getId());
+        assertEquals("PG3300", all.get(1).getSubjects().get(0).getShortName());
+        assertEquals(namesake.getId(), all.get(2).getId());
+        assertTrue(all.get(2).getSubjects().isEmpty());
+        assertEquals("Vilde Birkenes", all.get(3).getName());
+
+        List<LecturerDTO> afterFirstLilly = new ArrayList<>();
+        lecturerDaoImpl.forEachByName("Lilly Evensen", 3, 1, afterFirstLilly::add);
+        assertEquals(1, afterFirstLilly.size());
+        assertEquals(namesake.getId(), afterFirstLilly.get(0).getId());
+
+        List<LecturerDTO> afterLillys = new ArrayList<>();
+        lecturerDaoImpl.forEachByName("Lilly Evensen", null, 0, afterLillys::add);
+        assertEquals(1, afterLillys.size());
+        assertEquals("Vilde Birkenes", afterLillys.get(0).getName());
+    }
+}
@@ -0,0 +1,105 @@
+package no.kij.socketscheduler.server.dao;
+
+import com.j256.ormlite.stmt.QueryBuilder;
+import com.j256.ormlite.stmt.SelectArg;
+import no.kij.socketscheduler.server.db.DatabaseInitializer;
+import no.kij.socketscheduler.server.dto.LecturerDTO;
+import no.kij.socketscheduler.server.util.ConnectionManager;
+import no.kij.socketscheduler.server.util.ResourceFetcher;
+import org.h2.tools.Server;
+import org.junit.*;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class PreparedQueryPoolTest {
+    private static Server server;
+    private static ConnectionManager connectionManager;
+    private static DatabaseInitializer dbInit;
+    private LecturerDaoImpl lecturerDao;
+    private AtomicInteger queriesBuilt;
+    private PreparedQueryPool<LecturerDTO> pool;
+
+    @BeforeClass
+    public static void setUpClass() throws SQLException {
+        server = Server.createTcpServer("-tcpPort", "8372", "-tcpAllowOthers").start();
+        connectionManager = new ConnectionManager(ResourceFetcher.getProperty("testProps"));
+        dbInit = new DatabaseInitializer(connectionManager);
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        server.stop();
+        connectionManager.close();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        lecturerDao = new LecturerDaoImpl(connectionManager.getConnectionSource());
+        dbInit.initializeTables();
+        dbInit.initializeTableContent();
+
+        queriesBuilt = new AtomicInteger();
+        pool = new PreparedQueryPool<>(lecturerDao, () -> {
+            queriesBuilt.incrementAndGet();
+            QueryBuilder<LecturerDTO, Integer> queryBuilder = lecturerDao.queryBuilder();
+            queryBuilder.where().eq(LecturerDTO.LECTURER_NAME_FIELD, new SelectArg());
+            return queryBuilder.prepare();
+        });
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        lecturerDao.executeRaw("DROP ALL OBJECTS");
+    }
+
+    @Test
+    public void testQueryIsBuiltOnceAndReused() throws SQLException {
+        assertEquals(Integer.valueOf(1), pool.queryForFirst("Alexander Melby").getId());
+        assertEquals(Integer.valueOf(2), pool.queryForFirst("Vilde Birkenes").getId());
+        assertEquals(1, pool.query("Lilly Evensen").size());
+        assertNull(pool.queryForFirst("Does Not Exist"));
+
+        assertEquals(1, queriesBuilt.get());
+        assertEquals(3, pool.getHits());
+        assertEquals(1, pool.getMisses());
+        assertEquals(0.75, pool.getHitRate(), 0.0001);
+    }
+
+    @Test
+    public void testConcurrentCallsDoNotShareArguments() throws Exception {
+        String[] names = { "Alexander Melby", "Vilde Birkenes", "Lilly Evensen" };
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            int expectedId = i % 3 + 1;
+            String name = names[i % 3];
+            results.add(executor.submit(() -> pool.queryForFirst(name).getId() == expectedId));
+        }
+        for (Future<Boolean> result : results) {
+            assertTrue(result.get());
+        }
+        executor.shutdown();
+
+        // at most one query per thread needs to be built
+        assertTrue(queriesBuilt.get() <= 8);
+        assertEquals(300, pool.getHits() + pool.getMisses());
+    }
+
+    @Test
+    public void testDaoLookupsReuseQueries() {
+        long hitsBefore = PreparedQueryPool.getTotalHits();
+        for (int i = 0; i < 5; i++) {
+            assertNotNull(lecturerDao.queryForLecturerName("Vilde Birkenes"));
+        }
+        // the name query and the subjects query are both reused on every lookup after the first
+        assertTrue(PreparedQueryPool.getTotalHits() - hitsBefore >= 8);
+    }
+}
@@ -4,14 +4,27 @@ import no.kij.socketscheduler.server.db.DatabaseInitializer;
 import no.kij.socketscheduler.server.dto.LecturerDTO;
 import no.kij.socketscheduler.server.dto.SubjectDTO;
 import no.kij.socketscheduler.server.util.ConnectionManager;
+import no.kij.socketscheduler.server.util.DatabaseExecutor;
 import no.kij.socketscheduler.server.util.ResourceFetcher;
 import org.h2.tools.Server;
 import org.junit.*;
 
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 
 import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
 
 public class SubjectDaoImplTest {
     private static Server server;
@@ -151,6 +164,19 @@ public class SubjectDaoImplTest {
         assertEquals(Integer.valueOf(3), subjectList.get(2).getId());
     }
 
+    @Test
+    public void testQueryForAllIncludesLecturers() throws SQLException {
+        List<SubjectDTO> subjectList = subjectDaoImpl.queryForAll();
+
+        assertEquals(2, subjectList.get(0).getLecturers().size());
+        assertEquals(Integer.valueOf(1), subjectList.get(0).getLecturers().get(0).getId());
+        assertEquals("Alexander Melby", subjectList.get(0).getLecturers().get(0).getName());
+        assertEquals(Integer.valueOf(2), subjectList.get(0).getLecturers().get(1).getId());
+        assertTrue(subjectList.get(1).getLecturers().isEmpty());
+        assertEquals(1, subjectList.get(2).getLecturers().size());
+        assertEquals("Lilly Evensen", subjectList.get(2).getLecturers().get(0).getName());
+    }
+
     @Test
     public void testCreateIfNotExistsWithNewLecturer() throws SQLException {
         LecturerDTO lecturer = new LecturerDTO();
@@ -231,4 +257,317 @@ public class SubjectDaoImplTest {
         assertEquals("Alexander Melby", lecturerList.get(0).getName());
         assertEquals("Vilde Birkenes", lecturerList.get(1).getName());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testAsyncSearchIsCached() throws SQLException {
+        AsyncSubjectDao asyncDao = new AsyncSubjectDao(subjectDaoImpl, connectionManager.getDatabaseExecutor());
+        List<SubjectDTO> first = asyncDao.searchSubjects("PGR200", 5).join();
+        List<List<SubjectDTO>> second = new ArrayList<>();
+
+        assertEquals(0, countStatements(() -> second.add(asyncDao.searchSubjects(" PGR200 ", 5).join())));
+        assertSame(first.get(0), second.get(0).get(0));
+        assertEquals(1, asyncDao.getSearchCache().getMisses());
+        assertEquals(1, asyncDao.getSearchCache().getHits());
+    }
+
+    @Test
+    public void testUpdateSubjectInvalidatesAsyncSearchCache() throws SQLException {
+        AsyncSubjectDao asyncDao = new AsyncSubjectDao(subjectDaoImpl, connectionManager.getDatabaseExecutor());
+        SubjectDTO subject = asyncDao.searchSubjects("PG4200", 5).join().get(0);
+        assertTrue(subject.getLecturers().isEmpty());
+
+        SubjectDTO changed = subjectDaoImpl.queryForId(2);
+        LecturerDTO lecturer = new LecturerDTO();
+        lecturer.setName("Ada Rosseland");
+        changed.getLecturers().add(lecturer);
+        subjectDaoImpl.updateSubject(changed);
+
+        SubjectDTO reloaded = asyncDao.searchSubjects("PG4200", 5).join().get(0);
+        assertEquals(1, reloaded.getLecturers().size());
+        assertEquals("Ada Rosseland", reloaded.getLecturers().get(0).getName());
+    }
+
+    @Test
+    public void testInvalidateCachesShowsRowsWrittenAroundTheDao() throws SQLException {
+        AsyncSubjectDao asyncDao = new AsyncSubjectDao(subjectDaoImpl, connectionManager.getDatabaseExecutor());
+        assertTrue(asyncDao.searchSubjects("Smidig", 5).join().isEmpty());
+
+        Properties props = ResourceFetcher.getProperty("testProps");
+        try (Connection connection = DriverManager.getConnection(props.getProperty("database_url"),
+                props.getProperty("username"), props.getProperty("password"));
+             Statement statement = connection.createStatement()) {
+            statement.execute("INSERT INTO subjects (code, name, enrolled) VALUES ('PRO200', 'Smidig Prosjekt', 6)");
+        }
+        assertTrue(asyncDao.searchSubjects("Smidig", 5).join().isEmpty());
+
+        subjectDaoImpl.invalidateCaches();
+        assertEquals("PRO200", asyncDao.searchSubjects("Smidig", 5).join().get(0).getShortName());
+    }
+
+    @Test
+    public void testFindSubjectByNameFollowsCreateAndDelete() throws SQLException {
+        assertNull(subjectDaoImpl.findSubjectByName("Smidig"));
+
+        SubjectDTO subject = new SubjectDTO();
+        subject.setName("Smidig Prosjekt");
+        subject.setShortName("PRO200");
+        subject.setEnrolled(6);
+        subjectDaoImpl.createIfNotExists(subject);
+        assertEquals("PRO200", subjectDaoImpl.findSubjectByName("Smidig").getShortName());
+
+        subjectDaoImpl.deleteById(subject.getId());
+        assertNull(subjectDaoImpl.findSubjectByName("Smidig"));
+        assertEquals(3, subjectDaoImpl.getNameIndex().size());
+    }
+
+    @Test
+    public void testSearchSubjectsPutsCodeMatchFirst() {
+        List<SubjectDTO> subjects = subjectDaoImpl.searchSubjects("pg3300", 5);
+
+        assertEquals("PG3300", subjects.get(0).getShortName());
+        assertEquals(1, subjects.get(0).getLecturers().size());
+    }
+
+    @Test
+    public void testSearchSubjectsGivesEveryCallerItsOwnList() {
+        List<SubjectDTO> subjects = subjectDaoImpl.searchSubjects("pg3300", 5);
+        subjects.clear();
+
+        assertEquals("PG3300", subjectDaoImpl.searchSubjects(" pg3300 ", 5).get(0).getShortName());
+    }
+
+    @Test
+    public void testSearchSubjectsRanksNames() {
+        List<SubjectDTO> subjects = subjectDaoImpl.searchSubjects("design", 5);
+        assertEquals(1, subjects.size());
+        assertEquals("PG3300", subjects.get(0).getShortName());
+
+        subjects = subjectDaoImpl.searchSubjects("algoritmr", 5);
+        assertEquals("PG4200", subjects.get(0).getShortName());
+
+        assertEquals(2, subjectDaoImpl.searchSubjects("er", 2).size());
+        assertTrue(subjectDaoImpl.searchSubjects("qqqqqq", 5).isEmpty());
+    }
+
+    @Test
+    public void testSearchSubjectsTakesOneStatement() throws SQLException {
+        // the names and codes are read into the index and the filter once, before the searches are counted
+        subjectDaoImpl.findSubjectByName("Java");
+        subjectDaoImpl.getKeyFilter().load();
+
+        assertEquals(1, countStatements(() -> {
+            List<SubjectDTO> subjects = subjectDaoImpl.searchSubjects("pgr200", 5);
+            assertEquals("PGR200", subjects.get(0).getShortName());
+            assertEquals(2, subjects.get(0).getLecturers().size());
+        }));
+        assertEquals(1, countStatements(() -> {
+            List<SubjectDTO> subjects = subjectDaoImpl.searchSubjects("r", 5);
+            assertEquals(3, subjects.size());
+            assertEquals(3, subjects.stream().mapToInt(subject -> subject.getLecturers().size()).sum());
+        }));
+        assertEquals(0, countStatements(() -> assertTrue(subjectDaoImpl.searchSubjects("qqqqqq", 5).isEmpty())));
+    }
+
+    @Test
+    public void testFindSubjectByCodeOrNameTakesOneStatement() throws SQLException {
+        // the names and codes are read into the index and the filter once, before the lookups are counted
+        subjectDaoImpl.getNameIndex().size();
+        subjectDaoImpl.findSubjectByName("Java");
+        subjectDaoImpl.getKeyFilter().load();
+
+        assertEquals(1, countStatements(() -> assertEquals(2,
+                subjectDaoImpl.findSubjectByCodeOrName("PGR200").getLecturers().size())));
+        assertEquals(1, countStatements(() -> assertEquals("PG3300",
+                subjectDaoImpl.findSubjectByCodeOrName("Design").getShortName())));
+        assertEquals(0, countStatements(() -> assertNull(subjectDaoImpl.findSubjectByCodeOrName("qwerty"))));
+    }
+
+    @Test
+    public void testUnknownCodesAreAnsweredWithoutDatabase() throws SQLException {
+        subjectDaoImpl.findSubjectByName("Java");
+        subjectDaoImpl.getKeyFilter().load();
+
+        assertEquals(0, countStatements(() -> {
+            assertNull(subjectDaoImpl.findSubjectByCodeOrName("PGR201"));
+            assertNull(subjectDaoImpl.findSubjectByCode("PGR201"));
+        }));
+        assertEquals(2, subjectDaoImpl.getKeyFilter().getSkipped());
+        assertEquals("PGR200", subjectDaoImpl.findSubjectByCode("PGR200").getShortName());
+    }
+
+    @Test
+    public void testKeyFilterFollowsWrites() throws SQLException {
+        subjectDaoImpl.getKeyFilter().load();
+        assertNull(subjectDaoImpl.findSubjectByCodeOrName("PGR301"));
+
+        subjectDaoImpl.createIfNotExists(subject("PGR301", "DevOps i skyen"));
+        assertEquals("PGR301", subjectDaoImpl.findSubjectByCodeOrName("PGR301").getShortName());
+
+        subjectDaoImpl.executeRaw("UPDATE subjects SET code = 'PGR302' WHERE code = 'PGR301'");
+        assertEquals("PGR302", subjectDaoImpl.findSubjectByCode("PGR302").getShortName());
+    }
+
+    @Test
+    public void testCreateAllMatchesLecturersByName() throws SQLException {
+        LecturerDTO ada = lecturer("Ada Rosseland");
+        SubjectDTO smidig = subject("PRO200", "Smidig Prosjekt", lecturer("Lilly Evensen"), lecturer("Ada Rosseland"));
+        SubjectDTO drift = subject("PG5100", "Drift", lecturer("Ada Rosseland"), lecturer("Ada Rosseland"));
+
+        subjectDaoImpl.createAll(Arrays.asList(ada, lecturer("Vilde Birkenes")), Arrays.asList(smidig, drift));
+
+        assertEquals(4, new LecturerDaoImpl(connectionManager.getConnectionSource()).countOf());
+        assertEquals(Integer.valueOf(4), ada.getId());
+        assertEquals(Integer.valueOf(3), smidig.getLecturers().get(0).getId());
+
+        SubjectDTO found = subjectDaoImpl.findSubjectByCodeOrName("PRO200");
+        assertEquals(smidig.getId(), found.getId());
+        assertEquals(2, found.getLecturers().size());
+        assertEquals("Ada Rosseland", found.getLecturers().get(1).getName());
+        assertEquals(1, subjectDaoImpl.findSubjectByCodeOrName("Drift").getLecturers().size());
+    }
+
+    @Test
+    public void testCreateAllCreatesNothingIfAnyRowFails() throws SQLException {
+        SubjectDTO smidig = subject("PRO200", "Smidig Prosjekt", lecturer("Ada Rosseland"));
+        SubjectDTO duplicate = subject("PGR200", "Avansert Javaprogrammering");
+        try {
+            subjectDaoImpl.createAll(Collections.emptyList(), Arrays.asList(smidig, duplicate));
+            fail("A second subject with the same code was created");
+        } catch (SQLException e) {
+            assertEquals(3, subjectDaoImpl.countOf());
+            assertNull(subjectDaoImpl.findSubjectByCodeOrName("PRO200"));
+            assertEquals(3, new LecturerDaoImpl(connectionManager.getConnectionSource()).countOf());
+        }
+    }
+
+    private static LecturerDTO lecturer(String name) {
+        LecturerDTO lecturer = new LecturerDTO();
+        lecturer.setName(name);
+        return lecturer;
+    }
+
+    private static SubjectDTO subject(String code, String name, LecturerDTO... lecturers) {
+        SubjectDTO subject = new SubjectDTO();
+        subject.setShortName(code);
+        subject.setName(name);
+        subject.setLecturers(new ArrayList<>(Arrays.asList(lecturers)));
+        return subject;
+    }
+
+    /**
+     * Counts the statements the database ran while the task ran, using the query statistics of H2.
+     */
+    private static long countStatements(Runnable task) throws SQLException {
+        Properties props = ResourceFetcher.getProperty("testProps");
+        try (Connection connection = DriverManager.getConnection(props.getProperty("database_url"),
+                props.getProperty("username"), props.getProperty("password"));
+             Statement statement = connection.createStatement()) {
+            statement.execute("SET QUERY_STATISTICS FALSE");
+            statement.execute("SET QUERY_STATISTICS TRUE");
+            task.run();
+            try (ResultSet rs = statement.executeQuery(
+                    "SELECT SUM(EXECUTION_COUNT) FROM INFORMATION_SCHEMA.QUERY_STATISTICS")) {
+                rs.next();
+                return rs.getLong(1);
+            } finally {
+                statement.execute("SET QUERY_STATISTICS FALSE");
+            }
+        }
+    }
+
+    @Test
+    public void testForEachByCodeGoesThroughSubjectsInOrderOfCode() throws SQLException {
+        List<SubjectDTO> subjects = new ArrayList<>();
+        subjectDaoImpl.forEachByCode(null, 0, subjects::add);
+
+        assertEquals(3, subjects.size());
+        assertEquals("PG3300", subjects.get(0).getShortName());
+        assertEquals("PG4200", subjects.get(1).getShortName());
+        assertEquals("PGR200", subjects.get(2).getShortName());
+        assertEquals(2, subjects.get(2).getLecturers().size());
+        assertEquals("Alexander Melby", subjects.get(2).getLecturers().get(0).getName());
+    }
+
+    @Test
+    public void testForEachByCodeStartsAfterCodeAndStopsAtLimit() throws SQLException {
+        List<SubjectDTO> subjects = new ArrayList<>();
+        subjectDaoImpl.forEachByCode("PG3300", 1, subjects::add);
+
+        assertEquals(1, subjects.size());
+        assertEquals("PG4200", subjects.get(0).getShortName());
+    }
+
+    @Test
+    public void testForEachByCodeStopsWhenVisitorDoes() throws SQLException {
+        List<SubjectDTO> subjects = new ArrayList<>();
+        subjectDaoImpl.forEachByCode(null, 0, subject -> subjects.add(subject) && subjects.size() < 2);
+
+        assertEquals(2, subjects.size());
+    }
+
+    @Test
+    public void testAsyncSearchRunsOnDatabaseThread() throws Exception {
+        List<String> threads = new ArrayList<>();
+        // the dao notes the thread it is asked on, as a future completed early runs whenComplete on the caller
+        SubjectDao recordingDao = mock(SubjectDao.class);
+        when(recordingDao.searchSubjects(anyString(), anyInt())).thenAnswer(invocation -> {
+            threads.add(Thread.currentThread().getName());
+            return subjectDaoImpl.searchSubjects((String) invocation.getArguments()[0], 5);
+        });
+        AsyncSubjectDao asyncDao = new AsyncSubjectDao(recordingDao, connectionManager.getDatabaseExecutor(),
+                subjectDaoImpl.getCollation());
+        List<SubjectDTO> subjects = asyncDao.searchSubjects("PG4200", 5).get();
+
+        assertEquals("PG4200", subjects.get(0).getShortName());
+        assertTrue(threads.get(0).startsWith("database-"));
+    }
+
+    @Test
+    public void testAsyncSearchesShareOneDatabaseThread() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        SubjectDao slowDao = mock(SubjectDao.class);
+        when(slowDao.searchSubjects(anyString(), anyInt())).thenAnswer(invocation -> {
+            release.await();
+            return subjectDaoImpl.searchSubjects((String) invocation.getArguments()[0], 5);
+        });
+        // one thread and room for two in the queue, which ten searches each taking a thread would overflow
+        DatabaseExecutor executor = new DatabaseExecutor(1, 2);
+        AsyncSubjectDao asyncDao = new AsyncSubjectDao(slowDao, executor, subjectDaoImpl.getCollation());
+
+        List<CompletableFuture<List<SubjectDTO>>> searches = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            searches.add(asyncDao.searchSubjects("PG4200", 5));
+        }
+        release.countDown();
+
+        for (CompletableFuture<List<SubjectDTO>> search : searches) {
+            assertEquals("PG4200", search.get().get(0).getShortName());
+        }
+        assertNotSame(searches.get(0).get(), searches.get(1).get());
+        verify(slowDao, times(1)).searchSubjects("PG4200", 5);
+        assertEquals(9, asyncDao.getSearchCache().getCoalesced());
+        executor.shutdown();
+    }
+
+    @Test
+    public void testAsyncForEachByCodeGoesThroughSubjects() throws Exception {
+        AsyncSubjectDao asyncDao = new AsyncSubjectDao(subjectDaoImpl, connectionManager.getDatabaseExecutor());
+        List<SubjectDTO> subjects = new ArrayList<>();
+        asyncDao.forEachByCode("PG3300", 0, subjects::add).get();
+
+        assertEquals(2, subjects.size());
+        assertEquals("PG4200", subjects.get(0).getShortName());
+    }
+
+    @Test
+    public void testAsyncForEachByCodeFailsWithSQLException() throws Exception {
+        AsyncSubjectDao asyncDao = new AsyncSubjectDao(subjectDaoImpl, connectionManager.getDatabaseExecutor());
+        subjectDaoImpl.executeRaw("DROP TABLE subject_lecturer");
+        try {
+            asyncDao.forEachByCode(null, 0, subject -> true).get();
+            fail("Listing without the subject_lecturer table did not fail.");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof SQLException);
+        }
+    }
+}
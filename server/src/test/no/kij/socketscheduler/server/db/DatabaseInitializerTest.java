@@ -2,13 +2,20 @@ package no.kij.socketscheduler.server.db;
 
 import com.j256.ormlite.dao.DaoManager;
 import com.j256.ormlite.dao.GenericRawResults;
+import no.kij.socketscheduler.server.dao.LecturerDaoImpl;
 import no.kij.socketscheduler.server.dao.SubjectDaoImpl;
 import no.kij.socketscheduler.server.dto.LecturerDTO;
+import no.kij.socketscheduler.server.dto.SubjectDTO;
 import no.kij.socketscheduler.server.dto.SubjectLecturerDTO;
 import no.kij.socketscheduler.server.util.ConnectionManager;
 import no.kij.socketscheduler.server.util.ResourceFetcher;
 import org.h2.tools.Server;
 import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.SQLException;
 import java.util.ArrayList;
 
@@ -20,6 +27,9 @@ public class DatabaseInitializerTest {
     private static SubjectDaoImpl dao;
     private static DatabaseInitializer dbInit;
 
+    @Rule
+    public TemporaryFolder contentFolder = new TemporaryFolder();
+
     @BeforeClass
     public static void setUpClass() throws SQLException {
         server = Server.createTcpServer("-tcpPort", "8372", "-tcpAllowOthers").start();
@@ -69,4 +79,239 @@ public class DatabaseInitializerTest {
         assertEquals(3, slRows);
     }
 
+    @Test
+    public void testLookupsUseIndexes() throws SQLException {
+        dbInit.initializeTables();
+
+        assertTrue(planOf("SELECT * FROM subjects WHERE code = 'PGR200'").contains("SUBJECTS_CODE_IDX"));
+        assertTrue(planOf("SELECT * FROM subjects WHERE name = 'Software Design'").contains("SUBJECTS_NAME_IDX"));
+        assertTrue(planOf("SELECT * FROM lecturers WHERE name = 'Lilly Evensen'").contains("LECTURERS_NAME_IDX"));
+        assertTrue(planOf("SELECT * FROM subject_lecturer WHERE subject_id = 1")
+                .contains("SUBJECT_LECTURER_PAIR_IDX"));
+        assertTrue(planOf("SELECT * FROM subject_lecturer WHERE lecturer_id = 1")
+                .contains("SUBJECT_LECTURER_LECTURER_ID_IDX"));
+        // a column without an index is still scanned, so the plans above are not just always using an index
+        assertTrue(planOf("SELECT * FROM subjects WHERE enrolled = 1").contains("tableScan"));
+    }
+
+    @Test
+    public void testSubjectCodesAreUnique() throws SQLException {
+        dbInit.initializeTables();
+        dbInit.initializeTableContent();
+
+        SubjectDTO subject = new SubjectDTO();
+        subject.setShortName("PGR200");
+        subject.setName("Avansert Javaprogrammering igjen");
+        try {
+            dao.create(subject);
+            fail("A second subject with the same code was created");
+        } catch (SQLException e) {
+            assertEquals(3, dao.countOf());
+        }
+    }
+
+    @Test
+    public void testLecturerIsBoundToSubjectOnce() throws SQLException {
+        dbInit.initializeTables();
+        dbInit.initializeTableContent();
+
+        SubjectDTO subject = dao.findSubjectByCode("PGR200");
+        dao.updateSubject(subject);
+        dao.updateSubject(subject);
+
+        assertEquals(3, DaoManager.createDao(connectionManager.getConnectionSource(),
+                SubjectLecturerDTO.class).countOf());
+        assertEquals(2, dao.findLecturersForSubject(subject).size());
+    }
+
+    @Test
+    public void testInitializeIncrementallySeedsEmptyDatabase() throws SQLException {
+        assertTrue(dbInit.initializeIncrementally());
+        assertEquals(3, dao.countOf());
+        assertEquals(3, DaoManager.createDao(connectionManager.getConnectionSource(),
+                SubjectLecturerDTO.class).countOf());
+
+        assertFalse(dbInit.initializeIncrementally());
+        assertEquals(3, dao.countOf());
+    }
+
+    @Test
+    public void testInitializeIncrementallySkipsUnchangedContent() throws SQLException {
+        dbInit.initializeTables();
+        dbInit.initializeTableContent();
+        dao.executeRaw("UPDATE subjects SET enrolled = 1 WHERE code = 'PGR200'");
+
+        // the content is the same as last time, so the tables are not even read
+        assertFalse(dbInit.initializeIncrementally());
+        assertEquals(Integer.valueOf(1), dao.queryForId(1).getEnrolled());
+    }
+
+    @Test
+    public void testInitializeIncrementallyCreatesMissingIndexes() throws SQLException {
+        dbInit.initializeTables();
+        dbInit.initializeTableContent();
+        // a database created before the indexes were declared, which may have bound a lecturer twice
+        dao.executeRaw("DROP INDEX subjects_code_idx");
+        dao.executeRaw("DROP INDEX subjects_name_idx");
+        dao.executeRaw("DROP INDEX lecturers_name_idx");
+        dao.executeRaw("DROP INDEX subject_lecturer_pair_idx");
+        dao.executeRaw("DROP INDEX subject_lecturer_lecturer_id_idx");
+        dao.executeRaw("INSERT INTO subject_lecturer (subject_id, lecturer_id) "
+                + "SELECT subject_id, lecturer_id FROM subject_lecturer");
+        assertTrue(planOf("SELECT * FROM subjects WHERE code = 'PGR200'").contains("tableScan"));
+
+        // the content has not changed, but the indexes are created all the same
+        assertFalse(dbInit.initializeIncrementally());
+
+        assertEquals(3, DaoManager.createDao(connectionManager.getConnectionSource(),
+                SubjectLecturerDTO.class).countOf());
+        assertEquals(2, dao.findSubjectByCode("PGR200").getLecturers().size());
+        assertTrue(planOf("SELECT * FROM subjects WHERE code = 'PGR200'").contains("SUBJECTS_CODE_IDX"));
+        assertTrue(planOf("SELECT * FROM subjects WHERE name = 'Software Design'").contains("SUBJECTS_NAME_IDX"));
+        assertTrue(planOf("SELECT * FROM lecturers WHERE name = 'Lilly Evensen'").contains("LECTURERS_NAME_IDX"));
+        assertTrue(planOf("SELECT * FROM subject_lecturer WHERE subject_id = 1")
+                .contains("SUBJECT_LECTURER_PAIR_IDX"));
+        assertTrue(planOf("SELECT * FROM subject_lecturer WHERE lecturer_id = 1")
+                .contains("SUBJECT_LECTURER_LECTURER_ID_IDX"));
+
+        // and are not created again on the next start
+        assertFalse(dbInit.initializeIncrementally());
+    }
+
+    @Test
+    public void testInitializeIncrementallyAppliesDifferences() throws SQLException {
+        dbInit.initializeTables();
+        dbInit.initializeTableContent();
+
+        String lecturers = "[{\"name\": \"Vilde Birkenes\"}, {\"name\": \"Lilly Evensen\"}, "
+                + "{\"name\": \"Ada Rosseland\"}]";
+        String subjects = "["
+                + "{\"name\": \"Avansert Javaprogrammering\", \"shortName\": \"PGR200\", \"enrolled\": 70, "
+                + "\"lecturers\": [{\"name\": \"Vilde Birkenes\"}]},"
+                + "{\"name\": \"Software Design\", \"shortName\": \"PG3300\", \"enrolled\": 97, "
+                + "\"lecturers\": [{\"name\": \"Lilly Evensen\"}]},"
+                + "{\"name\": \"Smidig Prosjekt\", \"shortName\": \"PRO200\", \"enrolled\": 6, "
+                + "\"lecturers\": [{\"name\": \"Lilly Evensen\"}, {\"name\": \"Ada Rosseland\"}]}]";
+        assertTrue(dbInit.initializeIncrementally(lecturers, subjects));
+
+        SubjectDTO changed = dao.findSubjectByCode("PGR200");
+        assertEquals(Integer.valueOf(1), changed.getId());
+        assertEquals(Integer.valueOf(70), changed.getEnrolled());
+        assertEquals(1, changed.getLecturers().size());
+        assertEquals("Vilde Birkenes", changed.getLecturers().get(0).getName());
+
+        assertEquals(Integer.valueOf(3), dao.findSubjectByCode("PG3300").getId());
+        assertNull(dao.findSubjectByCode("PG4200"));
+        assertEquals(2, dao.findSubjectByCode("PRO200").getLecturers().size());
+
+        LecturerDaoImpl lecturerDao = new LecturerDaoImpl(connectionManager.getConnectionSource());
+        assertNull(lecturerDao.queryForLecturerName("Alexander Melby"));
+        assertEquals(Integer.valueOf(2), lecturerDao.queryForLecturerName("Vilde Birkenes").getId());
+        assertEquals(3, lecturerDao.countOf());
+        assertEquals(4, DaoManager.createDao(connectionManager.getConnectionSource(),
+                SubjectLecturerDTO.class).countOf());
+
+        assertFalse(dbInit.initializeIncrementally(lecturers, subjects));
+    }
+
+    @Test
+    public void testInitializeTableContentFromDirectory() throws Exception {
+        // more subjects than are inserted in one batch
+        Files.write(contentFolder.getRoot().toPath().resolve("lecturers.json"),
+                "[{\"name\": \"Ada Rosseland\"}]".getBytes(StandardCharsets.UTF_8));
+        Files.write(contentFolder.getRoot().toPath().resolve("subjects.json"),
+                subjectsJson(2500, "]\n").getBytes(StandardCharsets.UTF_8));
+        DatabaseInitializer fromDisk = new DatabaseInitializer(connectionManager, contentFolder.getRoot().toPath());
+
+        fromDisk.initializeTables();
+        fromDisk.initializeTableContent();
+
+        assertEquals(2500, dao.countOf());
+        assertEquals(41, new LecturerDaoImpl(connectionManager.getConnectionSource()).countOf());
+        assertEquals(2500, DaoManager.createDao(connectionManager.getConnectionSource(),
+                SubjectLecturerDTO.class).countOf());
+        assertEquals("Lecturer 7", dao.findSubjectByCode("PG2007").getLecturers().get(0).getName());
+        assertFalse(fromDisk.initializeIncrementally());
+    }
+
+    @Test
+    public void testInitializeTableContentInsertsNothingFromMalformedContent() throws SQLException {
+        dbInit.initializeTables();
+        // the broken subject comes after more than a batch of good ones
+        dbInit.initializeTableContent("[]", subjectsJson(1500, ", {\"name\": ]"));
+
+        assertEquals(0, dao.countOf());
+        assertEquals(0, new LecturerDaoImpl(connectionManager.getConnectionSource()).countOf());
+    }
+
+    @Test
+    public void testInitializeTableContentFromFacultyFiles() throws Exception {
+        Path folder = contentFolder.getRoot().toPath();
+        Files.write(folder.resolve("lecturers.json"),
+                "[{\"name\": \"Ada Rosseland\"}]".getBytes(StandardCharsets.UTF_8));
+        Files.write(folder.resolve("lecturers-informatics.json"),
+                "[{\"name\": \"Bjorn Hansen\"}, {\"name\": \"Lecturer 3\"}]".getBytes(StandardCharsets.UTF_8));
+        // every file names the same 40 lecturers, which should only be created once
+        Files.write(folder.resolve("subjects-design.json"),
+                subjectsJson(0, 2000, "]").getBytes(StandardCharsets.UTF_8));
+        Files.write(folder.resolve("subjects-informatics.json"),
+                subjectsJson(2000, 2000, "]").getBytes(StandardCharsets.UTF_8));
+        Files.write(folder.resolve("subjects-management.json"),
+                subjectsJson(4000, 1500, "]").getBytes(StandardCharsets.UTF_8));
+        DatabaseInitializer fromDisk = new DatabaseInitializer(connectionManager, folder);
+
+        fromDisk.initializeTables();
+        fromDisk.initializeTableContent();
+
+        LecturerDaoImpl lecturerDao = new LecturerDaoImpl(connectionManager.getConnectionSource());
+        assertEquals(5500, dao.countOf());
+        assertEquals(42, lecturerDao.countOf());
+        assertEquals(5500, DaoManager.createDao(connectionManager.getConnectionSource(),
+                SubjectLecturerDTO.class).countOf());
+        assertEquals("Lecturer 7", dao.findSubjectByCode("PG4007").getLecturers().get(0).getName());
+        assertEquals(138, lecturerDao.findSubjectsForLecturer(lecturerDao.queryForLecturerName("Lecturer 3")).size());
+        assertFalse(fromDisk.initializeIncrementally());
+
+        // a new faculty file is picked up by an incremental start
+        Files.write(folder.resolve("subjects-nursing.json"),
+                subjectsJson(5500, 10, "]").getBytes(StandardCharsets.UTF_8));
+        assertTrue(fromDisk.initializeIncrementally());
+        assertEquals(5510, dao.countOf());
+        assertEquals(42, lecturerDao.countOf());
+    }
+
+    @Test
+    public void testInitializeTableContentFromFacultyFilesLeavesNothingIfOneIsMalformed() throws Exception {
+        Path folder = contentFolder.getRoot().toPath();
+        Files.write(folder.resolve("lecturers.json"), "[]".getBytes(StandardCharsets.UTF_8));
+        Files.write(folder.resolve("subjects-design.json"),
+                subjectsJson(0, 3000, "]").getBytes(StandardCharsets.UTF_8));
+        Files.write(folder.resolve("subjects-informatics.json"),
+                subjectsJson(3000, 1500, ", {\"name\": ]").getBytes(StandardCharsets.UTF_8));
+        DatabaseInitializer fromDisk = new DatabaseInitializer(connectionManager, folder);
+
+        fromDisk.initializeTables();
+        fromDisk.initializeTableContent();
+
+        assertEquals(0, dao.countOf());
+        assertEquals(0, new LecturerDaoImpl(connectionManager.getConnectionSource()).countOf());
+    }
+
+    private static String subjectsJson(int subjects, String ending) {
+        return subjectsJson(0, subjects, ending);
+    }
+
+    private static String subjectsJson(int from, int subjects, String ending) {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = from; i < from + subjects; i++) {
+            json.append(i > from ? ", " : "").append("{\"name\": \"Subject ").append(i)
+                    .append("\", \"shortName\": \"PG").append(i)
+                    .append("\", \"lecturers\": [{\"name\": \"Lecturer ").append(i % 40).append("\"}]}");
+        }
+        return json.append(ending).toString();
+    }
+
+    private static String planOf(String sql) throws SQLException {
+        return dao.queryRaw("EXPLAIN " + sql).getFirstResult()[0];
+    }
 }
\ No newline at end of file
@@ -0,0 +1,283 @@
+package no.kij.socketscheduler.server.nio;
+
+import no.kij.socketscheduler.server.catalogue.DaoCatalogue;
+import no.kij.socketscheduler.server.db.DatabaseInitializer;
+import no.kij.socketscheduler.server.dto.SubjectDTO;
+import no.kij.socketscheduler.server.protocol.Frame;
+import no.kij.socketscheduler.server.protocol.FrameCodec;
+import no.kij.socketscheduler.server.util.ConnectionManager;
+import no.kij.socketscheduler.server.util.DaoDelegator;
+import no.kij.socketscheduler.server.util.ResourceFetcher;
+import org.h2.tools.Server;
+import org.junit.*;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.*;
+
+public class NioServerTest {
+    private static final int PORT = 8433;
+    private static ConnectionManager cm;
+    private static Server server;
+    private static NioServer nioServer;
+
+    @BeforeClass
+    public static void setUpClass() throws SQLException {
+        server = Server.createTcpServer("-tcpPort", "8372", "-tcpAllowOthers").start();
+        cm = new ConnectionManager(ResourceFetcher.getProperty("testProps"));
+        DatabaseInitializer dbInit = new DatabaseInitializer(cm);
+        dbInit.initializeTables();
+        dbInit.initializeTableContent();
+
+        nioServer = new NioServer(PORT, cm, 2);
+        new Thread(() -> {
+            try {
+                nioServer.start();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }).start();
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        nioServer.stop();
+        server.stop();
+    }
+
+    @Test
+    public void testClientIsWelcomed() throws Exception {
+        try (Socket socket = connect()) {
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            assertTrue(readResponse(in).contains("You have been successfully connected to the Scheduler Database."));
+        }
+    }
+
+    @Test
+    public void testCommandsAreAnswered() throws Exception {
+        try (Socket socket = connect()) {
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            readResponse(in);
+
+            out.writeUTF("list subject");
+            out.flush();
+            String output = readResponse(in);
+            assertTrue(output.contains("PGR200"));
+            assertTrue(output.contains("PG4200"));
+            assertTrue(output.contains("PG3300"));
+
+            out.writeUTF("help");
+            out.flush();
+            assertTrue(readResponse(in).contains("The following commands are available."));
+        }
+    }
+
+    @Test
+    public void testCommandsSentTogetherAreAllAnswered() throws Exception {
+        try (Socket socket = connect()) {
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            readResponse(in);
+
+            // both messages are likely to arrive in a single read on the server
+            out.writeUTF("help list");
+            out.writeUTF("help search");
+            out.flush();
+            assertTrue(readResponse(in).contains("You can use it to view all lecturers, subjects or rooms."));
+            assertTrue(readResponse(in).contains("You can use search with lecturer name or subject code."));
+        }
+    }
+
+    @Test
+    public void testManyClientsShareTheEventLoops() throws Exception {
+        Socket[] sockets = new Socket[20];
+        try {
+            for (int i = 0; i < sockets.length; i++) {
+                sockets[i] = connect();
+                readResponse(new DataInputStream(sockets[i].getInputStream()));
+            }
+            assertTrue(nioServer.getSessionCount() >= sockets.length);
+        } finally {
+            for (Socket socket : sockets) {
+                if (socket != null) {
+                    socket.close();
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSessionCountReturnsToZeroOnceClientsLeave() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            try (Socket socket = connect()) {
+                DataInputStream in = new DataInputStream(socket.getInputStream());
+                DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+                readResponse(in);
+                if (i % 2 == 0) {
+                    out.writeUTF("exit");
+                    out.flush();
+                    readResponse(in);
+                }
+            }
+        }
+        for (int i = 0; i < 100 && nioServer.getSessionCount() != 0; i++) {
+            Thread.sleep(20);
+        }
+        assertEquals(0, nioServer.getSessionCount());
+    }
+
+    @Test
+    public void testSessionClosedTwiceIsCountedOnce() throws Exception {
+        EventLoop loop = new EventLoop(cm);
+        try (ServerSocketChannel listener = ServerSocketChannel.open();
+             Selector selector = Selector.open()) {
+            listener.bind(new InetSocketAddress("127.0.0.1", 0));
+            SocketChannel channel = SocketChannel.open(listener.getLocalAddress());
+            channel.configureBlocking(false);
+            NioSession session = new NioSession(channel, channel.register(selector, SelectionKey.OP_READ), loop, cm);
+
+            int before = loop.getSessionCount();
+            session.close();
+            session.close();
+            assertEquals(before - 1, loop.getSessionCount());
+            assertFalse(session.isOpen());
+        }
+    }
+
+    @Test
+    public void testExitClosesConnection() throws Exception {
+        try (Socket socket = connect()) {
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            readResponse(in);
+
+            out.writeUTF("exit");
+            out.flush();
+            readResponse(in);
+            assertEquals(-1, in.read());
+        }
+    }
+
+    @Test
+    public void testFramedProtocolAfterHandshake() throws Exception {
+        try (Socket socket = connect()) {
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            readResponse(in);
+
+            out.writeUTF("PROTOCOL 2");
+            out.flush();
+            assertEquals("PROTOCOL 2\n", readResponse(in));
+
+            FrameCodec.writeFrame(out, FrameCodec.REQUEST, "list lecturer");
+            Frame frame = FrameCodec.readFrame(in);
+            assertEquals(FrameCodec.RESPONSE, frame.getType());
+            assertTrue(frame.getPayload().contains("Alexander Melby"));
+
+            FrameCodec.writeFrame(out, FrameCodec.REQUEST, "exit");
+            assertEquals(FrameCodec.CLOSE, FrameCodec.readFrame(in).getType());
+        }
+    }
+
+    @Test
+    public void testPipelinedRequestsAreAnsweredInOrder() throws Exception {
+        try (Socket socket = connect()) {
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            readResponse(in);
+
+            // the session answers one request at a time, so it does not agree to unordered responses
+            out.writeUTF("PROTOCOL 3 UNORDERED");
+            out.flush();
+            assertEquals("PROTOCOL 3\n", readResponse(in));
+
+            for (int id = 1; id <= 10; id++) {
+                FrameCodec.writeFrame(out, FrameCodec.PIPELINED_VERSION, FrameCodec.REQUEST, id,
+                        id % 2 == 0 ? "list subject" : "help");
+            }
+            for (int id = 1; id <= 10; id++) {
+                Frame frame = FrameCodec.readFrame(in, FrameCodec.PIPELINED_VERSION);
+                assertEquals(id, frame.getRequestId());
+                assertEquals(id % 2 == 0, frame.getPayload().contains("PGR200"));
+            }
+        }
+    }
+
+    @Test
+    public void testEventLoopsKeepServingWhileDatabaseIsBusy() throws Exception {
+        CompletableFuture<Void> databaseReady = new CompletableFuture<>();
+        DaoDelegator dao = DaoDelegator.shared(cm);
+        dao.useCatalogue(new DaoCatalogue(dao) {
+            @Override
+            public CompletableFuture<List<SubjectDTO>> searchSubjectsAsync(String term, int limit) {
+                return databaseReady.thenCompose(ready -> super.searchSubjectsAsync(term, limit));
+            }
+        });
+        Socket[] others = new Socket[3];
+        try (Socket waiting = connect()) {
+            DataInputStream in = new DataInputStream(waiting.getInputStream());
+            DataOutputStream out = new DataOutputStream(waiting.getOutputStream());
+            readResponse(in);
+            out.writeUTF("search subject PG4200");
+            out.writeUTF("help");
+            out.flush();
+
+            // with more clients than event loops, at least one shares the loop of the waiting client
+            for (int i = 0; i < others.length; i++) {
+                others[i] = connect();
+                DataInputStream otherIn = new DataInputStream(others[i].getInputStream());
+                DataOutputStream otherOut = new DataOutputStream(others[i].getOutputStream());
+                readResponse(otherIn);
+                otherOut.writeUTF("help search");
+                otherOut.flush();
+                assertTrue(readResponse(otherIn).contains("You can use search with lecturer name or subject code."));
+            }
+
+            databaseReady.complete(null);
+            assertTrue(readResponse(in).contains("PG4200"));
+            assertTrue(readResponse(in).contains("The following commands are available."));
+        } finally {
+            dao.useCatalogue(null);
+            for (Socket socket : others) {
+                if (socket != null) {
+                    socket.close();
+                }
+            }
+        }
+    }
+
+    private Socket connect() throws Exception {
+        // the server is started on another thread, so give it a moment to open the port
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return new Socket("127.0.0.1", PORT);
+            } catch (IOException e) {
+                if (attempt > 50) {
+                    throw e;
+                }
+                Thread.sleep(100);
+            }
+        }
+    }
+
+    private String readResponse(DataInputStream in) throws IOException {
+        StringBuilder response = new StringBuilder();
+        String msg;
+        while (!(msg = in.readUTF()).equals("END_TRANSMISSION")) {
+            response.append(msg).append('\n');
+        }
+        return response.toString();
+    }
+}
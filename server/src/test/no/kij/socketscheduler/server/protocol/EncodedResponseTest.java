@@ -0,0 +1,64 @@
+package no.kij.socketscheduler.server.protocol;
+
+import org.junit.Test;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class EncodedResponseTest {
+    private final List<String> lines = Arrays.asList("line one", "line twø");
+
+    @Test
+    public void testLegacyBytesAreTheLinesAndEndTransmission() throws IOException {
+        EncodedResponse encoded = EncodedResponse.encode(lines);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        encoded.writeTo(new DataOutputStream(bytes), FrameCodec.LEGACY_VERSION, 0);
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals("line one", in.readUTF());
+        assertEquals("line twø", in.readUTF());
+        assertEquals(FrameCodec.END_TRANSMISSION, in.readUTF());
+        assertEquals(0, in.available());
+    }
+
+    @Test
+    public void testSameBytesAreFramedForEveryRequest() throws IOException {
+        EncodedResponse encoded = EncodedResponse.encode(lines, FrameCodec.PIPELINED_VERSION);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        encoded.writeTo(new DataOutputStream(bytes), FrameCodec.PIPELINED_VERSION, 4);
+        encoded.writeTo(new DataOutputStream(bytes), FrameCodec.PIPELINED_VERSION, 5);
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        for (int requestId = 4; requestId <= 5; requestId++) {
+            Frame frame = FrameCodec.readFrame(in, FrameCodec.PIPELINED_VERSION);
+            assertEquals(FrameCodec.RESPONSE, frame.getType());
+            assertEquals(requestId, frame.getRequestId());
+            assertEquals("line one\nline twø", frame.getPayload());
+        }
+    }
+
+    @Test
+    public void testIsOnlyEncodedForTheVersionAskedFor() {
+        EncodedResponse framed = EncodedResponse.encode(lines, FrameCodec.PIPELINED_VERSION);
+
+        assertTrue(framed.isEncodedFor(2));
+        assertFalse(framed.isEncodedFor(FrameCodec.LEGACY_VERSION));
+        assertTrue(EncodedResponse.encode(lines).isEncodedFor(FrameCodec.LEGACY_VERSION));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testCannotBeWrittenInAnotherVersion() throws IOException {
+        EncodedResponse.encode(lines, FrameCodec.PIPELINED_VERSION)
+                .writeTo(new DataOutputStream(new ByteArrayOutputStream()), FrameCodec.LEGACY_VERSION, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testLineTooLongForWriteUTF() {
+        char[] line = new char[70000];
+        Arrays.fill(line, 'a');
+        EncodedResponse.encode(Arrays.asList(new String(line)), FrameCodec.LEGACY_VERSION);
+    }
+}
@@ -0,0 +1,68 @@
+package no.kij.socketscheduler.server.protocol;
+
+import org.junit.Test;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class FrameCodecTest {
+
+    @Test
+    public void testWriteAndReadFrame() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        FrameCodec.writeFrame(new DataOutputStream(bytes), FrameCodec.RESPONSE, "line one\nline twø");
+
+        Frame frame = FrameCodec.readFrame(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertEquals(FrameCodec.RESPONSE, frame.getType());
+        assertEquals("line one\nline twø", frame.getPayload());
+    }
+
+    @Test
+    public void testFramesCanBeLargerThanWriteUTF() throws IOException {
+        StringBuilder payload = new StringBuilder();
+        while (payload.length() < 300 * 1024) {
+            payload.append("Avansert Javaprogrammering PGR200 65 Alexander Melby\n");
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        FrameCodec.writeFrame(new DataOutputStream(bytes), FrameCodec.RESPONSE, payload.toString());
+
+        Frame frame = FrameCodec.readFrame(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertEquals(payload.toString(), frame.getPayload());
+    }
+
+    @Test
+    public void testDecodeWaitsForWholeFrame() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        FrameCodec.writeFrame(new DataOutputStream(bytes), FrameCodec.REQUEST, "list subject");
+        byte[] frameBytes = bytes.toByteArray();
+
+        ByteBuffer partial = ByteBuffer.wrap(frameBytes, 0, frameBytes.length - 1);
+        assertNull(FrameCodec.decode(partial, FrameCodec.FRAMED_VERSION));
+        assertEquals(0, partial.position());
+
+        Frame frame = FrameCodec.decode(ByteBuffer.wrap(frameBytes), FrameCodec.FRAMED_VERSION);
+        assertEquals(FrameCodec.REQUEST, frame.getType());
+        assertEquals("list subject", frame.getPayload());
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadFrameRejectsTooLargeFrame() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(FrameCodec.RESPONSE);
+        out.writeInt(FrameCodec.MAX_FRAME_SIZE + 1);
+
+        FrameCodec.readFrame(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    }
+
+    @Test
+    public void testParseHandshake() {
+        assertEquals(2, FrameCodec.parseHandshake("PROTOCOL 2"));
+        assertEquals(-1, FrameCodec.parseHandshake("PROTOCOL two"));
+        assertEquals(-1, FrameCodec.parseHandshake("list subject"));
+        assertEquals(-1, FrameCodec.parseHandshake(null));
+    }
+}
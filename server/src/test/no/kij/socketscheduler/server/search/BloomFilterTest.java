@@ -0,0 +1,54 @@
+package no.kij.socketscheduler.server.search;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class BloomFilterTest {
+
+    @Test
+    public void testEveryStringPutIsFound() {
+        BloomFilter filter = new BloomFilter(10000, 0.01);
+        for (int i = 0; i < 10000; i++) {
+            filter.put("PGR" + i);
+        }
+
+        for (int i = 0; i < 10000; i++) {
+            assertTrue(filter.mightContain("PGR" + i));
+        }
+        assertEquals(10000, filter.getCount());
+    }
+
+    @Test
+    public void testFalsePositiveRateIsNearTheOneAskedFor() {
+        BloomFilter filter = new BloomFilter(10000, 0.01);
+        for (int i = 0; i < 10000; i++) {
+            filter.put("PGR" + i);
+        }
+
+        int falsePositives = 0;
+        for (int i = 0; i < 100000; i++) {
+            if (filter.mightContain("PG" + i + "X")) {
+                falsePositives++;
+            }
+        }
+        assertTrue("Got " + falsePositives, falsePositives < 2000);
+        assertEquals(0.01, filter.getExpectedFalsePositiveRate(), 0.005);
+    }
+
+    @Test
+    public void testIsSizedForTheStringsExpected() {
+        BloomFilter filter = new BloomFilter(10000, 0.01);
+
+        // about 9.6 bits and 7 hashes per string at 1%
+        assertEquals(12000, filter.getSizeBytes(), 100);
+        assertEquals(7, filter.getHashes());
+        assertFalse(filter.mightContain("PGR200"));
+        assertEquals(0, filter.getExpectedFalsePositiveRate(), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRateMustBeBelowOne() {
+        new BloomFilter(10, 1);
+    }
+}
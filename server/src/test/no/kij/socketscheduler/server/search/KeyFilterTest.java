@@ -0,0 +1,111 @@
+package no.kij.socketscheduler.server.search;
+
+import no.kij.socketscheduler.server.catalogue.Collation;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class KeyFilterTest {
+    private List<String> codes;
+    private AtomicInteger loads;
+    private AtomicLong now;
+    private KeyFilter filter;
+
+    @Before
+    public void setUp() {
+        codes = new ArrayList<>(Arrays.asList("PGR200", "PG3300", "PG4200"));
+        loads = new AtomicInteger();
+        now = new AtomicLong();
+        filter = new KeyFilter(Collation.EXACT, () -> {
+            loads.incrementAndGet();
+            return new ArrayList<>(codes);
+        }, 10, TimeUnit.MINUTES, now::get);
+    }
+
+    @Test
+    public void testAnswersMissesAndCountsThem() {
+        assertTrue(filter.mightContain("PGR200"));
+        assertFalse(filter.mightContain("PGR201"));
+        assertFalse(filter.mightContain("pgr200"));
+
+        assertEquals(1, loads.get());
+        assertEquals(3, filter.getChecks());
+        assertEquals(2, filter.getSkipped());
+        assertTrue(filter.getFilter().getSizeBytes() > 0);
+    }
+
+    @Test
+    public void testIgnoreCaseMatchesAnyCase() {
+        KeyFilter ignoreCase = new KeyFilter(Collation.IGNORE_CASE, () -> codes, 10, TimeUnit.MINUTES);
+
+        assertTrue(ignoreCase.mightContain("pgr200"));
+        assertTrue(ignoreCase.mightContain("PGR200  "));
+        assertFalse(ignoreCase.mightContain("pgr201"));
+    }
+
+    @Test
+    public void testPutIsSeenAndInvalidateReadsAgain() {
+        filter.load();
+        filter.put("PGR301");
+        assertTrue(filter.mightContain("PGR301"));
+
+        codes.add("PGR302");
+        assertFalse(filter.mightContain("PGR302"));
+        filter.invalidate();
+        assertTrue(filter.mightContain("PGR302"));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void testReadsAgainOnceTooOld() {
+        filter.load();
+        codes.add("PGR302");
+        now.addAndGet(TimeUnit.MINUTES.toNanos(9));
+        assertFalse(filter.mightContain("PGR302"));
+
+        now.addAndGet(TimeUnit.MINUTES.toNanos(1));
+        assertTrue(filter.mightContain("PGR302"));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void testReadsAgainOnceFull() {
+        filter.load();
+        int expected = filter.getFilter().getExpected();
+        for (int i = 0; i <= expected; i++) {
+            filter.put("X" + i);
+        }
+
+        filter.mightContain("PGR200");
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void testEverythingMightBeThereIfTheValuesCannotBeRead() {
+        KeyFilter failing = new KeyFilter(Collation.EXACT, () -> {
+            throw new SQLException("Database is gone");
+        }, 10, TimeUnit.MINUTES);
+
+        assertTrue(failing.mightContain("PGR201"));
+        assertEquals(0, failing.getSkipped());
+    }
+
+    @Test
+    public void testFalsePositiveRateCountsMissesLetThrough() {
+        filter.mightContain("PGR201");
+        filter.mightContain("PGR202");
+        filter.mightContain("PGR203");
+        filter.recordFalsePositive();
+
+        assertEquals(0.25, filter.getFalsePositiveRate(), 1e-9);
+    }
+}
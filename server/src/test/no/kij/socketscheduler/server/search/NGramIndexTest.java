@@ -0,0 +1,135 @@
+package no.kij.socketscheduler.server.search;
+
+import no.kij.socketscheduler.server.catalogue.Collation;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class NGramIndexTest {
+    private NGramIndex index;
+
+    @Before
+    public void setUp() {
+        index = new NGramIndex(Collation.EXACT);
+        index.put(1, "Avansert Javaprogrammering");
+        index.put(2, "Algoritmer og datastrukturer");
+        index.put(3, "Software Design");
+    }
+
+    @Test
+    public void testFindsNamesContainingTerm() throws SQLException {
+        assertEquals(Integer.valueOf(1), index.first("Java"));
+        assertEquals(Integer.valueOf(2), index.first("datastruktur"));
+        assertEquals(Integer.valueOf(3), index.first("Software Design"));
+        assertNull(index.first("Python"));
+    }
+
+    @Test
+    public void testAllGramsMustBeInTheSameName() throws SQLException {
+        // "Des" and "ign" are both indexed, but not next to each other in any name
+        assertNull(index.first("Deign"));
+        assertNull(index.first("Java Design"));
+    }
+
+    @Test
+    public void testReturnsLowestIdsFirst() throws SQLException {
+        index.put(0, "Java for nybegynnere");
+        assertEquals(Arrays.asList(0, 1), index.search("Java", 10));
+        assertEquals(Collections.singletonList(0), index.search("Java", 1));
+    }
+
+    @Test
+    public void testShortTermsAreFound() throws SQLException {
+        assertEquals(Arrays.asList(1, 2, 3), index.search("r", 10));
+        assertEquals(Arrays.asList(1, 2, 3), index.search("", 10));
+        assertEquals(Collections.singletonList(3), index.search("De", 10));
+    }
+
+    @Test
+    public void testPutReplacesAndRemoveForgets() throws SQLException {
+        index.put(1, "Avansert Pythonprogrammering");
+        assertNull(index.first("Java"));
+        assertEquals(Integer.valueOf(1), index.first("Python"));
+
+        index.remove(1);
+        assertNull(index.first("Python"));
+        assertEquals(2, index.size());
+    }
+
+    @Test
+    public void testCollationIsFollowed() throws SQLException {
+        assertNull(index.first("java"));
+
+        NGramIndex ignoreCase = new NGramIndex(Collation.IGNORE_CASE);
+        ignoreCase.put(1, "Avansert Javaprogrammering");
+        assertEquals(Integer.valueOf(1), ignoreCase.first("JAVA"));
+    }
+
+    @Test
+    public void testLoaderIsUsedOnFirstSearchAndAfterInvalidate() throws SQLException {
+        AtomicInteger loads = new AtomicInteger();
+        Map<Integer, String> names = new HashMap<>();
+        names.put(7, "Vilde Birkenes");
+        NGramIndex loading = new NGramIndex(Collation.EXACT, () -> {
+            loads.incrementAndGet();
+            return new HashMap<>(names);
+        });
+
+        // names put before the first load are read by the load instead
+        loading.put(8, "Lilly Evensen");
+        assertEquals(0, loads.get());
+        assertEquals(Integer.valueOf(7), loading.first("Birk"));
+        assertNull(loading.first("Lilly"));
+        assertEquals(1, loads.get());
+
+        names.put(9, "Alexander Melby");
+        loading.invalidate();
+        assertEquals(Integer.valueOf(9), loading.first("Melby"));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void testRankPutsBestMatchFirst() throws SQLException {
+        index.put(4, "Javaprogrammering");
+        index.put(5, "Java");
+
+        List<SearchHit> hits = index.rank("java", 10);
+        assertEquals(Arrays.asList(5, 4, 1), ids(hits));
+        assertEquals(Ranker.EXACT, hits.get(0).getScore(), 0);
+    }
+
+    @Test
+    public void testRankFindsMisspelledNames() throws SQLException {
+        assertEquals(Collections.singletonList(3), ids(index.rank("sofware desing", 10)));
+        assertEquals(Collections.singletonList(2), ids(index.rank("algoritmer", 10)));
+        assertTrue(index.rank("qqqq", 10).isEmpty());
+    }
+
+    @Test
+    public void testRankIsLimited() throws SQLException {
+        for (int i = 10; i < 100; i++) {
+            index.put(i, "Java " + i);
+        }
+        List<SearchHit> hits = index.rank("java", 5);
+        assertEquals(Arrays.asList(10, 11, 12, 13, 14), ids(hits));
+        assertEquals(3, index.rank("r", 3).size());
+    }
+
+    private static List<Integer> ids(List<SearchHit> hits) {
+        List<Integer> ids = new ArrayList<>();
+        for (SearchHit hit : hits) {
+            ids.add(hit.getId());
+        }
+        return ids;
+    }
+}
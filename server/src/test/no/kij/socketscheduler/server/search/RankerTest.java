@@ -0,0 +1,55 @@
+package no.kij.socketscheduler.server.search;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RankerTest {
+
+    @Test
+    public void testNormalize() {
+        assertEquals("vilde birkenes", Ranker.normalize("  Vilde \t Birkenes "));
+        assertEquals("", Ranker.normalize("   "));
+    }
+
+    @Test
+    public void testTiersAreOrdered() {
+        String name = "avansert javaprogrammering";
+        double exact = Ranker.score(name, name);
+        double prefix = Ranker.score("avansert java", name);
+        double token = Ranker.score("java avan", name);
+        double substring = Ranker.score("programmer", name);
+        double fuzzy = Ranker.score("javaprogramering", name);
+
+        assertEquals(Ranker.EXACT, exact, 0);
+        assertTrue(exact > prefix);
+        assertTrue(prefix > token);
+        assertTrue(token > substring);
+        assertTrue(substring > fuzzy);
+        assertTrue(fuzzy > Ranker.NO_MATCH);
+        assertEquals(Ranker.NO_MATCH, Ranker.score("python", name), 0);
+    }
+
+    @Test
+    public void testLongerMatchScoresHigherWithinTier() {
+        assertTrue(Ranker.score("vilde b", "vilde birkenes") > Ranker.score("vil", "vilde birkenes"));
+        assertTrue(Ranker.score("vil", "vilde") > Ranker.score("vil", "vilde birkenes"));
+    }
+
+    @Test
+    public void testMisspelledWordsAreFound() {
+        assertTrue(Ranker.score("vlide", "vilde birkenes") > Ranker.NO_MATCH);
+        assertTrue(Ranker.score("lily evensen", "lilly evensen") > Ranker.NO_MATCH);
+        assertEquals(Ranker.NO_MATCH, Ranker.score("xyz", "vilde birkenes"), 0);
+    }
+
+    @Test
+    public void testEditDistance() {
+        assertEquals(0, Ranker.editDistance("vilde", "vilde", 3));
+        assertEquals(1, Ranker.editDistance("vlide", "vilde", 3));
+        assertEquals(1, Ranker.editDistance("lily", "lilly", 3));
+        assertEquals(3, Ranker.editDistance("kitten", "sitting", 3));
+        assertEquals(2, Ranker.editDistance("kitten", "sitting", 1));
+        assertEquals(3, Ranker.editDistance("a", "abcdef", 2));
+    }
+}
@@ -1,6 +1,8 @@
 package no.kij.socketscheduler.server.util;
 
+import com.j256.ormlite.misc.TransactionManager;
 import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.support.DatabaseConnection;
 import org.h2.tools.Server;
 import org.junit.AfterClass;
 import org.junit.Before;
@@ -8,7 +10,13 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.Assert.*;
 
@@ -70,4 +78,119 @@ public class ConnectionManagerTest {
         assertTrue(connectionSource.isOpen("test"));
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testPoolSettingsAreTakenFromProperties() {
+        Properties creds = ResourceFetcher.getProperty("testProps");
+        creds.setProperty("pool_max_connections", "3");
+        creds.setProperty("pool_max_idle_connections", "2");
+        connectionManager = new ConnectionManager(creds);
+        ConnectionPool pool = connectionManager.getPool();
+        assertSame(pool, connectionManager.getConnectionSource());
+        assertEquals(3, pool.getMaxConnections());
+    }
+
+    @Test
+    public void testInvalidPoolSettingFallsBackToDefault() {
+        Properties creds = ResourceFetcher.getProperty("testProps");
+        creds.setProperty("pool_max_connections", "lots");
+        connectionManager = new ConnectionManager(creds);
+        assertEquals(ConnectionManager.DEFAULT_MAX_CONNECTIONS, connectionManager.getPool().getMaxConnections());
+    }
+
+    @Test
+    public void testCheckoutTimesOutWhenAllConnectionsAreInUse() throws SQLException {
+        Properties creds = ResourceFetcher.getProperty("testProps");
+        creds.setProperty("pool_max_connections", "2");
+        creds.setProperty("pool_checkout_timeout_millis", "50");
+        connectionManager = new ConnectionManager(creds);
+        ConnectionPool pool = connectionManager.getPool();
+        DatabaseConnection first = pool.getReadWriteConnection("test");
+        DatabaseConnection second = pool.getReadOnlyConnection("test");
+        assertEquals(2, pool.getInUse());
+        assertEquals(1.0, pool.getUtilization(), 0);
+        try {
+            pool.getReadWriteConnection("test");
+            fail("A third connection was handed out from a pool of two.");
+        } catch (SQLException e) {
+            assertEquals(1, pool.getTimeouts());
+            assertEquals(1, pool.getWaits());
+        }
+
+        pool.releaseConnection(first);
+        DatabaseConnection third = pool.getReadWriteConnection("test");
+        pool.releaseConnection(second);
+        pool.releaseConnection(third);
+        assertEquals(0, pool.getInUse());
+        assertEquals(2, pool.getPeakInUse());
+        assertEquals(3, pool.getCheckouts());
+    }
+
+    @Test
+    public void testTransactionConnectionIsOnlyCountedOnce() throws SQLException {
+        Properties creds = ResourceFetcher.getProperty("testProps");
+        creds.setProperty("pool_max_connections", "1");
+        creds.setProperty("pool_checkout_timeout_millis", "50");
+        connectionManager = new ConnectionManager(creds);
+        ConnectionPool pool = connectionManager.getPool();
+        TransactionManager.callInTransaction(pool, () -> {
+            // statements in the transaction get its connection again, which must not wait for a free one
+            DatabaseConnection connection = pool.getReadWriteConnection("test");
+            assertEquals(1, pool.getInUse());
+            pool.releaseConnection(connection);
+            assertEquals(1, pool.getInUse());
+            return null;
+        });
+        assertEquals(0, pool.getInUse());
+        assertEquals(1, pool.getCheckouts());
+        assertEquals(0, pool.getTimeouts());
+    }
+
+    @Test
+    public void testConcurrentCallsAfterCloseGetSamePool() throws Exception {
+        connectionManager.close();
+        int threads = 16;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<ConnectionSource>> sources = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            sources.add(executor.submit(() -> {
+                start.await();
+                return connectionManager.getConnectionSource();
+            }));
+        }
+        start.countDown();
+        ConnectionSource first = sources.get(0).get();
+        assertNotNull(first);
+        for (Future<ConnectionSource> source : sources) {
+            assertSame(first, source.get());
+        }
+        executor.shutdown();
+    }
+
+    @Test
+    public void testDatabaseExecutorIsSizedToThePool() {
+        Properties creds = ResourceFetcher.getProperty("testProps");
+        creds.setProperty("pool_max_connections", "3");
+        creds.setProperty("pool_queue_size", "7");
+        connectionManager = new ConnectionManager(creds);
+        DatabaseExecutor executor = connectionManager.getDatabaseExecutor();
+        assertSame(executor, connectionManager.getDatabaseExecutor());
+        assertEquals(3, executor.getThreads());
+        assertEquals(7, executor.getQueueCapacity());
+    }
+
+    @Test
+    public void testDatabaseExecutorWithoutPoolLimitUsesDefaultThreads() {
+        assertEquals(ConnectionManager.DEFAULT_EXECUTOR_THREADS, connectionManager.getDatabaseExecutor().getThreads());
+        assertEquals(ConnectionManager.DEFAULT_QUEUE_SIZE, connectionManager.getDatabaseExecutor().getQueueCapacity());
+    }
+
+    @Test
+    public void testCloseShutsDownDatabaseExecutor() throws Exception {
+        DatabaseExecutor executor = connectionManager.getDatabaseExecutor();
+        connectionManager.close();
+        assertTrue(executor.submit(() -> 1).isCompletedExceptionally());
+        assertEquals(Integer.valueOf(2), connectionManager.getDatabaseExecutor().submit(() -> 2).get());
+    }
+
+}
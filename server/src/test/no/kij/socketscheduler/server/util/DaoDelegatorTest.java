@@ -11,6 +11,11 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.Assert.*;
 
@@ -63,7 +68,30 @@ public class DaoDelegatorTest {
         assertSame(lecturerDao, duplicateLecturerDao);
     }
 
+    @Test
+    public void testSharedReturnsSameDelegatorForConnectionManager() {
+        DaoDelegator shared = DaoDelegator.shared(connectionManager);
+        assertSame(shared, DaoDelegator.shared(connectionManager));
+        assertSame(shared.getSubjectDao(), DaoDelegator.shared(connectionManager).getSubjectDao());
+    }
 
+    @Test
+    public void testReleaseForgetsSharedDelegator() {
+        DaoDelegator shared = DaoDelegator.shared(connectionManager);
+        DaoDelegator.release(connectionManager);
+        assertNotSame(shared, DaoDelegator.shared(connectionManager));
+    }
 
-
-}
\ No newline at end of file
+    @Test
+    public void testConcurrentCallsGetSameDao() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<SubjectDao>> daos = new ArrayList<>();
+        for (int i = 0; i < 32; i++) {
+            daos.add(executor.submit(daoDelegator::getSubjectDao));
+        }
+        for (Future<SubjectDao> dao : daos) {
+            assertSame(daos.get(0).get(), dao.get());
+        }
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,93 @@
+package no.kij.socketscheduler.server.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class DatabaseExecutorTest {
+    private DatabaseExecutor executor;
+
+    @Before
+    public void setUp() {
+        executor = new DatabaseExecutor(1, 2);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    public void testQueryRunsOnDatabaseThread() throws Exception {
+        assertTrue(executor.submit(() -> Thread.currentThread().getName()).get().startsWith("database-"));
+        assertEquals(1, executor.getCompleted());
+    }
+
+    @Test
+    public void testFailedQueryFailsFuture() throws Exception {
+        CompletableFuture<Object> future = executor.submit(() -> {
+            throw new SQLException("Table not found");
+        });
+        try {
+            future.get();
+            fail("The future of a failed query completed.");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof SQLException);
+        }
+        assertEquals(1, executor.getFailed());
+    }
+
+    @Test
+    public void testFullQueueRejectsWithoutWaiting() throws Exception {
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Integer> first = executor.submit(() -> {
+            running.countDown();
+            release.await();
+            return 1;
+        });
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+        CompletableFuture<Integer> second = executor.submit(() -> 2);
+        CompletableFuture<Integer> third = executor.submit(() -> 3);
+        assertEquals(2, executor.getQueueDepth());
+
+        CompletableFuture<Integer> rejected = executor.submit(() -> 4);
+        assertTrue(rejected.isCompletedExceptionally());
+        try {
+            rejected.get();
+            fail("A query was taken with the queue full.");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+
+        release.countDown();
+        assertEquals(Integer.valueOf(1), first.get());
+        assertEquals(Integer.valueOf(2), second.get());
+        assertEquals(Integer.valueOf(3), third.get());
+        assertEquals(3, executor.getSubmitted());
+        assertEquals(1, executor.getRejected());
+        assertEquals(2, executor.getPeakQueueDepth());
+        assertTrue(executor.getMaxQueueMillis() > 0);
+    }
+
+    @Test
+    public void testShutDownExecutorRejects() {
+        executor.shutdown();
+        assertTrue(executor.submit(() -> 1).isCompletedExceptionally());
+        assertEquals(1, executor.getRejected());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNeedsAtLeastOneThread() {
+        new DatabaseExecutor(0, 1);
+    }
+}